@@ -0,0 +1,43 @@
+/*
+ * Copyright 2017 TieFaces.
+ * Licensed under MIT
+ */
+package org.tiefaces.benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Entry of benchmarks jar. Same options as the JMH main, with the gc
+ * profiler always added so allocation per operation is reported along with
+ * the time.
+ *
+ * @author Jason Jiang
+ *
+ */
+public final class BenchmarkMain {
+
+	/**
+	 * hide constructor.
+	 */
+	private BenchmarkMain() {
+		// not called
+	}
+
+	/**
+	 * The main method.
+	 *
+	 * @param args
+	 *            JMH command line options
+	 * @throws Exception
+	 *             the exception
+	 */
+	public static void main(final String[] args) throws Exception {
+		CommandLineOptions cmdOptions = new CommandLineOptions(args);
+		new Runner(new OptionsBuilder().parent(cmdOptions)
+				.addProfiler(GCProfiler.class).build()).run();
+	}
+
+}
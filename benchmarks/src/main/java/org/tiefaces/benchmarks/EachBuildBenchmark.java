@@ -0,0 +1,66 @@
+/*
+ * Copyright 2017 TieFaces.
+ * Licensed under MIT
+ */
+package org.tiefaces.benchmarks;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.tiefaces.components.websheet.TieWebSheetBean;
+
+/**
+ * EachCommand.buildAt, i.e. populating the template with the collections.
+ * The template is loaded without data before each invocation.
+ *
+ * @author Jason Jiang
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class EachBuildBenchmark {
+
+	/** bean with template loaded. */
+	private TieWebSheetBean bean;
+
+	/** data context. */
+	private Map<String, Object> data;
+
+	/**
+	 * Load the template without data.
+	 *
+	 * @param sheet
+	 *            the sheet state
+	 */
+	@Setup(Level.Invocation)
+	public final void prepare(final SheetState sheet) {
+		bean = WebSheetFixture.load(sheet.getTemplate(), null);
+		data = sheet.newData();
+	}
+
+	/**
+	 * Build the forms.
+	 *
+	 * @return populated rows
+	 */
+	@Benchmark
+	public final int buildAt() {
+		return WebSheetFixture.buildForms(bean, data);
+	}
+
+}
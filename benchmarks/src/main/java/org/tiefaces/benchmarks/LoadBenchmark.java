@@ -0,0 +1,78 @@
+/*
+ * Copyright 2017 TieFaces.
+ * Licensed under MIT
+ */
+package org.tiefaces.benchmarks;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.tiefaces.components.websheet.TieWebSheetBean;
+import org.tiefaces.components.websheet.configuration.TemplateCache;
+
+/**
+ * WebSheetLoader.loadWorkbook through TieWebSheetBean.loadWebSheet, with and
+ * without the compiled template cache.
+ *
+ * @author Jason Jiang
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class LoadBenchmark {
+
+	/** data context of next load. */
+	private Map<String, Object> data;
+
+	/**
+	 * Prepare the data context.
+	 *
+	 * @param sheet
+	 *            the sheet state
+	 */
+	@Setup(Level.Invocation)
+	public final void prepare(final SheetState sheet) {
+		data = sheet.newData();
+	}
+
+	/**
+	 * Load with the configuration restored from template cache.
+	 *
+	 * @param sheet
+	 *            the sheet state
+	 * @return the bean
+	 */
+	@Benchmark
+	public final TieWebSheetBean loadCached(final SheetState sheet) {
+		return WebSheetFixture.load(sheet.getTemplate(), data);
+	}
+
+	/**
+	 * Load with the configuration parsed from template.
+	 *
+	 * @param sheet
+	 *            the sheet state
+	 * @return the bean
+	 */
+	@Benchmark
+	public final TieWebSheetBean loadUncached(final SheetState sheet) {
+		TemplateCache.clear();
+		return WebSheetFixture.load(sheet.getTemplate(), data);
+	}
+
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright 2017 TieFaces.
+ * Licensed under MIT
+ */
+package org.tiefaces.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.primefaces.model.StreamedContent;
+import org.tiefaces.components.websheet.TieWebSheetBean;
+
+/**
+ * Operations which don't change the loaded sheet: CellHelper.reCalc,
+ * ValidationHandler.validateCurrentPage and TieWebSheetBean.doExport. The
+ * sheet is loaded once per trial.
+ *
+ * @author Jason Jiang
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class LoadedSheetBenchmark {
+
+	/** loaded bean. */
+	private TieWebSheetBean bean;
+
+	/**
+	 * Load the sheet.
+	 *
+	 * @param sheet
+	 *            the sheet state
+	 */
+	@Setup(Level.Trial)
+	public final void prepare(final SheetState sheet) {
+		bean = WebSheetFixture.load(sheet.getTemplate(), sheet.newData());
+	}
+
+	/**
+	 * Recalculate all formulas.
+	 *
+	 * @return the bean
+	 */
+	@Benchmark
+	public final TieWebSheetBean reCalc() {
+		bean.getCellHelper().reCalc();
+		return bean;
+	}
+
+	/**
+	 * Validate the current page.
+	 *
+	 * @return true, if all passed
+	 */
+	@Benchmark
+	public final boolean validateCurrentPage() {
+		return bean.getValidationHandler().validateCurrentPage();
+	}
+
+	/**
+	 * Export the workbook.
+	 *
+	 * @return the export file
+	 */
+	@Benchmark
+	public final StreamedContent doExport() {
+		bean.doExport();
+		return bean.getExportFile();
+	}
+
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright 2017 TieFaces.
+ * Licensed under MIT
+ */
+package org.tiefaces.benchmarks;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.tiefaces.components.websheet.TieWebSheetBean;
+
+/**
+ * TieWebSheetBean.addRepeatRow and deleteRepeatRow on the first item of the
+ * deepest collection. The sheet is reloaded before each invocation, so every
+ * call starts from the same sheet. addRepeatRows compares one batch of
+ * BATCH_SIZE items with the same number of single adds.
+ *
+ * @author Jason Jiang
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class RepeatRowBenchmark {
+
+	/** items added by the batch benchmarks. */
+	private static final int BATCH_SIZE = 50;
+
+	/** loaded bean. */
+	private TieWebSheetBean bean;
+
+	/** row to add or delete. */
+	private int rowIndex;
+
+	/**
+	 * Load the sheet.
+	 *
+	 * @param sheet
+	 *            the sheet state
+	 */
+	@Setup(Level.Invocation)
+	public final void prepare(final SheetState sheet) {
+		bean = WebSheetFixture.load(sheet.getTemplate(), sheet.newData());
+		rowIndex = WebSheetFixture.firstLeafRow(sheet.getDepth());
+	}
+
+	/**
+	 * Add a row.
+	 *
+	 * @return body rows
+	 */
+	@Benchmark
+	public final int addRepeatRow() {
+		bean.addRepeatRow(rowIndex);
+		return bean.getBodyRows().size();
+	}
+
+	/**
+	 * Add BATCH_SIZE rows one by one.
+	 *
+	 * @return body rows
+	 */
+	@Benchmark
+	public final int addRepeatRowLoop() {
+		for (int i = 0; i < BATCH_SIZE; i++) {
+			bean.addRepeatRow(rowIndex);
+		}
+		return bean.getBodyRows().size();
+	}
+
+	/**
+	 * Add BATCH_SIZE rows in one batch.
+	 *
+	 * @return body rows
+	 */
+	@Benchmark
+	public final int addRepeatRows() {
+		bean.addRepeatRows(Collections.singletonMap(rowIndex, BATCH_SIZE));
+		return bean.getBodyRows().size();
+	}
+
+	/**
+	 * Delete a row.
+	 *
+	 * @return body rows
+	 */
+	@Benchmark
+	public final int deleteRepeatRow() {
+		bean.deleteRepeatRow(rowIndex);
+		return bean.getBodyRows().size();
+	}
+
+}
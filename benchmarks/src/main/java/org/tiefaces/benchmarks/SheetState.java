@@ -0,0 +1,93 @@
+/*
+ * Copyright 2017 TieFaces.
+ * Licensed under MIT
+ */
+package org.tiefaces.benchmarks;
+
+import java.io.IOException;
+import java.util.Map;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Shape of the synthetic sheet shared by all benchmarks. Override the
+ * parameters with -p, e.g. -p rows=5000 -p depth=3.
+ *
+ * @author Jason Jiang
+ *
+ */
+@State(Scope.Benchmark)
+public class SheetState {
+
+	/** top level items. */
+	@Param({ "100", "1000" })
+	public int rows;
+
+	/** data columns per row. */
+	@Param({ "10" })
+	public int columns;
+
+	/** nesting depth of tie:each. */
+	@Param({ "1", "2" })
+	public int depth;
+
+	/** children per item below top level. */
+	@Param({ "3" })
+	public int fanOut;
+
+	/** ratio of formula columns. */
+	@Param({ "0.2" })
+	public double formulaDensity;
+
+	/** merged regions per deepest row. */
+	@Param({ "0", "4" })
+	public int mergedRegions;
+
+	/** template bytes. */
+	private byte[] template;
+
+	/**
+	 * Build the template.
+	 *
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 */
+	@Setup(Level.Trial)
+	public final void setUp() throws IOException {
+		template = SyntheticTemplate.build(columns, depth, formulaDensity,
+				mergedRegions);
+	}
+
+	/**
+	 * Gets the template.
+	 *
+	 * @return the template
+	 */
+	public final byte[] getTemplate() {
+		return template;
+	}
+
+	/**
+	 * Create a new data context. The bean changes the collections, so every
+	 * load needs its own.
+	 *
+	 * @return the data context
+	 */
+	public final Map<String, Object> newData() {
+		return SyntheticData.build(rows, columns, depth, fanOut);
+	}
+
+	/**
+	 * Gets the depth.
+	 *
+	 * @return the depth
+	 */
+	public final int getDepth() {
+		return depth;
+	}
+
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright 2017 TieFaces.
+ * Licensed under MIT
+ */
+package org.tiefaces.benchmarks;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Generator of data context for SyntheticTemplate. Top level has the given
+ * number of items, every deeper level has fanOut children per item. Items
+ * are maps so the column count is not fixed.
+ *
+ * @author Jason Jiang
+ *
+ */
+public final class SyntheticData {
+
+	/**
+	 * hide constructor.
+	 */
+	private SyntheticData() {
+		// not called
+	}
+
+	/**
+	 * Build the data context.
+	 *
+	 * @param rows
+	 *            top level items
+	 * @param columns
+	 *            data columns
+	 * @param depth
+	 *            nesting depth
+	 * @param fanOut
+	 *            children per item below top level
+	 * @return the data context
+	 */
+	public static Map<String, Object> build(final int rows,
+			final int columns, final int depth, final int fanOut) {
+		Map<String, Object> context = new HashMap<>();
+		context.put(SyntheticTemplate.ITEMS,
+				buildItems(rows, columns, depth - 1, fanOut, 0));
+		return context;
+	}
+
+	/**
+	 * Build items of one level.
+	 *
+	 * @param count
+	 *            the count
+	 * @param columns
+	 *            the columns
+	 * @param levelsBelow
+	 *            levels below this one
+	 * @param fanOut
+	 *            the fan out
+	 * @param seed
+	 *            the seed of values
+	 * @return the items
+	 */
+	private static List<Map<String, Object>> buildItems(final int count,
+			final int columns, final int levelsBelow, final int fanOut,
+			final int seed) {
+		List<Map<String, Object>> items = new ArrayList<>(count);
+		for (int i = 0; i < count; i++) {
+			Map<String, Object> item = new HashMap<>();
+			for (int col = 0; col < columns; col++) {
+				item.put(SyntheticTemplate.VALUE_PREFIX + col,
+						(double) ((seed + i) * columns + col));
+			}
+			if (levelsBelow > 0) {
+				item.put(SyntheticTemplate.CHILDREN, buildItems(fanOut,
+						columns, levelsBelow - 1, fanOut, seed + i));
+			}
+			items.add(item);
+		}
+		return items;
+	}
+
+}
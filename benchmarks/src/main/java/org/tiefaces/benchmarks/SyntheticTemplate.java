@@ -0,0 +1,189 @@
+/*
+ * Copyright 2017 TieFaces.
+ * Licensed under MIT
+ */
+package org.tiefaces.benchmarks;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.ClientAnchor;
+import org.apache.poi.ss.usermodel.Comment;
+import org.apache.poi.ss.usermodel.CreationHelper;
+import org.apache.poi.ss.usermodel.Drawing;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.util.CellRangeAddress;
+import org.apache.poi.ss.util.CellReference;
+import org.apache.poi.xssf.usermodel.XSSFSheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+
+/**
+ * Generator of synthetic web sheet templates.
+ *
+ * The form has one header row, one row per nesting level and one footer
+ * row. Level d is a tie:each over item(d-1).children (items for level 0),
+ * with var item(d). Each level row has the given number of data columns,
+ * the formula density decides how many of them are formulas instead of
+ * ${...} expressions. Merged regions are added at the right of the deepest
+ * row so they are copied with every item. All rows are filled to the right
+ * column, as the command ranges need their corner cells. Column B of the
+ * deepest row has a validation rule and the footer sums it.
+ *
+ * @author Jason Jiang
+ *
+ */
+public final class SyntheticTemplate {
+
+	/** form name. */
+	public static final String FORM_NAME = "bench";
+
+	/** prefix of each variable. */
+	public static final String VAR_PREFIX = "item";
+
+	/** name of top level collection. */
+	public static final String ITEMS = "items";
+
+	/** name of child collection. */
+	public static final String CHILDREN = "children";
+
+	/** prefix of value property. */
+	public static final String VALUE_PREFIX = "v";
+
+	/**
+	 * hide constructor.
+	 */
+	private SyntheticTemplate() {
+		// not called
+	}
+
+	/**
+	 * Build the template as xlsx bytes.
+	 *
+	 * @param columns
+	 *            data columns of each row. at least 2.
+	 * @param depth
+	 *            nesting depth of tie:each. at least 1.
+	 * @param formulaDensity
+	 *            ratio of formula columns. 0 to 1.
+	 * @param mergedRegions
+	 *            merged regions in the deepest row.
+	 * @return the template bytes
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 */
+	public static byte[] build(final int columns, final int depth,
+			final double formulaDensity, final int mergedRegions)
+			throws IOException {
+		XSSFWorkbook wb = new XSSFWorkbook();
+		try {
+			XSSFSheet sheet = wb.createSheet(FORM_NAME);
+			CreationHelper factory = wb.getCreationHelper();
+			Drawing drawing = sheet.createDrawingPatriarch();
+			int rightCol = columns + mergedRegions * 2 - 1;
+			int footerRow = depth + 1;
+
+			Row header = sheet.createRow(0);
+			for (int col = 0; col <= rightCol; col++) {
+				header.createCell(col).setCellValue("Column " + col);
+			}
+			addComment(factory, drawing, header.getCell(0),
+					"tie:form(name=\"" + FORM_NAME + "\" length=\""
+							+ (depth + 2)
+							+ "\" headerLength=\"1\" footerLength=\"1\")");
+
+			int formulaEvery = formulaDensity <= 0 ? Integer.MAX_VALUE
+					: (int) Math.max(1, Math.round(1 / formulaDensity));
+			for (int level = 0; level < depth; level++) {
+				int rowIndex = level + 1;
+				Row row = sheet.createRow(rowIndex);
+				for (int col = 0; col <= rightCol; col++) {
+					Cell cell = row.createCell(col);
+					if (col >= columns) {
+						continue;
+					}
+					if ((col > 1) && (col % formulaEvery == 0)) {
+						cell.setCellFormula(colName(col - 1) + (rowIndex + 1)
+								+ "+" + colName(1) + (rowIndex + 1));
+					} else {
+						cell.setCellValue("${" + VAR_PREFIX + level + "."
+								+ VALUE_PREFIX + col + "}");
+					}
+				}
+				String items = level == 0 ? ITEMS
+						: VAR_PREFIX + (level - 1) + "." + CHILDREN;
+				addComment(factory, drawing, row.getCell(0),
+						"tie:each(items=\"" + items + "\", var=\""
+								+ VAR_PREFIX + level + "\", length=\""
+								+ (depth - level) + "\" allowAdd=\"true\")");
+			}
+
+			Row deepest = sheet.getRow(depth);
+			addComment(factory, drawing, deepest.getCell(1),
+					"$validate{rule=\"$value>=0\" error=\"Value must not be"
+							+ " negative.\"}");
+			for (int i = 0; i < mergedRegions; i++) {
+				int col = columns + i * 2;
+				deepest.getCell(col).setCellValue("m" + i);
+				sheet.addMergedRegion(
+						new CellRangeAddress(depth, depth, col, col + 1));
+			}
+
+			Row footer = sheet.createRow(footerRow);
+			for (int col = 0; col <= rightCol; col++) {
+				footer.createCell(col);
+			}
+			footer.getCell(0).setCellValue("Total");
+			footer.getCell(1).setCellFormula("SUM(" + colName(1) + (depth + 1)
+					+ ":" + colName(1) + (depth + 1) + ")");
+
+			// poi does not maintain the dimension, web sheet reads the right
+			// column from it.
+			sheet.getCTWorksheet().getDimension()
+					.setRef(new CellRangeAddress(0, footerRow, 0, rightCol)
+							.formatAsString());
+
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			wb.write(out);
+			return out.toByteArray();
+		} finally {
+			wb.close();
+		}
+	}
+
+	/**
+	 * Adds the comment to cell.
+	 *
+	 * @param factory
+	 *            the factory
+	 * @param drawing
+	 *            the drawing
+	 * @param cell
+	 *            the cell
+	 * @param text
+	 *            the text
+	 */
+	private static void addComment(final CreationHelper factory,
+			final Drawing drawing, final Cell cell, final String text) {
+		ClientAnchor anchor = factory.createClientAnchor();
+		anchor.setCol1(cell.getColumnIndex());
+		anchor.setCol2(cell.getColumnIndex() + 3);
+		anchor.setRow1(cell.getRowIndex());
+		anchor.setRow2(cell.getRowIndex() + 3);
+		Comment comment = drawing.createCellComment(anchor);
+		comment.setString(factory.createRichTextString(text));
+		cell.setCellComment(comment);
+	}
+
+	/**
+	 * Column name.
+	 *
+	 * @param col
+	 *            the col
+	 * @return the name
+	 */
+	private static String colName(final int col) {
+		return CellReference.convertNumToColString(col);
+	}
+
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright 2017 TieFaces.
+ * Licensed under MIT
+ */
+package org.tiefaces.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.util.Map;
+
+import org.tiefaces.components.websheet.TieWebSheetBean;
+import org.tiefaces.components.websheet.configuration.ConfigBuildRef;
+import org.tiefaces.components.websheet.configuration.SheetConfiguration;
+
+/**
+ * Headless operations on a web sheet bean used by the benchmarks. None of
+ * them needs a FacesContext.
+ *
+ * @author Jason Jiang
+ *
+ */
+public final class WebSheetFixture {
+
+	/**
+	 * hide constructor.
+	 */
+	private WebSheetFixture() {
+		// not called
+	}
+
+	/**
+	 * Create and load a bean.
+	 *
+	 * @param template
+	 *            the template bytes
+	 * @param dataContext
+	 *            the data context. null to load the template only.
+	 * @return the bean
+	 */
+	public static TieWebSheetBean load(final byte[] template,
+			final Map<String, Object> dataContext) {
+		TieWebSheetBean bean = new TieWebSheetBean();
+		bean.init();
+		if (bean.loadWebSheet(new ByteArrayInputStream(template),
+				dataContext) != 1) {
+			throw new IllegalStateException("Failed to load template.");
+		}
+		return bean;
+	}
+
+	/**
+	 * Row index of the first item of the deepest tie:each. Adding or deleting
+	 * this row does not involve nested collections.
+	 *
+	 * @param depth
+	 *            nesting depth of the template
+	 * @return the row index
+	 */
+	public static int firstLeafRow(final int depth) {
+		return depth;
+	}
+
+	/**
+	 * Populate the forms of a bean loaded without data. Same as the data
+	 * loading step of WebSheetLoader, i.e. tie:form buildAt which runs
+	 * EachCommand.buildAt for every collection.
+	 *
+	 * @param bean
+	 *            the bean
+	 * @param dataContext
+	 *            the data context
+	 * @return total populated rows
+	 */
+	public static int buildForms(final TieWebSheetBean bean,
+			final Map<String, Object> dataContext) {
+		int total = 0;
+		for (SheetConfiguration sheetConfig : bean.getSheetConfigMap()
+				.values()) {
+			ConfigBuildRef configBuildRef = new ConfigBuildRef(
+					bean.getWbWrapper(),
+					bean.getWb().getSheet(sheetConfig.getSheetName()),
+					bean.getExpEngine(), bean.getCellHelper(),
+					sheetConfig.getCachedCells(), bean.getCellAttributesMap(),
+					sheetConfig.getFinalCommentMap(), bean.getRowMetaStore());
+			total += sheetConfig.getFormCommand().buildAt(null,
+					configBuildRef, sheetConfig.getFormCommand().getTopRow(),
+					dataContext, null);
+		}
+		return total;
+	}
+
+}
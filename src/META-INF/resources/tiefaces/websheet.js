@@ -32,3 +32,179 @@ var confirmOnPageExit = function (e)
 	}
 };
 window.onbeforeunload = confirmOnPageExit;
+
+/*
+ * Client side charts. Each chart element carries its data as json in
+ * data-chart attribute. Set window.webSheetChartRenderer = function(el, chart)
+ * to draw with other chart library, otherwise a simple canvas chart is drawn.
+ * Charts are drawn again after every ajax update (e.g. paging or table
+ * update), elements already drawn with the same data are skipped.
+ */
+var webSheetChartsHooked = false;
+
+function renderWebSheetCharts(root) {
+	if (!webSheetChartsHooked && window.jQuery) {
+		webSheetChartsHooked = true;
+		jQuery(document).on("pfAjaxComplete", function() {
+			renderWebSheetCharts();
+		});
+	}
+	var list = (root || document).querySelectorAll("div.websheet-chart[data-chart]");
+	for (var i = 0; i < list.length; i++) {
+		var el = list[i];
+		var json = el.getAttribute("data-chart");
+		if (el.webSheetChartData === json) {
+			continue;
+		}
+		var chart;
+		try {
+			chart = JSON.parse(json);
+		} catch (e) {
+			continue;
+		}
+		el.webSheetChartData = json;
+		if (typeof window.webSheetChartRenderer === "function") {
+			window.webSheetChartRenderer(el, chart);
+		} else {
+			drawWebSheetChart(el, chart);
+		}
+	}
+}
+
+function drawWebSheetChart(el, chart) {
+	var canvas = document.createElement("canvas");
+	canvas.width = chart.width;
+	canvas.height = chart.height;
+	el.innerHTML = "";
+	el.appendChild(canvas);
+	var ctx = canvas.getContext("2d");
+	if (!ctx) {
+		return;
+	}
+	ctx.fillStyle = "#ffffff";
+	ctx.fillRect(0, 0, chart.width, chart.height);
+	ctx.font = "12px sans-serif";
+	ctx.fillStyle = "#000000";
+	ctx.textAlign = "center";
+	var top = 8;
+	if (chart.title) {
+		ctx.fillText(chart.title, chart.width / 2, 18);
+		top = 28;
+	}
+	var area = {x: 40, y: top, w: chart.width - 150, h: chart.height - top - 30};
+	drawWebSheetChartLegend(ctx, chart, area.x + area.w + 10, top);
+	if (chart.type.indexOf("pie") >= 0 || chart.type === "doughnut") {
+		drawWebSheetPie(ctx, chart, area);
+	} else {
+		drawWebSheetCategoryChart(ctx, chart, area);
+	}
+}
+
+function drawWebSheetChartLegend(ctx, chart, x, y) {
+	ctx.textAlign = "left";
+	var pie = chart.type.indexOf("pie") >= 0 || chart.type === "doughnut";
+	var names = pie ? chart.categories : chart.series.map(function (s) { return s.label; });
+	for (var i = 0; i < names.length; i++) {
+		ctx.fillStyle = pie ? webSheetPointColor(chart.series[0], i) : (chart.series[i].color || "#4f81bd");
+		ctx.fillRect(x, y + i * 16 + 2, 10, 10);
+		ctx.fillStyle = "#000000";
+		ctx.fillText(names[i], x + 14, y + i * 16 + 11);
+	}
+}
+
+function webSheetPointColor(series, index) {
+	if (series && series.valueColors && series.valueColors[index]) {
+		return series.valueColors[index];
+	}
+	return (series && series.color) || "#4f81bd";
+}
+
+function drawWebSheetPie(ctx, chart, area) {
+	var series = chart.series[0];
+	if (!series) {
+		return;
+	}
+	var total = 0;
+	series.values.forEach(function (v) { total += v > 0 ? v : 0; });
+	var r = Math.min(area.w, area.h) / 2;
+	var cx = area.x + area.w / 2, cy = area.y + area.h / 2, start = -Math.PI / 2;
+	for (var i = 0; total > 0 && i < series.values.length; i++) {
+		var v = series.values[i] > 0 ? series.values[i] : 0;
+		var end = start + 2 * Math.PI * v / total;
+		ctx.beginPath();
+		ctx.moveTo(cx, cy);
+		ctx.arc(cx, cy, r, start, end);
+		ctx.closePath();
+		ctx.fillStyle = webSheetPointColor(series, i);
+		ctx.fill();
+		start = end;
+	}
+}
+
+function drawWebSheetCategoryChart(ctx, chart, area) {
+	var stacked = chart.type.indexOf("stacked") >= 0;
+	var bar = chart.type.indexOf("bar") >= 0 || chart.type.indexOf("column") >= 0;
+	var n = chart.categories.length;
+	var min = 0, max = 0;
+	for (var c = 0; c < n; c++) {
+		var pos = 0, neg = 0;
+		chart.series.forEach(function (s) {
+			var v = s.values[c] || 0;
+			if (stacked) {
+				if (v > 0) { pos += v; } else { neg += v; }
+			} else {
+				pos = Math.max(pos, v);
+				neg = Math.min(neg, v);
+			}
+		});
+		max = Math.max(max, pos);
+		min = Math.min(min, neg);
+	}
+	if (max === min) {
+		max = min + 1;
+	}
+	var y = function (v) { return area.y + area.h - (v - min) * area.h / (max - min); };
+	ctx.strokeStyle = "#000000";
+	ctx.beginPath();
+	ctx.moveTo(area.x, area.y);
+	ctx.lineTo(area.x, area.y + area.h);
+	ctx.moveTo(area.x, y(0));
+	ctx.lineTo(area.x + area.w, y(0));
+	ctx.stroke();
+	ctx.fillStyle = "#000000";
+	ctx.textAlign = "right";
+	ctx.fillText(String(max), area.x - 4, area.y + 10);
+	ctx.fillText(String(min), area.x - 4, area.y + area.h);
+	ctx.textAlign = "center";
+	var slot = area.w / Math.max(n, 1);
+	for (c = 0; c < n; c++) {
+		ctx.fillStyle = "#000000";
+		ctx.fillText(chart.categories[c], area.x + slot * (c + 0.5), area.y + area.h + 14);
+	}
+	var base = [];
+	chart.series.forEach(function (s, si) {
+		ctx.fillStyle = s.color || "#4f81bd";
+		ctx.strokeStyle = s.color || "#4f81bd";
+		ctx.lineWidth = 2;
+		ctx.beginPath();
+		for (var k = 0; k < n; k++) {
+			var v = s.values[k] || 0;
+			var b = stacked ? (base[k] || 0) : 0;
+			var x = area.x + slot * (k + 0.5);
+			if (bar) {
+				var w = stacked ? slot * 0.6 : slot * 0.8 / chart.series.length;
+				var left = stacked ? x - w / 2 : area.x + slot * (k + 0.1) + w * si;
+				ctx.fillRect(left, Math.min(y(b), y(b + v)), w, Math.abs(y(b + v) - y(b)));
+			} else if (k === 0) {
+				ctx.moveTo(x, y(b + v));
+			} else {
+				ctx.lineTo(x, y(b + v));
+			}
+			base[k] = b + v;
+		}
+		if (!bar) {
+			ctx.stroke();
+		}
+	});
+	ctx.lineWidth = 1;
+}
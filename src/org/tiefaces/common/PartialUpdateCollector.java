@@ -0,0 +1,159 @@
+/*
+ * Copyright 2017 TieFaces.
+ * Licensed under MIT
+ */
+
+package org.tiefaces.common;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.faces.context.FacesContext;
+
+import org.primefaces.context.RequestContext;
+
+/**
+ * Collect ajax update ids during a request and send them to primefaces once
+ * before render. Ids are deduplicated, and cells of a table collapse into
+ * one table update when more than the threshold changed.
+ * 
+ * @author Jason Jiang
+ *
+ */
+public final class PartialUpdateCollector {
+
+	/** attribute key in faces context. */
+	private static final String ATTRIBUTE_KEY = PartialUpdateCollector.class
+			.getName();
+
+	/** number of cell updates in a table above which table is updated. */
+	private final int tableThreshold;
+
+	/** ids not in a table. */
+	private final Set<String> updateIds = new LinkedHashSet<>();
+
+	/** cell ids of each table. key is table id. */
+	private final Map<String, Set<String>> tableUpdateIds = new LinkedHashMap<>();
+
+	/**
+	 * Instantiates a new partial update collector.
+	 *
+	 * @param ptableThreshold
+	 *            number of cell updates in a table above which the whole
+	 *            table is updated.
+	 */
+	public PartialUpdateCollector(final int ptableThreshold) {
+		this.tableThreshold = ptableThreshold;
+	}
+
+	/**
+	 * Gets the collector of current request.
+	 *
+	 * @return the collector. null if not in faces request.
+	 */
+	public static PartialUpdateCollector getCurrentInstance() {
+		FacesContext context = FacesContext.getCurrentInstance();
+		if (context == null) {
+			return null;
+		}
+		Map<Object, Object> attributes = context.getAttributes();
+		PartialUpdateCollector collector = (PartialUpdateCollector) attributes
+				.get(ATTRIBUTE_KEY);
+		if (collector == null) {
+			collector = new PartialUpdateCollector(
+					TieConstants.PARTIAL_UPDATE_TABLE_THRESHOLD);
+			attributes.put(ATTRIBUTE_KEY, collector);
+		}
+		return collector;
+	}
+
+	/**
+	 * Send the collected ids of current request to primefaces.
+	 *
+	 * @param context
+	 *            faces context.
+	 */
+	public static void flush(final FacesContext context) {
+		if (context == null) {
+			return;
+		}
+		PartialUpdateCollector collector = (PartialUpdateCollector) context
+				.getAttributes().remove(ATTRIBUTE_KEY);
+		RequestContext requestContext = RequestContext.getCurrentInstance();
+		if ((collector != null) && (requestContext != null)) {
+			List<String> ids = collector.getUpdateIds();
+			if (!ids.isEmpty()) {
+				requestContext.update(ids);
+			}
+		}
+	}
+
+	/**
+	 * Add update id.
+	 *
+	 * @param tableId
+	 *            id of table contains the component. null if not in table.
+	 * @param clientId
+	 *            client id of the component.
+	 */
+	public void add(final String tableId, final String clientId) {
+		if (tableId == null) {
+			updateIds.add(clientId);
+			return;
+		}
+		Set<String> ids = tableUpdateIds.get(tableId);
+		if (ids == null) {
+			ids = new LinkedHashSet<>();
+			tableUpdateIds.put(tableId, ids);
+		}
+		ids.add(clientId);
+	}
+
+	/**
+	 * Gets the update ids after collapse.
+	 *
+	 * @return the update ids.
+	 */
+	public List<String> getUpdateIds() {
+		List<String> result = new ArrayList<>();
+		for (String id : updateIds) {
+			if (!isCovered(id)) {
+				result.add(id);
+			}
+		}
+		for (Map.Entry<String, Set<String>> entry : tableUpdateIds
+				.entrySet()) {
+			String tableId = entry.getKey();
+			if (updateIds.contains(tableId) || isCovered(tableId)) {
+				continue;
+			}
+			if (entry.getValue().size() > tableThreshold) {
+				result.add(tableId);
+			} else {
+				result.addAll(entry.getValue());
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Check whether the component is inside another updated component.
+	 *
+	 * @param clientId
+	 *            client id of the component.
+	 * @return true if any ancestor is updated.
+	 */
+	private boolean isCovered(final String clientId) {
+		for (String id : updateIds) {
+			if (clientId.startsWith(id + ":")) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+}
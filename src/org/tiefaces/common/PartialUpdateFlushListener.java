@@ -0,0 +1,48 @@
+/*
+ * Copyright 2017 TieFaces.
+ * Licensed under MIT
+ */
+
+package org.tiefaces.common;
+
+import javax.faces.component.UIViewRoot;
+import javax.faces.context.FacesContext;
+import javax.faces.event.AbortProcessingException;
+import javax.faces.event.SystemEvent;
+import javax.faces.event.SystemEventListener;
+
+/**
+ * flush collected ajax update ids before view rendered.
+ * 
+ * @author Jason Jiang
+ *
+ */
+public class PartialUpdateFlushListener implements SystemEventListener {
+
+	/**
+	 * is listener for source.
+	 * 
+	 * @param source
+	 *            source.
+	 * @return true if view root.
+	 * 
+	 */
+	@Override
+	public final boolean isListenerForSource(final Object source) {
+		return source instanceof UIViewRoot;
+	}
+
+	/**
+	 * process event.
+	 * 
+	 * @param event
+	 *            systemevent.
+	 * @throws AbortProcessingException
+	 *             abort process exception.
+	 */
+	@Override
+	public final void processEvent(final SystemEvent event) {
+		PartialUpdateCollector.flush(FacesContext.getCurrentInstance());
+	}
+
+}
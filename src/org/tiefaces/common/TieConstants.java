@@ -221,6 +221,9 @@ public final class TieConstants {
 	/** The Constant cellMapKeyChart. */
 	public static final String CELL_MAP_KEY_CHART = "chart";
 
+	/** The Constant cellMapKeyChartJson. */
+	public static final String CELL_MAP_KEY_CHART_JSON = "chartjson";
+
 	/** The Constant cellMapKeyPicture. */
 	public static final String CELL_MAP_KEY_PICTURE = "picture";
 
@@ -303,6 +306,46 @@ public final class TieConstants {
 	/** The Constant FULL_VALIDATION. */
 	public static final String FULL_VALIDATION = "fullValidation";
 
+	/** The Constant TEMPLATE_CACHE_MAX_ENTRIES. */
+	public static final int TEMPLATE_CACHE_MAX_ENTRIES = 32;
+
+	/** The Constant TEMPLATE_CACHE_MAX_BYTES. */
+	public static final long TEMPLATE_CACHE_MAX_BYTES = 128L * 1024 * 1024;
+
+	/** The Constant STORED_BASE_CACHE_MAX_ENTRIES. */
+	public static final int STORED_BASE_CACHE_MAX_ENTRIES = 4;
+
+	/** The Constant DEFAULT_TEMPLATE_STORE_DIR. under java.io.tmpdir. */
+	public static final String DEFAULT_TEMPLATE_STORE_DIR = "tiefaces-templates";
+
+	/**
+	 * The Constant PARSED_WORKBOOK_SIZE_FACTOR. estimated heap of parsed
+	 * workbook as multiple of its xlsx size.
+	 */
+	public static final int PARSED_WORKBOOK_SIZE_FACTOR = 10;
+
+	/** The Constant PICTURE_CACHE_MAX_BYTES. */
+	public static final int PICTURE_CACHE_MAX_BYTES = 64 * 1024 * 1024;
+
+	/** The Constant SESSION_PICTURE_CACHE_MAX_BYTES. */
+	public static final long SESSION_PICTURE_CACHE_MAX_BYTES = 16L * 1024
+			* 1024;
+
+	/** The Constant SESSION_PICTURE_CACHE_KEY. key in session map. */
+	public static final String SESSION_PICTURE_CACHE_KEY = "tiefaces.sessionPictureCache";
+
+	/** The Constant PARTIAL_UPDATE_TABLE_THRESHOLD. */
+	public static final int PARTIAL_UPDATE_TABLE_THRESHOLD = 50;
+
+	/** The Constant EXPRESSION_CACHE_MAX_ENTRIES. */
+	public static final int EXPRESSION_CACHE_MAX_ENTRIES = 2000;
+
+	/** The Constant DEFAULT_MAX_MATERIALIZED_ROWS. */
+	public static final int DEFAULT_MAX_MATERIALIZED_ROWS = 240;
+
+	/** The Constant DEFAULT_BUFFER_SIZE. */
+	public static final int DEFAULT_BUFFER_SIZE = 8192;
+
 	/**
 	 * hide constructor.
 	 */
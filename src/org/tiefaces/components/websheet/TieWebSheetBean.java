@@ -5,11 +5,9 @@
 
 package org.tiefaces.components.websheet;
 
-import java.io.BufferedInputStream;
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -21,6 +19,7 @@ import java.util.logging.Logger;
 import javax.annotation.PostConstruct;
 import javax.annotation.PreDestroy;
 import javax.faces.component.UIComponent;
+import javax.faces.context.ExternalContext;
 import javax.faces.context.FacesContext;
 import javax.faces.event.AjaxBehaviorEvent;
 import javax.faces.event.ComponentSystemEvent;
@@ -42,11 +41,12 @@ import org.tiefaces.components.websheet.configuration.ExpressionEngine;
 import org.tiefaces.components.websheet.configuration.SheetConfiguration;
 import org.tiefaces.components.websheet.dataobjects.CachedCells;
 import org.tiefaces.components.websheet.dataobjects.CellAttributesMap;
-import org.tiefaces.components.websheet.dataobjects.CellFormAttributes;
 import org.tiefaces.components.websheet.dataobjects.CellMap;
 import org.tiefaces.components.websheet.dataobjects.FacesCell;
 import org.tiefaces.components.websheet.dataobjects.FacesRow;
+import org.tiefaces.components.websheet.dataobjects.LazyBodyRows;
 import org.tiefaces.components.websheet.dataobjects.HeaderCell;
+import org.tiefaces.components.websheet.dataobjects.RowMetaStore;
 import org.tiefaces.components.websheet.serializable.SerialDataContext;
 import org.tiefaces.components.websheet.serializable.SerialWorkbook;
 import org.tiefaces.components.websheet.service.CellHelper;
@@ -54,7 +54,9 @@ import org.tiefaces.components.websheet.service.PicturesHelper;
 import org.tiefaces.components.websheet.service.ValidationHandler;
 import org.tiefaces.components.websheet.service.WebSheetLoader;
 import org.tiefaces.components.websheet.utility.CellControlsUtility;
+import org.tiefaces.components.websheet.utility.CellStyleCache;
 import org.tiefaces.components.websheet.utility.CellUtility;
+import org.tiefaces.components.websheet.utility.ExportUtility;
 
 /**
  * Main class for web sheet.
@@ -71,7 +73,7 @@ public class TieWebSheetBean extends TieWebSheetView
 	/** hold instance for columns in current display sheet. */
 	private List<String> columns = new ArrayList<>();
 	/** hold instance for each body rows in current display sheet. */
-	private List<FacesRow> bodyRows;
+	private LazyBodyRows bodyRows;
 	/** hold instance for each header rows in current display sheet. */
 	private List<List<HeaderCell>> headerRows;
 	/** current workbook. */
@@ -89,13 +91,7 @@ public class TieWebSheetBean extends TieWebSheetView
 	/**
 	 * cell attributes map.
 	 */
-	private CellAttributesMap cellAttributesMap = new CellAttributesMap(
-			new HashMap<String, Map<String, String>>(),
-			new HashMap<String, String>(),
-			new HashMap<String, List<CellFormAttributes>>(),
-			new HashMap<String, Map<String, String>>(),
-			new HashMap<String, String>(),
-			new HashMap<String, List<CellFormAttributes>>());
+	private CellAttributesMap cellAttributesMap = new CellAttributesMap();
 
 	/**
 	 * chars data.
@@ -104,6 +100,9 @@ public class TieWebSheetBean extends TieWebSheetView
 
 	/** hold cached cells in current display sheet. */
 	private CachedCells cachedCells;
+
+	/** css and format metadata derived from cell styles of workbook. */
+	private transient CellStyleCache cellStyleCache;
 	/**
 	 * The max column counts across sheets of this workbook. e.g. sheet1 has 3
 	 * columns, sheet2 has 5 columns. maxColCounts = 5;
@@ -128,6 +127,9 @@ public class TieWebSheetBean extends TieWebSheetView
 	/** for download file. */
 	private transient StreamedContent exportFile;
 
+	/** charts and pictures wait for recover after deserialize. */
+	private transient boolean recoverPending;
+
 	/**
 	 * cells map for current display sheet.
 	 */
@@ -157,9 +159,9 @@ public class TieWebSheetBean extends TieWebSheetView
 	 * 
 	 * @return body rows.
 	 */
-	public List<FacesRow> getBodyRows() {
+	public LazyBodyRows getBodyRows() {
 		if (this.bodyRows == null) {
-			this.bodyRows = new ArrayList<>();
+			this.bodyRows = new LazyBodyRows(this);
 		}
 		return bodyRows;
 	}
@@ -170,7 +172,7 @@ public class TieWebSheetBean extends TieWebSheetView
 	 * @param pBodyRows
 	 *            body rows list.
 	 */
-	public void setBodyRows(final List<FacesRow> pBodyRows) {
+	public void setBodyRows(final LazyBodyRows pBodyRows) {
 		this.bodyRows = pBodyRows;
 	}
 
@@ -257,9 +259,19 @@ public class TieWebSheetBean extends TieWebSheetView
 	 * @return workbook.
 	 */
 	public Workbook getWb() {
+		ensureRecovered();
 		return this.getSerialWb().getWb();
 	}
 
+	/**
+	 * Gets the row metadata of workbook.
+	 *
+	 * @return the row meta store
+	 */
+	public RowMetaStore getRowMetaStore() {
+		return this.getSerialWb().getRowMetaStore();
+	}
+
 	/**
 	 * Set up workbook. Also create evaluation wrapper.
 	 * 
@@ -271,6 +283,20 @@ public class TieWebSheetBean extends TieWebSheetView
 
 		this.getSerialWb().setWb(pWb);
 		this.wbWrapper = XSSFEvaluationWorkbook.create((XSSFWorkbook) pWb);
+		this.cellStyleCache = null;
+	}
+
+	/**
+	 * Gets the cell style cache of current workbook.
+	 *
+	 * @return the cell style cache
+	 */
+	public CellStyleCache getCellStyleCache() {
+		if ((this.cellStyleCache == null)
+				|| (this.cellStyleCache.getWb() != this.getWb())) {
+			this.cellStyleCache = new CellStyleCache(this.getWb());
+		}
+		return this.cellStyleCache;
 	}
 
 	/**
@@ -448,6 +474,7 @@ public class TieWebSheetBean extends TieWebSheetView
 	 * @return pictures map.
 	 */
 	public Map<String, Picture> getPicturesMap() {
+		ensureRecovered();
 		if (this.picturesMap == null) {
 			this.picturesMap = new HashMap<>();
 		}
@@ -470,6 +497,7 @@ public class TieWebSheetBean extends TieWebSheetView
 	 * @return charts data
 	 */
 	public ChartsData getCharsData() {
+		ensureRecovered();
 		if (this.chartsData == null) {
 			this.chartsData = new ChartsData();
 		}
@@ -635,15 +663,16 @@ public class TieWebSheetBean extends TieWebSheetView
 		return exportFile;
 	}
 
-	/** download current workbook. */
+	/**
+	 * download current workbook. The workbook is spilled to a temp file,
+	 * which is deleted when the download stream closed.
+	 */
 	public void doExport() {
 		try {
-
+			closeExportFile();
 			String fileName = this.getExportFileName();
-			ByteArrayOutputStream out = new ByteArrayOutputStream();
-			this.getWb().write(out);
-			InputStream stream = new BufferedInputStream(
-					new ByteArrayInputStream(out.toByteArray()));
+			InputStream stream = ExportUtility.spillToTempFile(this.getWb(),
+					this.getExportDeflateLevel());
 			exportFile = new DefaultStreamedContent(stream,
 					"application/force-download", fileName);
 
@@ -654,6 +683,58 @@ public class TieWebSheetBean extends TieWebSheetView
 		return;
 	}
 
+	/**
+	 * Write current workbook straight to output stream, e.g. the servlet
+	 * response. The stream is not closed.
+	 *
+	 * @param out
+	 *            the output stream
+	 * @throws IOException
+	 *             io exception.
+	 */
+	public void exportTo(final OutputStream out) throws IOException {
+		ExportUtility.writeWorkbook(this.getWb(), out,
+				this.getExportDeflateLevel());
+	}
+
+	/**
+	 * download current workbook by writing it straight to the response.
+	 * Used as action of non ajax command instead of file download.
+	 */
+	public void doExportToResponse() {
+		FacesContext fc = FacesContext.getCurrentInstance();
+		ExternalContext ec = fc.getExternalContext();
+		try {
+			ec.responseReset();
+			ec.setResponseContentType("application/force-download");
+			ec.setResponseHeader("Content-Disposition",
+					"attachment;filename=\"" + this.getExportFileName()
+							+ "\"");
+			exportTo(ec.getResponseOutputStream());
+			ec.getResponseOutputStream().flush();
+		} catch (Exception e) {
+			LOG.log(Level.SEVERE,
+					"Error in export file : " + e.getLocalizedMessage(), e);
+		} finally {
+			fc.responseComplete();
+		}
+	}
+
+	/**
+	 * close stream of previous export file, which removes its temp file if
+	 * not downloaded.
+	 */
+	private void closeExportFile() {
+		if ((exportFile != null) && (exportFile.getStream() != null)) {
+			try {
+				exportFile.getStream().close();
+			} catch (IOException e) {
+				LOG.log(Level.FINE, "close export file failed.", e);
+			}
+		}
+		exportFile = null;
+	}
+
 	/**
 	 * Save the current workbooks.
 	 */
@@ -705,6 +786,7 @@ public class TieWebSheetBean extends TieWebSheetView
 	 */
 	@PreDestroy
 	public void finish() {
+		closeExportFile();
 		if (FacesContext.getCurrentInstance() == null) {
 			LOG.info("session has gone");
 		}
@@ -768,6 +850,27 @@ public class TieWebSheetBean extends TieWebSheetView
 		this.getHelper().getWebSheetLoader().deleteRepeatRow(rowIndex);
 	}
 
+	/**
+	 * Add several items in one round trip. e.g. paste or import lines.
+	 * 
+	 * @param rowCounts
+	 *            key is row index of the item, value is number of items to
+	 *            add after it.
+	 */
+	public void addRepeatRows(final Map<Integer, Integer> rowCounts) {
+		this.getHelper().getWebSheetLoader().addRepeatRows(rowCounts);
+	}
+
+	/**
+	 * Delete the items of several rows in one round trip.
+	 * 
+	 * @param rowIndexes
+	 *            row indexes.
+	 */
+	public void deleteRepeatRows(final List<Integer> rowIndexes) {
+		this.getHelper().getWebSheetLoader().deleteRepeatRows(rowIndexes);
+	}
+
 	/**
 	 * get cell attributes map.
 	 * 
@@ -830,7 +933,8 @@ public class TieWebSheetBean extends TieWebSheetView
 			throws IOException {
 		try {
 			in.defaultReadObject();
-			recover();
+			// workbook may be rebuilt from template, defer to first access.
+			recoverPending = true;
 		} catch (EncryptedDocumentException | ClassNotFoundException e) {
 			LOG.log(Level.SEVERE,
 					" error in readObject of serialWorkbook : "
@@ -839,6 +943,16 @@ public class TieWebSheetBean extends TieWebSheetView
 		}
 	}
 
+	/**
+	 * recover objects on first access after deserilize.
+	 */
+	private void ensureRecovered() {
+		if (recoverPending) {
+			recoverPending = false;
+			recover();
+		}
+	}
+
 	/**
 	 * recover objects after deserilize.
 	 */
@@ -13,6 +13,7 @@ import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Locale;
+import java.util.zip.Deflater;
 
 import org.primefaces.component.tabview.TabView;
 import org.tiefaces.common.TieConstants;
@@ -98,6 +99,15 @@ public class TieWebSheetView {
 	/** The export file name. */
 	private String exportFileName = "WebSheetTemplate" + "." + TieConstants.EXCEL_2007_TYPE;
 
+	/** The export deflate level. 0-9, or -1 for default. */
+	private int exportDeflateLevel = Deflater.DEFAULT_COMPRESSION;
+
+	/**
+	 * The client side charts. If true, charts are sent as json data and
+	 * drawn by browser instead of rendered as png on server.
+	 */
+	private boolean clientSideCharts = false;
+
 	/** The is advanced context. */
 	private boolean isAdvancedContext = false;
 
@@ -465,6 +475,25 @@ public class TieWebSheetView {
 		this.showLineNumber = pshowLineNumber;
 	}
 
+	/**
+	 * Checks if is client side charts.
+	 *
+	 * @return true if charts drawn by browser
+	 */
+	public boolean isClientSideCharts() {
+		return clientSideCharts;
+	}
+
+	/**
+	 * Sets the client side charts.
+	 *
+	 * @param pclientSideCharts
+	 *            true to send charts as json for browser drawing
+	 */
+	public void setClientSideCharts(final boolean pclientSideCharts) {
+		this.clientSideCharts = pclientSideCharts;
+	}
+
 	/**
 	 * Checks if is hide single sheet tab title.
 	 *
@@ -633,6 +662,31 @@ public class TieWebSheetView {
 		this.exportFileName = pExportFileName;
 	}
 
+	/**
+	 * Gets the export deflate level.
+	 *
+	 * @return the export deflate level
+	 */
+	public int getExportDeflateLevel() {
+		return this.exportDeflateLevel;
+	}
+
+	/**
+	 * Sets the export deflate level. e.g. Deflater.BEST_SPEED for large
+	 * workbooks.
+	 *
+	 * @param pExportDeflateLevel the new export deflate level, 0-9 or -1 for default
+	 * @throws IllegalArgumentException if the level is out of range
+	 */
+	public void setExportDeflateLevel(int pExportDeflateLevel) {
+		if ((pExportDeflateLevel < Deflater.DEFAULT_COMPRESSION)
+				|| (pExportDeflateLevel > Deflater.BEST_COMPRESSION)) {
+			throw new IllegalArgumentException(
+					"Invalid export deflate level: " + pExportDeflateLevel);
+		}
+		this.exportDeflateLevel = pExportDeflateLevel;
+	}
+
 	/**
 	 * Checks if is advanced context.
 	 *
@@ -5,7 +5,10 @@
 package org.tiefaces.components.websheet.chart;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -15,6 +18,7 @@ import org.openxmlformats.schemas.drawingml.x2006.chart.CTAxDataSource;
 import org.openxmlformats.schemas.drawingml.x2006.chart.CTDPt;
 import org.openxmlformats.schemas.drawingml.x2006.main.CTShapeProperties;
 import org.tiefaces.components.websheet.chart.objects.ChartObject;
+import org.tiefaces.components.websheet.dataobjects.DeletedRows;
 import org.tiefaces.components.websheet.dataobjects.ParsedCell;
 import org.tiefaces.components.websheet.dataobjects.XColor;
 import org.tiefaces.components.websheet.utility.ColorUtility;
@@ -272,6 +276,239 @@ public class ChartData {
 		return null;
 	}
 
+	/**
+	 * Move the cells read by chart after rows moved in sheet. Data points in
+	 * removed rows are dropped from categories and all series.
+	 *
+	 * @param sheetName
+	 *            the sheet name
+	 * @param startRow
+	 *            first moved row before shift
+	 * @param n
+	 *            number of rows moved. negative for move up, then rows
+	 *            between startRow + n and startRow - 1 are removed.
+	 * @return true if any cell of the chart changed.
+	 */
+	public final boolean shiftRows(final String sheetName,
+			final int startRow, final int n) {
+		if (n < 0) {
+			DeletedRows deletedRows = new DeletedRows();
+			deletedRows.add(startRow + n, startRow - 1);
+			return removeRows(sheetName, deletedRows);
+		}
+		boolean changed = shiftCells(categoryList, sheetName, startRow, n);
+		if (seriesList != null) {
+			for (ChartSeries chartSeries : seriesList) {
+				if (chartSeries != null) {
+					changed |= shiftCell(chartSeries.getSeriesLabel(),
+							sheetName, startRow, n);
+					changed |= shiftCells(chartSeries.getValueList(),
+							sheetName, startRow, n);
+				}
+			}
+		}
+		return changed;
+	}
+
+	/**
+	 * Move the cells read by chart after row ranges deleted from sheet. Data
+	 * points in deleted rows are dropped from categories and all series.
+	 *
+	 * @param sheetName
+	 *            the sheet name
+	 * @param deletedRows
+	 *            the deleted rows
+	 * @return true if any cell of the chart changed.
+	 */
+	public final boolean removeRows(final String sheetName,
+			final DeletedRows deletedRows) {
+		if (deletedRows.isEmpty()) {
+			return false;
+		}
+		boolean changed = removeDataPoints(sheetName, deletedRows);
+		changed |= moveCells(categoryList, sheetName, deletedRows);
+		if (seriesList != null) {
+			for (ChartSeries chartSeries : seriesList) {
+				if (chartSeries != null) {
+					changed |= moveCell(chartSeries.getSeriesLabel(),
+							sheetName, deletedRows);
+					changed |= moveCells(chartSeries.getValueList(),
+							sheetName, deletedRows);
+				}
+			}
+		}
+		return changed;
+	}
+
+	/**
+	 * Remove data points whose category or value is in the deleted rows.
+	 *
+	 * @param sheetName
+	 *            the sheet name
+	 * @param deletedRows
+	 *            the deleted rows
+	 * @return true if any data point removed.
+	 */
+	private boolean removeDataPoints(final String sheetName,
+			final DeletedRows deletedRows) {
+		Set<Integer> indexes = new TreeSet<>(Collections.reverseOrder());
+		addIndexesInRows(indexes, categoryList, sheetName, deletedRows);
+		if (seriesList != null) {
+			for (ChartSeries chartSeries : seriesList) {
+				if (chartSeries != null) {
+					addIndexesInRows(indexes, chartSeries.getValueList(),
+							sheetName, deletedRows);
+				}
+			}
+		}
+		for (int index : indexes) {
+			removeIndex(categoryList, index);
+			if (seriesList != null) {
+				for (ChartSeries chartSeries : seriesList) {
+					if (chartSeries != null) {
+						removeIndex(chartSeries.getValueList(), index);
+						removeIndex(chartSeries.getValueColorList(), index);
+					}
+				}
+			}
+		}
+		return !indexes.isEmpty();
+	}
+
+	/**
+	 * Add index of cells in the deleted rows.
+	 *
+	 * @param indexes
+	 *            the indexes
+	 * @param cells
+	 *            the cells
+	 * @param sheetName
+	 *            the sheet name
+	 * @param deletedRows
+	 *            the deleted rows
+	 */
+	private static void addIndexesInRows(final Set<Integer> indexes,
+			final List<ParsedCell> cells, final String sheetName,
+			final DeletedRows deletedRows) {
+		if (cells == null) {
+			return;
+		}
+		for (int index = 0; index < cells.size(); index++) {
+			ParsedCell cell = cells.get(index);
+			if ((cell != null) && sheetName.equals(cell.getSheetName())
+					&& deletedRows.isDeleted(cell.getRow())) {
+				indexes.add(index);
+			}
+		}
+	}
+
+	/**
+	 * Remove item at index if list has it.
+	 *
+	 * @param list
+	 *            the list
+	 * @param index
+	 *            the index
+	 */
+	private static void removeIndex(final List<?> list, final int index) {
+		if ((list != null) && (index < list.size())) {
+			list.remove(index);
+		}
+	}
+
+	/**
+	 * Shift cells in the sheet at or below startRow.
+	 *
+	 * @param cells
+	 *            the cells
+	 * @param sheetName
+	 *            the sheet name
+	 * @param startRow
+	 *            the start row
+	 * @param n
+	 *            number of rows moved
+	 * @return true if any cell shifted.
+	 */
+	private static boolean shiftCells(final List<ParsedCell> cells,
+			final String sheetName, final int startRow, final int n) {
+		boolean changed = false;
+		if (cells != null) {
+			for (ParsedCell cell : cells) {
+				changed |= shiftCell(cell, sheetName, startRow, n);
+			}
+		}
+		return changed;
+	}
+
+	/**
+	 * Shift cell if it's in the sheet at or below startRow.
+	 *
+	 * @param cell
+	 *            the cell
+	 * @param sheetName
+	 *            the sheet name
+	 * @param startRow
+	 *            the start row
+	 * @param n
+	 *            number of rows moved
+	 * @return true if shifted.
+	 */
+	private static boolean shiftCell(final ParsedCell cell,
+			final String sheetName, final int startRow, final int n) {
+		if ((cell != null) && sheetName.equals(cell.getSheetName())
+				&& (cell.getRow() >= startRow)) {
+			cell.setRow(cell.getRow() + n);
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Move cells in the sheet up by the rows deleted above them.
+	 *
+	 * @param cells
+	 *            the cells
+	 * @param sheetName
+	 *            the sheet name
+	 * @param deletedRows
+	 *            the deleted rows
+	 * @return true if any cell moved.
+	 */
+	private static boolean moveCells(final List<ParsedCell> cells,
+			final String sheetName, final DeletedRows deletedRows) {
+		boolean changed = false;
+		if (cells != null) {
+			for (ParsedCell cell : cells) {
+				changed |= moveCell(cell, sheetName, deletedRows);
+			}
+		}
+		return changed;
+	}
+
+	/**
+	 * Move cell up by the rows deleted above it if it's in the sheet.
+	 *
+	 * @param cell
+	 *            the cell
+	 * @param sheetName
+	 *            the sheet name
+	 * @param deletedRows
+	 *            the deleted rows
+	 * @return true if moved.
+	 */
+	private static boolean moveCell(final ParsedCell cell,
+			final String sheetName, final DeletedRows deletedRows) {
+		if ((cell != null) && sheetName.equals(cell.getSheetName())
+				&& (cell.getRow() > deletedRows.getFirstRow())) {
+			int count = deletedRows.countDeletedAbove(cell.getRow());
+			if (count > 0) {
+				cell.setRow(cell.getRow() - count);
+				return true;
+			}
+		}
+		return false;
+	}
+
 	/**
 	 * get id.
 	 * 
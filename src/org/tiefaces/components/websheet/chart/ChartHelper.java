@@ -8,8 +8,15 @@ package org.tiefaces.components.websheet.chart;
 import java.awt.BasicStroke;
 import java.awt.Color;
 import java.awt.Rectangle;
-import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -31,7 +38,9 @@ import org.tiefaces.components.websheet.utility.CellUtility;
 import org.tiefaces.components.websheet.utility.ChartUtility;
 import org.tiefaces.components.websheet.utility.ColorUtility;
 import org.tiefaces.components.websheet.utility.PicturesUtility;
+import com.google.gson.Gson;
 import org.jfree.chart.ChartFactory;
+import org.jfree.chart.ChartUtilities;
 import org.jfree.chart.JFreeChart;
 import org.jfree.data.category.DefaultCategoryDataset;
 import org.jfree.data.general.DefaultPieDataset;
@@ -63,6 +72,10 @@ public class ChartHelper {
 	private static final Logger LOG = Logger
 			.getLogger(ChartHelper.class.getName());
 
+	/** hex chars for chart key. */
+	private static final char[] HEX_CHARS = "0123456789abcdef"
+			.toCharArray();
+
 	/**
 	 * Instantiates a new chart helper.
 	 *
@@ -640,9 +653,230 @@ public class ChartHelper {
 
 	}
 
+	/**
+	 * Gets the rendered chart. The chart is rendered when first requested and
+	 * cached as png. Cached chart is returned directly unless marked dirty by
+	 * a change in cells it reads, then it is rendered again only if its data
+	 * or size really changed.
+	 *
+	 * @param chartId
+	 *            the chart id
+	 * @return the chart image. null if chart not exist or failed.
+	 */
+	public final ChartImage getChartImage(final String chartId) {
+		ChartsData chartsData = parent.getCharsData();
+		ChartData chartData = chartsData.getChartDataMap().get(chartId);
+		ClientAnchor anchor = chartsData.getChartAnchorsMap().get(chartId);
+		if ((chartData == null) || (anchor == null)) {
+			return null;
+		}
+		ChartImage image = chartsData.getChartImageMap().get(chartId);
+		boolean dirty = chartsData.getDirtyChartSet().remove(chartId);
+		if ((image != null) && !dirty) {
+			return image;
+		}
+		try {
+			XSSFSheet sheet = (XSSFSheet) parent.getWb().getSheet(
+					chartId.substring(0, chartId.lastIndexOf('!')));
+			AnchorSize anchorSize = PicturesUtility.getAnchorSize(sheet,
+					null, null, anchor);
+			String key = buildChartKey(chartData, anchorSize.getWidth(),
+					anchorSize.getHeight());
+			if ((image != null) && image.getKey().equals(key)) {
+				return image;
+			}
+			JFreeChart jchart = createChart(chartData);
+			if (jchart == null) {
+				return null;
+			}
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			ChartUtilities.writeChartAsPNG(out, jchart,
+					anchorSize.getWidth(), anchorSize.getHeight());
+			image = new ChartImage(key, out.toByteArray());
+			chartsData.getChartImageMap().put(chartId, image);
+			return image;
+		} catch (IOException | RuntimeException ex) {
+			LOG.log(Level.SEVERE, "render chart for " + chartId + " error = "
+					+ ex.getLocalizedMessage(), ex);
+			return null;
+		}
+	}
+
+	/**
+	 * Gets the chart as json for client side rendering. Contains type, title,
+	 * size, axis titles, background color, categories and series with values
+	 * and colors. Values not numeric are null.
+	 *
+	 * @param chartId
+	 *            the chart id
+	 * @return the json. null if chart not exist or failed.
+	 */
+	public final String getChartJson(final String chartId) {
+		ChartsData chartsData = parent.getCharsData();
+		ChartData chartData = chartsData.getChartDataMap().get(chartId);
+		ClientAnchor anchor = chartsData.getChartAnchorsMap().get(chartId);
+		if ((chartData == null) || (anchor == null)) {
+			return null;
+		}
+		try {
+			AnchorSize anchorSize = PicturesUtility.getAnchorSize(
+					parent.getWb().getSheet(chartId.substring(0,
+							chartId.lastIndexOf('!'))),
+					null, null, anchor);
+			Map<String, Object> json = new LinkedHashMap<>();
+			json.put("id", chartId);
+			json.put("type", chartData.getType().name().toLowerCase(Locale.ROOT));
+			json.put("title", getChartTitle(chartData));
+			json.put("width", anchorSize.getWidth());
+			json.put("height", anchorSize.getHeight());
+			if (chartData.getCatAx() != null) {
+				json.put("catAxTitle", chartData.getCatAx().getTitle());
+			}
+			if (chartData.getValAx() != null) {
+				json.put("valAxTitle", chartData.getValAx().getTitle());
+			}
+			json.put("bgColor", toHexColor(chartData.getBgColor()));
+			List<String> categories = new ArrayList<>();
+			for (ParsedCell category : chartData.getCategoryList()) {
+				categories.add(getParsedCellValue(category));
+			}
+			json.put("categories", categories);
+			List<Map<String, Object>> seriesList = new ArrayList<>();
+			for (ChartSeries chartSeries : chartData.getSeriesList()) {
+				if (chartSeries != null) {
+					seriesList.add(buildSeriesJson(chartSeries));
+				}
+			}
+			json.put("series", seriesList);
+			return new Gson().toJson(json);
+		} catch (RuntimeException ex) {
+			LOG.log(Level.SEVERE, "chart json for " + chartId + " error = "
+					+ ex.getLocalizedMessage(), ex);
+			return null;
+		}
+	}
+
+	/**
+	 * Gets the chart title. Pie chart use first series label as title same
+	 * as rendered by jfreechart.
+	 *
+	 * @param chartData
+	 *            the chart data
+	 * @return the title
+	 */
+	private String getChartTitle(final ChartData chartData) {
+		switch (chartData.getType()) {
+		case PIE:
+		case PIE3D:
+		case DOUGHNUT:
+			return getPieTitle(chartData);
+		default:
+			return chartData.getTitle();
+		}
+	}
+
+	/**
+	 * Builds the series for chart json.
+	 *
+	 * @param chartSeries
+	 *            the chart series
+	 * @return the series map
+	 */
+	private Map<String, Object> buildSeriesJson(
+			final ChartSeries chartSeries) {
+		Map<String, Object> series = new LinkedHashMap<>();
+		series.put("label", getParsedCellValue(chartSeries.getSeriesLabel()));
+		series.put("color", toHexColor(chartSeries.getSeriesColor()));
+		List<Double> values = new ArrayList<>();
+		for (ParsedCell value : chartSeries.getValueList()) {
+			try {
+				values.add(Double.parseDouble(getParsedCellValue(value)));
+			} catch (NumberFormatException ex) {
+				LOG.log(Level.FINE, "not numeric chart value", ex);
+				values.add(null);
+			}
+		}
+		series.put("values", values);
+		List<XColor> valueColorList = chartSeries.getValueColorList();
+		if ((valueColorList != null) && !valueColorList.isEmpty()) {
+			List<String> colors = new ArrayList<>();
+			for (XColor color : valueColorList) {
+				colors.add(toHexColor(color));
+			}
+			series.put("valueColors", colors);
+		}
+		return series;
+	}
+
+	/**
+	 * Convert color to html hex. e.g. #4f81bd.
+	 *
+	 * @param xcolor
+	 *            the color
+	 * @return the hex string. null if no color.
+	 */
+	private static String toHexColor(final XColor xcolor) {
+		if ((xcolor == null) || (xcolor.getXssfColor() == null)) {
+			return null;
+		}
+		Color color = ColorUtility.xssfClrToClr(xcolor.getXssfColor());
+		return String.format("#%02x%02x%02x", color.getRed(),
+				color.getGreen(), color.getBlue());
+	}
+
+	/**
+	 * Builds the key of chart content. The key is a hash of chart type,
+	 * title, size and the current values of categories and series.
+	 *
+	 * @param chartData
+	 *            the chart data
+	 * @param width
+	 *            the width
+	 * @param height
+	 *            the height
+	 * @return the key
+	 */
+	private String buildChartKey(final ChartData chartData, final int width,
+			final int height) {
+		StringBuilder content = new StringBuilder();
+		content.append(chartData.getId()).append('\n')
+				.append(chartData.getType()).append('\n')
+				.append(chartData.getTitle()).append('\n').append(width)
+				.append('x').append(height).append('\n');
+		for (ParsedCell category : chartData.getCategoryList()) {
+			content.append(getParsedCellValue(category)).append('\t');
+		}
+		for (ChartSeries chartSeries : chartData.getSeriesList()) {
+			content.append('\n');
+			if (chartSeries == null) {
+				continue;
+			}
+			content.append(getParsedCellValue(chartSeries.getSeriesLabel()))
+					.append('\t');
+			for (ParsedCell value : chartSeries.getValueList()) {
+				content.append(getParsedCellValue(value)).append('\t');
+			}
+		}
+		byte[] bytes = content.toString().getBytes(StandardCharsets.UTF_8);
+		try {
+			byte[] digest = MessageDigest.getInstance("SHA-256")
+					.digest(bytes);
+			StringBuilder sb = new StringBuilder(digest.length * 2);
+			for (byte b : digest) {
+				sb.append(HEX_CHARS[(b >> 4) & 0xF]);
+				sb.append(HEX_CHARS[b & 0xF]);
+			}
+			return sb.toString();
+		} catch (NoSuchAlgorithmException e) {
+			LOG.log(Level.FINE, "buildChartKey error = " + e.getMessage(), e);
+			return Integer.toHexString(content.toString().hashCode());
+		}
+	}
+
 	/**
 	 * initial chart map for XSSF format file. XSSF file is actually the only
-	 * format in POI support chart object.
+	 * format in POI support chart object. Only chart data is gathered here,
+	 * charts are rendered when displayed.
 	 *
 	 * @param wb
 	 *            xssf workbook.
@@ -656,9 +890,9 @@ public class ChartHelper {
 		Map<String, ClientAnchor> anchorMap = chartsData
 				.getChartAnchorsMap();
 
-		Map<String, BufferedImage> chartMap = chartsData.getChartsMap();
 		Map<String, ChartData> chartDataMap = chartsData.getChartDataMap();
-		chartMap.clear();
+		chartsData.getChartImageMap().clear();
+		chartsData.clearChartRanges();
 		chartDataMap.clear();
 
 		for (int i = 0; i < wb.getNumberOfSheets(); i++) {
@@ -670,7 +904,7 @@ public class ChartHelper {
 					generateSingleXSSFChart(chart,
 							getChartIdFromParent(chart,
 									sheet.getSheetName()),
-							sheet, anchorMap, chartMap, chartDataMap);
+							anchorMap, chartDataMap);
 				}
 			}
 		}
@@ -730,19 +964,13 @@ public class ChartHelper {
 	 *            the chart
 	 * @param chartId
 	 *            the chart id
-	 * @param sheet
-	 *            the sheet
 	 * @param anchorMap
 	 *            the anchor map
-	 * @param chartMap
-	 *            the chart map
 	 * @param chartDataMap
 	 *            the chart data map
 	 */
 	private void generateSingleXSSFChart(final XSSFChart chart,
-			final String chartId, final XSSFSheet sheet,
-			final Map<String, ClientAnchor> anchorMap,
-			final Map<String, BufferedImage> chartMap,
+			final String chartId, final Map<String, ClientAnchor> anchorMap,
 			final Map<String, ChartData> chartDataMap) {
 		ClientAnchor anchor;
 		try {
@@ -752,14 +980,7 @@ public class ChartHelper {
 						.initChartDataFromXSSFChart(chartId, chart,
 								(XSSFWorkbook) parent.getWb());
 				chartDataMap.put(chartId, chartData);
-				JFreeChart jchart = createChart(chartData);
-				if (jchart != null) {
-					AnchorSize anchorSize = PicturesUtility
-							.getAnchorSize(sheet, null, null, anchor);
-					BufferedImage img = jchart.createBufferedImage(
-							anchorSize.getWidth(), anchorSize.getHeight());
-					chartMap.put(chartId, img);
-				}
+				parent.getCharsData().addChartRanges(chartId, chartData);
 			}
 		} catch (Exception ex) {
 			LOG.log(Level.SEVERE, "generate chart for " + chartId
@@ -0,0 +1,58 @@
+/*
+ * Copyright 2017 TieFaces.
+ * Licensed under MIT
+ */
+package org.tiefaces.components.websheet.chart;
+
+import java.io.Serializable;
+
+/**
+ * Rendered chart. Holds png encoded image with the key of content it was
+ * rendered from. The key is used as etag.
+ * 
+ * @author Jason Jiang
+ *
+ */
+public class ChartImage implements Serializable {
+
+	/** serial id. */
+	private static final long serialVersionUID = 1L;
+
+	/** hash of chart data and size. */
+	private final String key;
+
+	/** png bytes. */
+	private final byte[] png;
+
+	/**
+	 * Instantiates a new chart image.
+	 *
+	 * @param pkey
+	 *            hash of chart data and size.
+	 * @param ppng
+	 *            png bytes.
+	 */
+	public ChartImage(final String pkey, final byte[] ppng) {
+		this.key = pkey;
+		this.png = ppng;
+	}
+
+	/**
+	 * Gets the key.
+	 *
+	 * @return the key
+	 */
+	public final String getKey() {
+		return key;
+	}
+
+	/**
+	 * Gets the png bytes.
+	 *
+	 * @return the png
+	 */
+	public final byte[] getPng() {
+		return png;
+	}
+
+}
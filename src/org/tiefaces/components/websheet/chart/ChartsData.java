@@ -4,11 +4,18 @@
  */
 package org.tiefaces.components.websheet.chart;
 
-import java.awt.image.BufferedImage;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
+import org.apache.poi.ss.usermodel.Cell;
 import org.apache.poi.ss.usermodel.ClientAnchor;
+import org.apache.poi.ss.util.CellRangeAddress;
+import org.tiefaces.components.websheet.dataobjects.DeletedRows;
+import org.tiefaces.components.websheet.dataobjects.ParsedCell;
 
 /**
  * Collection class for charts data.
@@ -20,10 +27,10 @@ public class ChartsData  {
 	/** hold chart data for current display sheet. */
 	private Map<String, ChartData> chartDataMap;
 	/**
-	 * hold charts for current display sheet. each chart is a image generated by
-	 * jfreechart.
+	 * hold rendered charts. each chart is rendered by jfreechart when first
+	 * displayed, and kept as png until its data or size changed.
 	 */
-	private Map<String, BufferedImage> chartsMap;
+	private Map<String, ChartImage> chartImageMap;
 	/** hold chart anchor for each chart in current display sheet. */
 	private Map<String, ClientAnchor> chartAnchorsMap;
 	/**
@@ -31,7 +38,38 @@ public class ChartsData  {
 	 * position. e.g. key = Sheet1!A1 value = chartId of chartAnchorsMap.
 	 */
 	private Map<String, String> chartPositionMap;
+	/**
+	 * cell ranges read by each chart. key is chart id. used to find charts
+	 * affected by cell changes.
+	 */
+	private Map<String, List<ChartRange>> chartRangesMap;
+	/** charts whose data may changed since last rendered. */
+	private Set<String> dirtyChartSet;
+
+	/**
+	 * Cell range in a sheet.
+	 */
+	private static final class ChartRange {
+
+		/** sheet name. */
+		private final String sheetName;
 
+		/** the range. */
+		private final CellRangeAddress range;
+
+		/**
+		 * Instantiates a new chart range.
+		 *
+		 * @param psheetName
+		 *            sheet name.
+		 * @param prange
+		 *            the range.
+		 */
+		ChartRange(final String psheetName, final CellRangeAddress prange) {
+			this.sheetName = psheetName;
+			this.range = prange;
+		}
+	}
 
 	/**
 	 * return chartdatamap.
@@ -46,17 +84,17 @@ public class ChartsData  {
 	}
 
 	/**
-	 * return chartsmap.
+	 * return chart image map.
 	 * 
-	 * @return chartsmap.
+	 * @return chart image map.
 	 */
 
-	public final Map<String, BufferedImage> getChartsMap() {
-		if (this.chartsMap == null) {
-			this.chartsMap = new HashMap<>();
+	public final Map<String, ChartImage> getChartImageMap() {
+		if (this.chartImageMap == null) {
+			this.chartImageMap = new HashMap<>();
 		}		
 		
-		return chartsMap;
+		return chartImageMap;
 	}
 
 	/**
@@ -86,6 +124,169 @@ public class ChartsData  {
 		return chartPositionMap;
 	}
 
+	/**
+	 * return chart ranges map.
+	 * 
+	 * @return chart ranges map.
+	 */
+	private Map<String, List<ChartRange>> getChartRangesMap() {
+		if (this.chartRangesMap == null) {
+			this.chartRangesMap = new HashMap<>();
+		}
+		return chartRangesMap;
+	}
+
+	/**
+	 * return dirty chart set.
+	 * 
+	 * @return chart ids whose data may changed since rendered.
+	 */
+	public final Set<String> getDirtyChartSet() {
+		if (this.dirtyChartSet == null) {
+			this.dirtyChartSet = new HashSet<>();
+		}
+		return dirtyChartSet;
+	}
+
+	/**
+	 * register the cell ranges read by chart. i.e. categories, series labels
+	 * and series values.
+	 * 
+	 * @param chartId
+	 *            chart id.
+	 * @param chartData
+	 *            chart data.
+	 */
+	public final void addChartRanges(final String chartId,
+			final ChartData chartData) {
+		List<ChartRange> ranges = new ArrayList<>();
+		addRanges(ranges, chartData.getCategoryList());
+		for (ChartSeries chartSeries : chartData.getSeriesList()) {
+			if (chartSeries != null) {
+				List<ParsedCell> labels = new ArrayList<>();
+				labels.add(chartSeries.getSeriesLabel());
+				addRanges(ranges, labels);
+				addRanges(ranges, chartSeries.getValueList());
+			}
+		}
+		getChartRangesMap().put(chartId, ranges);
+	}
+
+	/**
+	 * add bounding range of cells in each sheet to ranges.
+	 * 
+	 * @param ranges
+	 *            ranges.
+	 * @param cells
+	 *            cells.
+	 */
+	private static void addRanges(final List<ChartRange> ranges,
+			final List<ParsedCell> cells) {
+		if (cells == null) {
+			return;
+		}
+		Map<String, CellRangeAddress> bounds = new HashMap<>();
+		for (ParsedCell cell : cells) {
+			if (cell == null) {
+				continue;
+			}
+			CellRangeAddress bound = bounds.get(cell.getSheetName());
+			if (bound == null) {
+				bounds.put(cell.getSheetName(),
+						new CellRangeAddress(cell.getRow(), cell.getRow(),
+								cell.getCol(), cell.getCol()));
+			} else {
+				bound.setFirstRow(Math.min(bound.getFirstRow(), cell.getRow()));
+				bound.setLastRow(Math.max(bound.getLastRow(), cell.getRow()));
+				bound.setFirstColumn(
+						Math.min(bound.getFirstColumn(), cell.getCol()));
+				bound.setLastColumn(
+						Math.max(bound.getLastColumn(), cell.getCol()));
+			}
+		}
+		for (Map.Entry<String, CellRangeAddress> entry : bounds.entrySet()) {
+			ranges.add(new ChartRange(entry.getKey(), entry.getValue()));
+		}
+	}
+
+	/**
+	 * mark charts reading the cell as dirty.
+	 * 
+	 * @param cell
+	 *            changed cell.
+	 */
+	public final void markCellChanged(final Cell cell) {
+		String sheetName = cell.getSheet().getSheetName();
+		for (Map.Entry<String, List<ChartRange>> entry : getChartRangesMap()
+				.entrySet()) {
+			for (ChartRange chartRange : entry.getValue()) {
+				if (sheetName.equals(chartRange.sheetName)
+						&& chartRange.range.isInRange(cell.getRowIndex(),
+								cell.getColumnIndex())) {
+					getDirtyChartSet().add(entry.getKey());
+					break;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Move cells and ranges read by charts after rows moved in sheet. Charts
+	 * changed are registered again and marked dirty.
+	 *
+	 * @param sheetName
+	 *            the sheet name
+	 * @param startRow
+	 *            first moved row before shift
+	 * @param n
+	 *            number of rows moved. negative for move up.
+	 */
+	public final void shiftChartRows(final String sheetName,
+			final int startRow, final int n) {
+		for (Map.Entry<String, ChartData> entry : getChartDataMap()
+				.entrySet()) {
+			if (entry.getValue().shiftRows(sheetName, startRow, n)) {
+				addChartRanges(entry.getKey(), entry.getValue());
+				getDirtyChartSet().add(entry.getKey());
+			}
+		}
+	}
+
+	/**
+	 * Move cells and ranges read by charts after row ranges deleted from
+	 * sheet. Charts changed are registered again and marked dirty.
+	 *
+	 * @param sheetName
+	 *            the sheet name
+	 * @param deletedRows
+	 *            the deleted rows
+	 */
+	public final void removeChartRows(final String sheetName,
+			final DeletedRows deletedRows) {
+		for (Map.Entry<String, ChartData> entry : getChartDataMap()
+				.entrySet()) {
+			if (entry.getValue().removeRows(sheetName, deletedRows)) {
+				addChartRanges(entry.getKey(), entry.getValue());
+				getDirtyChartSet().add(entry.getKey());
+			}
+		}
+	}
+
+	/**
+	 * clear registered chart ranges and dirty marks.
+	 */
+	public final void clearChartRanges() {
+		getChartRangesMap().clear();
+		getDirtyChartSet().clear();
+	}
+
+	/**
+	 * mark all rendered charts as dirty. e.g. after whole workbook recalc.
+	 */
+	public final void markAllChartsDirty() {
+		getDirtyChartSet().addAll(getChartImageMap().keySet());
+	}
+
 	/**
 	 * set chartdatamap.
 	 * 
@@ -122,4 +323,4 @@ public class ChartsData  {
 		this.chartPositionMap = pchartPositionMap;
 	}
 
-}
\ No newline at end of file
+}
\ No newline at end of file
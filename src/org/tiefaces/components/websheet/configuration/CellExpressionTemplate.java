@@ -0,0 +1,147 @@
+/*
+ * Copyright 2017 TieFaces.
+ * Licensed under MIT
+ */
+
+package org.tiefaces.components.websheet.configuration;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+
+import org.apache.commons.jexl2.Expression;
+import org.tiefaces.common.TieConstants;
+
+/**
+ * Compiled cell text. Split into literal parts and pre-parsed expressions of
+ * ${...} notation, so evaluating a template cell for each collection item do
+ * no regex or parsing work.
+ *
+ * Text without expression is constant. Text of a single expression evaluate
+ * to the object itself, otherwise to the joined string.
+ *
+ * Templates are immutable. Configuration build keeps them per cell text in
+ * ConfigBuildRef; the parsed expressions themselves come from the application
+ * scope ExpressionCache, so compiling the same text again only splits it.
+ *
+ * @author Jason Jiang
+ *
+ */
+public final class CellExpressionTemplate {
+
+	/** source text. */
+	private final String source;
+
+	/** literal parts. one more than expressions. */
+	private final String[] literals;
+
+	/** expressions between literal parts. */
+	private final Expression[] expressions;
+
+	/**
+	 * Instantiates a new cell expression template.
+	 *
+	 * @param psource
+	 *            the source
+	 * @param pliterals
+	 *            the literals
+	 * @param pexpressions
+	 *            the expressions
+	 */
+	private CellExpressionTemplate(final String psource,
+			final String[] pliterals, final Expression[] pexpressions) {
+		this.source = psource;
+		this.literals = pliterals;
+		this.expressions = pexpressions;
+	}
+
+	/**
+	 * Compile the text.
+	 *
+	 * @param strValue
+	 *            the text
+	 * @param engine
+	 *            the engine
+	 * @return the cell expression template
+	 */
+	public static CellExpressionTemplate compile(final String strValue,
+			final ExpressionEngine engine) {
+		int beginExpressionLength = TieConstants.METHOD_PREFIX.length();
+		int endExpressionLength = TieConstants.METHOD_END.length();
+		List<String> literalList = new ArrayList<>();
+		List<Expression> expressionList = new ArrayList<>();
+		Matcher exprMatcher = TieConstants.EXPRESSION_NOTATION_PATTERN
+				.matcher(strValue);
+		int lastEnd = 0;
+		while (exprMatcher.find()) {
+			literalList.add(strValue.substring(lastEnd, exprMatcher.start()));
+			String matchedString = exprMatcher.group();
+			expressionList.add(engine.createExpression(
+					matchedString.substring(beginExpressionLength,
+							matchedString.length() - endExpressionLength)));
+			lastEnd = exprMatcher.end();
+		}
+		literalList.add(strValue.substring(lastEnd));
+		return new CellExpressionTemplate(strValue,
+				literalList.toArray(new String[literalList.size()]),
+				expressionList.toArray(new Expression[expressionList.size()]));
+	}
+
+	/**
+	 * Evaluate with the context.
+	 *
+	 * @param context
+	 *            the context
+	 * @param engine
+	 *            the engine
+	 * @return string, or the evaluated object if text is a single expression.
+	 */
+	public Object evaluate(final Map<String, Object> context,
+			final ExpressionEngine engine) {
+		if (expressions.length == 0) {
+			return source;
+		}
+		if (isSingleExpression()) {
+			return engine.evaluate(expressions[0], context);
+		}
+		StringBuilder sb = new StringBuilder(literals[0]);
+		for (int i = 0; i < expressions.length; i++) {
+			Object result = engine.evaluate(expressions[i], context);
+			if (result != null) {
+				sb.append(result.toString());
+			}
+			sb.append(literals[i + 1]);
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Checks if is constant. i.e. no expression.
+	 *
+	 * @return true, if is constant
+	 */
+	public boolean isConstant() {
+		return expressions.length == 0;
+	}
+
+	/**
+	 * Checks if the text is a single expression without literal part.
+	 *
+	 * @return true, if is single expression
+	 */
+	public boolean isSingleExpression() {
+		return (expressions.length == 1) && literals[0].isEmpty()
+				&& literals[1].isEmpty();
+	}
+
+	/**
+	 * Gets the source text.
+	 *
+	 * @return the source
+	 */
+	public String getSource() {
+		return source;
+	}
+
+}
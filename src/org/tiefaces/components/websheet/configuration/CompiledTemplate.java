@@ -0,0 +1,280 @@
+/*
+ * Copyright 2017 TieFaces.
+ * Licensed under MIT
+ */
+package org.tiefaces.components.websheet.configuration;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.poi.openxml4j.exceptions.InvalidFormatException;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.ss.usermodel.WorkbookFactory;
+import org.tiefaces.common.TieConstants;
+import org.tiefaces.components.websheet.dataobjects.CellAttributesMap;
+import org.tiefaces.components.websheet.dataobjects.RowMetaStore;
+
+/**
+ * Immutable result of the configuration build for one template.
+ *
+ * Holds the configured workbook (comments removed, copy sheets created)
+ * together with the parsed sheet configurations, the comment derived cell
+ * attributes and the row metadata.
+ *
+ * Cell attributes are never changed after configuration, so they are kept
+ * parsed and shared by all sessions. Sheet configurations and row metadata
+ * are changed by each session, and the workbook too, so these are kept in
+ * serialized form and every session gets its own private copy. Poi has no
+ * other way to copy a workbook than write and read it again.
+ *
+ * @author Jason Jiang
+ *
+ */
+public final class CompiledTemplate {
+
+	/** digest key of the template. */
+	private final String key;
+
+	/** configured workbook saved as xlsx. */
+	private final byte[] workbookBytes;
+
+	/** serialized sheet configuration map and row meta store. */
+	private final byte[] configBytes;
+
+	/** parsed cell attributes. read only, shared by sessions. */
+	private final CellAttributesMap cellAttributes;
+
+	/** size in bytes of serialized cell attributes. */
+	private final int cellAttributesSize;
+
+	/** parsed workbook shared as base of session deltas. created lazily. */
+	private Workbook baseWorkbook;
+
+	/** whether the workbook is saved in the template store. */
+	private volatile boolean stored;
+
+	/**
+	 * Instantiates a new compiled template.
+	 *
+	 * @param pkey
+	 *            the key
+	 * @param pworkbookBytes
+	 *            the workbook bytes
+	 * @param pconfigBytes
+	 *            the config bytes
+	 * @param pcellAttributes
+	 *            the cell attributes
+	 * @param pcellAttributesSize
+	 *            the serialized size of cell attributes
+	 */
+	private CompiledTemplate(final String pkey, final byte[] pworkbookBytes,
+			final byte[] pconfigBytes, final CellAttributesMap pcellAttributes,
+			final int pcellAttributesSize) {
+		this.key = pkey;
+		this.workbookBytes = pworkbookBytes;
+		this.configBytes = pconfigBytes;
+		this.cellAttributes = pcellAttributes;
+		this.cellAttributesSize = pcellAttributesSize;
+	}
+
+	/**
+	 * Compile a template from the workbook just finished configuration.
+	 * Must be called before any data is bound to the workbook.
+	 *
+	 * @param pkey
+	 *            the key
+	 * @param wb
+	 *            the configured workbook
+	 * @param sheetConfigMap
+	 *            the sheet config map
+	 * @param cellAttributesMap
+	 *            the cell attributes map
+	 * @param rowMetaStore
+	 *            the row meta store
+	 * @return the compiled template
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 * @throws ClassNotFoundException
+	 *             the class not found exception
+	 */
+	public static CompiledTemplate compile(final String pkey,
+			final Workbook wb,
+			final Map<String, SheetConfiguration> sheetConfigMap,
+			final CellAttributesMap cellAttributesMap,
+			final RowMetaStore rowMetaStore)
+			throws IOException, ClassNotFoundException {
+
+		ByteArrayOutputStream wbOut = new ByteArrayOutputStream();
+		wb.write(wbOut);
+
+		ByteArrayOutputStream configOut = new ByteArrayOutputStream();
+		try (ObjectOutputStream out = new ObjectOutputStream(configOut)) {
+			out.writeObject(new LinkedHashMap<>(sheetConfigMap));
+			out.writeObject(rowMetaStore);
+		}
+
+		// copy attributes once, the session keeps changing its own map.
+		ByteArrayOutputStream attrsOut = new ByteArrayOutputStream();
+		try (ObjectOutputStream out = new ObjectOutputStream(attrsOut)) {
+			out.writeObject(cellAttributesMap);
+		}
+		CellAttributesMap attrs;
+		try (ObjectInputStream in = new ObjectInputStream(
+				new ByteArrayInputStream(attrsOut.toByteArray()))) {
+			attrs = (CellAttributesMap) in.readObject();
+		}
+		return new CompiledTemplate(pkey, wbOut.toByteArray(),
+				configOut.toByteArray(), attrs, attrsOut.size());
+	}
+
+	/**
+	 * Gets the key.
+	 *
+	 * @return the key
+	 */
+	public String getKey() {
+		return key;
+	}
+
+	/**
+	 * Create a new workbook instance of the configured template.
+	 *
+	 * @return the workbook
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 * @throws InvalidFormatException
+	 *             the invalid format exception
+	 */
+	public Workbook createWorkbook()
+			throws IOException, InvalidFormatException {
+		return WorkbookFactory.create(new ByteArrayInputStream(workbookBytes));
+	}
+
+	/**
+	 * Gets the workbook of the configured template, parsed once and shared
+	 * by all sessions as base of their workbook delta. Must not be changed,
+	 * callers should synchronize on it while reading.
+	 *
+	 * @return the base workbook
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 * @throws InvalidFormatException
+	 *             the invalid format exception
+	 */
+	public synchronized Workbook getBaseWorkbook()
+			throws IOException, InvalidFormatException {
+		if (baseWorkbook == null) {
+			baseWorkbook = createWorkbook();
+		}
+		return baseWorkbook;
+	}
+
+	/**
+	 * Release the parsed base workbook. Called when the template is evicted
+	 * from cache, so the workbook is not held beyond the cache bound.
+	 */
+	synchronized void releaseBaseWorkbook() {
+		baseWorkbook = null;
+	}
+
+	/**
+	 * Gets the configured workbook saved as xlsx.
+	 *
+	 * @return the workbook bytes
+	 */
+	byte[] getWorkbookBytes() {
+		return workbookBytes;
+	}
+
+	/**
+	 * Checks if the workbook is saved in the template store.
+	 *
+	 * @return true, if stored
+	 */
+	public boolean isStored() {
+		return stored;
+	}
+
+	/**
+	 * Sets whether the workbook is saved in the template store.
+	 *
+	 * @param pstored
+	 *            the stored flag
+	 */
+	void setStored(final boolean pstored) {
+		this.stored = pstored;
+	}
+
+	/**
+	 * Restore sheet configurations for a workbook created by
+	 * createWorkbook(). Cell attributes and row metadata are copied into the
+	 * targets. Cell attributes are shared, not copied deeply.
+	 *
+	 * @param wb
+	 *            the workbook
+	 * @param targetAttributesMap
+	 *            the target attributes map
+	 * @param targetRowMetaStore
+	 *            the target row meta store
+	 * @return the sheet config map
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 * @throws ClassNotFoundException
+	 *             the class not found exception
+	 */
+	@SuppressWarnings("unchecked")
+	public Map<String, SheetConfiguration> restoreConfiguration(
+			final Workbook wb, final CellAttributesMap targetAttributesMap,
+			final RowMetaStore targetRowMetaStore)
+			throws IOException, ClassNotFoundException {
+
+		Map<String, SheetConfiguration> sheetConfigMap;
+		RowMetaStore rowMetas;
+		try (ObjectInputStream in = new ObjectInputStream(
+				new ByteArrayInputStream(configBytes))) {
+			sheetConfigMap = (Map<String, SheetConfiguration>) in
+					.readObject();
+			rowMetas = (RowMetaStore) in.readObject();
+		}
+		for (SheetConfiguration sheetConfig : sheetConfigMap.values()) {
+			sheetConfig.recover(wb);
+		}
+		copyAttributes(cellAttributes, targetAttributesMap);
+		rowMetas.recover(wb);
+		targetRowMetaStore.putAll(rowMetas);
+		return sheetConfigMap;
+	}
+
+	/**
+	 * Copy cell attributes.
+	 *
+	 * @param source
+	 *            the source
+	 * @param target
+	 *            the target
+	 */
+	private static void copyAttributes(final CellAttributesMap source,
+			final CellAttributesMap target) {
+		target.getCellValidateAttributes().clear();
+		target.putAll(source);
+	}
+
+	/**
+	 * Gets the estimated size in bytes hold by this template. The parsed
+	 * base workbook may be created at any time, so it is always counted as
+	 * a multiple of the xlsx size.
+	 *
+	 * @return the size
+	 */
+	public long getSize() {
+		return (long) workbookBytes.length
+				* (1 + TieConstants.PARSED_WORKBOOK_SIZE_FACTOR)
+				+ configBytes.length + cellAttributesSize;
+	}
+
+}
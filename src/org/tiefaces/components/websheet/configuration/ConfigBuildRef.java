@@ -7,13 +7,15 @@ package org.tiefaces.components.websheet.configuration;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.NavigableMap;
-import java.util.TreeMap;
 
+import org.apache.poi.ss.formula.FormulaParser;
+import org.apache.poi.ss.formula.FormulaType;
+import org.apache.poi.ss.formula.ptg.Ptg;
 import org.apache.poi.ss.usermodel.Cell;
 import org.apache.poi.ss.usermodel.Sheet;
 import org.apache.poi.xssf.usermodel.XSSFEvaluationWorkbook;
 import org.tiefaces.components.websheet.dataobjects.CellAttributesMap;
+import org.tiefaces.components.websheet.dataobjects.RowMetaStore;
 import org.tiefaces.components.websheet.service.CellHelper;
 
 /**
@@ -38,6 +40,8 @@ public class ConfigBuildRef {
 	private CellAttributesMap cellAttributesMap;
 	/** final comment map. */
 	private Map<Cell, String> finalCommentMap;
+	/** row metadata. */
+	private RowMetaStore rowMetaStore;
 	/** body allow add. */
 	private boolean bodyAllowAdd = false;
 	/** true if in addMOde. */
@@ -49,7 +53,7 @@ public class ConfigBuildRef {
 	 * Saved configRange attributes for each full name. String : full name.
 	 * ConfigRangeAttrs : include range (top, bottom) and rows mapping.
 	 */
-	private NavigableMap<String, ConfigRangeAttrs> shiftMap;
+	private ShiftMapIndex shiftMap;
 
 	/**
 	 * Saved formula cells. include original formula and rows mapping for this
@@ -74,6 +78,20 @@ public class ConfigBuildRef {
 	 */
 	private Map<String, String> collectionObjNameMap = new HashMap<>();
 
+	/**
+	 * compiled template cell text. key (String) - cell text. value - compiled
+	 * template. Each template cell is compiled once and reused for every
+	 * collection item.
+	 */
+	private Map<String, CellExpressionTemplate> expressionTemplateMap = new HashMap<>();
+
+	/**
+	 * parsed formula tokens. key (String) - formula of template cell. value -
+	 * tokens. Each formula is parsed once and shifted for every collection
+	 * item. The tokens are shared, so must not be modified.
+	 */
+	private Map<String, Ptg[]> formulaPtgMap = new HashMap<>();
+
 	/**
 	 * constructor.
 	 * 
@@ -91,13 +109,16 @@ public class ConfigBuildRef {
 	 *            cell attributes map.
 	 * @param pFinalCommentMap
 	 *            final comment map.
+	 * @param pRowMetaStore
+	 *            row meta store.
 	 */
 	public ConfigBuildRef(final XSSFEvaluationWorkbook pWbWrapper,
 			final Sheet pSheet, final ExpressionEngine pEngine,
 			final CellHelper pCellHelper,
 			final Map<Cell, String> pCachedCells,
 			final CellAttributesMap pCellAttributesMap,
-			final Map<Cell, String> pFinalCommentMap) {
+			final Map<Cell, String> pFinalCommentMap,
+			final RowMetaStore pRowMetaStore) {
 		super();
 		this.wbWrapper = pWbWrapper;
 		this.sheet = pSheet;
@@ -106,7 +127,26 @@ public class ConfigBuildRef {
 		this.cachedCells = pCachedCells;
 		this.cellAttributesMap = pCellAttributesMap;
 		this.finalCommentMap = pFinalCommentMap;
-		this.shiftMap = new TreeMap<>();
+		this.rowMetaStore = pRowMetaStore;
+		this.shiftMap = new ShiftMapIndex();
+	}
+
+	/**
+	 * Gets the compiled expression template of cell text.
+	 *
+	 * @param strValue
+	 *            the cell text
+	 * @return the expression template
+	 */
+	public final CellExpressionTemplate getExpressionTemplate(
+			final String strValue) {
+		CellExpressionTemplate template = expressionTemplateMap
+				.get(strValue);
+		if (template == null) {
+			template = CellExpressionTemplate.compile(strValue, engine);
+			expressionTemplateMap.put(strValue, template);
+		}
+		return template;
 	}
 
 	/**
@@ -174,7 +214,24 @@ public class ConfigBuildRef {
 	}
 
 	/**
-	 * Put shift attrs.
+	 * Gets the parsed tokens of formula in the sheet.
+	 *
+	 * @param formula
+	 *            the formula
+	 * @return the tokens. shared, must not be modified.
+	 */
+	public final Ptg[] getFormulaPtgs(final String formula) {
+		Ptg[] ptgs = formulaPtgMap.get(formula);
+		if (ptgs == null) {
+			ptgs = FormulaParser.parse(formula, wbWrapper, FormulaType.CELL,
+					sheet.getWorkbook().getSheetIndex(sheet));
+			formulaPtgMap.put(formula, ptgs);
+		}
+		return ptgs;
+	}
+
+	/**
+	 * Put shift attrs. Attrs of existing full name are replaced.
 	 *
 	 * @param fullName
 	 *            the full name
@@ -190,12 +247,29 @@ public class ConfigBuildRef {
 		this.shiftMap.put(fullName, attrs);
 	}
 
+	/**
+	 * Insert shift attrs. Items from the index of full name are shifted.
+	 *
+	 * @param fullName
+	 *            the full name
+	 * @param attrs
+	 *            the attrs
+	 * @param unitRowsMapping
+	 *            the unit rows mapping
+	 */
+	public final void insertShiftAttrs(final String fullName,
+			final ConfigRangeAttrs attrs,
+			final RowsMapping unitRowsMapping) {
+		attrs.setUnitRowsMapping(unitRowsMapping);
+		this.shiftMap.insert(fullName, attrs);
+	}
+
 	/**
 	 * Gets the shift map.
 	 *
 	 * @return the shift map
 	 */
-	public final NavigableMap<String, ConfigRangeAttrs> getShiftMap() {
+	public final ShiftMapIndex getShiftMap() {
 		return shiftMap;
 	}
 
@@ -205,8 +279,7 @@ public class ConfigBuildRef {
 	 * @param pshiftMap
 	 *            the shift map
 	 */
-	public final void setShiftMap(
-			final NavigableMap<String, ConfigRangeAttrs> pshiftMap) {
+	public final void setShiftMap(final ShiftMapIndex pshiftMap) {
 		this.shiftMap = pshiftMap;
 	}
 
@@ -345,4 +418,13 @@ public class ConfigBuildRef {
 		return finalCommentMap;
 	}
 
+	/**
+	 * Gets the row meta store.
+	 *
+	 * @return the row meta store
+	 */
+	public final RowMetaStore getRowMetaStore() {
+		return rowMetaStore;
+	}
+
 }
@@ -380,9 +380,11 @@ public class ConfigRange implements Serializable {
 		int lastRowPlus = this.getLastRowPlusRef().getRowIndex();
 		ShiftFormulaRef shiftFormulaRef = new ShiftFormulaRef(
 				configBuildRef.getWatchList(), allRowsMappingList);
+		ShiftMapIndex.Node shiftNode = configBuildRef.getShiftMap()
+				.getNode(fullName);
 		for (int i = atRow; i < lastRowPlus; i++) {
 			buildCellsForRow(configBuildRef.getSheet().getRow(i), fullName,
-					context, configBuildRef, shiftFormulaRef);
+					shiftNode, context, configBuildRef, shiftFormulaRef);
 		}
 	}
 
@@ -393,6 +395,8 @@ public class ConfigRange implements Serializable {
 	 *            the row
 	 * @param fullName
 	 *            the full name
+	 * @param shiftNode
+	 *            the shift map node of full name
 	 * @param context
 	 *            the context
 	 * @param configBuildRef
@@ -401,6 +405,7 @@ public class ConfigRange implements Serializable {
 	 *            the shift formula ref
 	 */
 	private void buildCellsForRow(final Row row, final String fullName,
+			final ShiftMapIndex.Node shiftNode,
 			final Map<String, Object> context,
 			final ConfigBuildRef configBuildRef,
 			ShiftFormulaRef shiftFormulaRef) {
@@ -411,7 +416,11 @@ public class ConfigRange implements Serializable {
 		for (Cell cell : row) {
 			buildSingleCell(cell, context, configBuildRef, shiftFormulaRef);
 		}
-		ConfigurationUtility.setFullNameInHiddenColumn(row, fullName);
+		if (shiftNode != null) {
+			configBuildRef.getRowMetaStore().setShiftNode(row, shiftNode);
+		} else {
+			configBuildRef.getRowMetaStore().setFullName(row, fullName);
+		}
 	}
 
 	/**
@@ -431,16 +440,14 @@ public class ConfigRange implements Serializable {
 			final ConfigBuildRef configBuildRef,
 			final ShiftFormulaRef shiftFormulaRef) {
 		try {
-			CommandUtility.evaluate(context, cell,
-					configBuildRef.getEngine());
+			CommandUtility.evaluate(context, cell, configBuildRef);
 			if (cell.getCellTypeEnum() == CellType.FORMULA) {
 				// rebuild formula if necessary for dynamic row
 				String originFormula = cell.getCellFormula();
 				shiftFormulaRef.setFormulaChanged(0);
 				ConfigurationUtility.buildCellFormulaForShiftedRows(
-						configBuildRef.getSheet(),
-						configBuildRef.getWbWrapper(), shiftFormulaRef,
-						cell, cell.getCellFormula());
+						configBuildRef, shiftFormulaRef, cell,
+						originFormula);
 				if (shiftFormulaRef.getFormulaChanged() > 0) {
 					configBuildRef.getCachedCells().put(cell,
 							originFormula);
@@ -33,7 +33,6 @@ import org.tiefaces.components.websheet.dataobjects.CellAttributesMap;
 import org.tiefaces.components.websheet.dataobjects.CellFormAttributes;
 import org.tiefaces.components.websheet.dataobjects.CellRange;
 import org.tiefaces.components.websheet.utility.CellUtility;
-import org.tiefaces.components.websheet.utility.ConfigurationUtility;
 import org.tiefaces.components.websheet.utility.ParserUtility;
 import org.tiefaces.components.websheet.utility.SaveAttrsUtility;
 import org.tiefaces.components.websheet.utility.WebSheetUtility;
@@ -311,6 +310,7 @@ public class ConfigurationHandler {
 					return;
 				}
 			}
+			parent.getRowMetaStore().remove(lastrow);
 			sheet.removeRow(lastrow);
 		}
 
@@ -344,8 +344,7 @@ public class ConfigurationHandler {
 					row = sheet.createRow(index);
 				}
 				if (hasEachCommand) {
-					ConfigurationUtility
-							.setOriginalRowNumInHiddenColumn(row, index);
+					parent.getRowMetaStore().setOriginRowNum(row, index);
 				}
 
 			}
@@ -468,7 +467,8 @@ public class ConfigurationHandler {
 		if (parent.isSkipConfiguration()) {
 			return;
 		}
-		SaveAttrsUtility.setSaveAttrsForSheet(sheet, minRowNum, maxRowNum);
+		SaveAttrsUtility.setSaveAttrsForSheet(sheet, minRowNum, maxRowNum,
+				parent.getRowMetaStore());
 
 	}
 
@@ -622,6 +622,7 @@ public class ConfigurationHandler {
 			int sheetIndex = wb.getSheetIndex(newSheet);
 			wb.setSheetName(sheetIndex, copyName);
 			wb.setSheetHidden(sheetIndex, Workbook.SHEET_STATE_VERY_HIDDEN);
+			parent.getRowMetaStore().copySheet(sheet, newSheet);
 		}
 	}
 
@@ -669,12 +670,12 @@ public class ConfigurationHandler {
 		}
 		if (!changed) {
 			moveCommentToMap(cell, text,
-					cellAttributesMap.getTemplateCommentMap(), true);
+					cellAttributesMap, true);
 		} else {
 			// reset comment string if changed
 			if (newComment.length() > 0) {
 				moveCommentToMap(cell, newComment.toString(),
-						cellAttributesMap.getTemplateCommentMap(), true);
+						cellAttributesMap, true);
 				CreationHelper factory = sheet.getWorkbook()
 						.getCreationHelper();
 				RichTextString str = factory
@@ -709,7 +710,7 @@ public class ConfigurationHandler {
 					cellAttributesMap);
 		} else {
 			moveCommentToMap(cell, line,
-					cellAttributesMap.getTemplateCommentMap(), false);
+					cellAttributesMap, false);
 		}
 	}
 
@@ -756,20 +757,21 @@ public class ConfigurationHandler {
 	 *            the cell
 	 * @param newComment
 	 *            updated comment.
-	 * @param sheetCommentMap
-	 *            the sheet comment map
+	 * @param cellAttributesMap
+	 *            the cell attributes map
 	 * @param normalComment
 	 *            the normal comment
 	 */
 	private void moveCommentToMap(final Cell cell, final String newComment,
-			final Map<String, Map<String, String>> sheetCommentMap,
+			final CellAttributesMap cellAttributesMap,
 			final boolean normalComment) {
 
-		String cellKey = cell.getSheet().getSheetName() + "!$"
-				+ cell.getColumnIndex() + "$" + cell.getRowIndex();
-
-		ParserUtility.parseCommentToMap(cellKey, newComment,
-				sheetCommentMap, normalComment);
+		if ((newComment != null) && (!newComment.trim().isEmpty())) {
+			cellAttributesMap.putComment(cell.getSheet().getSheetName(),
+					cell.getRowIndex(), cell.getColumnIndex(),
+					ParserUtility.getCommentKey(newComment, normalComment),
+					newComment);
+		}
 
 	}
 
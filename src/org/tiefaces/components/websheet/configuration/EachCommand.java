@@ -264,6 +264,19 @@ public class EachCommand extends ConfigCommand implements Serializable {
 		int insertPosition = atRow;
 		String thisObjClassName = objClassName;
 
+		// first item use the template rows in place. copy templates for the
+		// rest items at once, so the rows below only shift one time. nested
+		// commands change the item length, so copy them one by one then.
+		int templateLength = this.getConfigRange().getLastRowPlusAddr()
+				.getRow() - this.getConfigRange().getFirstRowAddr().getRow();
+		boolean preCopy = CommandUtility
+				.isEachTemplatePreCopyable(this.getConfigRange());
+		if (preCopy && (itemsCollection.size() > 1)) {
+			CommandUtility.copyEachTemplate(this.getConfigRange(),
+					configBuildRef, atRow + templateLength,
+					itemsCollection.size() - 1);
+		}
+
 		// loop through each object in the collection
 		for (Object obj : itemsCollection) {
 			// gather and cache object class name which used for add row
@@ -274,8 +287,17 @@ public class EachCommand extends ConfigCommand implements Serializable {
 			}
 			RowsMapping unitRowsMapping = new RowsMapping();
 			context.put(var, obj);
-			CommandUtility.insertEachTemplate(this.getConfigRange(),
-					configBuildRef, index, insertPosition, unitRowsMapping);
+			if (index > 0) {
+				if (!preCopy) {
+					CommandUtility.copyEachTemplate(this.getConfigRange(),
+							configBuildRef, insertPosition, 1);
+				}
+				CommandUtility.copyEachTemplateMergedRegions(
+						this.getConfigRange(), configBuildRef,
+						insertPosition);
+			}
+			CommandUtility.mapEachTemplateRows(this.getConfigRange(),
+					configBuildRef, insertPosition, unitRowsMapping);
 			ConfigRange currentRange = ConfigurationUtility
 					.buildCurrentRange(this.getConfigRange(),
 							configBuildRef.getSheet(), insertPosition);
@@ -295,6 +317,11 @@ public class EachCommand extends ConfigCommand implements Serializable {
 			int length = currentRange.buildAt(unitFullName, configBuildRef,
 					insertPosition, context, currentRowsMappingList);
 			currentRange.getAttrs().setFinalLength(length);
+			if (preCopy && (index < itemsCollection.size() - 1)) {
+				CommandUtility.moveLastRowPlusRef(currentRange,
+						configBuildRef.getSheet(),
+						atRow + itemsCollection.size() * templateLength);
+			}
 			insertPosition += length;
 			currentRowsMappingList.remove(unitRowsMapping);
 			index++;
@@ -0,0 +1,139 @@
+/*
+ * Copyright 2017 TieFaces.
+ * Licensed under MIT
+ */
+package org.tiefaces.components.websheet.configuration;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.jexl2.Expression;
+import org.apache.commons.jexl2.JexlEngine;
+import org.tiefaces.common.TieConstants;
+
+/**
+ * Application scope cache for parsed jexl expressions. Shared by all threads
+ * and bounded in size, least recently used expressions are evicted first.
+ * Keeps hit, miss and eviction counters.
+ *
+ * @author Jason Jiang
+ *
+ */
+public final class ExpressionCache {
+
+	/** hit counter. */
+	private static final AtomicLong HITS = new AtomicLong();
+
+	/** miss counter. */
+	private static final AtomicLong MISSES = new AtomicLong();
+
+	/** eviction counter. */
+	private static final AtomicLong EVICTIONS = new AtomicLong();
+
+	/** parsed expressions in access order. */
+	private static final Map<String, Expression> CACHE = new LinkedHashMap<String, Expression>(
+			256, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(
+				final Map.Entry<String, Expression> eldest) {
+			if (size() > TieConstants.EXPRESSION_CACHE_MAX_ENTRIES) {
+				EVICTIONS.incrementAndGet();
+				return true;
+			}
+			return false;
+		}
+	};
+
+	/**
+	 * hide constructor.
+	 */
+	private ExpressionCache() {
+		// not called
+	}
+
+	/**
+	 * Gets the parsed expression. Parse and cache it if not exist. Parsing is
+	 * done outside the cache lock.
+	 *
+	 * @param jexl
+	 *            the jexl engine
+	 * @param expression
+	 *            string input expression
+	 * @return the parsed expression
+	 */
+	public static Expression getExpression(final JexlEngine jexl,
+			final String expression) {
+		Expression jexlExpression;
+		synchronized (CACHE) {
+			jexlExpression = CACHE.get(expression);
+		}
+		if (jexlExpression != null) {
+			HITS.incrementAndGet();
+			return jexlExpression;
+		}
+		MISSES.incrementAndGet();
+		jexlExpression = jexl.createExpression(expression);
+		synchronized (CACHE) {
+			Expression existing = CACHE.get(expression);
+			if (existing != null) {
+				return existing;
+			}
+			CACHE.put(expression, jexlExpression);
+		}
+		return jexlExpression;
+	}
+
+	/**
+	 * Clear the cache and counters.
+	 */
+	public static void clear() {
+		synchronized (CACHE) {
+			CACHE.clear();
+		}
+		HITS.set(0);
+		MISSES.set(0);
+		EVICTIONS.set(0);
+	}
+
+	/**
+	 * Number of cached expressions.
+	 *
+	 * @return the size
+	 */
+	public static int size() {
+		synchronized (CACHE) {
+			return CACHE.size();
+		}
+	}
+
+	/**
+	 * Gets the hit count.
+	 *
+	 * @return the hits
+	 */
+	public static long getHits() {
+		return HITS.get();
+	}
+
+	/**
+	 * Gets the miss count.
+	 *
+	 * @return the misses
+	 */
+	public static long getMisses() {
+		return MISSES.get();
+	}
+
+	/**
+	 * Gets the eviction count.
+	 *
+	 * @return the evictions
+	 */
+	public static long getEvictions() {
+		return EVICTIONS.get();
+	}
+
+}
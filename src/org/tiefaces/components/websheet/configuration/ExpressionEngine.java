@@ -10,12 +10,12 @@ import java.util.Map;
 import org.apache.commons.jexl2.Expression;
 import org.apache.commons.jexl2.JexlContext;
 import org.apache.commons.jexl2.JexlEngine;
-import org.apache.commons.jexl2.MapContext;
 import org.tiefaces.exception.EvaluationException;
 
 /**
  * expEngine use jexl engine evaluate an expression. see apache jexl project for
- * detail. use local thread for thread safe.
+ * detail. The jexl engine and parsed expressions are shared by all threads,
+ * only the evaluation context is thread local.
  * 
  * @author Jason Jiang
  *
@@ -27,20 +27,15 @@ public class ExpressionEngine {
 	/**
 	 * context. private JexlContext jContext;
 	 */
-	/** jexlEngine local map. */
-	private static final ThreadLocal<JexlEngine> 
-	JEXL_LOCAL = new ThreadLocal<JexlEngine>() {
-		@Override
-		protected JexlEngine initialValue() {
-			return new JexlEngine();
-		}
-	};
-	/** jexpmap local map. */
-	private static final ThreadLocal<Map<String, Expression>> 
-	JEXL_MAP_LOCAL = new ThreadLocal<Map<String, Expression>>() {
+	/** shared jexl engine. jexl engine is thread safe. */
+	private static final JexlEngine JEXL = new JexlEngine();
+
+	/** reusable evaluation context of current thread. */
+	private static final ThreadLocal<ReusableContext> 
+	CONTEXT_LOCAL = new ThreadLocal<ReusableContext>() {
 		@Override
-		protected Map<String, Expression> initialValue() {
-			return new HashMap<>();
+		protected ReusableContext initialValue() {
+			return new ReusableContext();
 		}
 	};
 
@@ -50,6 +45,31 @@ public class ExpressionEngine {
 	private static final Map<String, Object> 
 	EMPTY_CONTEXT = new HashMap<>();
 
+	/**
+	 * Jexl context over a map which can be switched. Avoid creating a new
+	 * MapContext for each evaluation.
+	 */
+	private static final class ReusableContext implements JexlContext {
+
+		/** the context map. */
+		private Map<String, Object> map;
+
+		@Override
+		public Object get(final String name) {
+			return map.get(name);
+		}
+
+		@Override
+		public void set(final String name, final Object value) {
+			map.put(name, value);
+		}
+
+		@Override
+		public boolean has(final String name) {
+			return map.containsKey(name);
+		}
+	}
+
 	/**
 	 * constructor.
 	 * 
@@ -57,8 +77,7 @@ public class ExpressionEngine {
 	 *            expression.
 	 */
 	public ExpressionEngine(final String pExpression) {
-		JexlEngine jexl = JEXL_LOCAL.get();
-		jExpression = jexl.createExpression(pExpression);
+		jExpression = ExpressionCache.getExpression(JEXL, pExpression);
 	}
 
 
@@ -92,16 +111,44 @@ public class ExpressionEngine {
 	 */
 	public final Object evaluate(final String expression,
 			final Map<String, Object> context) {
-		JexlContext jexlContext = new MapContext(context);
 		try {
-			JexlEngine jexl = JEXL_LOCAL.get();
-			Map<String, Expression> expMap = JEXL_MAP_LOCAL.get();
-			Expression jexlExpression = expMap.get(expression);
-			if (jexlExpression == null) {
-				jexlExpression = jexl.createExpression(expression);
-				expMap.put(expression, jexlExpression);
-			}
-			return jexlExpression.evaluate(jexlContext);
+			return evaluateInContext(
+					ExpressionCache.getExpression(JEXL, expression),
+					context);
+		} catch (Exception e) {
+			throw new EvaluationException(e);
+		}
+	}
+
+	/**
+	 * Create the parsed expression. Used to compile expression once and
+	 * evaluate it many times.
+	 *
+	 * @param expression
+	 *            string input expression.
+	 * @return parsed expression.
+	 */
+	public final Expression createExpression(final String expression) {
+		try {
+			return ExpressionCache.getExpression(JEXL, expression);
+		} catch (Exception e) {
+			throw new EvaluationException(e);
+		}
+	}
+
+	/**
+	 * Evaluate the parsed expression.
+	 *
+	 * @param jexlExpression
+	 *            parsed expression.
+	 * @param context
+	 *            context map.
+	 * @return evaluated object.
+	 */
+	public final Object evaluate(final Expression jexlExpression,
+			final Map<String, Object> context) {
+		try {
+			return evaluateInContext(jexlExpression, context);
 		} catch (Exception e) {
 			throw new EvaluationException(e);
 		}
@@ -115,9 +162,8 @@ public class ExpressionEngine {
 	 * @return object evaluated.
 	 */
 	public final Object evaluate(final Map<String, Object> context) {
-		JexlContext jexlContext = new MapContext(context);
 		try {
-			return jExpression.evaluate(jexlContext);
+			return evaluateInContext(jExpression, context);
 		} catch (Exception e) {
 			throw new EvaluationException(
 					"An error occurred when evaluating expression "
@@ -125,6 +171,33 @@ public class ExpressionEngine {
 		}
 	}
 
+	/**
+	 * Evaluate the parsed expression with the reusable context of current
+	 * thread. The previous map is restored afterwards in case of nested
+	 * evaluation.
+	 *
+	 * @param jexlExpression
+	 *            parsed expression.
+	 * @param context
+	 *            context map.
+	 * @return evaluated object.
+	 */
+	private static Object evaluateInContext(final Expression jexlExpression,
+			final Map<String, Object> context) {
+		ReusableContext jexlContext = CONTEXT_LOCAL.get();
+		Map<String, Object> previous = jexlContext.map;
+		if (context == null) {
+			jexlContext.map = new HashMap<>();
+		} else {
+			jexlContext.map = context;
+		}
+		try {
+			return jexlExpression.evaluate(jexlContext);
+		} finally {
+			jexlContext.map = previous;
+		}
+	}
+
 	/**
 	 * get jexpression.
 	 * 
@@ -136,12 +209,12 @@ public class ExpressionEngine {
 	}
 
 	/**
-	 * get local exl engine.
+	 * get shared jexl engine.
 	 * 
 	 * @return jexlengine.
 	 */
 	public final JexlEngine getJexlEngine() {
-		return JEXL_LOCAL.get();
+		return JEXL;
 	}
 
 }
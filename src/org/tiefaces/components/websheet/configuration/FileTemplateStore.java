@@ -0,0 +1,111 @@
+/*
+ * Copyright 2017 TieFaces.
+ * Licensed under MIT
+ */
+package org.tiefaces.components.websheet.configuration;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Template store keeping each configured workbook as a file in a directory.
+ * Used by default with a directory under java.io.tmpdir, so session
+ * workbooks are serialized as delta on a single node, e.g. for passivation
+ * or restart. Nodes of a cluster must share the directory, or set another
+ * store shared by all of them.
+ *
+ * @author Jason Jiang
+ *
+ */
+public class FileTemplateStore implements TemplateStore {
+
+	/** suffix of stored files. */
+	private static final String FILE_SUFFIX = ".xlsx";
+
+	/** the directory. */
+	private final File directory;
+
+	/**
+	 * Instantiates a new file template store.
+	 *
+	 * @param pdirectory
+	 *            the directory. created on first save if not exist.
+	 */
+	public FileTemplateStore(final File pdirectory) {
+		this.directory = pdirectory;
+	}
+
+	/**
+	 * Gets the directory.
+	 *
+	 * @return the directory
+	 */
+	public final File getDirectory() {
+		return directory;
+	}
+
+	/**
+	 * Save the workbook unless the key is already stored. Written to a temp
+	 * file first and moved into place, so a reader never sees part of it.
+	 *
+	 * @param key
+	 *            the template key
+	 * @param workbookBytes
+	 *            the workbook bytes
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 */
+	@Override
+	public final void save(final String key, final byte[] workbookBytes)
+			throws IOException {
+		Path target = getPath(key);
+		if (Files.exists(target)) {
+			return;
+		}
+		Files.createDirectories(directory.toPath());
+		Path temp = Files.createTempFile(directory.toPath(), "store-",
+				".tmp");
+		try {
+			Files.write(temp, workbookBytes);
+			Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+		} finally {
+			Files.deleteIfExists(temp);
+		}
+	}
+
+	/**
+	 * Load the workbook of key.
+	 *
+	 * @param key
+	 *            the template key
+	 * @return the workbook bytes. null if not found.
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 */
+	@Override
+	public final byte[] load(final String key) throws IOException {
+		try {
+			return Files.readAllBytes(getPath(key));
+		} catch (NoSuchFileException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Gets the file path of key. The key is a hex digest with a flag after
+	 * colon, which is not allowed in file names on every platform.
+	 *
+	 * @param key
+	 *            the key
+	 * @return the path
+	 */
+	private Path getPath(final String key) {
+		return new File(directory, key.replace(':', '_') + FILE_SUFFIX)
+				.toPath();
+	}
+
+}
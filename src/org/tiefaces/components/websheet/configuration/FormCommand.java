@@ -387,12 +387,6 @@ public class FormCommand extends ConfigCommand implements Serializable {
 				atRow, context, currentRowsMappingList);
 		this.getConfigRange().getAttrs().setFinalLength(length);
 		this.setFinalLength(length);
-		configBuildRef.getSheet().setColumnHidden(
-				TieConstants.HIDDEN_FULL_NAME_COLUMN, true);
-		configBuildRef.getSheet().setColumnHidden(
-				TieConstants.HIDDEN_SAVE_OBJECTS_COLUMN, true);
-		configBuildRef.getSheet().setColumnHidden(
-				TieConstants.HIDDEN_ORIGIN_ROW_NUMBER_COLUMN, true);
 
 		return length;
 	}
@@ -9,7 +9,6 @@ import java.io.Serializable;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.NavigableMap;
 import java.util.logging.Logger;
 import org.apache.poi.ss.usermodel.Cell;
 import org.apache.poi.ss.usermodel.Sheet;
@@ -86,7 +85,7 @@ public class SheetConfiguration implements Serializable {
 	private FormCommand formCommand;
 
 	/** The shift map. */
-	private NavigableMap<String, ConfigRangeAttrs> shiftMap;
+	private ShiftMapIndex shiftMap;
 
 	/** The command index map. */
 	private HashMap<String, Command> commandIndexMap;
@@ -419,7 +418,7 @@ public class SheetConfiguration implements Serializable {
 	 *
 	 * @return the shift map
 	 */
-	public final NavigableMap<String, ConfigRangeAttrs> getShiftMap() {
+	public final ShiftMapIndex getShiftMap() {
 		return shiftMap;
 	}
 
@@ -429,8 +428,7 @@ public class SheetConfiguration implements Serializable {
 	 * @param pshiftMap
 	 *            the shift map
 	 */
-	public final void setShiftMap(
-			final NavigableMap<String, ConfigRangeAttrs> pshiftMap) {
+	public final void setShiftMap(final ShiftMapIndex pshiftMap) {
 		this.shiftMap = pshiftMap;
 	}
 
@@ -568,9 +566,8 @@ public class SheetConfiguration implements Serializable {
 		this.getSerialFinalCommentMap().recover(sheet);
 		this.getFormCommand().recover(sheet);
 		if (this.getShiftMap() != null) {
-			for (Map.Entry<String, ConfigRangeAttrs> entry : this
-					.getShiftMap().entrySet()) {
-				entry.getValue().recover(sheet);
+			for (ConfigRangeAttrs attrs : this.getShiftMap().values()) {
+				attrs.recover(sheet);
 			}
 		}
 		if (this.getCommandIndexMap() != null) {
@@ -0,0 +1,681 @@
+/*
+ * Copyright 2017 TieFaces.
+ * Licensed under MIT
+ */
+package org.tiefaces.components.websheet.configuration;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Index of command range instances built in the sheet. i.e. the form, each
+ * item of each command and their children. Full names like
+ * "F.departments:E.department.1:E.employee.0" are not stored, the item index
+ * is the position among siblings of same command. So insert or remove an
+ * item renumbers all following items and their children implicitly.
+ *
+ * Siblings are kept in a tree ordered by item index, each tree node counts
+ * its subtree. Insert, remove, lookup by index and the index of a node are
+ * O(log n), nothing is renumbered or invalidated on change.
+ *
+ * @author Jason Jiang
+ *
+ */
+public class ShiftMapIndex implements Serializable {
+
+	/** serialVersionUID. */
+	private static final long serialVersionUID = 6115024870323549186L;
+
+	/** separator of levels in full name. */
+	private static final char LEVEL_SEPARATOR = ':';
+
+	/** separator of command name and index. */
+	private static final char INDEX_SEPARATOR = '.';
+
+	/** top level nodes, i.e. forms. key is form name. */
+	private final Map<String, Node> roots = new LinkedHashMap<>();
+
+	/** number of nodes. */
+	private int size;
+
+	/**
+	 * Siblings of same command under one parent. A treap ordered by item
+	 * index, i.e. position in the tree, with random priorities.
+	 */
+	private static final class Siblings implements Serializable {
+
+		/** serialVersionUID. */
+		private static final long serialVersionUID = 1L;
+
+		/** root of the tree. */
+		private Node root;
+
+		/**
+		 * Count of nodes in subtree.
+		 *
+		 * @param node
+		 *            the subtree
+		 * @return the count. 0 for null.
+		 */
+		private static int count(final Node node) {
+			if (node == null) {
+				return 0;
+			}
+			return node.subtreeSize;
+		}
+
+		/**
+		 * Update count of node and the parent link of its children.
+		 *
+		 * @param node
+		 *            the node
+		 */
+		private static void update(final Node node) {
+			node.subtreeSize = 1 + count(node.left) + count(node.right);
+			if (node.left != null) {
+				node.left.up = node;
+			}
+			if (node.right != null) {
+				node.right.up = node;
+			}
+		}
+
+		/**
+		 * Split the tree into the first k nodes and the rest.
+		 *
+		 * @param tree
+		 *            the tree
+		 * @param k
+		 *            number of nodes in first part
+		 * @return the first part and the rest
+		 */
+		private static Node[] split(final Node tree, final int k) {
+			if (tree == null) {
+				return new Node[2];
+			}
+			Node[] parts;
+			if (count(tree.left) >= k) {
+				parts = split(tree.left, k);
+				tree.left = parts[1];
+				update(tree);
+				parts[1] = tree;
+			} else {
+				parts = split(tree.right, k - count(tree.left) - 1);
+				tree.right = parts[0];
+				update(tree);
+				parts[0] = tree;
+			}
+			for (Node part : parts) {
+				if (part != null) {
+					part.up = null;
+				}
+			}
+			return parts;
+		}
+
+		/**
+		 * Join two trees, all nodes of first before second.
+		 *
+		 * @param first
+		 *            the first
+		 * @param second
+		 *            the second
+		 * @return the joined tree
+		 */
+		private static Node merge(final Node first, final Node second) {
+			if (first == null) {
+				return second;
+			}
+			if (second == null) {
+				return first;
+			}
+			if (first.priority > second.priority) {
+				first.right = merge(first.right, second);
+				update(first);
+				return first;
+			}
+			second.left = merge(first, second.left);
+			update(second);
+			return second;
+		}
+
+		/**
+		 * Number of siblings.
+		 *
+		 * @return the size
+		 */
+		private int size() {
+			return count(root);
+		}
+
+		/**
+		 * Insert node at the index.
+		 *
+		 * @param index
+		 *            the index
+		 * @param node
+		 *            the node
+		 */
+		private void insert(final int index, final Node node) {
+			node.left = null;
+			node.right = null;
+			node.subtreeSize = 1;
+			Node[] parts = split(root, index);
+			root = merge(merge(parts[0], node), parts[1]);
+			root.up = null;
+		}
+
+		/**
+		 * Remove the node.
+		 *
+		 * @param node
+		 *            the node
+		 */
+		private void remove(final Node node) {
+			Node joined = merge(node.left, node.right);
+			Node up = node.up;
+			if (joined != null) {
+				joined.up = up;
+			}
+			if (up == null) {
+				root = joined;
+			} else if (up.left == node) {
+				up.left = joined;
+			} else {
+				up.right = joined;
+			}
+			for (Node current = up; current != null; current = current.up) {
+				current.subtreeSize = 1 + count(current.left)
+						+ count(current.right);
+			}
+			node.left = null;
+			node.right = null;
+			node.up = null;
+			node.subtreeSize = 1;
+		}
+
+		/**
+		 * Gets the node at the index.
+		 *
+		 * @param index
+		 *            the index
+		 * @return the node. null if out of range.
+		 */
+		private Node get(final int index) {
+			if ((index < 0) || (index >= size())) {
+				return null;
+			}
+			Node node = root;
+			int k = index;
+			while (true) {
+				int leftCount = count(node.left);
+				if (k < leftCount) {
+					node = node.left;
+				} else if (k == leftCount) {
+					return node;
+				} else {
+					k -= leftCount + 1;
+					node = node.right;
+				}
+			}
+		}
+
+		/**
+		 * Gets the index of the node.
+		 *
+		 * @param node
+		 *            the node
+		 * @return the index
+		 */
+		private static int indexOf(final Node node) {
+			int index = count(node.left);
+			for (Node current = node; current.up != null; current = current.up) {
+				if (current.up.right == current) {
+					index += count(current.up.left) + 1;
+				}
+			}
+			return index;
+		}
+
+		/**
+		 * Gets the nodes in item order.
+		 *
+		 * @return the list
+		 */
+		private List<Node> nodes() {
+			List<Node> list = new ArrayList<>(size());
+			addInOrder(root, list);
+			return list;
+		}
+
+		/**
+		 * Add nodes of subtree to list in item order.
+		 *
+		 * @param node
+		 *            the subtree
+		 * @param list
+		 *            the list
+		 */
+		private static void addInOrder(final Node node,
+				final List<Node> list) {
+			if (node == null) {
+				return;
+			}
+			addInOrder(node.left, list);
+			list.add(node);
+			addInOrder(node.right, list);
+		}
+	}
+
+	/**
+	 * One command range instance.
+	 */
+	public static final class Node implements Serializable {
+
+		/** serialVersionUID. */
+		private static final long serialVersionUID = 1L;
+
+		/** the parent. null for form. */
+		private final Node parent;
+
+		/** form name or command name, e.g. E.employee. */
+		private final String name;
+
+		/** the range attrs. */
+		private ConfigRangeAttrs attrs;
+
+		/** children by command name. */
+		private Map<String, Siblings> children;
+
+		/** left subtree among siblings. */
+		private Node left;
+
+		/** right subtree among siblings. */
+		private Node right;
+
+		/** parent in the siblings tree. */
+		private Node up;
+
+		/** number of nodes in subtree among siblings. */
+		private int subtreeSize = 1;
+
+		/** priority in the siblings tree. */
+		private final int priority = ThreadLocalRandom.current().nextInt();
+
+		/**
+		 * Instantiates a new node.
+		 *
+		 * @param pparent
+		 *            the parent
+		 * @param pname
+		 *            the name
+		 */
+		private Node(final Node pparent, final String pname) {
+			this.parent = pparent;
+			this.name = pname;
+		}
+
+		/**
+		 * Gets the range attrs.
+		 *
+		 * @return the attrs
+		 */
+		public ConfigRangeAttrs getAttrs() {
+			return attrs;
+		}
+
+		/**
+		 * Gets the parent.
+		 *
+		 * @return the parent. null for form.
+		 */
+		public Node getParent() {
+			return parent;
+		}
+
+		/**
+		 * Gets the item index among siblings of same command.
+		 *
+		 * @return the index. 0 for form.
+		 */
+		public int getIndex() {
+			if (parent == null) {
+				return 0;
+			}
+			return Siblings.indexOf(this);
+		}
+
+		/**
+		 * Gets the full name. e.g. F.departments:E.department.1.
+		 *
+		 * @return the full name
+		 */
+		public String getFullName() {
+			if (parent == null) {
+				return name;
+			}
+			return parent.getFullName() + LEVEL_SEPARATOR + name
+					+ INDEX_SEPARATOR + getIndex();
+		}
+
+		/**
+		 * Check whether this node is ancestor of the node.
+		 *
+		 * @param node
+		 *            the node
+		 * @return true if ancestor
+		 */
+		public boolean isAncestorOf(final Node node) {
+			Node current = node.parent;
+			while (current != null) {
+				if (current == this) {
+					return true;
+				}
+				current = current.parent;
+			}
+			return false;
+		}
+
+		/**
+		 * Add attrs of all descendants to list. parent before children.
+		 *
+		 * @param list
+		 *            the list
+		 */
+		private void collectDescendants(final List<ConfigRangeAttrs> list) {
+			if (children == null) {
+				return;
+			}
+			for (Siblings siblings : children.values()) {
+				for (Node node : siblings.nodes()) {
+					if (node.attrs != null) {
+						list.add(node.attrs);
+					}
+					node.collectDescendants(list);
+				}
+			}
+		}
+
+		/**
+		 * Gets the attrs of all descendants. parent before children.
+		 *
+		 * @return the list
+		 */
+		public List<ConfigRangeAttrs> getDescendantAttrs() {
+			List<ConfigRangeAttrs> list = new ArrayList<>();
+			collectDescendants(list);
+			return list;
+		}
+
+		/**
+		 * Count this node and descendants.
+		 *
+		 * @return the count
+		 */
+		private int count() {
+			int count = 1;
+			if (children != null) {
+				for (Siblings siblings : children.values()) {
+					for (Node node : siblings.nodes()) {
+						count += node.count();
+					}
+				}
+			}
+			return count;
+		}
+
+		@Override
+		public String toString() {
+			return getFullName();
+		}
+	}
+
+	/**
+	 * Put range attrs with full name. The attrs of existing node are
+	 * replaced, otherwise the node is added after its siblings.
+	 *
+	 * @param fullName
+	 *            the full name
+	 * @param attrs
+	 *            the attrs
+	 * @return the node
+	 */
+	public final Node put(final String fullName,
+			final ConfigRangeAttrs attrs) {
+		Node node = getNode(fullName);
+		if (node == null) {
+			return insert(fullName, attrs);
+		}
+		node.attrs = attrs;
+		return node;
+	}
+
+	/**
+	 * Insert range attrs with full name. If the item index is taken, the
+	 * item is inserted before it and the following items are renumbered.
+	 *
+	 * @param fullName
+	 *            the full name
+	 * @param attrs
+	 *            the attrs
+	 * @return the node
+	 */
+	public final Node insert(final String fullName,
+			final ConfigRangeAttrs attrs) {
+		int sep = fullName.lastIndexOf(LEVEL_SEPARATOR);
+		Node node;
+		if (sep < 0) {
+			node = roots.get(fullName);
+			if (node == null) {
+				node = new Node(null, fullName);
+				roots.put(fullName, node);
+				size++;
+			}
+		} else {
+			Node parent = getNode(fullName.substring(0, sep));
+			if (parent == null) {
+				parent = put(fullName.substring(0, sep), null);
+			}
+			String part = fullName.substring(sep + 1);
+			int dot = part.lastIndexOf(INDEX_SEPARATOR);
+			String commandName = part.substring(0, dot);
+			int itemIndex = Integer.parseInt(part.substring(dot + 1));
+			if (parent.children == null) {
+				parent.children = new LinkedHashMap<>();
+			}
+			Siblings siblings = parent.children.get(commandName);
+			if (siblings == null) {
+				siblings = new Siblings();
+				parent.children.put(commandName, siblings);
+			}
+			node = new Node(parent, commandName);
+			siblings.insert(Math.min(itemIndex, siblings.size()), node);
+			size++;
+		}
+		node.attrs = attrs;
+		return node;
+	}
+
+	/**
+	 * Gets the node of full name.
+	 *
+	 * @param fullName
+	 *            the full name
+	 * @return the node. null if not exist.
+	 */
+	public final Node getNode(final String fullName) {
+		if (fullName == null) {
+			return null;
+		}
+		int end = fullName.indexOf(LEVEL_SEPARATOR);
+		if (end < 0) {
+			return roots.get(fullName);
+		}
+		Node node = roots.get(fullName.substring(0, end));
+		while ((node != null) && (end < fullName.length())) {
+			int start = end + 1;
+			end = fullName.indexOf(LEVEL_SEPARATOR, start);
+			if (end < 0) {
+				end = fullName.length();
+			}
+			node = getChild(node, fullName.substring(start, end));
+		}
+		return node;
+	}
+
+	/**
+	 * Gets the child node.
+	 *
+	 * @param node
+	 *            the parent node
+	 * @param part
+	 *            the part of full name, e.g. E.employee.0
+	 * @return the child. null if not exist.
+	 */
+	private static Node getChild(final Node node, final String part) {
+		int dot = part.lastIndexOf(INDEX_SEPARATOR);
+		if ((dot < 0) || (node.children == null)) {
+			return null;
+		}
+		Siblings siblings = node.children.get(part.substring(0, dot));
+		if (siblings == null) {
+			return null;
+		}
+		try {
+			return siblings.get(Integer.parseInt(part.substring(dot + 1)));
+		} catch (NumberFormatException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Gets the range attrs of full name.
+	 *
+	 * @param fullName
+	 *            the full name
+	 * @return the attrs. null if not exist.
+	 */
+	public final ConfigRangeAttrs get(final String fullName) {
+		Node node = getNode(fullName);
+		if (node == null) {
+			return null;
+		}
+		return node.attrs;
+	}
+
+	/**
+	 * Gets the nodes of upper levels. e.g. F.form and F.form:E.dept.0 for
+	 * F.form:E.dept.0:E.emp.1.
+	 *
+	 * @param fullName
+	 *            the full name
+	 * @return the list. top level first.
+	 */
+	public final List<Node> getAncestors(final String fullName) {
+		List<Node> list = new ArrayList<>();
+		int end = fullName.indexOf(LEVEL_SEPARATOR);
+		if (end < 0) {
+			return list;
+		}
+		Node node = roots.get(fullName.substring(0, end));
+		while ((node != null) && (end >= 0)) {
+			list.add(node);
+			int start = end + 1;
+			end = fullName.indexOf(LEVEL_SEPARATOR, start);
+			if (end >= 0) {
+				node = getChild(node, fullName.substring(start, end));
+			}
+		}
+		return list;
+	}
+
+	/**
+	 * Remove the node of full name with all its children. Following items are
+	 * renumbered.
+	 *
+	 * @param fullName
+	 *            the full name
+	 * @return the removed node. null if not exist.
+	 */
+	public final Node remove(final String fullName) {
+		Node node = getNode(fullName);
+		if (node == null) {
+			return null;
+		}
+		if (node.parent == null) {
+			roots.remove(node.name);
+		} else {
+			node.parent.children.get(node.name).remove(node);
+		}
+		size -= node.count();
+		return node;
+	}
+
+	/**
+	 * Gets attrs of all nodes. parent before children.
+	 *
+	 * @return the list
+	 */
+	public final List<ConfigRangeAttrs> values() {
+		List<ConfigRangeAttrs> list = new ArrayList<>();
+		for (Node root : roots.values()) {
+			if (root.attrs != null) {
+				list.add(root.attrs);
+			}
+			root.collectDescendants(list);
+		}
+		return list;
+	}
+
+	/**
+	 * Gets full names of all nodes. parent before children.
+	 *
+	 * @return the list
+	 */
+	public final List<String> fullNames() {
+		List<String> list = new ArrayList<>();
+		for (Node root : roots.values()) {
+			collectFullNames(root, list);
+		}
+		return list;
+	}
+
+	/**
+	 * Add full names of node and its descendants to list.
+	 *
+	 * @param node
+	 *            the node
+	 * @param list
+	 *            the list
+	 */
+	private static void collectFullNames(final Node node,
+			final List<String> list) {
+		list.add(node.getFullName());
+		if (node.children != null) {
+			for (Siblings siblings : node.children.values()) {
+				for (Node child : siblings.nodes()) {
+					collectFullNames(child, list);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Number of nodes.
+	 *
+	 * @return the size
+	 */
+	public final int size() {
+		return size;
+	}
+
+	@Override
+	public final String toString() {
+		return fullNames().toString();
+	}
+
+}
@@ -0,0 +1,347 @@
+/*
+ * Copyright 2017 TieFaces.
+ * Licensed under MIT
+ */
+package org.tiefaces.components.websheet.configuration;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.apache.poi.openxml4j.exceptions.InvalidFormatException;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.ss.usermodel.WorkbookFactory;
+import org.tiefaces.common.TieConstants;
+
+/**
+ * Application scope cache for compiled templates. Keyed by digest of the
+ * template content, so sessions open the same template share one
+ * configuration build. Bounded by number of templates and by their total
+ * size, least recently used templates are evicted first. Compiled workbooks
+ * are also saved to the template store, so workbooks of templates not cached
+ * on this node can still be created. The default store is a directory under
+ * java.io.tmpdir.
+ *
+ * @author Jason Jiang
+ *
+ */
+public final class TemplateCache {
+
+	/** logger. */
+	private static final Logger LOG = Logger
+			.getLogger(TemplateCache.class.getName());
+
+	/** hex chars. */
+	private static final char[] HEX_CHARS = "0123456789abcdef"
+			.toCharArray();
+
+	/** compiled templates in access order. */
+	private static final Map<String, CompiledTemplate> CACHE = new LinkedHashMap<>(
+			16, 0.75f, true);
+
+	/** total size of cached templates. */
+	private static long totalBytes = 0;
+
+	/** durable store of configured workbooks. null if not set. */
+	private static volatile TemplateStore store = new FileTemplateStore(
+			new File(System.getProperty("java.io.tmpdir"),
+					TieConstants.DEFAULT_TEMPLATE_STORE_DIR));
+
+	/**
+	 * parsed stored workbooks of templates not cached, shared as base of
+	 * session deltas. in access order.
+	 */
+	private static final Map<String, Workbook> STORED_BASES = new LinkedHashMap<>(
+			16, 0.75f, true);
+
+	/**
+	 * hide constructor.
+	 */
+	private TemplateCache() {
+		// not called
+	}
+
+	/**
+	 * Builds the key for template content. The skip configuration flag is
+	 * part of the key as it changes the configuration result.
+	 *
+	 * @param content
+	 *            the template content
+	 * @param skipConfiguration
+	 *            the skip configuration
+	 * @return the key. null if digest not available.
+	 */
+	public static String buildKey(final byte[] content,
+			final boolean skipConfiguration) {
+		try {
+			MessageDigest md = MessageDigest.getInstance("SHA-256");
+			byte[] digest = md.digest(content);
+			StringBuilder sb = new StringBuilder(digest.length * 2 + 2);
+			for (byte b : digest) {
+				sb.append(HEX_CHARS[(b >> 4) & 0xF]);
+				sb.append(HEX_CHARS[b & 0xF]);
+			}
+			sb.append(skipConfiguration ? ":s" : ":c");
+			return sb.toString();
+		} catch (NoSuchAlgorithmException e) {
+			LOG.log(Level.SEVERE, "buildKey error = " + e.getMessage(), e);
+			return null;
+		}
+	}
+
+	/**
+	 * Gets the compiled template.
+	 *
+	 * @param key
+	 *            the key
+	 * @return the compiled template. null if not cached.
+	 */
+	public static CompiledTemplate get(final String key) {
+		if (key == null) {
+			return null;
+		}
+		synchronized (CACHE) {
+			return CACHE.get(key);
+		}
+	}
+
+	/**
+	 * Sets the template store.
+	 *
+	 * @param pstore
+	 *            the store. null to serialize whole workbooks.
+	 */
+	public static void setStore(final TemplateStore pstore) {
+		store = pstore;
+		synchronized (STORED_BASES) {
+			STORED_BASES.clear();
+		}
+	}
+
+	/**
+	 * Gets the template store.
+	 *
+	 * @return the store. null if not set.
+	 */
+	public static TemplateStore getStore() {
+		return store;
+	}
+
+	/**
+	 * Put compiled template into cache and save its workbook to the store.
+	 * Template larger than the cache limit is only saved, not cached.
+	 *
+	 * @param template
+	 *            the template
+	 */
+	public static void put(final CompiledTemplate template) {
+		if ((template == null) || (template.getKey() == null)) {
+			return;
+		}
+		saveToStore(template);
+		synchronized (STORED_BASES) {
+			STORED_BASES.remove(template.getKey());
+		}
+		if (template.getSize() > TieConstants.TEMPLATE_CACHE_MAX_BYTES) {
+			return;
+		}
+		synchronized (CACHE) {
+			CompiledTemplate old = CACHE.put(template.getKey(), template);
+			if (old != null) {
+				release(old);
+			}
+			totalBytes += template.getSize();
+			Iterator<CompiledTemplate> it = CACHE.values().iterator();
+			while ((CACHE.size() > TieConstants.TEMPLATE_CACHE_MAX_ENTRIES)
+					|| (totalBytes > TieConstants.TEMPLATE_CACHE_MAX_BYTES)) {
+				CompiledTemplate evicted = it.next();
+				it.remove();
+				release(evicted);
+			}
+		}
+	}
+
+	/**
+	 * Release template removed from cache. Must be called within the lock
+	 * of cache.
+	 *
+	 * @param template
+	 *            the template
+	 */
+	private static void release(final CompiledTemplate template) {
+		totalBytes -= template.getSize();
+		template.releaseBaseWorkbook();
+	}
+
+	/**
+	 * Save workbook of template to the store if store is set.
+	 *
+	 * @param template
+	 *            the template
+	 */
+	private static void saveToStore(final CompiledTemplate template) {
+		TemplateStore current = store;
+		if (current == null) {
+			return;
+		}
+		try {
+			current.save(template.getKey(), template.getWorkbookBytes());
+			template.setStored(true);
+		} catch (IOException e) {
+			LOG.log(Level.WARNING, "save template " + template.getKey()
+					+ " to store error = " + e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * Create a new workbook instance of the configured template. From the
+	 * cached template, otherwise from the store.
+	 *
+	 * @param key
+	 *            the key
+	 * @return the workbook. null if template neither cached nor stored.
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 * @throws InvalidFormatException
+	 *             the invalid format exception
+	 */
+	public static Workbook createWorkbook(final String key)
+			throws IOException, InvalidFormatException {
+		CompiledTemplate template = get(key);
+		if (template != null) {
+			return template.createWorkbook();
+		}
+		return loadStoredWorkbook(key);
+	}
+
+	/**
+	 * Load the configured workbook of template from the store.
+	 *
+	 * @param key
+	 *            the key
+	 * @return the workbook. null if store not set or template not stored.
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 * @throws InvalidFormatException
+	 *             the invalid format exception
+	 */
+	public static Workbook loadStoredWorkbook(final String key)
+			throws IOException, InvalidFormatException {
+		TemplateStore current = store;
+		if ((current == null) || (key == null)) {
+			return null;
+		}
+		byte[] bytes = current.load(key);
+		if (bytes == null) {
+			return null;
+		}
+		return WorkbookFactory.create(new ByteArrayInputStream(bytes));
+	}
+
+	/**
+	 * Gets the stored workbook of template not cached, as base of session
+	 * deltas. Parsed once and kept for the last few templates, so sessions of
+	 * an evicted template don't parse it again on each serialization. Must
+	 * not be changed, callers should synchronize on it while reading.
+	 *
+	 * @param key
+	 *            the key
+	 * @return the workbook. null if store not set or template not stored.
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 * @throws InvalidFormatException
+	 *             the invalid format exception
+	 */
+	public static Workbook getStoredBaseWorkbook(final String key)
+			throws IOException, InvalidFormatException {
+		if (key == null) {
+			return null;
+		}
+		synchronized (STORED_BASES) {
+			Workbook base = STORED_BASES.get(key);
+			if (base != null) {
+				return base;
+			}
+		}
+		// parse outside of the lock, a duplicate parse is harmless.
+		Workbook base = loadStoredWorkbook(key);
+		if (base == null) {
+			return null;
+		}
+		synchronized (STORED_BASES) {
+			Workbook existing = STORED_BASES.get(key);
+			if (existing != null) {
+				return existing;
+			}
+			STORED_BASES.put(key, base);
+			Iterator<Workbook> it = STORED_BASES.values().iterator();
+			while (STORED_BASES
+					.size() > TieConstants.STORED_BASE_CACHE_MAX_ENTRIES) {
+				it.next();
+				it.remove();
+			}
+		}
+		return base;
+	}
+
+	/**
+	 * Remove template from cache.
+	 *
+	 * @param key
+	 *            the key
+	 */
+	public static void remove(final String key) {
+		synchronized (CACHE) {
+			CompiledTemplate old = CACHE.remove(key);
+			if (old != null) {
+				release(old);
+			}
+		}
+	}
+
+	/**
+	 * Clear the cache.
+	 */
+	public static void clear() {
+		synchronized (CACHE) {
+			for (CompiledTemplate template : CACHE.values()) {
+				template.releaseBaseWorkbook();
+			}
+			CACHE.clear();
+			totalBytes = 0;
+		}
+		synchronized (STORED_BASES) {
+			STORED_BASES.clear();
+		}
+	}
+
+	/**
+	 * Total size of cached templates.
+	 *
+	 * @return the total bytes
+	 */
+	public static long getTotalBytes() {
+		synchronized (CACHE) {
+			return totalBytes;
+		}
+	}
+
+	/**
+	 * Number of cached templates.
+	 *
+	 * @return the size
+	 */
+	public static int size() {
+		synchronized (CACHE) {
+			return CACHE.size();
+		}
+	}
+
+}
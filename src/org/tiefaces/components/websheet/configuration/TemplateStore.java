@@ -0,0 +1,49 @@
+/*
+ * Copyright 2017 TieFaces.
+ * Licensed under MIT
+ */
+package org.tiefaces.components.websheet.configuration;
+
+import java.io.IOException;
+
+/**
+ * Durable store of configured template workbooks, shared by all nodes of
+ * the application. e.g. a shared directory or a database table.
+ *
+ * Session workbooks are serialized as delta of their template only when
+ * the template can be loaded from the store, so a node which never loaded
+ * the template (failover, replication, restart) can still rebuild them.
+ * Without a store the whole workbook is serialized. The default store keeps
+ * files under java.io.tmpdir of each node, see FileTemplateStore.
+ *
+ * @author Jason Jiang
+ *
+ */
+public interface TemplateStore {
+
+	/**
+	 * Save the configured workbook of a template. Called once when the
+	 * template is compiled on this node. Saving the same key again should
+	 * keep the content.
+	 *
+	 * @param key
+	 *            the template key
+	 * @param workbookBytes
+	 *            the configured workbook saved as xlsx
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 */
+	void save(String key, byte[] workbookBytes) throws IOException;
+
+	/**
+	 * Load the configured workbook of a template.
+	 *
+	 * @param key
+	 *            the template key
+	 * @return the workbook saved as xlsx. null if not found.
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 */
+	byte[] load(String key) throws IOException;
+
+}
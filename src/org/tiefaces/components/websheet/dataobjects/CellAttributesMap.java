@@ -5,12 +5,26 @@
 package org.tiefaces.components.websheet.dataobjects;
 
 import java.io.Serializable;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import org.tiefaces.common.TieConstants;
 
 /**
  * Cell Attributes Map. Contain several related maps for cell.
- * 
+ *
+ * The attributes are stored per cell in entries keyed by packed cell key. The
+ * String keyed maps (sheetName!$col$row) are views of the entries and kept
+ * only at the API edge.
+ *
  * @author Jason Jiang
  *
  */
@@ -18,7 +32,25 @@ public class CellAttributesMap implements Serializable {
 	/**
 	 * serialVersionUID.
 	 */
-	private static final long serialVersionUID = -1080211494689904695L;
+	private static final long serialVersionUID = 5473029180344187261L;
+
+	/** no cell key. */
+	private static final long NO_KEY = -1L;
+
+	/** sheet ids of cell keys. key is sheet name. */
+	private final Map<String, Integer> sheetIds = new HashMap<>();
+
+	/** sheet names by sheet id. */
+	private final List<String> sheetNames = new ArrayList<>();
+
+	/** attributes of cells by packed cell key. */
+	private final CellKeyMap<CellEntry> cellEntries = new CellKeyMap<>();
+
+	/**
+	 * keys of the template comment map. e.g. $$ - for normal comment $ - empty
+	 * method comment $xxx -- method comment while xxx is method name.
+	 */
+	private final Set<String> commentKeys = new LinkedHashSet<>();
 
 	/**
 	 * hold comments for the current sheet config form. key is $$ - for normal
@@ -27,26 +59,26 @@ public class CellAttributesMap implements Serializable {
 	 * $init{department.name} , so here init is the method name. value is the
 	 * comments without tie commands.
 	 */
-	private Map<String, Map<String, String>> templateCommentMap;
+	private transient Map<String, Map<String, String>> templateCommentMap;
 
 	/**
 	 * hold input type for input control widget. key is
 	 * sheetName!$rowindex$columnindex value is the control type. e.g. dropdown
 	 * radiobox calendar
 	 */
-	private Map<String, String> cellInputType;
+	private transient Map<String, String> cellInputType;
 
 	/**
 	 * hold attributes for input control widget. key is
 	 * sheetName!$rowindex$columnindex value is the list of attributes.
 	 */
-	private Map<String, List<CellFormAttributes>> cellInputAttributes;
+	private transient Map<String, List<CellFormAttributes>> cellInputAttributes;
 
 	/**
 	 * hold attributes for selectItems of dropdown list or radio box. key is
 	 * sheetName!$rowindex$columnindex value is the map of attributes.
 	 */
-	private Map<String, Map<String, String>> cellSelectItemsAttributes;
+	private transient Map<String, Map<String, String>> cellSelectItemsAttributes;
 
 	/**
 	 * hold date pattern for calendar control widget. key is
@@ -54,19 +86,278 @@ public class CellAttributesMap implements Serializable {
 	 * is necessary for covert date to string
 	 */
 
-	private Map<String, String> cellDatePattern;
+	private transient Map<String, String> cellDatePattern;
 
 	/**
 	 * hold attributes for validate process. key is
 	 * sheetName!$rowindex$columnindex value is the list of attributes.
-	 * 
+	 *
 	 * which .value = rule .message = error message.
 	 */
-	private Map<String, List<CellFormAttributes>> cellValidateAttributes;
+	private transient Map<String, List<CellFormAttributes>> cellValidateAttributes;
+
+	/**
+	 * Attributes of one cell.
+	 */
+	public static final class CellEntry implements Serializable {
+
+		/** serialVersionUID. */
+		private static final long serialVersionUID = 1L;
+
+		/** normal comment. */
+		private String normalComment;
+
+		/** method comments. key is the comment key, e.g. $init. */
+		private Map<String, String> methodComments;
+
+		/** input type. */
+		private String inputType;
+
+		/** input attributes. */
+		private List<CellFormAttributes> inputAttributes;
+
+		/** select items attributes. */
+		private Map<String, String> selectItemsAttributes;
+
+		/** date pattern. */
+		private String datePattern;
+
+		/** validate attributes. */
+		private List<CellFormAttributes> validateAttributes;
+
+		/**
+		 * Gets the comment of the comment key.
+		 *
+		 * @param commentKey
+		 *            the comment key
+		 * @return the comment
+		 */
+		private String getComment(final String commentKey) {
+			if (TieConstants.NORMAL_COMMENT_KEY_IN_MAP.equals(commentKey)) {
+				return normalComment;
+			}
+			if (methodComments == null) {
+				return null;
+			}
+			return methodComments.get(commentKey);
+		}
+
+		/**
+		 * Sets the comment of the comment key.
+		 *
+		 * @param commentKey
+		 *            the comment key
+		 * @param comment
+		 *            the comment. null to remove.
+		 */
+		private void setComment(final String commentKey,
+				final String comment) {
+			if (TieConstants.NORMAL_COMMENT_KEY_IN_MAP.equals(commentKey)) {
+				normalComment = comment;
+			} else if (comment != null) {
+				if (methodComments == null) {
+					methodComments = new HashMap<>();
+				}
+				methodComments.put(commentKey, comment);
+			} else if (methodComments != null) {
+				methodComments.remove(commentKey);
+				if (methodComments.isEmpty()) {
+					methodComments = null;
+				}
+			}
+		}
+
+		/**
+		 * Copy the attributes the source has.
+		 *
+		 * @param source
+		 *            the source
+		 */
+		private void copyFrom(final CellEntry source) {
+			if (source.normalComment != null) {
+				normalComment = source.normalComment;
+			}
+			if (source.methodComments != null) {
+				for (Map.Entry<String, String> comment : source.methodComments
+						.entrySet()) {
+					setComment(comment.getKey(), comment.getValue());
+				}
+			}
+			if (source.inputType != null) {
+				inputType = source.inputType;
+			}
+			if (source.inputAttributes != null) {
+				inputAttributes = source.inputAttributes;
+			}
+			if (source.selectItemsAttributes != null) {
+				selectItemsAttributes = source.selectItemsAttributes;
+			}
+			if (source.datePattern != null) {
+				datePattern = source.datePattern;
+			}
+			if (source.validateAttributes != null) {
+				validateAttributes = source.validateAttributes;
+			}
+		}
+
+		/**
+		 * Checks if the cell has no attributes.
+		 *
+		 * @return true, if empty
+		 */
+		private boolean isEmpty() {
+			return (normalComment == null) && (methodComments == null)
+					&& (inputType == null) && (inputAttributes == null)
+					&& (selectItemsAttributes == null) && (datePattern == null)
+					&& (validateAttributes == null);
+		}
+
+		/**
+		 * Gets the normal comment.
+		 *
+		 * @return the normal comment
+		 */
+		public String getNormalComment() {
+			return normalComment;
+		}
+
+		/**
+		 * Gets the input type.
+		 *
+		 * @return the input type
+		 */
+		public String getInputType() {
+			return inputType;
+		}
+
+		/**
+		 * Sets the input type.
+		 *
+		 * @param pinputType
+		 *            the input type
+		 */
+		public void setInputType(final String pinputType) {
+			this.inputType = pinputType;
+		}
+
+		/**
+		 * Gets the input attributes.
+		 *
+		 * @return the input attributes
+		 */
+		public List<CellFormAttributes> getInputAttributes() {
+			return inputAttributes;
+		}
+
+		/**
+		 * Sets the input attributes.
+		 *
+		 * @param pinputAttributes
+		 *            the input attributes
+		 */
+		public void setInputAttributes(
+				final List<CellFormAttributes> pinputAttributes) {
+			this.inputAttributes = pinputAttributes;
+		}
+
+		/**
+		 * Gets the select items attributes.
+		 *
+		 * @return the select items attributes
+		 */
+		public Map<String, String> getSelectItemsAttributes() {
+			return selectItemsAttributes;
+		}
+
+		/**
+		 * Sets the select items attributes.
+		 *
+		 * @param pselectItemsAttributes
+		 *            the select items attributes
+		 */
+		public void setSelectItemsAttributes(
+				final Map<String, String> pselectItemsAttributes) {
+			this.selectItemsAttributes = pselectItemsAttributes;
+		}
+
+		/**
+		 * Gets the date pattern.
+		 *
+		 * @return the date pattern
+		 */
+		public String getDatePattern() {
+			return datePattern;
+		}
+
+		/**
+		 * Sets the date pattern.
+		 *
+		 * @param pdatePattern
+		 *            the date pattern
+		 */
+		public void setDatePattern(final String pdatePattern) {
+			this.datePattern = pdatePattern;
+		}
+
+		/**
+		 * Gets the validate attributes.
+		 *
+		 * @return the validate attributes
+		 */
+		public List<CellFormAttributes> getValidateAttributes() {
+			return validateAttributes;
+		}
+
+		/**
+		 * Sets the validate attributes.
+		 *
+		 * @param pvalidateAttributes
+		 *            the validate attributes
+		 */
+		public void setValidateAttributes(
+				final List<CellFormAttributes> pvalidateAttributes) {
+			this.validateAttributes = pvalidateAttributes;
+		}
+	}
+
+	/**
+	 * Attribute of cell entry shown by a String keyed view.
+	 *
+	 * @param <V>
+	 *            the value type
+	 */
+	private abstract static class Attribute<V> {
+
+		/**
+		 * Gets the attribute.
+		 *
+		 * @param entry
+		 *            the entry
+		 * @return the value
+		 */
+		abstract V get(CellEntry entry);
+
+		/**
+		 * Sets the attribute.
+		 *
+		 * @param entry
+		 *            the entry
+		 * @param value
+		 *            the value. null to remove.
+		 */
+		abstract void set(CellEntry entry, V value);
+	}
+
+	/**
+	 * Instantiates a new empty cell attributes map.
+	 */
+	public CellAttributesMap() {
+		super();
+	}
 
 	/**
 	 * constructor.
-	 * 
+	 *
 	 * @param pTemplateCommentMap
 	 *            tempdate comment map.
 	 * @param pCellInputType
@@ -87,78 +378,618 @@ public class CellAttributesMap implements Serializable {
 			final Map<String, Map<String, String>> pCellSelectItemsAttributes,
 			final Map<String, String> pCellDatePattern,
 			final Map<String, List<CellFormAttributes>> pCellValidateAttributes) {
-		this.templateCommentMap = pTemplateCommentMap;
-		this.cellInputType = pCellInputType;
-		this.cellInputAttributes = pCellInputAttributes;
-		this.cellSelectItemsAttributes = pCellSelectItemsAttributes;
-		this.cellDatePattern = pCellDatePattern;
-		this.cellValidateAttributes = pCellValidateAttributes;
+		this();
+		putAll(getTemplateCommentMap(), pTemplateCommentMap);
+		putAll(getCellInputType(), pCellInputType);
+		putAll(getCellInputAttributes(), pCellInputAttributes);
+		putAll(getCellSelectItemsAttributes(), pCellSelectItemsAttributes);
+		putAll(getCellDatePattern(), pCellDatePattern);
+		putAll(getCellValidateAttributes(), pCellValidateAttributes);
+	}
+
+	/**
+	 * Put all entries of source map into the view.
+	 *
+	 * @param <V>
+	 *            the value type
+	 * @param view
+	 *            the view
+	 * @param source
+	 *            the source map. could be null.
+	 */
+	private static <V> void putAll(final Map<String, V> view,
+			final Map<String, V> source) {
+		if (source != null) {
+			view.putAll(source);
+		}
 	}
 
 	/**
 	 * clear all the related maps.
 	 */
 	public final void clear() {
-		if (this.templateCommentMap != null) {
-			this.templateCommentMap.clear();
+		cellEntries.clear();
+		sheetIds.clear();
+		sheetNames.clear();
+		commentKeys.clear();
+	}
+
+	/**
+	 * Gets the attributes of the cell. Same as lookup each map with key
+	 * sheetName!$col$row, without building the string key.
+	 *
+	 * @param sheetName
+	 *            the sheet name
+	 * @param row
+	 *            the row
+	 * @param col
+	 *            the col
+	 * @return the cell entry. null if the cell has no attributes.
+	 */
+	public final CellEntry getCellEntry(final String sheetName,
+			final int row, final int col) {
+		Integer sheetId = sheetIds.get(sheetName);
+		if (sheetId == null) {
+			return null;
 		}
-		if (this.cellDatePattern != null) {
-			this.cellDatePattern.clear();
+		return cellEntries.get(CellKey.of(sheetId, row, col));
+	}
+
+	/**
+	 * Gets the attributes of the cell. Create it if not exist.
+	 *
+	 * @param sheetName
+	 *            the sheet name
+	 * @param row
+	 *            the row
+	 * @param col
+	 *            the col
+	 * @return the cell entry
+	 */
+	public final CellEntry getOrAddCellEntry(final String sheetName,
+			final int row, final int col) {
+		Integer sheetId = sheetIds.get(sheetName);
+		if (sheetId == null) {
+			sheetId = sheetNames.size();
+			sheetIds.put(sheetName, sheetId);
+			sheetNames.add(sheetName);
 		}
-		if (this.cellInputAttributes != null) {
-			this.cellInputAttributes.clear();
+		return getOrAddEntry(CellKey.of(sheetId, row, col));
+	}
+
+	/**
+	 * Put the comment of the cell.
+	 *
+	 * @param sheetName
+	 *            the sheet name
+	 * @param row
+	 *            the row
+	 * @param col
+	 *            the col
+	 * @param commentKey
+	 *            the comment key. i.e. $$ for normal comment or method name.
+	 * @param comment
+	 *            the comment
+	 */
+	public final void putComment(final String sheetName, final int row,
+			final int col, final String commentKey, final String comment) {
+		commentKeys.add(commentKey);
+		getOrAddCellEntry(sheetName, row, col).setComment(commentKey,
+				comment);
+	}
+
+	/**
+	 * Put all the attributes of source. Attributes of the same cell are
+	 * replaced.
+	 *
+	 * @param source
+	 *            the source
+	 */
+	public final void putAll(final CellAttributesMap source) {
+		commentKeys.addAll(source.commentKeys);
+		for (long key : source.cellEntries.keys()) {
+			getOrAddCellEntry(
+					source.sheetNames.get(CellKey.getSheetId(key)),
+					CellKey.getRow(key), CellKey.getCol(key))
+							.copyFrom(source.cellEntries.get(key));
+		}
+	}
+
+	/**
+	 * Gets the entry of packed cell key. Create it if not exist.
+	 *
+	 * @param key
+	 *            the key
+	 * @return the cell entry
+	 */
+	private CellEntry getOrAddEntry(final long key) {
+		CellEntry cellEntry = cellEntries.get(key);
+		if (cellEntry == null) {
+			cellEntry = new CellEntry();
+			cellEntries.put(key, cellEntry);
+		}
+		return cellEntry;
+	}
+
+	/**
+	 * Gets the packed cell key of string key.
+	 *
+	 * @param skey
+	 *            the string key. i.e. sheetName!$col$row
+	 * @param add
+	 *            add sheet id if not exist.
+	 * @return the key. NO_KEY if not valid or sheet not exist.
+	 */
+	private long toCellKey(final Object skey, final boolean add) {
+		if (!(skey instanceof String)) {
+			return NO_KEY;
 		}
-		if (this.cellInputType != null) {
-			this.cellInputType.clear();
+		int[] position = CellKey.parsePosition((String) skey);
+		if (position == null) {
+			return NO_KEY;
 		}
-		if (this.cellSelectItemsAttributes != null) {
-			this.cellSelectItemsAttributes.clear();
+		String sheetName = CellKey.parseSheetName((String) skey);
+		Integer sheetId = sheetIds.get(sheetName);
+		if (sheetId == null) {
+			if (!add) {
+				return NO_KEY;
+			}
+			sheetId = sheetNames.size();
+			sheetIds.put(sheetName, sheetId);
+			sheetNames.add(sheetName);
 		}
+		return CellKey.of(sheetId, position[0], position[1]);
+	}
+
+	/**
+	 * Gets the string key of packed cell key.
+	 *
+	 * @param key
+	 *            the key
+	 * @return the string key. i.e. sheetName!$col$row
+	 */
+	private String toStringKey(final long key) {
+		return sheetNames.get(CellKey.getSheetId(key)) + "!"
+				+ TieConstants.CELL_ADDR_PRE_FIX + CellKey.getCol(key)
+				+ TieConstants.CELL_ADDR_PRE_FIX + CellKey.getRow(key);
+	}
+
+	/**
+	 * Set attribute of the entry. Remove the entry if it become empty.
+	 *
+	 * @param <V>
+	 *            the value type
+	 * @param attribute
+	 *            the attribute
+	 * @param key
+	 *            the packed cell key
+	 * @param entry
+	 *            the entry
+	 * @param value
+	 *            the value. null to remove.
+	 */
+	private <V> void setAttribute(final Attribute<V> attribute,
+			final long key, final CellEntry entry, final V value) {
+		attribute.set(entry, value);
+		if (entry.isEmpty()) {
+			cellEntries.remove(key);
+		}
+	}
+
+	/**
+	 * String keyed view of one attribute of the entries.
+	 *
+	 * @param <V>
+	 *            the value type
+	 */
+	private final class AttributeMap<V> extends AbstractMap<String, V> {
+
+		/** the attribute. */
+		private final Attribute<V> attribute;
+
+		/**
+		 * Instantiates a new attribute map.
+		 *
+		 * @param pattribute
+		 *            the attribute
+		 */
+		AttributeMap(final Attribute<V> pattribute) {
+			super();
+			this.attribute = pattribute;
+		}
+
+		@Override
+		public V get(final Object key) {
+			long cellKey = toCellKey(key, false);
+			if (cellKey == NO_KEY) {
+				return null;
+			}
+			CellEntry entry = cellEntries.get(cellKey);
+			if (entry == null) {
+				return null;
+			}
+			return attribute.get(entry);
+		}
+
+		@Override
+		public boolean containsKey(final Object key) {
+			return get(key) != null;
+		}
+
+		@Override
+		public V put(final String key, final V value) {
+			long cellKey = toCellKey(key, true);
+			if (cellKey == NO_KEY) {
+				throw new IllegalArgumentException(
+						"Not a cell key [" + key + "]");
+			}
+			CellEntry entry = getOrAddEntry(cellKey);
+			V old = attribute.get(entry);
+			setAttribute(attribute, cellKey, entry, value);
+			return old;
+		}
+
+		@Override
+		public V remove(final Object key) {
+			long cellKey = toCellKey(key, false);
+			if (cellKey == NO_KEY) {
+				return null;
+			}
+			CellEntry entry = cellEntries.get(cellKey);
+			if (entry == null) {
+				return null;
+			}
+			V old = attribute.get(entry);
+			setAttribute(attribute, cellKey, entry, null);
+			return old;
+		}
+
+		@Override
+		public Set<Map.Entry<String, V>> entrySet() {
+			return new AbstractSet<Map.Entry<String, V>>() {
+
+				@Override
+				public int size() {
+					int count = 0;
+					for (long key : cellEntries.keys()) {
+						if (attribute.get(cellEntries.get(key)) != null) {
+							count++;
+						}
+					}
+					return count;
+				}
+
+				@Override
+				public Iterator<Map.Entry<String, V>> iterator() {
+					return new AttributeIterator<>(attribute);
+				}
+			};
+		}
+	}
+
+	/**
+	 * Iterator of the String keyed view. Iterates a snapshot of the keys.
+	 *
+	 * @param <V>
+	 *            the value type
+	 */
+	private final class AttributeIterator<V>
+			implements Iterator<Map.Entry<String, V>> {
+
+		/** the attribute. */
+		private final Attribute<V> attribute;
+
+		/** keys snapshot. */
+		private final long[] keys;
+
+		/** index of next key. */
+		private int next;
+
+		/** key of last returned entry. */
+		private long last = NO_KEY;
+
+		/**
+		 * Instantiates a new attribute iterator.
+		 *
+		 * @param pattribute
+		 *            the attribute
+		 */
+		AttributeIterator(final Attribute<V> pattribute) {
+			super();
+			this.attribute = pattribute;
+			this.keys = cellEntries.keys();
+			skip();
+		}
+
+		/**
+		 * Skip keys of entries without the attribute.
+		 */
+		private void skip() {
+			while ((next < keys.length) && ((cellEntries.get(keys[next]) == null)
+					|| (attribute.get(cellEntries.get(keys[next])) == null))) {
+				next++;
+			}
+		}
+
+		@Override
+		public boolean hasNext() {
+			return next < keys.length;
+		}
+
+		@Override
+		public Map.Entry<String, V> next() {
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			final long key = keys[next++];
+			skip();
+			last = key;
+			return new AbstractMap.SimpleEntry<String, V>(toStringKey(key),
+					attribute.get(cellEntries.get(key))) {
+
+				private static final long serialVersionUID = 1L;
+
+				@Override
+				public V setValue(final V value) {
+					setAttribute(attribute, key, getOrAddEntry(key), value);
+					return super.setValue(value);
+				}
+			};
+		}
+
+		@Override
+		public void remove() {
+			if (last == NO_KEY) {
+				throw new IllegalStateException();
+			}
+			CellEntry entry = cellEntries.get(last);
+			if (entry != null) {
+				setAttribute(attribute, last, entry, null);
+			}
+			last = NO_KEY;
+		}
+	}
+
+	/**
+	 * Comment attribute of the comment key.
+	 *
+	 * @param commentKey
+	 *            the comment key
+	 * @return the attribute
+	 */
+	private static Attribute<String> commentAttribute(
+			final String commentKey) {
+		return new Attribute<String>() {
+
+			@Override
+			String get(final CellEntry entry) {
+				return entry.getComment(commentKey);
+			}
 
+			@Override
+			void set(final CellEntry entry, final String value) {
+				entry.setComment(commentKey, value);
+			}
+		};
+	}
+
+	/**
+	 * View of comments. Key is the comment key, value is the String keyed
+	 * view of the comments.
+	 */
+	private final class CommentMap
+			extends AbstractMap<String, Map<String, String>> {
+
+		/** views of comment keys. */
+		private final Map<String, AttributeMap<String>> views = new HashMap<>();
+
+		/**
+		 * Gets the view of the comment key.
+		 *
+		 * @param commentKey
+		 *            the comment key
+		 * @return the view
+		 */
+		private AttributeMap<String> getView(final String commentKey) {
+			AttributeMap<String> view = views.get(commentKey);
+			if (view == null) {
+				view = new AttributeMap<>(commentAttribute(commentKey));
+				views.put(commentKey, view);
+			}
+			return view;
+		}
+
+		@Override
+		public Map<String, String> get(final Object key) {
+			if (!commentKeys.contains(key)) {
+				return null;
+			}
+			return getView((String) key);
+		}
+
+		@Override
+		public boolean containsKey(final Object key) {
+			return commentKeys.contains(key);
+		}
+
+		@Override
+		public Map<String, String> put(final String key,
+				final Map<String, String> value) {
+			AttributeMap<String> view = getView(key);
+			if (value == view) {
+				if (commentKeys.add(key)) {
+					return null;
+				}
+				return view;
+			}
+			Map<String, String> old = null;
+			if (!commentKeys.add(key)) {
+				old = new HashMap<>(view);
+				view.clear();
+			}
+			if (value != null) {
+				view.putAll(value);
+			}
+			return old;
+		}
+
+		@Override
+		public Map<String, String> remove(final Object key) {
+			if (!commentKeys.contains(key)) {
+				return null;
+			}
+			AttributeMap<String> view = getView((String) key);
+			Map<String, String> old = new HashMap<>(view);
+			view.clear();
+			commentKeys.remove(key);
+			return old;
+		}
+
+		@Override
+		public Set<Map.Entry<String, Map<String, String>>> entrySet() {
+			return new AbstractSet<Map.Entry<String, Map<String, String>>>() {
+
+				@Override
+				public int size() {
+					return commentKeys.size();
+				}
+
+				@Override
+				public Iterator<Map.Entry<String, Map<String, String>>> iterator() {
+					final Iterator<String> it = new ArrayList<>(commentKeys)
+							.iterator();
+					return new Iterator<Map.Entry<String, Map<String, String>>>() {
+
+						/** last returned key. */
+						private String last;
+
+						@Override
+						public boolean hasNext() {
+							return it.hasNext();
+						}
+
+						@Override
+						public Map.Entry<String, Map<String, String>> next() {
+							last = it.next();
+							return new AbstractMap.SimpleImmutableEntry<String, Map<String, String>>(
+									last, getView(last));
+						}
+
+						@Override
+						public void remove() {
+							CommentMap.this.remove(last);
+						}
+					};
+				}
+			};
+		}
 	}
 
 	/**
 	 * return templatecommentmap.
-	 * 
+	 *
 	 * @return templatecommentmap.
 	 */
 	public final Map<String, Map<String, String>> getTemplateCommentMap() {
+		if (templateCommentMap == null) {
+			templateCommentMap = new CommentMap();
+		}
 		return templateCommentMap;
 	}
 
 	/**
 	 * return cellinputtype.
-	 * 
+	 *
 	 * @return cellinputtype.
 	 */
 	public final Map<String, String> getCellInputType() {
+		if (cellInputType == null) {
+			cellInputType = new AttributeMap<>(new Attribute<String>() {
+
+				@Override
+				String get(final CellEntry entry) {
+					return entry.inputType;
+				}
+
+				@Override
+				void set(final CellEntry entry, final String value) {
+					entry.inputType = value;
+				}
+			});
+		}
 		return cellInputType;
 	}
 
 	/**
 	 * return cellinputattributes.
-	 * 
+	 *
 	 * @return cellinputattributes.
 	 */
 	public final Map<String, List<CellFormAttributes>> getCellInputAttributes() {
+		if (cellInputAttributes == null) {
+			cellInputAttributes = new AttributeMap<>(
+					new Attribute<List<CellFormAttributes>>() {
+
+						@Override
+						List<CellFormAttributes> get(final CellEntry entry) {
+							return entry.inputAttributes;
+						}
+
+						@Override
+						void set(final CellEntry entry,
+								final List<CellFormAttributes> value) {
+							entry.inputAttributes = value;
+						}
+					});
+		}
 		return cellInputAttributes;
 	}
 
 	/**
 	 * return cellselectitemattributes.
-	 * 
+	 *
 	 * @return cellselectitemattributes.
 	 */
 	public final Map<String, Map<String, String>> getCellSelectItemsAttributes() {
+		if (cellSelectItemsAttributes == null) {
+			cellSelectItemsAttributes = new AttributeMap<>(
+					new Attribute<Map<String, String>>() {
+
+						@Override
+						Map<String, String> get(final CellEntry entry) {
+							return entry.selectItemsAttributes;
+						}
+
+						@Override
+						void set(final CellEntry entry,
+								final Map<String, String> value) {
+							entry.selectItemsAttributes = value;
+						}
+					});
+		}
 		return cellSelectItemsAttributes;
 	}
 
 	/**
 	 * return celldatepattern.
-	 * 
+	 *
 	 * @return celldatepattern.
 	 */
 	public final Map<String, String> getCellDatePattern() {
+		if (cellDatePattern == null) {
+			cellDatePattern = new AttributeMap<>(new Attribute<String>() {
+
+				@Override
+				String get(final CellEntry entry) {
+					return entry.datePattern;
+				}
+
+				@Override
+				void set(final CellEntry entry, final String value) {
+					entry.datePattern = value;
+				}
+			});
+		}
 		return cellDatePattern;
 	}
 
@@ -168,6 +999,22 @@ public class CellAttributesMap implements Serializable {
 	 * @return the cellValidateAttributes
 	 */
 	public final Map<String, List<CellFormAttributes>> getCellValidateAttributes() {
+		if (cellValidateAttributes == null) {
+			cellValidateAttributes = new AttributeMap<>(
+					new Attribute<List<CellFormAttributes>>() {
+
+						@Override
+						List<CellFormAttributes> get(final CellEntry entry) {
+							return entry.validateAttributes;
+						}
+
+						@Override
+						void set(final CellEntry entry,
+								final List<CellFormAttributes> value) {
+							entry.validateAttributes = value;
+						}
+					});
+		}
 		return cellValidateAttributes;
 	}
 
@@ -179,7 +1026,9 @@ public class CellAttributesMap implements Serializable {
 	 */
 	public final void setCellValidateAttributes(
 			final Map<String, List<CellFormAttributes>> pcellValidateAttributes) {
-		this.cellValidateAttributes = pcellValidateAttributes;
+		Map<String, List<CellFormAttributes>> view = getCellValidateAttributes();
+		view.clear();
+		putAll(view, pcellValidateAttributes);
 	}
 
-}
\ No newline at end of file
+}
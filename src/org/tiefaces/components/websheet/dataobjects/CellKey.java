@@ -0,0 +1,130 @@
+/*
+ * Copyright 2017 TieFaces.
+ * Licensed under MIT
+ */
+
+package org.tiefaces.components.websheet.dataobjects;
+
+import org.tiefaces.common.TieConstants;
+
+/**
+ * Cell identity packed into a long. sheet id (16 bits), row (32 bits) and
+ * column (16 bits). Used as key of lookup tables in place of
+ * "sheetName!$col$row" strings, which are kept only at the API edge.
+ *
+ * @author Jason Jiang
+ *
+ */
+public final class CellKey {
+
+	/** bits of column. */
+	private static final int COL_BITS = 16;
+
+	/** bits of column and row. */
+	private static final int SHEET_SHIFT = 48;
+
+	/** mask of 16 bits. */
+	private static final long MASK_16 = 0xFFFFL;
+
+	/** mask of 32 bits. */
+	private static final long MASK_32 = 0xFFFFFFFFL;
+
+	/**
+	 * hide constructor.
+	 */
+	private CellKey() {
+		// not called
+	}
+
+	/**
+	 * Pack the cell key.
+	 *
+	 * @param sheetId
+	 *            the sheet id
+	 * @param row
+	 *            the row
+	 * @param col
+	 *            the col
+	 * @return the key
+	 */
+	public static long of(final int sheetId, final int row, final int col) {
+		return ((sheetId & MASK_16) << SHEET_SHIFT)
+				| ((row & MASK_32) << COL_BITS) | (col & MASK_16);
+	}
+
+	/**
+	 * Gets the sheet id.
+	 *
+	 * @param key
+	 *            the key
+	 * @return the sheet id
+	 */
+	public static int getSheetId(final long key) {
+		return (int) ((key >>> SHEET_SHIFT) & MASK_16);
+	}
+
+	/**
+	 * Gets the row.
+	 *
+	 * @param key
+	 *            the key
+	 * @return the row
+	 */
+	public static int getRow(final long key) {
+		return (int) ((key >>> COL_BITS) & MASK_32);
+	}
+
+	/**
+	 * Gets the col.
+	 *
+	 * @param key
+	 *            the key
+	 * @return the col
+	 */
+	public static int getCol(final long key) {
+		return (int) (key & MASK_16);
+	}
+
+	/**
+	 * Parse the position part of a string key. i.e. $col$row, the part after
+	 * "sheetName!".
+	 *
+	 * @param skey
+	 *            the string key
+	 * @return {row, col}. null if not a valid key.
+	 */
+	public static int[] parsePosition(final String skey) {
+		int start = skey.lastIndexOf('!') + 1;
+		if (!skey.startsWith(TieConstants.CELL_ADDR_PRE_FIX, start)) {
+			return null;
+		}
+		int rowStart = skey.indexOf(TieConstants.CELL_ADDR_PRE_FIX,
+				start + 1);
+		if (rowStart < 0) {
+			return null;
+		}
+		try {
+			int col = Integer.parseInt(skey.substring(start + 1, rowStart));
+			int row = Integer.parseInt(skey.substring(rowStart + 1));
+			return new int[] { row, col };
+		} catch (NumberFormatException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Gets the sheet name part of a string key.
+	 *
+	 * @param skey
+	 *            the string key
+	 * @return the sheet name. empty if no sheet name.
+	 */
+	public static String parseSheetName(final String skey) {
+		int index = skey.lastIndexOf('!');
+		if (index < 0) {
+			return "";
+		}
+		return skey.substring(0, index);
+	}
+
+}
@@ -0,0 +1,220 @@
+/*
+ * Copyright 2017 TieFaces.
+ * Licensed under MIT
+ */
+
+package org.tiefaces.components.websheet.dataobjects;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * Map with primitive long keys, e.g. keys packed by CellKey. Open addressing
+ * with linear probing, so lookup doesn't box the key or allocate.
+ *
+ * @author Jason Jiang
+ *
+ * @param <V>
+ *            the value type
+ */
+public class CellKeyMap<V> implements Serializable {
+
+	/** serialVersionUID. */
+	private static final long serialVersionUID = 1L;
+
+	/** default capacity. */
+	private static final int DEFAULT_CAPACITY = 16;
+
+	/** keys. */
+	private long[] keys;
+
+	/** values. null means empty slot. */
+	private Object[] values;
+
+	/** number of entries. */
+	private int size;
+
+	/**
+	 * Instantiates a new map.
+	 */
+	public CellKeyMap() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Instantiates a new map.
+	 *
+	 * @param expectedSize
+	 *            the expected size
+	 */
+	public CellKeyMap(final int expectedSize) {
+		super();
+		int capacity = DEFAULT_CAPACITY;
+		while (capacity < expectedSize * 2) {
+			capacity <<= 1;
+		}
+		keys = new long[capacity];
+		values = new Object[capacity];
+	}
+
+	/**
+	 * Slot index of the key.
+	 *
+	 * @param key
+	 *            the key
+	 * @param mask
+	 *            the mask of table length
+	 * @return the index
+	 */
+	private static int hash(final long key, final int mask) {
+		long h = key * 0x9E3779B97F4A7C15L;
+		return (int) (h ^ (h >>> 32)) & mask;
+	}
+
+	/**
+	 * Gets the value.
+	 *
+	 * @param key
+	 *            the key
+	 * @return the value. null if not exist.
+	 */
+	@SuppressWarnings("unchecked")
+	public final V get(final long key) {
+		int mask = keys.length - 1;
+		int index = hash(key, mask);
+		while (values[index] != null) {
+			if (keys[index] == key) {
+				return (V) values[index];
+			}
+			index = (index + 1) & mask;
+		}
+		return null;
+	}
+
+	/**
+	 * Put the value.
+	 *
+	 * @param key
+	 *            the key
+	 * @param value
+	 *            the value. must not be null.
+	 * @return the previous value
+	 */
+	@SuppressWarnings("unchecked")
+	public final V put(final long key, final V value) {
+		if (value == null) {
+			throw new IllegalArgumentException("null value");
+		}
+		if ((size + 1) * 2 > keys.length) {
+			resize(keys.length << 1);
+		}
+		int mask = keys.length - 1;
+		int index = hash(key, mask);
+		while (values[index] != null) {
+			if (keys[index] == key) {
+				V old = (V) values[index];
+				values[index] = value;
+				return old;
+			}
+			index = (index + 1) & mask;
+		}
+		keys[index] = key;
+		values[index] = value;
+		size++;
+		return null;
+	}
+
+	/**
+	 * Remove the value. Entries after the removed one in the probe sequence
+	 * are moved back, so lookups never stop at the emptied slot.
+	 *
+	 * @param key
+	 *            the key
+	 * @return the removed value. null if not exist.
+	 */
+	@SuppressWarnings("unchecked")
+	public final V remove(final long key) {
+		int mask = keys.length - 1;
+		int index = hash(key, mask);
+		while (values[index] != null) {
+			if (keys[index] == key) {
+				V old = (V) values[index];
+				values[index] = null;
+				size--;
+				int hole = index;
+				int next = (index + 1) & mask;
+				while (values[next] != null) {
+					int home = hash(keys[next], mask);
+					if (((next - home) & mask) >= ((next - hole) & mask)) {
+						keys[hole] = keys[next];
+						values[hole] = values[next];
+						values[next] = null;
+						hole = next;
+					}
+					next = (next + 1) & mask;
+				}
+				return old;
+			}
+			index = (index + 1) & mask;
+		}
+		return null;
+	}
+
+	/**
+	 * Keys of the map.
+	 *
+	 * @return the keys in table order
+	 */
+	public final long[] keys() {
+		long[] result = new long[size];
+		int count = 0;
+		for (int i = 0; i < values.length; i++) {
+			if (values[i] != null) {
+				result[count++] = keys[i];
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Resize the table.
+	 *
+	 * @param capacity
+	 *            the new capacity
+	 */
+	private void resize(final int capacity) {
+		long[] oldKeys = keys;
+		Object[] oldValues = values;
+		keys = new long[capacity];
+		values = new Object[capacity];
+		int mask = capacity - 1;
+		for (int i = 0; i < oldKeys.length; i++) {
+			if (oldValues[i] != null) {
+				int index = hash(oldKeys[i], mask);
+				while (values[index] != null) {
+					index = (index + 1) & mask;
+				}
+				keys[index] = oldKeys[i];
+				values[index] = oldValues[i];
+			}
+		}
+	}
+
+	/**
+	 * Number of entries.
+	 *
+	 * @return the size
+	 */
+	public final int size() {
+		return size;
+	}
+
+	/**
+	 * Clear the map.
+	 */
+	public final void clear() {
+		Arrays.fill(values, null);
+		size = 0;
+	}
+
+}
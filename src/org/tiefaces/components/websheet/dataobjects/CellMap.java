@@ -18,7 +18,12 @@ import java.util.logging.Logger;
 import javax.faces.context.FacesContext;
 
 import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.PictureData;
 import org.tiefaces.components.websheet.TieWebSheetBean;
+import org.tiefaces.components.websheet.chart.ChartImage;
+import org.tiefaces.components.websheet.service.PictureCache;
+import org.tiefaces.components.websheet.service.PictureCache.CachedPicture;
+import org.tiefaces.components.websheet.service.SessionPictureCache;
 import org.tiefaces.components.websheet.utility.CellUtility;
 
 /**
@@ -159,28 +164,36 @@ public class CellMap implements Serializable, java.util.Map {
 	}
 
 	/**
-	 * Put picture image to session map and return the key to web.
+	 * Return content key of picture to web. The picture is served from
+	 * application picture cache, or from session picture cache if too large
+	 * to cache or evicted before browser requests it.
 	 * 
 	 * @param rowIndex
 	 *            the row index of the cell which contains picture.
 	 * @param colIndex
 	 *            the column index of the cell which contains picture.
-	 * @return the key of the picture image in the session map.
+	 * @return the content key of the picture.
 	 */
 	private String loadPicture(final int rowIndex, final int colIndex) {
 
 		FacesCell facesCell = parent.getCellHelper()
 				.getFacesCellWithRowColFromCurrentPage(rowIndex, colIndex);
 		if (facesCell != null && facesCell.isContainPic()) {
-			FacesContext context = FacesContext.getCurrentInstance();
 			String pictureId = facesCell.getPictureId();
-			String pictureViewId = Integer.toHexString(
-					System.identityHashCode(parent.getWb())) + pictureId;
-			Map<String, Object> sessionMap = context.getExternalContext()
-					.getSessionMap();
-			if (sessionMap.get(pictureViewId) == null) {
-				sessionMap.put(pictureViewId, parent.getPicturesMap()
-						.get(pictureId).getPictureData());
+			String pictureViewId = parent.getPicHelper()
+					.getPictureKey(pictureId);
+			FacesContext context = FacesContext.getCurrentInstance();
+			if ((pictureViewId != null) && (context != null)) {
+				CachedPicture picture = PictureCache.get(pictureViewId);
+				if (picture == null) {
+					PictureData picData = parent.getPicturesMap()
+							.get(pictureId).getPictureData();
+					picture = new CachedPicture(picData.getData(),
+							picData.getMimeType());
+				}
+				SessionPictureCache.getInstance(
+						context.getExternalContext().getSessionMap())
+						.put(pictureViewId, picture);
 			}
 			return pictureViewId;
 		} else {
@@ -189,7 +202,9 @@ public class CellMap implements Serializable, java.util.Map {
 	}
 
 	/**
-	 * Put chart image to session map and return the key to web.
+	 * Put chart image to session map and return the key to web. The chart is
+	 * rendered here if not rendered yet or its data changed. The key contains
+	 * the content key of image, so the url changes with the chart.
 	 * 
 	 * @param rowIndex
 	 *            the row index of the cell which contains picture.
@@ -205,14 +220,18 @@ public class CellMap implements Serializable, java.util.Map {
 		if (facesCell != null && facesCell.isContainChart()) {
 			FacesContext context = FacesContext.getCurrentInstance();
 			String chartId = facesCell.getChartId();
+			ChartImage image = parent.getChartHelper().getChartImage(chartId);
+			if (image == null) {
+				return null;
+			}
 			String chartViewId = Integer.toHexString(
-					System.identityHashCode(parent.getWb())) + chartId;
+					System.identityHashCode(parent.getWb())) + chartId + "."
+					+ image.getKey();
 			if (context != null) {
 				Map<String, Object> sessionMap = context
 						.getExternalContext().getSessionMap();
 				if (sessionMap.get(chartViewId) == null) {
-					sessionMap.put(chartViewId, parent.getCharsData()
-							.getChartsMap().get(chartId));
+					sessionMap.put(chartViewId, image);
 				}
 			}
 			return chartViewId;
@@ -221,6 +240,27 @@ public class CellMap implements Serializable, java.util.Map {
 		}
 	}
 
+	/**
+	 * Return chart data as json for client side rendering.
+	 * 
+	 * @param rowIndex
+	 *            the row index of the cell which contains chart.
+	 * @param colIndex
+	 *            the column index of the cell which contains chart.
+	 * @return the json. null if no chart in the cell.
+	 */
+	private String loadChartJson(final int rowIndex, final int colIndex) {
+
+		FacesCell facesCell = parent.getCellHelper()
+				.getFacesCellWithRowColFromCurrentPage(rowIndex, colIndex);
+		if (facesCell != null && facesCell.isContainChart()) {
+			return parent.getChartHelper()
+					.getChartJson(facesCell.getChartId());
+		} else {
+			return null;
+		}
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -242,6 +282,9 @@ public class CellMap implements Serializable, java.util.Map {
 			}
 			if (mkey.isCharted()) {
 				result = loadChart(mkey.getRowIndex(), mkey.getColIndex());
+			} else if (mkey.isChartJson()) {
+				result = loadChartJson(mkey.getRowIndex(),
+						mkey.getColIndex());
 			} else if (mkey.isPictured()) {
 				result = loadPicture(mkey.getRowIndex(),
 						mkey.getColIndex());
@@ -292,8 +335,8 @@ public class CellMap implements Serializable, java.util.Map {
 							newValue);
 				}
 				// patch to avoid not updated downloaded file
-				CellUtility.copyCell(poiCell.getSheet(), poiCell.getRow(), poiCell.getRow(), poiCell.getColumnIndex(),false);
-				parent.getCellHelper().reCalc();
+				Cell refreshedCell = CellUtility.copyCell(poiCell.getSheet(), poiCell.getRow(), poiCell.getRow(), poiCell.getColumnIndex(),false);
+				parent.getCellHelper().reCalcDependents(refreshedCell);
 			}
 
 			return value;
@@ -334,4 +377,4 @@ public class CellMap implements Serializable, java.util.Map {
 		}
 		return newValue;
 	}
-}
\ No newline at end of file
+}
\ No newline at end of file
@@ -47,6 +47,9 @@ public class CellMapKey implements Serializable {
 	/** The charted. */
 	private boolean charted = false;
 
+	/** The chart json. */
+	private boolean chartJson = false;
+
 	/** The parse success. */
 	private boolean parseSuccess = false;
 
@@ -73,6 +76,9 @@ public class CellMapKey implements Serializable {
 				String key = keyList[2].toLowerCase();
 				if (key.equalsIgnoreCase(TieConstants.CELL_MAP_KEY_CHART)) {
 					this.charted = true;
+				} else if (key.equalsIgnoreCase(
+						TieConstants.CELL_MAP_KEY_CHART_JSON)) {
+					this.chartJson = true;
 				} else if (key.equalsIgnoreCase(
 						TieConstants.CELL_MAP_KEY_PICTURE)) {
 
@@ -158,6 +164,15 @@ public class CellMapKey implements Serializable {
 		return charted;
 	}
 
+	/**
+	 * Checks if is chart json.
+	 *
+	 * @return true, if is chart json
+	 */
+	public final boolean isChartJson() {
+		return chartJson;
+	}
+
 	/**
 	 * Obtain a human readable representation.
 	 * 
@@ -181,6 +196,8 @@ public class CellMapKey implements Serializable {
 		sb.append("pictured = " + pictured);
 		sb.append(",");
 		sb.append("charted = " + charted);
+		sb.append(",");
+		sb.append("chartJson = " + chartJson);
 		sb.append("}");
 		return sb.toString();
 	}
@@ -0,0 +1,163 @@
+/*
+ * Copyright 2017 TieFaces.
+ * Licensed under MIT
+ */
+package org.tiefaces.components.websheet.dataobjects;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Row ranges deleted from a sheet in one delete. Maps row index before the
+ * delete to row index after it, so the structures keyed by row are moved
+ * once for all the ranges instead of once per range. Adjacent ranges are
+ * joined.
+ *
+ * @author Jason Jiang
+ *
+ */
+public class DeletedRows {
+
+	/** first row to last row of each range. */
+	private final TreeMap<Integer, Integer> ranges = new TreeMap<>();
+
+	/**
+	 * first row of range to number of rows deleted up to the end of the
+	 * range. built on demand.
+	 */
+	private TreeMap<Integer, Integer> deletedThrough = null;
+
+	/**
+	 * Adds the range. Ranges must not overlap.
+	 *
+	 * @param firstRow
+	 *            the first row
+	 * @param lastRow
+	 *            the last row
+	 */
+	public final void add(final int firstRow, final int lastRow) {
+		if (lastRow < firstRow) {
+			return;
+		}
+		int first = firstRow;
+		int last = lastRow;
+		Map.Entry<Integer, Integer> lower = ranges.lowerEntry(first);
+		if ((lower != null) && (lower.getValue() == first - 1)) {
+			first = lower.getKey();
+		}
+		Integer higherLast = ranges.remove(last + 1);
+		if (higherLast != null) {
+			last = higherLast;
+		}
+		ranges.put(first, last);
+		deletedThrough = null;
+	}
+
+	/**
+	 * Checks if nothing deleted.
+	 *
+	 * @return true, if empty
+	 */
+	public final boolean isEmpty() {
+		return ranges.isEmpty();
+	}
+
+	/**
+	 * Gets the first deleted row.
+	 *
+	 * @return the first row. -1 if nothing deleted.
+	 */
+	public final int getFirstRow() {
+		if (ranges.isEmpty()) {
+			return -1;
+		}
+		return ranges.firstKey();
+	}
+
+	/**
+	 * Gets the ranges, first row to last row, ordered from bottom.
+	 *
+	 * @return the ranges
+	 */
+	public final Map<Integer, Integer> getRangesFromBottom() {
+		return Collections.unmodifiableMap(ranges.descendingMap());
+	}
+
+	/**
+	 * Checks if the row is deleted.
+	 *
+	 * @param row
+	 *            the row
+	 * @return true, if deleted
+	 */
+	public final boolean isDeleted(final int row) {
+		return isDeleted(row, row);
+	}
+
+	/**
+	 * Checks if all the rows from first row to last row are deleted.
+	 *
+	 * @param firstRow
+	 *            the first row
+	 * @param lastRow
+	 *            the last row
+	 * @return true, if deleted
+	 */
+	public final boolean isDeleted(final int firstRow, final int lastRow) {
+		Map.Entry<Integer, Integer> range = ranges.floorEntry(firstRow);
+		return (range != null) && (lastRow <= range.getValue());
+	}
+
+	/**
+	 * Count the rows deleted in ranges ending above the row. i.e. number of
+	 * rows the row moves up, or would move up if it's not deleted.
+	 *
+	 * @param row
+	 *            the row
+	 * @return number of rows
+	 */
+	public final int countDeletedAbove(final int row) {
+		Map.Entry<Integer, Integer> range = ranges.floorEntry(row);
+		if (range == null) {
+			return 0;
+		}
+		int count = getDeletedThrough().get(range.getKey());
+		if (row <= range.getValue()) {
+			count -= range.getValue() - range.getKey() + 1;
+		}
+		return count;
+	}
+
+	/**
+	 * Gets the row index after delete.
+	 *
+	 * @param row
+	 *            the row index before delete
+	 * @return the row index after delete. -1 if the row is deleted.
+	 */
+	public final int getNewRow(final int row) {
+		if (isDeleted(row)) {
+			return -1;
+		}
+		return row - countDeletedAbove(row);
+	}
+
+	/**
+	 * Gets the map of deleted row counts. Built again after ranges changed.
+	 *
+	 * @return the map
+	 */
+	private TreeMap<Integer, Integer> getDeletedThrough() {
+		if (deletedThrough == null) {
+			deletedThrough = new TreeMap<>();
+			int count = 0;
+			for (Map.Entry<Integer, Integer> range : ranges.entrySet()) {
+				count += range.getValue() - range.getKey() + 1;
+				deletedThrough.put(range.getKey(), count);
+			}
+		}
+		return deletedThrough;
+	}
+
+}
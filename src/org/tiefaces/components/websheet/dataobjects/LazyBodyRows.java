@@ -0,0 +1,321 @@
+/*
+ * Copyright 2017 TieFaces.
+ * Licensed under MIT
+ */
+
+package org.tiefaces.components.websheet.dataobjects;
+
+import java.io.Serializable;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.tiefaces.common.TieConstants;
+import org.tiefaces.components.websheet.TieWebSheetBean;
+import org.tiefaces.components.websheet.configuration.SheetConfiguration;
+import org.tiefaces.components.websheet.utility.CommandUtility;
+import org.tiefaces.components.websheet.utility.ConfigurationUtility;
+
+/**
+ * Body rows of current display sheet. Only hold a slot for each row and
+ * materialize the FacesRow when it's requested (i.e. rendered in the data
+ * table page). Rows far away from the last requested one are evicted once
+ * the materialized rows exceed the limit, and will be rebuilt from the sheet
+ * on next request.
+ *
+ * Row index of a row is derived from its slot, i.e. top row of the sheet
+ * plus slot index, and set when the row is requested. So inserting or
+ * removing a row doesn't visit the materialized rows after it.
+ *
+ * @author Jason Jiang
+ *
+ */
+public class LazyBodyRows extends AbstractList<FacesRow>
+		implements Serializable {
+
+	/** serial instance. */
+	private static final long serialVersionUID = 1L;
+
+	/** instance to parent websheet bean. */
+	private TieWebSheetBean parent = null;
+
+	/** row slots. null means not materialized yet. */
+	private List<FacesRow> slots = new ArrayList<>();
+
+	/** number of materialized rows. */
+	private int materializedCount = 0;
+
+	/** merged regions of current sheet. */
+	private transient MergedRegionIndex regionIndex;
+
+	/** merged regions of template sheet of current sheet. */
+	private transient MergedRegionIndex templateRegionIndex;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param pParent
+	 *            parent websheet bean
+	 */
+	public LazyBodyRows(final TieWebSheetBean pParent) {
+		super();
+		this.parent = pParent;
+	}
+
+	/**
+	 * reset to rows with all slots not materialized.
+	 *
+	 * @param size
+	 *            number of rows.
+	 * @param pregionIndex
+	 *            merged region index.
+	 */
+	public final void reset(final int size,
+			final MergedRegionIndex pregionIndex) {
+		slots.clear();
+		materializedCount = 0;
+		for (int i = 0; i < size; i++) {
+			slots.add(null);
+		}
+		this.regionIndex = pregionIndex;
+		this.templateRegionIndex = null;
+	}
+
+	/**
+	 * Gets the merged region index used for materializing rows. Load it from
+	 * current sheet if not available. i.e. after deserialized.
+	 *
+	 * @return the region index
+	 */
+	public final MergedRegionIndex getRegionIndex() {
+		if (regionIndex == null) {
+			SheetConfiguration sheetConfig = parent.getCurrentSheetConfig();
+			regionIndex = ConfigurationUtility.indexMergedRegion(
+					parent.getWb().getSheet(sheetConfig.getSheetName()));
+		}
+		return regionIndex;
+	}
+
+	/**
+	 * Gets the merged region index of template sheet. Used for regions of
+	 * inserted rows, which are copies of template rows.
+	 *
+	 * @return the template region index
+	 */
+	public final MergedRegionIndex getTemplateRegionIndex() {
+		if (templateRegionIndex == null) {
+			SheetConfiguration sheetConfig = parent.getCurrentSheetConfig();
+			Sheet templateSheet = CommandUtility.getTemplateCopySheet(
+					parent.getWb().getSheet(sheetConfig.getSheetName()));
+			if (templateSheet == null) {
+				templateRegionIndex = new MergedRegionIndex();
+			} else {
+				templateRegionIndex = ConfigurationUtility
+						.indexMergedRegion(templateSheet);
+			}
+		}
+		return templateRegionIndex;
+	}
+
+	/**
+	 * Checks if row is materialized.
+	 *
+	 * @param index
+	 *            the index
+	 * @return true, if is materialized
+	 */
+	public final boolean isMaterialized(final int index) {
+		return slots.get(index) != null;
+	}
+
+	/**
+	 * Gets the materialized count.
+	 *
+	 * @return the materialized count
+	 */
+	public final int getMaterializedCount() {
+		return materializedCount;
+	}
+
+	/**
+	 * Gets the max materialized rows. At least three pages.
+	 *
+	 * @return the max materialized rows
+	 */
+	public final int getMaxMaterializedRows() {
+		return Math.max(TieConstants.DEFAULT_MAX_MATERIALIZED_ROWS,
+				parent.getMaxRowsPerPage() * 3);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see java.util.AbstractList#get(int)
+	 */
+	@Override
+	public final FacesRow get(final int index) {
+		FacesRow facesRow = slots.get(index);
+		int rowIndex = parent.getCurrent().getCurrentTopRow() + index;
+		if (facesRow == null) {
+			facesRow = parent.getWebSheetLoader().assembleBodyRow(rowIndex,
+					getRegionIndex());
+			slots.set(index, facesRow);
+			materializedCount++;
+			parent.getValidationHandler()
+					.validateRowOnLoad(facesRow.getRowIndex());
+			evictOutsideWindow(index);
+		} else if (facesRow.getRowIndex() != rowIndex) {
+			// rows inserted or removed above since last request.
+			facesRow.setRowIndex(rowIndex);
+		}
+		return facesRow;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see java.util.AbstractCollection#size()
+	 */
+	@Override
+	public final int size() {
+		return slots.size();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see java.util.AbstractList#set(int, java.lang.Object)
+	 */
+	@Override
+	public final FacesRow set(final int index, final FacesRow element) {
+		FacesRow old = slots.set(index, element);
+		if (old != null) {
+			materializedCount--;
+		}
+		if (element != null) {
+			materializedCount++;
+		}
+		return old;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see java.util.AbstractList#add(int, java.lang.Object)
+	 */
+	@Override
+	public final void add(final int index, final FacesRow element) {
+		slots.add(index, element);
+		if (element != null) {
+			materializedCount++;
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see java.util.AbstractList#remove(int)
+	 */
+	@Override
+	public final FacesRow remove(final int index) {
+		FacesRow old = slots.remove(index);
+		if (old != null) {
+			materializedCount--;
+		}
+		return old;
+	}
+
+	/**
+	 * Remove the slots of deleted rows in one pass.
+	 *
+	 * @param deletedRows
+	 *            the deleted rows
+	 * @param top
+	 *            top row of the body, i.e. row index of the first slot
+	 */
+	public final void removeRows(final DeletedRows deletedRows,
+			final int top) {
+		int first = deletedRows.getFirstRow() - top;
+		if (deletedRows.isEmpty() || (first >= slots.size())) {
+			return;
+		}
+		List<FacesRow> kept = new ArrayList<>(slots.size());
+		kept.addAll(slots.subList(0, Math.max(first, 0)));
+		for (int i = Math.max(first, 0); i < slots.size(); i++) {
+			FacesRow facesRow = slots.get(i);
+			if (!deletedRows.isDeleted(top + i)) {
+				kept.add(facesRow);
+			} else if (facesRow != null) {
+				materializedCount--;
+			}
+		}
+		slots = kept;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see java.util.AbstractList#clear()
+	 */
+	@Override
+	public final void clear() {
+		slots.clear();
+		materializedCount = 0;
+	}
+
+	/**
+	 * Evict materialized rows outside the window around current index when
+	 * exceed twice of the limit. So the scan over slots only happen once
+	 * every max rows materialized.
+	 *
+	 * @param current
+	 *            the current index
+	 */
+	private void evictOutsideWindow(final int current) {
+		int max = getMaxMaterializedRows();
+		if (materializedCount <= max * 2) {
+			return;
+		}
+		int half = max / 2;
+		int top = parent.getCurrent().getCurrentTopRow();
+		for (int i = 0; i < slots.size(); i++) {
+			if (Math.abs(i - current) > half) {
+				FacesRow facesRow = slots.get(i);
+				if (facesRow != null) {
+					removeCachedCells(facesRow, top + i);
+					slots.set(i, null);
+					materializedCount--;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Removes the cached cells of the evicted row.
+	 *
+	 * @param facesRow
+	 *            the faces row
+	 * @param rowIndex
+	 *            current row index of the faces row
+	 */
+	private void removeCachedCells(final FacesRow facesRow,
+			final int rowIndex) {
+		if ((facesRow.getCells() == null)
+				|| (parent.getCachedCells() == null)) {
+			return;
+		}
+		for (FacesCell fcell : facesRow.getCells()) {
+			if (fcell != null) {
+				Cell poiCell = parent.getCellHelper()
+						.getPoiCellWithRowColFromCurrentPage(
+								rowIndex, fcell.getColumnIndex());
+				if (poiCell != null) {
+					parent.getCachedCells().getCachedMap().remove(poiCell);
+				}
+			}
+		}
+	}
+
+}
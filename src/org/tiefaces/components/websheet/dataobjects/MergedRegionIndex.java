@@ -0,0 +1,351 @@
+/*
+ * Copyright 2017 TieFaces.
+ * Licensed under MIT
+ */
+
+package org.tiefaces.components.websheet.dataobjects;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.util.CellRangeAddress;
+
+/**
+ * Index of merged regions in a sheet. Answer whether a cell is the top left
+ * of a merged region or covered by one in constant time, and shift with
+ * inserted or deleted rows without re-reading the sheet. The index only
+ * mirrors the sheet, it never changes the regions of the sheet.
+ *
+ * @author Jason Jiang
+ *
+ */
+public class MergedRegionIndex {
+
+	/** regions keyed by first row then first column. */
+	private final TreeMap<Integer, Map<Integer, CellRangeAddress>> topLeftMap = new TreeMap<>();
+
+	/** covered cells (top left excluded) keyed by row. */
+	private final TreeMap<Integer, BitSet> coveredMap = new TreeMap<>();
+
+	/**
+	 * Instantiates an empty index.
+	 */
+	public MergedRegionIndex() {
+		super();
+	}
+
+	/**
+	 * Instantiates index for all merged regions of the sheet.
+	 *
+	 * @param sheet
+	 *            the sheet
+	 */
+	public MergedRegionIndex(final Sheet sheet) {
+		super();
+		int numRegions = sheet.getNumMergedRegions();
+		for (int i = 0; i < numRegions; i++) {
+			addRegion(sheet.getMergedRegion(i));
+		}
+	}
+
+	/**
+	 * Adds the region.
+	 *
+	 * @param caddress
+	 *            the region
+	 */
+	public final void addRegion(final CellRangeAddress caddress) {
+		if (caddress == null) {
+			return;
+		}
+		Map<Integer, CellRangeAddress> cols = topLeftMap
+				.get(caddress.getFirstRow());
+		if (cols == null) {
+			cols = new HashMap<>();
+			topLeftMap.put(caddress.getFirstRow(), cols);
+		}
+		cols.put(caddress.getFirstColumn(), caddress);
+		for (int row = caddress.getFirstRow(); row <= caddress
+				.getLastRow(); row++) {
+			BitSet covered = coveredMap.get(row);
+			if (covered == null) {
+				covered = new BitSet();
+				coveredMap.put(row, covered);
+			}
+			covered.set(caddress.getFirstColumn(),
+					caddress.getLastColumn() + 1);
+			if (row == caddress.getFirstRow()) {
+				covered.clear(caddress.getFirstColumn());
+			}
+		}
+	}
+
+	/**
+	 * Removes the region.
+	 *
+	 * @param caddress
+	 *            the region
+	 */
+	private void removeRegion(final CellRangeAddress caddress) {
+		Map<Integer, CellRangeAddress> cols = topLeftMap
+				.get(caddress.getFirstRow());
+		if (cols != null) {
+			cols.remove(caddress.getFirstColumn());
+			if (cols.isEmpty()) {
+				topLeftMap.remove(caddress.getFirstRow());
+			}
+		}
+		for (int row = caddress.getFirstRow(); row <= caddress
+				.getLastRow(); row++) {
+			BitSet covered = coveredMap.get(row);
+			if (covered != null) {
+				covered.clear(caddress.getFirstColumn(),
+						caddress.getLastColumn() + 1);
+				if (covered.isEmpty()) {
+					coveredMap.remove(row);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Adds regions of inserted rows. The inserted rows are copies of template
+	 * rows, so their regions are looked up in the index of template sheet by
+	 * origin row number. A template region is added only if the rows it
+	 * spans are copied together, i.e. their origin rows are consecutive, and
+	 * it doesn't overlap a region already indexed.
+	 *
+	 * @param sheet
+	 *            the sheet
+	 * @param firstRow
+	 *            the first inserted row
+	 * @param lastRow
+	 *            the last inserted row
+	 * @param rowMetaStore
+	 *            the row meta store holds origin row number
+	 * @param templateIndex
+	 *            the region index of template sheet
+	 */
+	public final void addRegionsInRows(final Sheet sheet, final int firstRow,
+			final int lastRow, final RowMetaStore rowMetaStore,
+			final MergedRegionIndex templateIndex) {
+		int[] origins = new int[lastRow - firstRow + 1];
+		for (int row = firstRow; row <= lastRow; row++) {
+			Row srow = sheet.getRow(row);
+			origins[row - firstRow] = (srow == null) ? -1
+					: rowMetaStore.getOriginRowNum(srow);
+		}
+		for (int row = firstRow; row <= lastRow; row++) {
+			int origin = origins[row - firstRow];
+			Map<Integer, CellRangeAddress> cols = templateIndex.topLeftMap
+					.get(origin);
+			if ((origin < 0) || (cols == null)) {
+				continue;
+			}
+			for (CellRangeAddress caddress : cols.values()) {
+				int height = caddress.getLastRow() - caddress.getFirstRow();
+				CellRangeAddress region = new CellRangeAddress(row,
+						row + height, caddress.getFirstColumn(),
+						caddress.getLastColumn());
+				// a region crossing the inserted rows already covers them.
+				if (isCopiedTogether(origins, row - firstRow, origin, height)
+						&& !isOverlappedInIndex(region)) {
+					addRegion(region);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Checks whether rows from the start are copies of consecutive template
+	 * rows.
+	 *
+	 * @param origins
+	 *            origin row numbers of inserted rows
+	 * @param start
+	 *            the start position in origins
+	 * @param origin
+	 *            the origin row number of start
+	 * @param height
+	 *            number of rows after start
+	 * @return true, if copied together
+	 */
+	private static boolean isCopiedTogether(final int[] origins,
+			final int start, final int origin, final int height) {
+		if (start + height >= origins.length) {
+			return false;
+		}
+		for (int i = 1; i <= height; i++) {
+			if (origins[start + i] != origin + i) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Gets the region which top left is the cell.
+	 *
+	 * @param row
+	 *            the row
+	 * @param col
+	 *            the col
+	 * @return the region. null if the cell is not top left of a region.
+	 */
+	public final CellRangeAddress getRegion(final int row, final int col) {
+		Map<Integer, CellRangeAddress> cols = topLeftMap.get(row);
+		if (cols == null) {
+			return null;
+		}
+		return cols.get(col);
+	}
+
+	/**
+	 * Checks if the cell is covered by a region and not the top left of it.
+	 * i.e. the cell should be skipped in rendering.
+	 *
+	 * @param row
+	 *            the row
+	 * @param col
+	 *            the col
+	 * @return true, if is covered
+	 */
+	public final boolean isCovered(final int row, final int col) {
+		BitSet covered = coveredMap.get(row);
+		return (covered != null) && covered.get(col);
+	}
+
+	/**
+	 * Shift rows the same way Sheet.shiftRows moves merged regions, so the
+	 * index keeps mirroring the sheet. Positive rows means rows inserted
+	 * before start row, negative means rows from start row deleted. Regions
+	 * below the change move with their rows. Regions crossing the first moved
+	 * row stay as they are, as poi doesn't move them either. Regions inside
+	 * the deleted rows are dropped with the rows.
+	 *
+	 * @param startRow
+	 *            the start row
+	 * @param rows
+	 *            number of rows shifted
+	 */
+	public final void shiftRows(final int startRow, final int rows) {
+		if (rows == 0) {
+			return;
+		}
+		int tailStart = startRow;
+		if (rows < 0) {
+			int lastDeleted = startRow - rows - 1;
+			List<CellRangeAddress> deleted = new ArrayList<>();
+			for (Map<Integer, CellRangeAddress> cols : topLeftMap
+					.subMap(startRow, true, lastDeleted, true).values()) {
+				for (CellRangeAddress caddress : cols.values()) {
+					if (caddress.getLastRow() <= lastDeleted) {
+						deleted.add(caddress);
+					}
+				}
+			}
+			for (CellRangeAddress caddress : deleted) {
+				removeRegion(caddress);
+			}
+			tailStart = lastDeleted + 1;
+		}
+		List<CellRangeAddress> moved = new ArrayList<>();
+		for (Map<Integer, CellRangeAddress> cols : topLeftMap
+				.tailMap(tailStart, true).values()) {
+			moved.addAll(cols.values());
+		}
+		// remove all before adding, as moved regions may land on each other.
+		for (CellRangeAddress caddress : moved) {
+			removeRegion(caddress);
+		}
+		for (CellRangeAddress caddress : moved) {
+			addRegion(new CellRangeAddress(caddress.getFirstRow() + rows,
+					caddress.getLastRow() + rows, caddress.getFirstColumn(),
+					caddress.getLastColumn()));
+		}
+	}
+
+	/**
+	 * Remove row ranges the same way as Sheet.shiftRows does for each range
+	 * from the bottom, in one pass. Regions inside a deleted range are
+	 * dropped, others at or below the first deleted row move up by the rows
+	 * deleted above them.
+	 *
+	 * @param deletedRows
+	 *            the deleted rows
+	 */
+	public final void removeRows(final DeletedRows deletedRows) {
+		if (deletedRows.isEmpty()) {
+			return;
+		}
+		List<CellRangeAddress> moved = new ArrayList<>();
+		for (Map<Integer, CellRangeAddress> cols : topLeftMap
+				.tailMap(deletedRows.getFirstRow(), true).values()) {
+			moved.addAll(cols.values());
+		}
+		for (CellRangeAddress caddress : moved) {
+			removeRegion(caddress);
+		}
+		for (CellRangeAddress caddress : moved) {
+			if (!deletedRows.isDeleted(caddress.getFirstRow(),
+					caddress.getLastRow())) {
+				int count = deletedRows
+						.countDeletedAbove(caddress.getFirstRow());
+				addRegion(new CellRangeAddress(
+						caddress.getFirstRow() - count,
+						caddress.getLastRow() - count,
+						caddress.getFirstColumn(),
+						caddress.getLastColumn()));
+			}
+		}
+	}
+
+	/**
+	 * Checks whether any cell of the address is in an indexed region.
+	 *
+	 * @param caddress
+	 *            the address
+	 * @return true, if overlapped
+	 */
+	private boolean isOverlappedInIndex(final CellRangeAddress caddress) {
+		for (int row = caddress.getFirstRow(); row <= caddress
+				.getLastRow(); row++) {
+			BitSet covered = coveredMap.get(row);
+			int next = (covered == null) ? -1
+					: covered.nextSetBit(caddress.getFirstColumn());
+			if ((next >= 0) && (next <= caddress.getLastColumn())) {
+				return true;
+			}
+			Map<Integer, CellRangeAddress> cols = topLeftMap.get(row);
+			if (cols != null) {
+				for (Integer col : cols.keySet()) {
+					if ((col >= caddress.getFirstColumn())
+							&& (col <= caddress.getLastColumn())) {
+						return true;
+					}
+				}
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Number of regions in index.
+	 *
+	 * @return the size
+	 */
+	public final int size() {
+		int size = 0;
+		for (Map<Integer, CellRangeAddress> cols : topLeftMap.values()) {
+			size += cols.size();
+		}
+		return size;
+	}
+
+}
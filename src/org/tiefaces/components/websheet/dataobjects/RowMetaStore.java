@@ -0,0 +1,419 @@
+/*
+ * Copyright 2017 TieFaces.
+ * Licensed under MIT
+ */
+package org.tiefaces.components.websheet.dataobjects;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.tiefaces.components.websheet.configuration.ShiftMapIndex;
+
+/**
+ * Per row bookkeeping of the web sheet, i.e. origin row number, full name and
+ * save attributes. Kept outside the poi sheet instead of hidden columns.
+ * Entries are keyed by row instance, poi moves the same instance when rows
+ * shifted, so the entries follow inserts and deletes without any update.
+ * Rows poi drops, i.e. removed rows and rows overwritten by a shift, must be
+ * removed from the store by the remove and shift paths.
+ * Serialized as sheet name and row index, rebound by recover after the
+ * workbook reloaded.
+ *
+ * @author Jason Jiang
+ *
+ */
+public class RowMetaStore implements Serializable {
+
+	/** serialVersionUID. */
+	private static final long serialVersionUID = 3482941086127840531L;
+
+	/** metadata of rows. */
+	private transient Map<Row, RowMeta> metaMap = new IdentityHashMap<>();
+
+	/**
+	 * metadata read from stream, waiting for recover. key is sheet name, then
+	 * row index.
+	 */
+	private transient Map<String, Map<Integer, RowMeta>> pendingMap;
+
+	/**
+	 * Metadata of one row.
+	 */
+	public static final class RowMeta implements Serializable {
+
+		/** serialVersionUID. */
+		private static final long serialVersionUID = -6158223703915367352L;
+
+		/** origin row number in template. -1 if not set. */
+		private int originRowNum = -1;
+
+		/** full name of the command range. */
+		private String fullName;
+
+		/** node of the command range. full name follows it when set. */
+		private ShiftMapIndex.Node shiftNode;
+
+		/** save attributes. i.e. $0=employee.name,$1=employee.birthDate, */
+		private String saveAttrs;
+
+		/**
+		 * Copy the metadata.
+		 *
+		 * @return the copy
+		 */
+		private RowMeta copy() {
+			RowMeta meta = new RowMeta();
+			meta.originRowNum = this.originRowNum;
+			meta.fullName = this.fullName;
+			meta.shiftNode = this.shiftNode;
+			meta.saveAttrs = this.saveAttrs;
+			return meta;
+		}
+	}
+
+	/**
+	 * Gets the metadata of row.
+	 *
+	 * @param row
+	 *            the row
+	 * @return the metadata. null if not exist.
+	 */
+	private RowMeta getMeta(final Row row) {
+		if (row == null) {
+			return null;
+		}
+		return metaMap.get(row);
+	}
+
+	/**
+	 * Gets or create the metadata of row.
+	 *
+	 * @param row
+	 *            the row
+	 * @return the metadata
+	 */
+	private RowMeta getOrCreateMeta(final Row row) {
+		RowMeta meta = metaMap.get(row);
+		if (meta == null) {
+			meta = new RowMeta();
+			metaMap.put(row, meta);
+		}
+		return meta;
+	}
+
+	/**
+	 * Gets the full name of row.
+	 *
+	 * @param row
+	 *            the row
+	 * @return the full name. null if not set.
+	 */
+	public final String getFullName(final Row row) {
+		RowMeta meta = getMeta(row);
+		if (meta == null) {
+			return null;
+		}
+		if (meta.shiftNode != null) {
+			return meta.shiftNode.getFullName();
+		}
+		return meta.fullName;
+	}
+
+	/**
+	 * Sets the full name of row.
+	 *
+	 * @param row
+	 *            the row
+	 * @param fullName
+	 *            the full name
+	 */
+	public final void setFullName(final Row row, final String fullName) {
+		RowMeta meta = getOrCreateMeta(row);
+		meta.fullName = fullName;
+		meta.shiftNode = null;
+	}
+
+	/**
+	 * Gets the shift map node of row.
+	 *
+	 * @param row
+	 *            the row
+	 * @return the node. null if not set.
+	 */
+	public final ShiftMapIndex.Node getShiftNode(final Row row) {
+		RowMeta meta = getMeta(row);
+		if (meta == null) {
+			return null;
+		}
+		return meta.shiftNode;
+	}
+
+	/**
+	 * Sets the shift map node of row. The full name of row is renumbered
+	 * with the node when items inserted or removed before it.
+	 *
+	 * @param row
+	 *            the row
+	 * @param shiftNode
+	 *            the node
+	 */
+	public final void setShiftNode(final Row row,
+			final ShiftMapIndex.Node shiftNode) {
+		RowMeta meta = getOrCreateMeta(row);
+		meta.shiftNode = shiftNode;
+		meta.fullName = null;
+	}
+
+	/**
+	 * Gets the origin row number of row.
+	 *
+	 * @param row
+	 *            the row
+	 * @return the origin row number. -1 if not set.
+	 */
+	public final int getOriginRowNum(final Row row) {
+		RowMeta meta = getMeta(row);
+		if (meta == null) {
+			return -1;
+		}
+		return meta.originRowNum;
+	}
+
+	/**
+	 * Sets the origin row number of row.
+	 *
+	 * @param row
+	 *            the row
+	 * @param rowNum
+	 *            the origin row number
+	 */
+	public final void setOriginRowNum(final Row row, final int rowNum) {
+		getOrCreateMeta(row).originRowNum = rowNum;
+	}
+
+	/**
+	 * Gets the save attributes of row.
+	 *
+	 * @param row
+	 *            the row
+	 * @return the save attributes. null if not set.
+	 */
+	public final String getSaveAttrs(final Row row) {
+		RowMeta meta = getMeta(row);
+		if (meta == null) {
+			return null;
+		}
+		return meta.saveAttrs;
+	}
+
+	/**
+	 * Sets the save attributes of row.
+	 *
+	 * @param row
+	 *            the row
+	 * @param saveAttrs
+	 *            the save attributes
+	 */
+	public final void setSaveAttrs(final Row row, final String saveAttrs) {
+		getOrCreateMeta(row).saveAttrs = saveAttrs;
+	}
+
+	/**
+	 * Copy metadata of source row to target row.
+	 *
+	 * @param sourceRow
+	 *            the source row
+	 * @param targetRow
+	 *            the target row
+	 */
+	public final void copy(final Row sourceRow, final Row targetRow) {
+		RowMeta meta = getMeta(sourceRow);
+		if (meta == null) {
+			metaMap.remove(targetRow);
+		} else {
+			metaMap.put(targetRow, meta.copy());
+		}
+	}
+
+	/**
+	 * Copy metadata of all rows in source sheet to rows of same index in
+	 * target sheet. e.g. after sheet cloned.
+	 *
+	 * @param sourceSheet
+	 *            the source sheet
+	 * @param targetSheet
+	 *            the target sheet
+	 */
+	public final void copySheet(final Sheet sourceSheet,
+			final Sheet targetSheet) {
+		for (Row row : sourceSheet) {
+			RowMeta meta = metaMap.get(row);
+			if (meta != null) {
+				Row targetRow = targetSheet.getRow(row.getRowNum());
+				if (targetRow == null) {
+					targetRow = targetSheet.createRow(row.getRowNum());
+				}
+				metaMap.put(targetRow, meta.copy());
+			}
+		}
+	}
+
+	/**
+	 * Remove metadata of row. Should be called when row removed from sheet.
+	 *
+	 * @param row
+	 *            the row
+	 */
+	public final void remove(final Row row) {
+		if (row != null) {
+			metaMap.remove(row);
+		}
+	}
+
+	/**
+	 * Remove metadata of rows Sheet.shiftRows is going to overwrite, i.e.
+	 * rows in the target range but out of the shifted range. poi drops these
+	 * row instances, so it must be called before the shift.
+	 *
+	 * @param sheet
+	 *            the sheet
+	 * @param startRow
+	 *            the first row of shifted range
+	 * @param endRow
+	 *            the last row of shifted range
+	 * @param n
+	 *            the number of rows to shift
+	 */
+	public final void removeOverwrittenRows(final Sheet sheet,
+			final int startRow, final int endRow, final int n) {
+		if (metaMap.isEmpty()) {
+			return;
+		}
+		int first;
+		int last;
+		if (n > 0) {
+			first = Math.max(startRow + n, endRow + 1);
+			last = endRow + n;
+		} else {
+			first = Math.max(startRow + n, 0);
+			last = Math.min(endRow + n, startRow - 1);
+		}
+		for (int rowNum = first; rowNum <= last; rowNum++) {
+			remove(sheet.getRow(rowNum));
+		}
+	}
+
+	/**
+	 * Copy all metadata from another store.
+	 *
+	 * @param source
+	 *            the source store
+	 */
+	public final void putAll(final RowMetaStore source) {
+		for (Map.Entry<Row, RowMeta> entry : source.metaMap.entrySet()) {
+			metaMap.put(entry.getKey(), entry.getValue().copy());
+		}
+	}
+
+	/**
+	 * Number of rows with metadata.
+	 *
+	 * @return the size
+	 */
+	public final int size() {
+		return metaMap.size();
+	}
+
+	/**
+	 * Clear the store.
+	 */
+	public final void clear() {
+		metaMap.clear();
+		pendingMap = null;
+	}
+
+	/**
+	 * Bind the metadata read from stream to rows of the reloaded workbook.
+	 *
+	 * @param wb
+	 *            the workbook
+	 */
+	public final void recover(final Workbook wb) {
+		if ((pendingMap == null) || (wb == null)) {
+			return;
+		}
+		for (Map.Entry<String, Map<Integer, RowMeta>> sheetEntry : pendingMap
+				.entrySet()) {
+			Sheet sheet = wb.getSheet(sheetEntry.getKey());
+			if (sheet == null) {
+				continue;
+			}
+			for (Map.Entry<Integer, RowMeta> entry : sheetEntry.getValue()
+					.entrySet()) {
+				Row row = sheet.getRow(entry.getKey());
+				if (row == null) {
+					row = sheet.createRow(entry.getKey());
+				}
+				metaMap.put(row, entry.getValue());
+			}
+		}
+		pendingMap = null;
+	}
+
+	/**
+	 * Write metadata by sheet name and row index. Only rows still in the
+	 * sheets are written, as removed rows are disconnected by poi.
+	 *
+	 * @param out
+	 *            outputstream.
+	 * @throws IOException
+	 *             io exception.
+	 */
+	private void writeObject(final ObjectOutputStream out)
+			throws IOException {
+		out.defaultWriteObject();
+		Map<Sheet, Boolean> sheets = new IdentityHashMap<>();
+		for (Row row : metaMap.keySet()) {
+			sheets.put(row.getSheet(), Boolean.TRUE);
+		}
+		Map<String, Map<Integer, RowMeta>> rowsMap = new TreeMap<>();
+		for (Sheet sheet : sheets.keySet()) {
+			Map<Integer, RowMeta> sheetRows = new TreeMap<>();
+			for (Row row : sheet) {
+				RowMeta meta = metaMap.get(row);
+				if (meta != null) {
+					sheetRows.put(row.getRowNum(), meta);
+				}
+			}
+			rowsMap.put(sheet.getSheetName(), sheetRows);
+		}
+		out.writeObject(rowsMap);
+	}
+
+	/**
+	 * Read metadata. call recover to bind them to rows.
+	 *
+	 * @param in
+	 *            inputstream.
+	 * @throws IOException
+	 *             io exception.
+	 * @throws ClassNotFoundException
+	 *             class not found.
+	 */
+	@SuppressWarnings("unchecked")
+	private void readObject(final ObjectInputStream in)
+			throws IOException, ClassNotFoundException {
+		in.defaultReadObject();
+		metaMap = new IdentityHashMap<>();
+		pendingMap = (Map<String, Map<Integer, RowMeta>>) in.readObject();
+	}
+
+}
@@ -0,0 +1,1003 @@
+/*
+ * Copyright 2017 TieFaces.
+ * Licensed under MIT
+ */
+package org.tiefaces.components.websheet.serializable;
+
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutput;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.lang.ref.SoftReference;
+import java.lang.reflect.Array;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.WeakHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.google.gson.Gson;
+
+/**
+ * Typed binary serializer for data context. Beans are written field by
+ * field with a class registry, so each class name and field list is written
+ * once per stream and concrete types are kept on reading. Objects written
+ * more than once, including cycles, are written once and referenced by
+ * handle afterwards. Values are written to and read from the object stream
+ * directly.
+ *
+ * Beans need a no-arg constructor. Serializable classes with their own
+ * serialization, i.e. writeObject, readObject, writeReplace, readResolve or
+ * externalizable, and other serializable objects, e.g. jdk classes not
+ * handled here, fall back to java serialization, and the rest to json.
+ *
+ * @author Jason Jiang
+ *
+ */
+public final class DataContextSerializer {
+
+	/** logger. */
+	private static final Logger LOG = Logger
+			.getLogger(DataContextSerializer.class.getName());
+
+	/** null value. */
+	private static final byte TAG_NULL = 0;
+
+	/** reference to object already written. */
+	private static final byte TAG_HANDLE = 1;
+
+	/** string. */
+	private static final byte TAG_STRING = 2;
+
+	/** integer. */
+	private static final byte TAG_INT = 3;
+
+	/** long. */
+	private static final byte TAG_LONG = 4;
+
+	/** double. */
+	private static final byte TAG_DOUBLE = 5;
+
+	/** float. */
+	private static final byte TAG_FLOAT = 6;
+
+	/** short. */
+	private static final byte TAG_SHORT = 7;
+
+	/** byte. */
+	private static final byte TAG_BYTE = 8;
+
+	/** boolean. */
+	private static final byte TAG_BOOLEAN = 9;
+
+	/** character. */
+	private static final byte TAG_CHAR = 10;
+
+	/** big decimal. */
+	private static final byte TAG_BIG_DECIMAL = 11;
+
+	/** big integer. */
+	private static final byte TAG_BIG_INTEGER = 12;
+
+	/** java.util.Date. */
+	private static final byte TAG_DATE = 13;
+
+	/** enum constant. */
+	private static final byte TAG_ENUM = 14;
+
+	/** collection. */
+	private static final byte TAG_COLLECTION = 15;
+
+	/** map. */
+	private static final byte TAG_MAP = 16;
+
+	/** array. */
+	private static final byte TAG_ARRAY = 17;
+
+	/** bean written field by field. */
+	private static final byte TAG_OBJECT = 18;
+
+	/** java serialization. */
+	private static final byte TAG_JAVA = 19;
+
+	/** json by gson. */
+	private static final byte TAG_JSON = 20;
+
+	/** class written the first time, followed by name. */
+	private static final int NEW_CLASS = -1;
+
+	/** field type code of object field. */
+	private static final char OBJECT_FIELD = 'L';
+
+	/**
+	 * fields of classes, shared by all streams. Keys are weak and values soft,
+	 * as fields refer to their class, so classes of an undeployed application
+	 * are not held.
+	 */
+	private static final Map<Class<?>, SoftReference<Field[]>> FIELDS_CACHE = Collections
+			.synchronizedMap(new WeakHashMap<Class<?>, SoftReference<Field[]>>());
+
+	/** whether classes are written as bean, shared by all streams. */
+	private static final Map<Class<?>, Boolean> BEAN_CACHE = Collections
+			.synchronizedMap(new WeakHashMap<Class<?>, Boolean>());
+
+	/** handles of objects written or read. */
+	private final Map<Object, Integer> writeHandles = new IdentityHashMap<>();
+
+	/** objects read, index is handle. */
+	private final List<Object> readHandles = new ArrayList<>();
+
+	/** ids of classes written. */
+	private final Map<Class<?>, Integer> classIds = new HashMap<>();
+
+	/** classes read, index is id. */
+	private final List<ClassInfo> classInfos = new ArrayList<>();
+
+	/**
+	 * Class read from stream.
+	 */
+	private static final class ClassInfo {
+
+		/** the class. null if not found. */
+		private Class<?> type;
+
+		/** field type codes written with class. null if not a bean. */
+		private char[] codes;
+
+		/** local field of each written field. null if not exist. */
+		private Field[] fields;
+	}
+
+	/**
+	 * hide constructor.
+	 */
+	private DataContextSerializer() {
+		// not called
+	}
+
+	/**
+	 * Write data context.
+	 *
+	 * @param out
+	 *            the output
+	 * @param dataContext
+	 *            the data context
+	 * @throws IOException
+	 *             io exception.
+	 */
+	public static void write(final ObjectOutput out,
+			final Map<String, Object> dataContext) throws IOException {
+		new DataContextSerializer().writeValue(out, dataContext);
+	}
+
+	/**
+	 * Read data context.
+	 *
+	 * @param in
+	 *            the input
+	 * @return the data context
+	 * @throws IOException
+	 *             io exception.
+	 */
+	@SuppressWarnings("unchecked")
+	public static Map<String, Object> read(final ObjectInput in)
+			throws IOException {
+		return (Map<String, Object>) new DataContextSerializer()
+				.readValue(in);
+	}
+
+	/**
+	 * Write value with its tag.
+	 *
+	 * @param out
+	 *            the output
+	 * @param value
+	 *            the value
+	 * @throws IOException
+	 *             io exception.
+	 */
+	private void writeValue(final ObjectOutput out, final Object value)
+			throws IOException {
+		if (value == null) {
+			out.writeByte(TAG_NULL);
+		} else if (!writeSimpleValue(out, value)) {
+			Integer handle = writeHandles.get(value);
+			if (handle != null) {
+				out.writeByte(TAG_HANDLE);
+				out.writeInt(handle);
+				return;
+			}
+			writeHandles.put(value, writeHandles.size());
+			writeObjectValue(out, value);
+		}
+	}
+
+	/**
+	 * Write value not shared by reference, i.e. boxed primitives and other
+	 * immutable values.
+	 *
+	 * @param out
+	 *            the output
+	 * @param value
+	 *            the value
+	 * @return false if not a simple value
+	 * @throws IOException
+	 *             io exception.
+	 */
+	private boolean writeSimpleValue(final ObjectOutput out,
+			final Object value) throws IOException {
+		Class<?> type = value.getClass();
+		if (type == Integer.class) {
+			out.writeByte(TAG_INT);
+			out.writeInt((Integer) value);
+		} else if (type == Long.class) {
+			out.writeByte(TAG_LONG);
+			out.writeLong((Long) value);
+		} else if (type == Double.class) {
+			out.writeByte(TAG_DOUBLE);
+			out.writeDouble((Double) value);
+		} else if (type == Float.class) {
+			out.writeByte(TAG_FLOAT);
+			out.writeFloat((Float) value);
+		} else if (type == Short.class) {
+			out.writeByte(TAG_SHORT);
+			out.writeShort((Short) value);
+		} else if (type == Byte.class) {
+			out.writeByte(TAG_BYTE);
+			out.writeByte((Byte) value);
+		} else if (type == Boolean.class) {
+			out.writeByte(TAG_BOOLEAN);
+			out.writeBoolean((Boolean) value);
+		} else if (type == Character.class) {
+			out.writeByte(TAG_CHAR);
+			out.writeChar((Character) value);
+		} else if (type == BigDecimal.class) {
+			out.writeByte(TAG_BIG_DECIMAL);
+			out.writeUTF(value.toString());
+		} else if (type == BigInteger.class) {
+			out.writeByte(TAG_BIG_INTEGER);
+			out.writeUTF(value.toString());
+		} else if (type == Date.class) {
+			out.writeByte(TAG_DATE);
+			out.writeLong(((Date) value).getTime());
+		} else if (value instanceof Enum) {
+			out.writeByte(TAG_ENUM);
+			writeClass(out, ((Enum<?>) value).getDeclaringClass(), false);
+			out.writeUTF(((Enum<?>) value).name());
+		} else {
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Write value shared by reference.
+	 *
+	 * @param out
+	 *            the output
+	 * @param value
+	 *            the value
+	 * @throws IOException
+	 *             io exception.
+	 */
+	private void writeObjectValue(final ObjectOutput out, final Object value)
+			throws IOException {
+		Class<?> type = value.getClass();
+		if (type == String.class) {
+			out.writeByte(TAG_STRING);
+			writeString(out, (String) value);
+		} else if (isPlainCollection(value)) {
+			out.writeByte(TAG_COLLECTION);
+			writeClass(out, type, false);
+			Collection<?> collection = (Collection<?>) value;
+			out.writeInt(collection.size());
+			for (Object item : collection) {
+				writeValue(out, item);
+			}
+		} else if (isPlainMap(value)) {
+			out.writeByte(TAG_MAP);
+			writeClass(out, type, false);
+			Map<?, ?> map = (Map<?, ?>) value;
+			out.writeInt(map.size());
+			for (Map.Entry<?, ?> entry : map.entrySet()) {
+				writeValue(out, entry.getKey());
+				writeValue(out, entry.getValue());
+			}
+		} else if (type.isArray()) {
+			out.writeByte(TAG_ARRAY);
+			writeClass(out, type, false);
+			int length = Array.getLength(value);
+			out.writeInt(length);
+			for (int i = 0; i < length; i++) {
+				writeValue(out, Array.get(value, i));
+			}
+		} else if (isBean(type)) {
+			out.writeByte(TAG_OBJECT);
+			writeClass(out, type, true);
+			for (Field field : getFields(type)) {
+				writeField(out, field, value);
+			}
+		} else if (value instanceof Serializable) {
+			out.writeByte(TAG_JAVA);
+			out.writeObject(value);
+		} else {
+			out.writeByte(TAG_JSON);
+			writeClass(out, type, false);
+			writeString(out, new Gson().toJson(value));
+		}
+	}
+
+	/**
+	 * Check collection can be rebuilt by adding items. Sorted set with
+	 * comparator cannot.
+	 *
+	 * @param value
+	 *            the value
+	 * @return true if plain collection
+	 */
+	private static boolean isPlainCollection(final Object value) {
+		return (value instanceof Collection) && !((value instanceof SortedSet)
+				&& (((SortedSet<?>) value).comparator() != null));
+	}
+
+	/**
+	 * Check map can be rebuilt by putting entries. Sorted map with
+	 * comparator cannot.
+	 *
+	 * @param value
+	 *            the value
+	 * @return true if plain map
+	 */
+	private static boolean isPlainMap(final Object value) {
+		return (value instanceof Map) && !((value instanceof SortedMap)
+				&& (((SortedMap<?, ?>) value).comparator() != null));
+	}
+
+	/**
+	 * Check class can be written field by field. i.e. not jdk class, has
+	 * no-arg constructor and has no serialization of its own.
+	 *
+	 * @param type
+	 *            the class
+	 * @return true if bean
+	 */
+	private static boolean isBean(final Class<?> type) {
+		Boolean bean = BEAN_CACHE.get(type);
+		if (bean == null) {
+			String name = type.getName();
+			bean = !name.startsWith("java.") && !name.startsWith("javax.")
+					&& hasNoArgConstructor(type)
+					&& !hasCustomSerialization(type);
+			BEAN_CACHE.put(type, bean);
+		}
+		return bean;
+	}
+
+	/**
+	 * Check class has no-arg constructor.
+	 *
+	 * @param type
+	 *            the class
+	 * @return true if has
+	 */
+	private static boolean hasNoArgConstructor(final Class<?> type) {
+		try {
+			type.getDeclaredConstructor();
+			return true;
+		} catch (NoSuchMethodException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Check serializable class, or one of its super classes, defines its own
+	 * serialization. Written field by field, the methods would be skipped,
+	 * e.g. readResolve of a singleton.
+	 *
+	 * @param type
+	 *            the class
+	 * @return true if has
+	 */
+	private static boolean hasCustomSerialization(final Class<?> type) {
+		if (!Serializable.class.isAssignableFrom(type)) {
+			return false;
+		}
+		if (Externalizable.class.isAssignableFrom(type)) {
+			return true;
+		}
+		for (Class<?> current = type; (current != null)
+				&& (current != Object.class); current = current
+						.getSuperclass()) {
+			if (hasMethod(current, "writeObject", ObjectOutputStream.class)
+					|| hasMethod(current, "readObject",
+							ObjectInputStream.class)
+					|| hasMethod(current, "writeReplace")
+					|| hasMethod(current, "readResolve")) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Check class declares the method.
+	 *
+	 * @param type
+	 *            the class
+	 * @param name
+	 *            method name
+	 * @param parameterTypes
+	 *            parameter types
+	 * @return true if declared
+	 */
+	private static boolean hasMethod(final Class<?> type, final String name,
+			final Class<?>... parameterTypes) {
+		try {
+			Method method = type.getDeclaredMethod(name, parameterTypes);
+			return !Modifier.isStatic(method.getModifiers());
+		} catch (NoSuchMethodException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Write field of bean. Primitive fields are written without tag.
+	 *
+	 * @param out
+	 *            the output
+	 * @param field
+	 *            the field
+	 * @param bean
+	 *            the bean
+	 * @throws IOException
+	 *             io exception.
+	 */
+	private void writeField(final ObjectOutput out, final Field field,
+			final Object bean) throws IOException {
+		try {
+			Class<?> type = field.getType();
+			if (type == int.class) {
+				out.writeInt(field.getInt(bean));
+			} else if (type == long.class) {
+				out.writeLong(field.getLong(bean));
+			} else if (type == double.class) {
+				out.writeDouble(field.getDouble(bean));
+			} else if (type == float.class) {
+				out.writeFloat(field.getFloat(bean));
+			} else if (type == short.class) {
+				out.writeShort(field.getShort(bean));
+			} else if (type == byte.class) {
+				out.writeByte(field.getByte(bean));
+			} else if (type == boolean.class) {
+				out.writeBoolean(field.getBoolean(bean));
+			} else if (type == char.class) {
+				out.writeChar(field.getChar(bean));
+			} else {
+				writeValue(out, field.get(bean));
+			}
+		} catch (IllegalAccessException e) {
+			throw new IOException(e);
+		}
+	}
+
+	/**
+	 * Write class. Name, and field list for bean, are written only the first
+	 * time.
+	 *
+	 * @param out
+	 *            the output
+	 * @param type
+	 *            the class
+	 * @param bean
+	 *            true if written as bean
+	 * @throws IOException
+	 *             io exception.
+	 */
+	private void writeClass(final ObjectOutput out, final Class<?> type,
+			final boolean bean) throws IOException {
+		Integer id = classIds.get(type);
+		if (id != null) {
+			out.writeInt(id);
+			return;
+		}
+		classIds.put(type, classIds.size());
+		out.writeInt(NEW_CLASS);
+		out.writeUTF(type.getName());
+		if (bean) {
+			Field[] fields = getFields(type);
+			out.writeInt(fields.length);
+			for (Field field : fields) {
+				out.writeUTF(field.getName());
+				out.writeChar(getTypeCode(field.getType()));
+			}
+		}
+	}
+
+	/**
+	 * Gets the type code of field. Same as jvm descriptor for primitives.
+	 *
+	 * @param type
+	 *            field type
+	 * @return the code
+	 */
+	private static char getTypeCode(final Class<?> type) {
+		if (type == int.class) {
+			return 'I';
+		} else if (type == long.class) {
+			return 'J';
+		} else if (type == double.class) {
+			return 'D';
+		} else if (type == float.class) {
+			return 'F';
+		} else if (type == short.class) {
+			return 'S';
+		} else if (type == byte.class) {
+			return 'B';
+		} else if (type == boolean.class) {
+			return 'Z';
+		} else if (type == char.class) {
+			return 'C';
+		}
+		return OBJECT_FIELD;
+	}
+
+	/**
+	 * Gets the non static, non transient fields of class and super classes.
+	 * Super class fields first.
+	 *
+	 * @param type
+	 *            the class
+	 * @return the fields
+	 */
+	private static Field[] getFields(final Class<?> type) {
+		SoftReference<Field[]> ref = FIELDS_CACHE.get(type);
+		Field[] fields = null;
+		if (ref != null) {
+			fields = ref.get();
+		}
+		if (fields == null) {
+			List<Field> list = new ArrayList<>();
+			collectFields(type, list);
+			fields = list.toArray(new Field[list.size()]);
+			FIELDS_CACHE.put(type, new SoftReference<>(fields));
+		}
+		return fields;
+	}
+
+	/**
+	 * Add fields of class and super classes to list.
+	 *
+	 * @param type
+	 *            the class
+	 * @param list
+	 *            the list
+	 */
+	private static void collectFields(final Class<?> type,
+			final List<Field> list) {
+		if ((type == null) || (type == Object.class)) {
+			return;
+		}
+		collectFields(type.getSuperclass(), list);
+		for (Field field : type.getDeclaredFields()) {
+			int modifiers = field.getModifiers();
+			if (!Modifier.isStatic(modifiers)
+					&& !Modifier.isTransient(modifiers)) {
+				field.setAccessible(true);
+				list.add(field);
+			}
+		}
+	}
+
+	/**
+	 * Write string as utf-8 bytes with length. Not limited to 64k as
+	 * writeUTF.
+	 *
+	 * @param out
+	 *            the output
+	 * @param str
+	 *            the string
+	 * @throws IOException
+	 *             io exception.
+	 */
+	private static void writeString(final ObjectOutput out, final String str)
+			throws IOException {
+		byte[] bytes = str.getBytes("UTF-8");
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	/**
+	 * Read string written by writeString.
+	 *
+	 * @param in
+	 *            the input
+	 * @return the string
+	 * @throws IOException
+	 *             io exception.
+	 */
+	private static String readString(final ObjectInput in)
+			throws IOException {
+		byte[] bytes = new byte[in.readInt()];
+		in.readFully(bytes);
+		return new String(bytes, "UTF-8");
+	}
+
+	/**
+	 * Read value with its tag.
+	 *
+	 * @param in
+	 *            the input
+	 * @return the value
+	 * @throws IOException
+	 *             io exception.
+	 */
+	private Object readValue(final ObjectInput in) throws IOException {
+		byte tag = in.readByte();
+		switch (tag) {
+		case TAG_NULL:
+			return null;
+		case TAG_HANDLE:
+			return readHandles.get(in.readInt());
+		case TAG_INT:
+			return in.readInt();
+		case TAG_LONG:
+			return in.readLong();
+		case TAG_DOUBLE:
+			return in.readDouble();
+		case TAG_FLOAT:
+			return in.readFloat();
+		case TAG_SHORT:
+			return in.readShort();
+		case TAG_BYTE:
+			return in.readByte();
+		case TAG_BOOLEAN:
+			return in.readBoolean();
+		case TAG_CHAR:
+			return in.readChar();
+		case TAG_BIG_DECIMAL:
+			return new BigDecimal(in.readUTF());
+		case TAG_BIG_INTEGER:
+			return new BigInteger(in.readUTF());
+		case TAG_DATE:
+			return new Date(in.readLong());
+		case TAG_ENUM:
+			return readEnum(in);
+		default:
+			return readObjectValue(in, tag);
+		}
+	}
+
+	/**
+	 * Read enum constant.
+	 *
+	 * @param in
+	 *            the input
+	 * @return the constant. null if class or constant not found.
+	 * @throws IOException
+	 *             io exception.
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private Object readEnum(final ObjectInput in) throws IOException {
+		ClassInfo info = readClass(in, false);
+		String name = in.readUTF();
+		if (info.type == null) {
+			return null;
+		}
+		try {
+			return Enum.valueOf((Class<Enum>) info.type, name);
+		} catch (IllegalArgumentException e) {
+			LOG.log(Level.WARNING, "enum constant not found " + name, e);
+			return null;
+		}
+	}
+
+	/**
+	 * Read value shared by reference. The object is registered before its
+	 * content read, so it can be referenced by its content.
+	 *
+	 * @param in
+	 *            the input
+	 * @param tag
+	 *            the tag
+	 * @return the value
+	 * @throws IOException
+	 *             io exception.
+	 */
+	private Object readObjectValue(final ObjectInput in, final byte tag)
+			throws IOException {
+		int handle = readHandles.size();
+		readHandles.add(null);
+		switch (tag) {
+		case TAG_STRING:
+			readHandles.set(handle, readString(in));
+			return readHandles.get(handle);
+		case TAG_COLLECTION:
+			return readCollection(in, handle);
+		case TAG_MAP:
+			return readMap(in, handle);
+		case TAG_ARRAY:
+			return readArray(in, handle);
+		case TAG_OBJECT:
+			return readBean(in, handle);
+		case TAG_JAVA:
+			try {
+				readHandles.set(handle, in.readObject());
+			} catch (ClassNotFoundException e) {
+				LOG.log(Level.WARNING, "class not found in data context.", e);
+			}
+			return readHandles.get(handle);
+		case TAG_JSON:
+			ClassInfo info = readClass(in, false);
+			String json = readString(in);
+			if (info.type != null) {
+				readHandles.set(handle, new Gson().fromJson(json, info.type));
+			}
+			return readHandles.get(handle);
+		default:
+			throw new IOException("unknown tag in data context " + tag);
+		}
+	}
+
+	/**
+	 * Read collection.
+	 *
+	 * @param in
+	 *            the input
+	 * @param handle
+	 *            the handle
+	 * @return the collection
+	 * @throws IOException
+	 *             io exception.
+	 */
+	@SuppressWarnings("unchecked")
+	private Object readCollection(final ObjectInput in, final int handle)
+			throws IOException {
+		ClassInfo info = readClass(in, false);
+		Collection<Object> collection = null;
+		if ((info.type != null) && Collection.class.isAssignableFrom(info.type)) {
+			collection = (Collection<Object>) newInstance(info.type);
+		}
+		if (collection == null) {
+			if ((info.type != null)
+					&& SortedSet.class.isAssignableFrom(info.type)) {
+				collection = new TreeSet<>();
+			} else if ((info.type != null)
+					&& Set.class.isAssignableFrom(info.type)) {
+				collection = new LinkedHashSet<>();
+			} else {
+				collection = new ArrayList<>();
+			}
+		}
+		readHandles.set(handle, collection);
+		int size = in.readInt();
+		for (int i = 0; i < size; i++) {
+			collection.add(readValue(in));
+		}
+		return collection;
+	}
+
+	/**
+	 * Read map.
+	 *
+	 * @param in
+	 *            the input
+	 * @param handle
+	 *            the handle
+	 * @return the map
+	 * @throws IOException
+	 *             io exception.
+	 */
+	@SuppressWarnings("unchecked")
+	private Object readMap(final ObjectInput in, final int handle)
+			throws IOException {
+		ClassInfo info = readClass(in, false);
+		Map<Object, Object> map = null;
+		if ((info.type != null) && Map.class.isAssignableFrom(info.type)) {
+			map = (Map<Object, Object>) newInstance(info.type);
+		}
+		if (map == null) {
+			if ((info.type != null)
+					&& SortedMap.class.isAssignableFrom(info.type)) {
+				map = new TreeMap<>();
+			} else {
+				map = new LinkedHashMap<>();
+			}
+		}
+		readHandles.set(handle, map);
+		int size = in.readInt();
+		for (int i = 0; i < size; i++) {
+			Object key = readValue(in);
+			map.put(key, readValue(in));
+		}
+		return map;
+	}
+
+	/**
+	 * Read array.
+	 *
+	 * @param in
+	 *            the input
+	 * @param handle
+	 *            the handle
+	 * @return the array
+	 * @throws IOException
+	 *             io exception.
+	 */
+	private Object readArray(final ObjectInput in, final int handle)
+			throws IOException {
+		ClassInfo info = readClass(in, false);
+		int length = in.readInt();
+		Class<?> componentType = Object.class;
+		if (info.type != null) {
+			componentType = info.type.getComponentType();
+		}
+		Object array = Array.newInstance(componentType, length);
+		readHandles.set(handle, array);
+		for (int i = 0; i < length; i++) {
+			Object item = readValue(in);
+			try {
+				Array.set(array, i, item);
+			} catch (IllegalArgumentException e) {
+				LOG.log(Level.FINE, "array item type not match.", e);
+			}
+		}
+		return array;
+	}
+
+	/**
+	 * Read bean field by field. Fields not exist in local class are read and
+	 * dropped.
+	 *
+	 * @param in
+	 *            the input
+	 * @param handle
+	 *            the handle
+	 * @return the bean. null if class not found.
+	 * @throws IOException
+	 *             io exception.
+	 */
+	private Object readBean(final ObjectInput in, final int handle)
+			throws IOException {
+		ClassInfo info = readClass(in, true);
+		Object bean = null;
+		if (info.type != null) {
+			bean = newInstance(info.type);
+		}
+		readHandles.set(handle, bean);
+		for (int i = 0; i < info.codes.length; i++) {
+			Object value = readFieldValue(in, info.codes[i]);
+			Field field = info.fields[i];
+			if ((bean != null) && (field != null)) {
+				try {
+					field.set(bean, value);
+				} catch (IllegalArgumentException
+						| IllegalAccessException e) {
+					LOG.log(Level.FINE, "field type not match "
+							+ field.getName(), e);
+				}
+			}
+		}
+		return bean;
+	}
+
+	/**
+	 * Read field value by type code.
+	 *
+	 * @param in
+	 *            the input
+	 * @param code
+	 *            the type code
+	 * @return the value, primitives boxed.
+	 * @throws IOException
+	 *             io exception.
+	 */
+	private Object readFieldValue(final ObjectInput in, final char code)
+			throws IOException {
+		switch (code) {
+		case 'I':
+			return in.readInt();
+		case 'J':
+			return in.readLong();
+		case 'D':
+			return in.readDouble();
+		case 'F':
+			return in.readFloat();
+		case 'S':
+			return in.readShort();
+		case 'B':
+			return in.readByte();
+		case 'Z':
+			return in.readBoolean();
+		case 'C':
+			return in.readChar();
+		default:
+			return readValue(in);
+		}
+	}
+
+	/**
+	 * Read class written by writeClass.
+	 *
+	 * @param in
+	 *            the input
+	 * @param bean
+	 *            true if written as bean
+	 * @return the class info
+	 * @throws IOException
+	 *             io exception.
+	 */
+	private ClassInfo readClass(final ObjectInput in, final boolean bean)
+			throws IOException {
+		int id = in.readInt();
+		if (id != NEW_CLASS) {
+			return classInfos.get(id);
+		}
+		ClassInfo info = new ClassInfo();
+		classInfos.add(info);
+		String name = in.readUTF();
+		try {
+			info.type = Class.forName(name, false,
+					Thread.currentThread().getContextClassLoader());
+		} catch (ClassNotFoundException e) {
+			LOG.log(Level.WARNING, "class not found in data context " + name,
+					e);
+		}
+		if (bean) {
+			int size = in.readInt();
+			info.codes = new char[size];
+			info.fields = new Field[size];
+			Map<String, Field> localFields = new HashMap<>();
+			if (info.type != null) {
+				for (Field field : getFields(info.type)) {
+					localFields.put(field.getName(), field);
+				}
+			}
+			for (int i = 0; i < size; i++) {
+				info.fields[i] = localFields.get(in.readUTF());
+				info.codes[i] = in.readChar();
+			}
+		}
+		return info;
+	}
+
+	/**
+	 * Create instance by no-arg constructor.
+	 *
+	 * @param type
+	 *            the class
+	 * @return the instance. null if failed.
+	 */
+	private static Object newInstance(final Class<?> type) {
+		try {
+			Constructor<?> constructor = type.getDeclaredConstructor();
+			constructor.setAccessible(true);
+			return constructor.newInstance();
+		} catch (ReflectiveOperationException | RuntimeException e) {
+			LOG.log(Level.FINE, "cannot create " + type.getName(), e);
+			return null;
+		}
+	}
+
+}
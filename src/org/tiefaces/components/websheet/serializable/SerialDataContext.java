@@ -6,17 +6,13 @@ package org.tiefaces.components.websheet.serializable;
 
 import java.io.IOException;
 import java.io.Serializable;
-import java.lang.reflect.Type;
 import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
-import org.apache.poi.EncryptedDocumentException;
-import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
-import com.google.gson.reflect.TypeToken;
 
 /**
- * serialize workbook.
+ * serialize data context. The map is written in typed binary format by
+ * DataContextSerializer, so values keep their classes and shared objects.
  * 
  * @author Jason Jiang
  *
@@ -30,16 +26,13 @@ public class SerialDataContext implements Serializable {
 	/**
 	 * serial id.
 	 */
-	private static final long serialVersionUID = 1L;
+	private static final long serialVersionUID = 2L;
 
 	/**
 	 * data context map is transient.
 	 */
 	private transient Map<String, Object> dataContext;
 
-	/** convert map to json string. */
-	private String mapToJson;
-
 	/**
 	 * save the workbook before serialize.
 	 * 
@@ -50,9 +43,8 @@ public class SerialDataContext implements Serializable {
 	 */
 	private void writeObject(final java.io.ObjectOutputStream out)
 			throws IOException {
-		Gson objGson = new GsonBuilder().setPrettyPrinting().create();
-		this.mapToJson = objGson.toJson(this.dataContext);
 		out.defaultWriteObject();
+		DataContextSerializer.write(out, this.dataContext);
 	}
 
 	/**
@@ -67,11 +59,8 @@ public class SerialDataContext implements Serializable {
 			throws IOException {
 		try {
 			in.defaultReadObject();
-			Gson objGson = new GsonBuilder().setPrettyPrinting().create();
-			Type listType = new TypeToken<Map<String, Object>>() {
-			}.getType();
-			this.dataContext = objGson.fromJson(mapToJson, listType);
-		} catch (EncryptedDocumentException | ClassNotFoundException e) {
+			this.dataContext = DataContextSerializer.read(in);
+		} catch (ClassNotFoundException e) {
 			LOG.log(Level.SEVERE,
 					" error in readObject of serialWorkbook : "
 							+ e.getLocalizedMessage(),
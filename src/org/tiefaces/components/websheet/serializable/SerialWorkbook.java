@@ -15,10 +15,19 @@ import org.apache.poi.EncryptedDocumentException;
 import org.apache.poi.openxml4j.exceptions.InvalidFormatException;
 import org.apache.poi.ss.usermodel.Workbook;
 import org.apache.poi.ss.usermodel.WorkbookFactory;
+import org.tiefaces.components.websheet.configuration.CompiledTemplate;
 import org.tiefaces.components.websheet.configuration.SheetConfiguration;
+import org.tiefaces.components.websheet.configuration.TemplateCache;
+import org.tiefaces.components.websheet.dataobjects.RowMetaStore;
 
 /**
- * serialize workbook.
+ * serialize workbook. If the workbook is loaded from a template saved in the
+ * template store, only the template key and the delta against the template
+ * workbook are saved. The workbook is rebuilt from the cached or stored
+ * template on first access after loading, so any node sharing the store can
+ * rebuild it. Otherwise the whole workbook is saved as xlsx. Templates are
+ * saved to the default store unless it's replaced or removed, see
+ * TemplateCache.
  * 
  * @author Jason Jiang
  *
@@ -32,7 +41,16 @@ public class SerialWorkbook implements Serializable {
 	/**
 	 * serial id.
 	 */
-	private static final long serialVersionUID = 4711304873642901753L;
+	private static final long serialVersionUID = -3089447270410374182L;
+
+	/** no workbook saved. */
+	private static final byte FORMAT_NONE = 0;
+
+	/** workbook saved as xlsx. */
+	private static final byte FORMAT_XLSX = 1;
+
+	/** workbook saved as delta of template. */
+	private static final byte FORMAT_DELTA = 2;
 
 	/**
 	 * workbook is transient.
@@ -42,7 +60,17 @@ public class SerialWorkbook implements Serializable {
 	/** hold configuration for each sheet. */
 	private Map<String, SheetConfiguration> sheetConfigMap;
 
+	/** row metadata of the workbook. written before the workbook. */
+	private RowMetaStore rowMetaStore;
+
+	/** key of compiled template the workbook loaded from. */
+	private String templateKey;
+
+	/** delta read from stream, waiting for rebuild of workbook. */
+	private transient byte[] pendingDelta;
 
+	/** template of pending delta cannot be resolved. don't retry. */
+	private transient boolean unresolved;
 
 	/**
 	 * save the workbook before serialize.
@@ -54,12 +82,65 @@ public class SerialWorkbook implements Serializable {
 	 */
 	private void writeObject(final java.io.ObjectOutputStream out)
 			throws IOException {
+		// row metadata is written by rows of workbook, rebuild it first.
+		ensureWorkbook();
 		out.defaultWriteObject();
-		if (wb != null) {
+		if (wb == null) {
+			if (pendingDelta != null) {
+				// template not resolved on this node, pass the delta on.
+				out.writeByte(FORMAT_DELTA);
+				out.writeInt(pendingDelta.length);
+				out.write(pendingDelta);
+			} else {
+				out.writeByte(FORMAT_NONE);
+			}
+			return;
+		}
+		byte[] delta = createDelta();
+		if (delta != null) {
+			out.writeByte(FORMAT_DELTA);
+			out.writeInt(delta.length);
+			out.write(delta);
+		} else {
+			out.writeByte(FORMAT_XLSX);
 			wb.write(out);
 		}
 	}
 
+	/**
+	 * Create delta of workbook against its template. Only for templates in
+	 * the store, as the node reading the delta may not have it cached. Rows
+	 * are compared with their origin rows of template.
+	 *
+	 * @return the delta. null if template not stored or workbook has changes
+	 *         not covered by delta.
+	 */
+	private byte[] createDelta() {
+		if (templateKey == null) {
+			return null;
+		}
+		try {
+			CompiledTemplate template = TemplateCache.get(templateKey);
+			Workbook base;
+			if ((template != null) && template.isStored()) {
+				base = template.getBaseWorkbook();
+			} else {
+				// evicted, or compiled on another node.
+				base = TemplateCache.getStoredBaseWorkbook(templateKey);
+			}
+			if (base == null) {
+				return null;
+			}
+			synchronized (base) {
+				return WorkbookDelta.create(base, wb, rowMetaStore);
+			}
+		} catch (IOException | InvalidFormatException e) {
+			LOG.log(Level.WARNING, " error in create delta of workbook : "
+					+ e.getLocalizedMessage(), e);
+			return null;
+		}
+	}
+
 	/**
 	 * load the workbook from saving.
 	 * 
@@ -72,8 +153,14 @@ public class SerialWorkbook implements Serializable {
 			throws IOException {
 		try {
 			in.defaultReadObject();
-			wb = WorkbookFactory.create(in);
-			recover();
+			byte format = in.readByte();
+			if (format == FORMAT_DELTA) {
+				pendingDelta = new byte[in.readInt()];
+				in.readFully(pendingDelta);
+			} else if (format == FORMAT_XLSX) {
+				wb = WorkbookFactory.create(in);
+				recover();
+			}
 		} catch (EncryptedDocumentException | InvalidFormatException
 				| ClassNotFoundException e) {
 			LOG.log(Level.SEVERE,
@@ -89,9 +176,38 @@ public class SerialWorkbook implements Serializable {
 	 * @return the wb
 	 */
 	public final Workbook getWb() {
+		ensureWorkbook();
 		return wb;
 	}
 
+	/**
+	 * Rebuild workbook from template and delta if it is waiting for rebuild.
+	 * If the template cannot be resolved, the delta is kept and written out
+	 * again on next serialization.
+	 */
+	private void ensureWorkbook() {
+		if ((pendingDelta == null) || unresolved) {
+			return;
+		}
+		try {
+			Workbook rebuilt = TemplateCache.createWorkbook(templateKey);
+			if (rebuilt == null) {
+				unresolved = true;
+				LOG.severe("template " + templateKey
+						+ " neither cached nor stored, workbook cannot be rebuilt.");
+				return;
+			}
+			WorkbookDelta.apply(pendingDelta, rebuilt);
+			pendingDelta = null;
+			wb = rebuilt;
+			recover();
+		} catch (IOException | InvalidFormatException e) {
+			unresolved = true;
+			LOG.log(Level.SEVERE, " error in rebuild workbook : "
+					+ e.getLocalizedMessage(), e);
+		}
+	}
+
 	/**
 	 * set wb.
 	 * 
@@ -100,6 +216,43 @@ public class SerialWorkbook implements Serializable {
 	 */
 	public final void setWb(final Workbook pwb) {
 		this.wb = pwb;
+		this.pendingDelta = null;
+		this.unresolved = false;
+		this.templateKey = null;
+		this.getRowMetaStore().clear();
+	}
+
+	/**
+	 * Gets the template key.
+	 *
+	 * @return the template key. null if not loaded from cached template.
+	 */
+	public final String getTemplateKey() {
+		return templateKey;
+	}
+
+	/**
+	 * Sets the key of compiled template the workbook loaded from. Must be
+	 * set after setWb.
+	 *
+	 * @param ptemplateKey
+	 *            the template key
+	 */
+	public final void setTemplateKey(final String ptemplateKey) {
+		this.templateKey = ptemplateKey;
+	}
+
+	/**
+	 * Gets the row meta store.
+	 *
+	 * @return the row meta store
+	 */
+	public final RowMetaStore getRowMetaStore() {
+		ensureWorkbook();
+		if (rowMetaStore == null) {
+			rowMetaStore = new RowMetaStore();
+		}
+		return rowMetaStore;
 	}
 
 	/**
@@ -108,6 +261,7 @@ public class SerialWorkbook implements Serializable {
 	 * @return the sheetConfigMap
 	 */
 	public final Map<String, SheetConfiguration> getSheetConfigMap() {
+		ensureWorkbook();
 		return sheetConfigMap;
 	}
 
@@ -127,9 +281,13 @@ public class SerialWorkbook implements Serializable {
 	 */
 	public void recover() {
 		Map<String, SheetConfiguration> map = this.getSheetConfigMap();
-		for (Entry<String, SheetConfiguration> entry : map.entrySet()) {
-			entry.getValue().recover(this.getWb());
+		if (map != null) {
+			for (Entry<String, SheetConfiguration> entry : map
+					.entrySet()) {
+				entry.getValue().recover(this.getWb());
+			}
 		}
+		this.getRowMetaStore().recover(this.getWb());
 	}
 
 }
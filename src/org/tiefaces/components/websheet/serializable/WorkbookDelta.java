@@ -0,0 +1,1158 @@
+/*
+ * Copyright 2017 TieFaces.
+ * Licensed under MIT
+ */
+package org.tiefaces.components.websheet.serializable;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+import org.apache.poi.POIXMLDocumentPart;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellType;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.ss.util.CellAddress;
+import org.apache.poi.ss.util.CellRangeAddress;
+import org.apache.poi.xssf.model.CommentsTable;
+import org.apache.poi.xssf.usermodel.XSSFComment;
+import org.apache.poi.xssf.usermodel.XSSFConditionalFormatting;
+import org.apache.poi.xssf.usermodel.XSSFDataValidation;
+import org.apache.poi.xssf.usermodel.XSSFHyperlink;
+import org.apache.poi.xssf.usermodel.XSSFRichTextString;
+import org.apache.poi.xssf.usermodel.XSSFRow;
+import org.apache.poi.xssf.usermodel.XSSFSheet;
+import org.apache.poi.xssf.usermodel.XSSFSheetConditionalFormatting;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.apache.xmlbeans.XmlException;
+import org.openxmlformats.schemas.spreadsheetml.x2006.main.CTRst;
+import org.tiefaces.components.websheet.dataobjects.RowMetaStore;
+import org.tiefaces.components.websheet.utility.CellUtility;
+
+/**
+ * Compact binary delta of a workbook against the workbook it was built from,
+ * i.e. the configured template. Holds changed and removed rows with their
+ * changed cells, and merged regions, comments and name formulas where they
+ * differ. The delta is deflated.
+ *
+ * Rows are compared with the template row they were copied from, given by
+ * the origin row number of row metadata. So rows moved by inserts or
+ * deletes are written as a copy of their origin row with the changed cells,
+ * instead of every cell differing from the row at the same index.
+ *
+ * Only cell level changes are covered. If the workbook differs from base in
+ * other parts, e.g. new styles, hyperlinks, new names or shifted
+ * conditional formatting, create returns null and the full workbook should
+ * be saved instead.
+ *
+ * @author Jason Jiang
+ *
+ */
+public final class WorkbookDelta {
+
+	/** format version. */
+	private static final int VERSION = 2;
+
+	/** first version with rows copied from origin rows. */
+	private static final int VERSION_ROW_COPY = 2;
+
+	/** end of rows or cells. */
+	private static final int END = -1;
+
+	/** row removed. */
+	private static final byte ROW_REMOVED = 0;
+
+	/** row added or changed. */
+	private static final byte ROW_CHANGED = 1;
+
+	/** row replaced by a copy of another base row, then changed. */
+	private static final byte ROW_COPIED = 2;
+
+	/** cell removed. */
+	private static final byte CELL_REMOVED = 0;
+
+	/** blank cell. */
+	private static final byte CELL_BLANK = 1;
+
+	/** numeric cell. */
+	private static final byte CELL_NUMERIC = 2;
+
+	/** plain string cell. */
+	private static final byte CELL_STRING = 3;
+
+	/** rich text string cell. */
+	private static final byte CELL_RICH_STRING = 4;
+
+	/** boolean cell. */
+	private static final byte CELL_BOOLEAN = 5;
+
+	/** error cell. */
+	private static final byte CELL_ERROR = 6;
+
+	/** formula cell, followed by cached result. */
+	private static final byte CELL_FORMULA = 7;
+
+	/**
+	 * hide constructor.
+	 */
+	private WorkbookDelta() {
+		// not called
+	}
+
+	/**
+	 * Create delta of workbook against base, comparing rows at same index.
+	 *
+	 * @param base
+	 *            the base workbook. not changed.
+	 * @param wb
+	 *            the workbook
+	 * @return the delta. null if workbook has changes not covered by delta.
+	 * @throws IOException
+	 *             io exception.
+	 */
+	public static byte[] create(final Workbook base, final Workbook wb)
+			throws IOException {
+		return create(base, wb, null);
+	}
+
+	/**
+	 * Create delta of workbook against base.
+	 *
+	 * @param base
+	 *            the base workbook. not changed.
+	 * @param wb
+	 *            the workbook
+	 * @param rowMetaStore
+	 *            row metadata of workbook, for origin rows. null to compare
+	 *            rows at same index.
+	 * @return the delta. null if workbook has changes not covered by delta.
+	 * @throws IOException
+	 *             io exception.
+	 */
+	public static byte[] create(final Workbook base, final Workbook wb,
+			final RowMetaStore rowMetaStore) throws IOException {
+		if (!isCovered(base, wb)) {
+			return null;
+		}
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (DataOutputStream out = new DataOutputStream(
+				new DeflaterOutputStream(bytes))) {
+			out.writeInt(VERSION);
+			out.writeInt(wb.getActiveSheetIndex());
+			Set<CommentsTable> commentsTables = Collections
+					.newSetFromMap(new IdentityHashMap<CommentsTable, Boolean>());
+			for (int i = 0; i < wb.getNumberOfSheets(); i++) {
+				if (!writeSheet(out, base.getSheetAt(i), wb.getSheetAt(i),
+						rowMetaStore, commentsTables)) {
+					return null;
+				}
+			}
+			writeNames(out, base, wb);
+		}
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * Write formulas of all names if they differ from base. e.g. named
+	 * ranges shifted with rows.
+	 *
+	 * @param out
+	 *            the output
+	 * @param base
+	 *            the base workbook
+	 * @param wb
+	 *            the workbook
+	 * @throws IOException
+	 *             io exception.
+	 */
+	private static void writeNames(final DataOutputStream out,
+			final Workbook base, final Workbook wb) throws IOException {
+		boolean changed = false;
+		for (int i = 0; i < wb.getNumberOfNames(); i++) {
+			if (!Objects.equals(wb.getNameAt(i).getRefersToFormula(),
+					base.getNameAt(i).getRefersToFormula())) {
+				changed = true;
+				break;
+			}
+		}
+		out.writeBoolean(changed);
+		if (changed) {
+			for (int i = 0; i < wb.getNumberOfNames(); i++) {
+				writeNullableString(out,
+						wb.getNameAt(i).getRefersToFormula());
+			}
+		}
+	}
+
+	/**
+	 * Apply delta to workbook. The workbook must be a new instance of the
+	 * base workbook used by create.
+	 *
+	 * @param delta
+	 *            the delta
+	 * @param wb
+	 *            the workbook
+	 * @throws IOException
+	 *             io exception.
+	 */
+	public static void apply(final byte[] delta, final Workbook wb)
+			throws IOException {
+		try (DataInputStream in = new DataInputStream(
+				new InflaterInputStream(new ByteArrayInputStream(delta)))) {
+			int version = in.readInt();
+			if ((version < 1) || (version > VERSION)) {
+				throw new IOException(
+						"unsupported workbook delta version " + version);
+			}
+			int activeSheet = in.readInt();
+			for (int i = 0; i < wb.getNumberOfSheets(); i++) {
+				readSheet(in, wb.getSheetAt(i), version >= VERSION_ROW_COPY);
+			}
+			if (in.readBoolean()) {
+				for (int i = 0; i < wb.getNumberOfNames(); i++) {
+					String formula = readNullableString(in);
+					if (formula != null) {
+						wb.getNameAt(i).setRefersToFormula(formula);
+					}
+				}
+			}
+			if (activeSheet != wb.getActiveSheetIndex()) {
+				wb.setActiveSheet(activeSheet);
+			}
+		}
+	}
+
+	/**
+	 * Check whether workbook differs from base only in the parts covered by
+	 * delta.
+	 *
+	 * @param base
+	 *            the base
+	 * @param wb
+	 *            the workbook
+	 * @return true if covered
+	 */
+	private static boolean isCovered(final Workbook base, final Workbook wb) {
+		if (!(base instanceof XSSFWorkbook) || !(wb instanceof XSSFWorkbook)
+				|| (base.getNumberOfSheets() != wb.getNumberOfSheets())
+				|| (base.getNumCellStyles() != wb.getNumCellStyles())
+				|| (base.getNumberOfFonts() != wb.getNumberOfFonts())
+				|| (base.getNumberOfNames() != wb.getNumberOfNames())) {
+			return false;
+		}
+		for (int i = 0; i < wb.getNumberOfNames(); i++) {
+			if (!wb.getNameAt(i).getNameName()
+					.equals(base.getNameAt(i).getNameName())) {
+				return false;
+			}
+		}
+		for (int i = 0; i < wb.getNumberOfSheets(); i++) {
+			if (!wb.getSheetName(i).equals(base.getSheetName(i))
+					|| (wb.isSheetHidden(i) != base.isSheetHidden(i))
+					|| (wb.isSheetVeryHidden(i) != base
+							.isSheetVeryHidden(i))
+					|| !isSheetCovered((XSSFSheet) base.getSheetAt(i),
+							(XSSFSheet) wb.getSheetAt(i))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Check hyperlinks, conditional formatting and data validations of sheet
+	 * are same as base.
+	 *
+	 * @param base
+	 *            the base sheet
+	 * @param sheet
+	 *            the sheet
+	 * @return true if same
+	 */
+	private static boolean isSheetCovered(final XSSFSheet base,
+			final XSSFSheet sheet) {
+		List<XSSFHyperlink> links = sheet.getHyperlinkList();
+		List<XSSFHyperlink> baseLinks = base.getHyperlinkList();
+		if (links.size() != baseLinks.size()) {
+			return false;
+		}
+		for (int i = 0; i < links.size(); i++) {
+			if (!Objects.equals(links.get(i).getCellRef(),
+					baseLinks.get(i).getCellRef())
+					|| !Objects.equals(links.get(i).getAddress(),
+							baseLinks.get(i).getAddress())) {
+				return false;
+			}
+		}
+		XSSFSheetConditionalFormatting formatting = sheet
+				.getSheetConditionalFormatting();
+		XSSFSheetConditionalFormatting baseFormatting = base
+				.getSheetConditionalFormatting();
+		if (formatting.getNumConditionalFormattings() != baseFormatting
+				.getNumConditionalFormattings()) {
+			return false;
+		}
+		for (int i = 0; i < formatting.getNumConditionalFormattings(); i++) {
+			XSSFConditionalFormatting cf = formatting
+					.getConditionalFormattingAt(i);
+			XSSFConditionalFormatting baseCf = baseFormatting
+					.getConditionalFormattingAt(i);
+			if (!sameRanges(cf.getFormattingRanges(),
+					baseCf.getFormattingRanges())) {
+				return false;
+			}
+		}
+		List<XSSFDataValidation> validations = sheet.getDataValidations();
+		List<XSSFDataValidation> baseValidations = base.getDataValidations();
+		if (validations.size() != baseValidations.size()) {
+			return false;
+		}
+		for (int i = 0; i < validations.size(); i++) {
+			if (!sameRanges(
+					validations.get(i).getRegions().getCellRangeAddresses(),
+					baseValidations.get(i).getRegions()
+							.getCellRangeAddresses())) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Compare ranges.
+	 *
+	 * @param ranges
+	 *            the ranges
+	 * @param baseRanges
+	 *            the base ranges
+	 * @return true if same
+	 */
+	private static boolean sameRanges(final CellRangeAddress[] ranges,
+			final CellRangeAddress[] baseRanges) {
+		if (ranges.length != baseRanges.length) {
+			return false;
+		}
+		for (int i = 0; i < ranges.length; i++) {
+			if (!ranges[i].formatAsString()
+					.equals(baseRanges[i].formatAsString())) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Write delta of sheet.
+	 *
+	 * @param out
+	 *            the output
+	 * @param base
+	 *            the base sheet
+	 * @param sheet
+	 *            the sheet
+	 * @param rowMetaStore
+	 *            the row meta store. may be null.
+	 * @param commentsTables
+	 *            comments tables written by previous sheets
+	 * @return false if sheet has changes not covered by delta.
+	 * @throws IOException
+	 *             io exception.
+	 */
+	private static boolean writeSheet(final DataOutputStream out,
+			final Sheet base, final Sheet sheet,
+			final RowMetaStore rowMetaStore,
+			final Set<CommentsTable> commentsTables) throws IOException {
+		List<CellRangeAddress> regions = sheet.getMergedRegions();
+		List<CellRangeAddress> baseRegions = base.getMergedRegions();
+		boolean regionsChanged = !sameRanges(
+				regions.toArray(new CellRangeAddress[regions.size()]),
+				baseRegions
+						.toArray(new CellRangeAddress[baseRegions.size()]));
+		out.writeBoolean(regionsChanged);
+		if (regionsChanged) {
+			out.writeInt(regions.size());
+			for (CellRangeAddress region : regions) {
+				out.writeInt(region.getFirstRow());
+				out.writeInt(region.getLastRow());
+				out.writeInt(region.getFirstColumn());
+				out.writeInt(region.getLastColumn());
+			}
+		}
+		TreeSet<Integer> rowNums = new TreeSet<>();
+		for (Row row : base) {
+			rowNums.add(row.getRowNum());
+		}
+		// base rows copied to other index. read before any row changed.
+		Map<Integer, Integer> sources = new HashMap<>();
+		for (Row row : sheet) {
+			rowNums.add(row.getRowNum());
+			int source = getSourceRowNum(base, row, rowMetaStore);
+			if (source != row.getRowNum()) {
+				sources.put(row.getRowNum(), source);
+			}
+		}
+		TreeSet<Integer> sourceRows = new TreeSet<>(sources.values());
+		out.writeInt(sourceRows.size());
+		for (int source : sourceRows) {
+			out.writeInt(source);
+		}
+		for (int rowNum : rowNums) {
+			Row row = sheet.getRow(rowNum);
+			if (row == null) {
+				out.writeInt(rowNum);
+				out.writeByte(ROW_REMOVED);
+				continue;
+			}
+			Integer source = sources.get(rowNum);
+			Row baseRow = base.getRow((source == null) ? rowNum : source);
+			List<Integer> changedCols = findChangedCells(baseRow, row);
+			if (changedCols == null) {
+				return false;
+			}
+			if ((source == null) && (baseRow != null)
+					&& changedCols.isEmpty() && sameRowAttrs(baseRow, row)) {
+				continue;
+			}
+			out.writeInt(rowNum);
+			if (source == null) {
+				out.writeByte(ROW_CHANGED);
+			} else {
+				out.writeByte(ROW_COPIED);
+				out.writeInt(source);
+			}
+			out.writeShort(getRowHeight(row));
+			out.writeBoolean(row.getZeroHeight());
+			out.writeShort(getRowStyle(row));
+			for (int col : changedCols) {
+				out.writeShort(col);
+				writeCell(out, row.getCell(col));
+			}
+			out.writeShort(END);
+		}
+		out.writeInt(END);
+		return writeComments(out, (XSSFSheet) base, (XSSFSheet) sheet,
+				commentsTables);
+	}
+
+	/**
+	 * Gets the base row the row is compared with. The origin row if it's in
+	 * base and can be copied, otherwise the row at same index.
+	 *
+	 * @param base
+	 *            the base sheet
+	 * @param row
+	 *            the row
+	 * @param rowMetaStore
+	 *            the row meta store. may be null.
+	 * @return the base row number
+	 */
+	private static int getSourceRowNum(final Sheet base, final Row row,
+			final RowMetaStore rowMetaStore) {
+		int rowNum = row.getRowNum();
+		int origin = (rowMetaStore == null) ? -1
+				: rowMetaStore.getOriginRowNum(row);
+		if ((origin < 0) || (origin == rowNum)) {
+			return rowNum;
+		}
+		Row originRow = base.getRow(origin);
+		if ((originRow == null) || hasArrayFormula(originRow)) {
+			return rowNum;
+		}
+		return origin;
+	}
+
+	/**
+	 * Checks if any cell of row is part of array formula, which is not
+	 * rebuilt by copying cells.
+	 *
+	 * @param row
+	 *            the row
+	 * @return true, if has array formula
+	 */
+	private static boolean hasArrayFormula(final Row row) {
+		for (Cell cell : row) {
+			if (cell.isPartOfArrayFormulaGroup()) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Write all comments of sheet if they differ from base. e.g. comments
+	 * copied with rows. A cloned sheet shares comments table with its
+	 * source sheet, the table is written only once.
+	 *
+	 * @param out
+	 *            the output
+	 * @param base
+	 *            the base sheet
+	 * @param sheet
+	 *            the sheet
+	 * @param commentsTables
+	 *            comments tables written by previous sheets
+	 * @return false if comments changed but cannot be rebuilt.
+	 * @throws IOException
+	 *             io exception.
+	 */
+	private static boolean writeComments(final DataOutputStream out,
+			final XSSFSheet base, final XSSFSheet sheet,
+			final Set<CommentsTable> commentsTables) throws IOException {
+		CommentsTable table = null;
+		for (POIXMLDocumentPart part : sheet.getRelations()) {
+			if (part instanceof CommentsTable) {
+				table = (CommentsTable) part;
+			}
+		}
+		Map<CellAddress, XSSFComment> comments = sheet.getCellComments();
+		boolean changed = (table != null) && commentsTables.add(table)
+				&& !sameComments(base.getCellComments(), comments);
+		if (changed && !sheet.getCTWorksheet().isSetLegacyDrawing()) {
+			return false;
+		}
+		out.writeBoolean(changed);
+		if (!changed) {
+			return true;
+		}
+		out.writeInt(comments.size());
+		for (Map.Entry<CellAddress, XSSFComment> entry : comments
+				.entrySet()) {
+			XSSFComment comment = entry.getValue();
+			out.writeInt(entry.getKey().getRow());
+			out.writeShort(entry.getKey().getColumn());
+			writeString(out, comment.getString().getString());
+			writeNullableString(out, comment.getAuthor());
+			out.writeBoolean(comment.isVisible());
+			String[] settings = null;
+			Row row = sheet.getRow(entry.getKey().getRow());
+			if (row != null) {
+				Cell cell = row.getCell(entry.getKey().getColumn());
+				if (cell != null) {
+					settings = CellUtility.getCommentShapeSettings(cell);
+				}
+			}
+			out.writeBoolean(settings != null);
+			if (settings != null) {
+				writeString(out, settings[0]);
+				writeString(out, settings[1]);
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Compare comments by address, text, author and visibility.
+	 *
+	 * @param baseComments
+	 *            the base comments
+	 * @param comments
+	 *            the comments
+	 * @return true if same
+	 */
+	private static boolean sameComments(
+			final Map<CellAddress, XSSFComment> baseComments,
+			final Map<CellAddress, XSSFComment> comments) {
+		if (comments.size() != baseComments.size()) {
+			return false;
+		}
+		for (Map.Entry<CellAddress, XSSFComment> entry : comments
+				.entrySet()) {
+			XSSFComment comment = entry.getValue();
+			XSSFComment baseComment = baseComments.get(entry.getKey());
+			if ((baseComment == null)
+					|| !Objects.equals(comment.getString().getString(),
+							baseComment.getString().getString())
+					|| !Objects.equals(comment.getAuthor(),
+							baseComment.getAuthor())
+					|| (comment.isVisible() != baseComment.isVisible())) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Find columns of cells differ from base row.
+	 *
+	 * @param baseRow
+	 *            the base row. null if not exist.
+	 * @param row
+	 *            the row
+	 * @return the columns in order. null if a changed cell is not covered by
+	 *         delta.
+	 */
+	private static List<Integer> findChangedCells(final Row baseRow,
+			final Row row) {
+		TreeSet<Integer> cols = new TreeSet<>();
+		if (baseRow != null) {
+			for (Cell cell : baseRow) {
+				cols.add(cell.getColumnIndex());
+			}
+		}
+		for (Cell cell : row) {
+			cols.add(cell.getColumnIndex());
+		}
+		List<Integer> changedCols = new ArrayList<>();
+		for (int col : cols) {
+			Cell cell = row.getCell(col);
+			Cell baseCell = null;
+			if (baseRow != null) {
+				baseCell = baseRow.getCell(col);
+			}
+			if (!sameCell(baseCell, cell)) {
+				if ((cell != null) && cell.isPartOfArrayFormulaGroup()) {
+					return null;
+				}
+				changedCols.add(col);
+			}
+		}
+		return changedCols;
+	}
+
+	/**
+	 * Compare row height, hidden flag and row style.
+	 *
+	 * @param baseRow
+	 *            the base row
+	 * @param row
+	 *            the row
+	 * @return true if same
+	 */
+	private static boolean sameRowAttrs(final Row baseRow, final Row row) {
+		return (getRowHeight(baseRow) == getRowHeight(row))
+				&& (baseRow.getZeroHeight() == row.getZeroHeight())
+				&& (getRowStyle(baseRow) == getRowStyle(row));
+	}
+
+	/**
+	 * Gets the row height.
+	 *
+	 * @param row
+	 *            the row
+	 * @return the height in twips. -1 for default height.
+	 */
+	private static short getRowHeight(final Row row) {
+		if (((XSSFRow) row).getCTRow().isSetHt()) {
+			return row.getHeight();
+		}
+		return -1;
+	}
+
+	/**
+	 * Gets the row style index.
+	 *
+	 * @param row
+	 *            the row
+	 * @return the style index. -1 if not formatted.
+	 */
+	private static short getRowStyle(final Row row) {
+		if (row.isFormatted()) {
+			return row.getRowStyle().getIndex();
+		}
+		return -1;
+	}
+
+	/**
+	 * Compare cell with base cell.
+	 *
+	 * @param baseCell
+	 *            the base cell. may be null.
+	 * @param cell
+	 *            the cell. may be null.
+	 * @return true if same
+	 */
+	private static boolean sameCell(final Cell baseCell, final Cell cell) {
+		if ((baseCell == null) || (cell == null)) {
+			return baseCell == cell;
+		}
+		if ((baseCell.getCellStyle().getIndex() != cell.getCellStyle()
+				.getIndex())
+				|| (baseCell.getCellTypeEnum() != cell.getCellTypeEnum())) {
+			return false;
+		}
+		CellType type = cell.getCellTypeEnum();
+		if (type == CellType.FORMULA) {
+			if (!baseCell.getCellFormula().equals(cell.getCellFormula())
+					|| (baseCell.getCachedFormulaResultTypeEnum() != cell
+							.getCachedFormulaResultTypeEnum())) {
+				return false;
+			}
+			type = cell.getCachedFormulaResultTypeEnum();
+		}
+		switch (type) {
+		case NUMERIC:
+			return Double.doubleToLongBits(baseCell
+					.getNumericCellValue()) == Double
+							.doubleToLongBits(cell.getNumericCellValue());
+		case STRING:
+			return sameString(baseCell, cell);
+		case BOOLEAN:
+			return baseCell.getBooleanCellValue() == cell
+					.getBooleanCellValue();
+		case ERROR:
+			return baseCell.getErrorCellValue() == cell.getErrorCellValue();
+		default:
+			return true;
+		}
+	}
+
+	/**
+	 * Compare string value of cells, with formatting runs of rich text.
+	 *
+	 * @param baseCell
+	 *            the base cell
+	 * @param cell
+	 *            the cell
+	 * @return true if same
+	 */
+	private static boolean sameString(final Cell baseCell, final Cell cell) {
+		if (!baseCell.getStringCellValue()
+				.equals(cell.getStringCellValue())) {
+			return false;
+		}
+		if (cell.getCellTypeEnum() == CellType.FORMULA) {
+			return true;
+		}
+		XSSFRichTextString baseText = (XSSFRichTextString) baseCell
+				.getRichStringCellValue();
+		XSSFRichTextString text = (XSSFRichTextString) cell
+				.getRichStringCellValue();
+		if ((baseText.numFormattingRuns() == 0)
+				&& (text.numFormattingRuns() == 0)) {
+			return true;
+		}
+		return baseText.getCTRst().xmlText()
+				.equals(text.getCTRst().xmlText());
+	}
+
+	/**
+	 * Write cell.
+	 *
+	 * @param out
+	 *            the output
+	 * @param cell
+	 *            the cell. null if removed.
+	 * @throws IOException
+	 *             io exception.
+	 */
+	private static void writeCell(final DataOutputStream out,
+			final Cell cell) throws IOException {
+		if (cell == null) {
+			out.writeByte(CELL_REMOVED);
+			return;
+		}
+		CellType type = cell.getCellTypeEnum();
+		if (type == CellType.FORMULA) {
+			out.writeByte(CELL_FORMULA);
+			out.writeShort(cell.getCellStyle().getIndex());
+			writeString(out, cell.getCellFormula());
+			writeValue(out, cell, cell.getCachedFormulaResultTypeEnum());
+		} else {
+			writeValue(out, cell, type);
+		}
+	}
+
+	/**
+	 * Write value of cell. Style index is written before value, except for
+	 * formula result which follows the formula.
+	 *
+	 * @param out
+	 *            the output
+	 * @param cell
+	 *            the cell
+	 * @param type
+	 *            the value type
+	 * @throws IOException
+	 *             io exception.
+	 */
+	private static void writeValue(final DataOutputStream out,
+			final Cell cell, final CellType type) throws IOException {
+		boolean formula = cell.getCellTypeEnum() == CellType.FORMULA;
+		switch (type) {
+		case NUMERIC:
+			writeKind(out, cell, CELL_NUMERIC, formula);
+			out.writeDouble(cell.getNumericCellValue());
+			break;
+		case STRING:
+			XSSFRichTextString text = null;
+			if (!formula) {
+				text = (XSSFRichTextString) cell.getRichStringCellValue();
+			}
+			if ((text != null) && (text.numFormattingRuns() > 0)) {
+				writeKind(out, cell, CELL_RICH_STRING, formula);
+				writeString(out, text.getCTRst().xmlText());
+			} else {
+				writeKind(out, cell, CELL_STRING, formula);
+				writeString(out, cell.getStringCellValue());
+			}
+			break;
+		case BOOLEAN:
+			writeKind(out, cell, CELL_BOOLEAN, formula);
+			out.writeBoolean(cell.getBooleanCellValue());
+			break;
+		case ERROR:
+			writeKind(out, cell, CELL_ERROR, formula);
+			out.writeByte(cell.getErrorCellValue());
+			break;
+		default:
+			writeKind(out, cell, CELL_BLANK, formula);
+			break;
+		}
+	}
+
+	/**
+	 * Write kind of value, with style index for non formula cell.
+	 *
+	 * @param out
+	 *            the output
+	 * @param cell
+	 *            the cell
+	 * @param kind
+	 *            the kind
+	 * @param formula
+	 *            true if value is formula result
+	 * @throws IOException
+	 *             io exception.
+	 */
+	private static void writeKind(final DataOutputStream out,
+			final Cell cell, final byte kind, final boolean formula)
+			throws IOException {
+		out.writeByte(kind);
+		if (!formula) {
+			out.writeShort(cell.getCellStyle().getIndex());
+		}
+	}
+
+	/**
+	 * Write string as utf-8 bytes with length. Not limited to 64k as
+	 * writeUTF.
+	 *
+	 * @param out
+	 *            the output
+	 * @param str
+	 *            the string
+	 * @throws IOException
+	 *             io exception.
+	 */
+	private static void writeString(final DataOutputStream out,
+			final String str) throws IOException {
+		byte[] bytes = str.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	/**
+	 * Write string which may be null.
+	 *
+	 * @param out
+	 *            the output
+	 * @param str
+	 *            the string
+	 * @throws IOException
+	 *             io exception.
+	 */
+	private static void writeNullableString(final DataOutputStream out,
+			final String str) throws IOException {
+		out.writeBoolean(str != null);
+		if (str != null) {
+			writeString(out, str);
+		}
+	}
+
+	/**
+	 * Read string written by writeNullableString.
+	 *
+	 * @param in
+	 *            the input
+	 * @return the string. may be null.
+	 * @throws IOException
+	 *             io exception.
+	 */
+	private static String readNullableString(final DataInputStream in)
+			throws IOException {
+		if (in.readBoolean()) {
+			return readString(in);
+		}
+		return null;
+	}
+
+	/**
+	 * Read string written by writeString.
+	 *
+	 * @param in
+	 *            the input
+	 * @return the string
+	 * @throws IOException
+	 *             io exception.
+	 */
+	private static String readString(final DataInputStream in)
+			throws IOException {
+		byte[] bytes = new byte[in.readInt()];
+		in.readFully(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Apply delta of sheet.
+	 *
+	 * @param in
+	 *            the input
+	 * @param sheet
+	 *            the sheet
+	 * @param rowCopy
+	 *            whether delta has rows copied from other rows
+	 * @throws IOException
+	 *             io exception.
+	 */
+	private static void readSheet(final DataInputStream in,
+			final Sheet sheet, final boolean rowCopy) throws IOException {
+		if (in.readBoolean()) {
+			for (int i = sheet.getNumMergedRegions() - 1; i >= 0; i--) {
+				sheet.removeMergedRegion(i);
+			}
+			int size = in.readInt();
+			for (int i = 0; i < size; i++) {
+				((XSSFSheet) sheet).addMergedRegionUnsafe(
+						new CellRangeAddress(in.readInt(), in.readInt(),
+								in.readInt(), in.readInt()));
+			}
+		}
+		Map<Integer, byte[]> sourceRows = new HashMap<>();
+		if (rowCopy) {
+			int count = in.readInt();
+			for (int i = 0; i < count; i++) {
+				int source = in.readInt();
+				sourceRows.put(source, saveCells(sheet.getRow(source)));
+			}
+		}
+		int rowNum;
+		while ((rowNum = in.readInt()) != END) {
+			Row row = sheet.getRow(rowNum);
+			byte kind = in.readByte();
+			if (kind == ROW_REMOVED) {
+				if (row != null) {
+					sheet.removeRow(row);
+				}
+				continue;
+			}
+			if (row == null) {
+				row = sheet.createRow(rowNum);
+			}
+			if (kind == ROW_COPIED) {
+				for (Cell cell : getCells(row)) {
+					row.removeCell(cell);
+				}
+				byte[] cells = sourceRows.get(in.readInt());
+				if (cells != null) {
+					restoreCells(cells, row);
+				}
+			}
+			row.setHeight(in.readShort());
+			row.setZeroHeight(in.readBoolean());
+			short rowStyle = in.readShort();
+			if (rowStyle >= 0) {
+				row.setRowStyle(sheet.getWorkbook().getCellStyleAt(rowStyle));
+			} else if (row.isFormatted()) {
+				((XSSFRow) row).getCTRow().unsetS();
+				((XSSFRow) row).getCTRow().unsetCustomFormat();
+			}
+			int col;
+			while ((col = in.readShort()) != END) {
+				readCell(in, row, col);
+			}
+		}
+		if (in.readBoolean()) {
+			readComments(in, (XSSFSheet) sheet);
+		}
+	}
+
+	/**
+	 * Gets the cells of row.
+	 *
+	 * @param row
+	 *            the row
+	 * @return the cells
+	 */
+	private static List<Cell> getCells(final Row row) {
+		List<Cell> cells = new ArrayList<>();
+		for (Cell cell : row) {
+			cells.add(cell);
+		}
+		return cells;
+	}
+
+	/**
+	 * Save cells of row before rows changed, as source of copied rows.
+	 *
+	 * @param row
+	 *            the row. may be null.
+	 * @return the cells in the format of changed cells.
+	 * @throws IOException
+	 *             io exception.
+	 */
+	private static byte[] saveCells(final Row row) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (DataOutputStream out = new DataOutputStream(bytes)) {
+			if (row != null) {
+				for (Cell cell : row) {
+					out.writeShort(cell.getColumnIndex());
+					writeCell(out, cell);
+				}
+			}
+			out.writeShort(END);
+		}
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * Restore cells saved by saveCells into row.
+	 *
+	 * @param cells
+	 *            the saved cells
+	 * @param row
+	 *            the row
+	 * @throws IOException
+	 *             io exception.
+	 */
+	private static void restoreCells(final byte[] cells, final Row row)
+			throws IOException {
+		try (DataInputStream in = new DataInputStream(
+				new ByteArrayInputStream(cells))) {
+			int col;
+			while ((col = in.readShort()) != END) {
+				readCell(in, row, col);
+			}
+		}
+	}
+
+	/**
+	 * Replace comments of sheet with comments in delta.
+	 *
+	 * @param in
+	 *            the input
+	 * @param sheet
+	 *            the sheet
+	 * @throws IOException
+	 *             io exception.
+	 */
+	private static void readComments(final DataInputStream in,
+			final XSSFSheet sheet) throws IOException {
+		for (CellAddress address : new ArrayList<>(
+				sheet.getCellComments().keySet())) {
+			Row row = sheet.getRow(address.getRow());
+			boolean newRow = row == null;
+			if (newRow) {
+				row = sheet.createRow(address.getRow());
+			}
+			Cell cell = row.getCell(address.getColumn());
+			boolean newCell = cell == null;
+			if (newCell) {
+				cell = row.createCell(address.getColumn());
+			}
+			cell.removeCellComment();
+			if (newCell) {
+				row.removeCell(cell);
+			}
+			if (newRow) {
+				sheet.removeRow(row);
+			}
+		}
+		int size = in.readInt();
+		for (int i = 0; i < size; i++) {
+			int rowNum = in.readInt();
+			int col = in.readShort();
+			String text = readString(in);
+			String author = readNullableString(in);
+			boolean visible = in.readBoolean();
+			String[] settings = null;
+			if (in.readBoolean()) {
+				settings = new String[] { readString(in), readString(in) };
+			}
+			Row row = sheet.getRow(rowNum);
+			if (row == null) {
+				row = sheet.createRow(rowNum);
+			}
+			Cell cell = row.getCell(col);
+			if (cell == null) {
+				cell = row.createCell(col);
+			}
+			CellUtility.createCellComment(cell, text, author)
+					.setVisible(visible);
+			if (settings != null) {
+				CellUtility.setCommentShapeSettings(cell, settings);
+			}
+		}
+	}
+
+	/**
+	 * Apply delta of cell.
+	 *
+	 * @param in
+	 *            the input
+	 * @param row
+	 *            the row
+	 * @param col
+	 *            the column
+	 * @throws IOException
+	 *             io exception.
+	 */
+	private static void readCell(final DataInputStream in, final Row row,
+			final int col) throws IOException {
+		byte kind = in.readByte();
+		if (kind == CELL_REMOVED) {
+			Cell cell = row.getCell(col);
+			if (cell != null) {
+				row.removeCell(cell);
+			}
+			return;
+		}
+		Cell cell = row.createCell(col);
+		cell.setCellStyle(
+				row.getSheet().getWorkbook().getCellStyleAt(in.readShort()));
+		if (kind == CELL_FORMULA) {
+			CellUtility.setCellFormulaWithoutParse(cell, readString(in));
+			kind = in.readByte();
+		}
+		switch (kind) {
+		case CELL_NUMERIC:
+			cell.setCellValue(in.readDouble());
+			break;
+		case CELL_STRING:
+			cell.setCellValue(readString(in));
+			break;
+		case CELL_RICH_STRING:
+			try {
+				cell.setCellValue(new XSSFRichTextString(
+						CTRst.Factory.parse(readString(in))));
+			} catch (XmlException e) {
+				throw new IOException(e);
+			}
+			break;
+		case CELL_BOOLEAN:
+			cell.setCellValue(in.readBoolean());
+			break;
+		case CELL_ERROR:
+			cell.setCellErrorValue(in.readByte());
+			break;
+		default:
+			break;
+		}
+	}
+
+}
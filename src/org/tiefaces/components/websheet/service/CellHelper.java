@@ -6,14 +6,19 @@
 package org.tiefaces.components.websheet.service;
 
 import java.util.List;
+import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.FormulaEvaluator;
+import org.apache.poi.ss.usermodel.Sheet;
 import org.primefaces.context.RequestContext;
 import org.tiefaces.common.TieConstants;
 import org.tiefaces.components.websheet.TieWebSheetBean;
+import org.tiefaces.components.websheet.chart.ChartsData;
 import org.tiefaces.components.websheet.dataobjects.CollectionObject;
+import org.tiefaces.components.websheet.dataobjects.DeletedRows;
 import org.tiefaces.components.websheet.dataobjects.FacesCell;
 import org.tiefaces.components.websheet.utility.CellUtility;
 import org.tiefaces.components.websheet.utility.CommandUtility;
@@ -35,6 +40,12 @@ public class CellHelper {
 	private static final Logger LOG = Logger
 			.getLogger(CellHelper.class.getName());
 
+	/**
+	 * formula dependency graph. built when workbook loaded and kept up to
+	 * date when rows added or deleted.
+	 */
+	private FormulaDependencyGraph dependencyGraph = null;
+
 	/**
 	 * Instantiates a new cell helper.
 	 */
@@ -64,14 +75,14 @@ public class CellHelper {
 	public final void saveDataInContext(final Cell poiCell,
 			final String strValue) {
 
-		String saveAttrList = SaveAttrsUtility
-				.getSaveAttrListFromRow(poiCell.getRow());
+		String saveAttrList = parent.getRowMetaStore()
+				.getSaveAttrs(poiCell.getRow());
 		if (saveAttrList != null) {
 			String saveAttr = SaveAttrsUtility.getSaveAttrFromList(
 					poiCell.getColumnIndex(), saveAttrList);
 			if (saveAttr != null) {
-				String fullName = ConfigurationUtility
-						.getFullNameFromRow(poiCell.getRow());
+				String fullName = parent.getRowMetaStore()
+						.getFullName(poiCell.getRow());
 				if (fullName != null) {
 					restoreDataContext(fullName);
 					SaveAttrsUtility.saveDataToObjectInContext(
@@ -89,6 +100,7 @@ public class CellHelper {
 	 */
 	public final void reCalc() {
 
+		parent.getCharsData().markAllChartsDirty();
 		parent.getFormulaEvaluator().clearAllCachedResultValues();
 		try {
 			parent.getFormulaEvaluator().evaluateAll();
@@ -101,6 +113,189 @@ public class CellHelper {
 
 	}
 
+	/**
+	 * recalc formulas depend on the changed cell. Only the transitive
+	 * dependents of the cell are re-evaluated, other formula cells keep
+	 * their cached result. Charts reading the changed cells are marked dirty.
+	 * Fall back to full recalc if anything wrong.
+	 *
+	 * @param cell
+	 *            the changed cell.
+	 */
+	public final void reCalcDependents(final Cell cell) {
+
+		try {
+			if (dependencyGraph == null) {
+				buildDependencyGraph();
+			}
+			FormulaEvaluator evaluator = parent.getFormulaEvaluator();
+			ChartsData chartsData = parent.getCharsData();
+			evaluator.notifyUpdateCell(cell);
+			chartsData.markCellChanged(cell);
+			// the cell object may be replaced or changed from/to formula.
+			dependencyGraph.refreshCell(cell);
+			Set<Cell> formulaCells = dependencyGraph.getDependents(cell);
+			formulaCells.addAll(dependencyGraph.pollChangedFormulas());
+			for (Cell formulaCell : formulaCells) {
+				evaluator.evaluateFormulaCellEnum(formulaCell);
+				chartsData.markCellChanged(formulaCell);
+			}
+		} catch (Exception ex) {
+			LOG.log(Level.FINE, " recalc dependents error : "
+					+ ex.getLocalizedMessage(), ex);
+			reCalc();
+		}
+
+	}
+
+	/**
+	 * recalc formulas changed by rows added or deleted. i.e. formulas in the
+	 * added rows, formulas parsed again after the shift and their
+	 * dependents. Other formula cells keep their cached result. Cached values
+	 * of evaluator are dropped as poi keeps them by cell position. Fall back
+	 * to full recalc if anything wrong.
+	 */
+	public final void reCalcChangedFormulas() {
+
+		if (dependencyGraph == null) {
+			reCalc();
+			return;
+		}
+		try {
+			FormulaEvaluator evaluator = parent.getFormulaEvaluator();
+			ChartsData chartsData = parent.getCharsData();
+			evaluator.clearAllCachedResultValues();
+			for (Cell formulaCell : dependencyGraph.pollChangedFormulas()) {
+				evaluator.evaluateFormulaCellEnum(formulaCell);
+				chartsData.markCellChanged(formulaCell);
+			}
+		} catch (Exception ex) {
+			LOG.log(Level.FINE, " recalc changed formulas error : "
+					+ ex.getLocalizedMessage(), ex);
+			reCalc();
+		}
+
+	}
+
+	/**
+	 * Build the dependency graph from all formulas of workbook.
+	 */
+	public final void buildDependencyGraph() {
+		dependencyGraph = new FormulaDependencyGraph(parent.getWb(),
+				parent.getWbWrapper());
+	}
+
+	/**
+	 * Drop the dependency graph. It's built again on next cell change.
+	 */
+	public final void clearDependencyGraph() {
+		dependencyGraph = null;
+	}
+
+	/**
+	 * Update dependency graph after rows moved. see
+	 * FormulaDependencyGraph.shiftRows.
+	 *
+	 * @param sheet
+	 *            the sheet
+	 * @param startRow
+	 *            first moved row before shift
+	 * @param n
+	 *            number of rows moved. negative for move up.
+	 */
+	public final void shiftDependencyRows(final Sheet sheet,
+			final int startRow, final int n) {
+		if (dependencyGraph != null) {
+			dependencyGraph.shiftRows(sheet, startRow, n);
+		}
+	}
+
+	/**
+	 * Update cells read by charts after rows moved. see
+	 * ChartsData.shiftChartRows.
+	 *
+	 * @param sheet
+	 *            the sheet
+	 * @param startRow
+	 *            first moved row before shift
+	 * @param n
+	 *            number of rows moved. negative for move up.
+	 */
+	public final void shiftChartRows(final Sheet sheet, final int startRow,
+			final int n) {
+		parent.getCharsData().shiftChartRows(sheet.getSheetName(), startRow,
+				n);
+	}
+
+	/**
+	 * Update dependency graph after row ranges deleted. see
+	 * FormulaDependencyGraph.removeRows.
+	 *
+	 * @param sheet
+	 *            the sheet
+	 * @param deletedRows
+	 *            the deleted rows
+	 */
+	public final void removeDependencyRows(final Sheet sheet,
+			final DeletedRows deletedRows) {
+		if (dependencyGraph != null) {
+			dependencyGraph.removeRows(sheet, deletedRows);
+		}
+	}
+
+	/**
+	 * Update cells read by charts after row ranges deleted. see
+	 * ChartsData.removeChartRows.
+	 *
+	 * @param sheet
+	 *            the sheet
+	 * @param deletedRows
+	 *            the deleted rows
+	 */
+	public final void removeChartRows(final Sheet sheet,
+			final DeletedRows deletedRows) {
+		parent.getCharsData().removeChartRows(sheet.getSheetName(),
+				deletedRows);
+	}
+
+	/**
+	 * Add formulas of new rows to dependency graph.
+	 *
+	 * @param sheet
+	 *            the sheet
+	 * @param firstRow
+	 *            the first row
+	 * @param lastRow
+	 *            the last row
+	 */
+	public final void addDependencyRows(final Sheet sheet,
+			final int firstRow, final int lastRow) {
+		if (dependencyGraph != null) {
+			dependencyGraph.addRows(sheet, firstRow, lastRow);
+		}
+	}
+
+	/**
+	 * Parse formula of the cell again in dependency graph after it changed.
+	 *
+	 * @param cell
+	 *            the cell
+	 */
+	public final void refreshDependencyCell(final Cell cell) {
+		if (dependencyGraph != null) {
+			dependencyGraph.refreshCell(cell);
+		}
+	}
+
+	/**
+	 * Gets the dependency graph.
+	 *
+	 * @return the dependency graph. null if not built yet.
+	 */
+	public final FormulaDependencyGraph getDependencyGraph() {
+		return dependencyGraph;
+	}
+
 	/**
 	 * evaluate boolean express.
 	 *
@@ -0,0 +1,872 @@
+/*
+ * Copyright 2017 TieFaces.
+ * Licensed under MIT
+ */
+
+package org.tiefaces.components.websheet.service;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.apache.poi.ss.formula.FormulaParser;
+import org.apache.poi.ss.formula.FormulaType;
+import org.apache.poi.ss.formula.ptg.AbstractFunctionPtg;
+import org.apache.poi.ss.formula.ptg.Area3DPxg;
+import org.apache.poi.ss.formula.ptg.AreaPtgBase;
+import org.apache.poi.ss.formula.ptg.NamePtg;
+import org.apache.poi.ss.formula.ptg.NameXPxg;
+import org.apache.poi.ss.formula.ptg.Ptg;
+import org.apache.poi.ss.formula.ptg.Pxg;
+import org.apache.poi.ss.formula.ptg.RefPtgBase;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellType;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.xssf.usermodel.XSSFEvaluationWorkbook;
+import org.tiefaces.components.websheet.dataobjects.DeletedRows;
+
+/**
+ * Formula dependency graph of a workbook. Maps every referenced cell range
+ * to the formula cells reading it, so a cell change only need re-evaluate
+ * its transitive dependents instead of the whole workbook.
+ *
+ * Formulas whose precedents can not be resolved statically (e.g. names,
+ * INDIRECT, OFFSET, 3D references) are treated as volatile and always
+ * included in the dependents.
+ *
+ * Formula cells are kept by position, not by poi cell object, so a cell
+ * replaced in its row is still found. The graph is kept up to date when rows
+ * are inserted or removed. Only formula cells and references at or below the
+ * change are moved, formulas with references across the change are parsed
+ * again. Formulas added or parsed again are remembered until
+ * pollChangedFormulas, so a structural change only need re-evaluate them and
+ * their dependents.
+ *
+ * @author Jason Jiang
+ *
+ */
+public class FormulaDependencyGraph {
+
+	/** logger. */
+	private static final Logger LOG = Logger
+			.getLogger(FormulaDependencyGraph.class.getName());
+
+	/** row block size in bit shift. i.e. 64 rows per block. */
+	private static final int ROW_BLOCK_SHIFT = 6;
+
+	/** range cover more blocks than this go to wide list. */
+	private static final int MAX_BLOCKS_PER_RANGE = 64;
+
+	/** functions with dynamic references or volatile result. */
+	private static final String[] VOLATILE_FUNCTIONS = { "INDIRECT",
+			"OFFSET", "CELL", "NOW", "TODAY", "RAND", "RANDBETWEEN" };
+
+	/** the workbook. */
+	private final Workbook wb;
+
+	/** wrapper used to parse formulas. */
+	private final XSSFEvaluationWorkbook wbWrapper;
+
+	/** formula nodes indexed by sheet name, row then column. */
+	private final Map<String, TreeMap<Integer, Map<Integer, FormulaNode>>> nodes = new HashMap<>();
+
+	/** number of formula nodes. */
+	private int formulaCount;
+
+	/** precedents indexed by sheet name then row block. */
+	private final Map<String, TreeMap<Integer, List<Precedent>>> blockMap = new HashMap<>();
+
+	/** precedents with large row span indexed by sheet name. */
+	private final Map<String, List<Precedent>> wideMap = new HashMap<>();
+
+	/** formula nodes always need evaluation. */
+	private final Set<FormulaNode> volatileNodes = new LinkedHashSet<>();
+
+	/** formula nodes added or parsed again since last poll. */
+	private final Set<FormulaNode> changedNodes = new LinkedHashSet<>();
+
+	/**
+	 * One formula cell in graph.
+	 */
+	private static final class FormulaNode {
+
+		/** The sheet name of the formula cell. */
+		private final String sheetName;
+
+		/** The current row of the formula cell. */
+		private int row;
+
+		/** The column of the formula cell. */
+		private final int col;
+
+		/** The precedents. */
+		private final List<Precedent> precedents = new ArrayList<>();
+
+		/**
+		 * Instantiates a new formula node.
+		 *
+		 * @param psheetName
+		 *            the sheet name
+		 * @param prow
+		 *            the row
+		 * @param pcol
+		 *            the col
+		 */
+		FormulaNode(final String psheetName, final int prow,
+				final int pcol) {
+			this.sheetName = psheetName;
+			this.row = prow;
+			this.col = pcol;
+		}
+	}
+
+	/**
+	 * Referenced range of one formula cell.
+	 */
+	private static final class Precedent {
+
+		/** The referenced sheet name. */
+		private final String sheetName;
+
+		/** The first row. */
+		private int firstRow;
+
+		/** The last row. */
+		private int lastRow;
+
+		/** The first col. */
+		private final int firstCol;
+
+		/** The last col. */
+		private final int lastCol;
+
+		/** The formula node. */
+		private final FormulaNode formula;
+
+		/**
+		 * Instantiates a new precedent.
+		 *
+		 * @param psheetName
+		 *            the referenced sheet name
+		 * @param pfirstRow
+		 *            the first row
+		 * @param plastRow
+		 *            the last row
+		 * @param pfirstCol
+		 *            the first col
+		 * @param plastCol
+		 *            the last col
+		 * @param pformula
+		 *            the formula node
+		 */
+		Precedent(final String psheetName, final int pfirstRow,
+				final int plastRow, final int pfirstCol, final int plastCol,
+				final FormulaNode pformula) {
+			this.sheetName = psheetName;
+			this.firstRow = pfirstRow;
+			this.lastRow = plastRow;
+			this.firstCol = pfirstCol;
+			this.lastCol = plastCol;
+			this.formula = pformula;
+		}
+
+		/**
+		 * whether the range contains the cell position.
+		 *
+		 * @param row
+		 *            the row
+		 * @param col
+		 *            the col
+		 * @return true, if contained
+		 */
+		boolean contains(final int row, final int col) {
+			return (row >= firstRow) && (row <= lastRow)
+					&& (col >= firstCol) && (col <= lastCol);
+		}
+	}
+
+	/**
+	 * Build the graph from all formula cells in workbook.
+	 *
+	 * @param pwb
+	 *            the wb
+	 * @param pwbWrapper
+	 *            the wb wrapper
+	 */
+	public FormulaDependencyGraph(final Workbook pwb,
+			final XSSFEvaluationWorkbook pwbWrapper) {
+		this.wb = pwb;
+		this.wbWrapper = pwbWrapper;
+		for (int i = 0; i < pwb.getNumberOfSheets(); i++) {
+			Sheet sheet = pwb.getSheetAt(i);
+			for (Row row : sheet) {
+				for (Cell cell : row) {
+					if (cell.getCellTypeEnum() == CellType.FORMULA) {
+						addFormulaCell(cell, i);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Gets the formula node at position.
+	 *
+	 * @param sheetName
+	 *            the sheet name
+	 * @param row
+	 *            the row
+	 * @param col
+	 *            the col
+	 * @return the node. null if not a formula in graph.
+	 */
+	private FormulaNode getNode(final String sheetName, final int row,
+			final int col) {
+		TreeMap<Integer, Map<Integer, FormulaNode>> rows = nodes
+				.get(sheetName);
+		if (rows == null) {
+			return null;
+		}
+		Map<Integer, FormulaNode> cols = rows.get(row);
+		if (cols == null) {
+			return null;
+		}
+		return cols.get(col);
+	}
+
+	/**
+	 * Put the formula node at its position.
+	 *
+	 * @param node
+	 *            the node
+	 */
+	private void putNode(final FormulaNode node) {
+		TreeMap<Integer, Map<Integer, FormulaNode>> rows = nodes
+				.get(node.sheetName);
+		if (rows == null) {
+			rows = new TreeMap<>();
+			nodes.put(node.sheetName, rows);
+		}
+		Map<Integer, FormulaNode> cols = rows.get(node.row);
+		if (cols == null) {
+			cols = new HashMap<>();
+			rows.put(node.row, cols);
+		}
+		if (cols.put(node.col, node) == null) {
+			formulaCount++;
+		}
+	}
+
+	/**
+	 * Adds the formula cell.
+	 *
+	 * @param cell
+	 *            the cell
+	 * @param sheetIndex
+	 *            the sheet index
+	 * @return the node added
+	 */
+	private FormulaNode addFormulaCell(final Cell cell,
+			final int sheetIndex) {
+		String sheetName = cell.getSheet().getSheetName();
+		FormulaNode node = new FormulaNode(sheetName, cell.getRowIndex(),
+				cell.getColumnIndex());
+		putNode(node);
+		Ptg[] ptgs;
+		try {
+			ptgs = FormulaParser.parse(cell.getCellFormula(), wbWrapper,
+					FormulaType.CELL, sheetIndex);
+		} catch (Exception ex) {
+			LOG.log(Level.FINE, "cannot parse formula = "
+					+ cell.getCellFormula() + " error = " + ex.getMessage(),
+					ex);
+			volatileNodes.add(node);
+			return node;
+		}
+		for (Ptg ptg : ptgs) {
+			if (isVolatilePtg(ptg)) {
+				volatileNodes.add(node);
+				return node;
+			}
+		}
+		for (Ptg ptg : ptgs) {
+			String refSheetName = sheetName;
+			if (ptg instanceof Pxg) {
+				refSheetName = ((Pxg) ptg).getSheetName();
+			}
+			Precedent precedent = null;
+			if (ptg instanceof AreaPtgBase) {
+				AreaPtgBase area = (AreaPtgBase) ptg;
+				precedent = new Precedent(refSheetName, area.getFirstRow(),
+						area.getLastRow(), area.getFirstColumn(),
+						area.getLastColumn(), node);
+			} else if (ptg instanceof RefPtgBase) {
+				RefPtgBase ref = (RefPtgBase) ptg;
+				precedent = new Precedent(refSheetName, ref.getRow(),
+						ref.getRow(), ref.getColumn(), ref.getColumn(), node);
+			}
+			if (precedent != null) {
+				node.precedents.add(precedent);
+				addPrecedent(precedent);
+			}
+		}
+		return node;
+	}
+
+	/**
+	 * Removes the formula node at position from graph.
+	 *
+	 * @param sheetName
+	 *            the sheet name
+	 * @param row
+	 *            the row
+	 * @param col
+	 *            the col
+	 */
+	private void removeFormulaNode(final String sheetName, final int row,
+			final int col) {
+		TreeMap<Integer, Map<Integer, FormulaNode>> rows = nodes
+				.get(sheetName);
+		if (rows == null) {
+			return;
+		}
+		Map<Integer, FormulaNode> cols = rows.get(row);
+		if (cols == null) {
+			return;
+		}
+		FormulaNode node = cols.remove(col);
+		if (cols.isEmpty()) {
+			rows.remove(row);
+		}
+		if (node != null) {
+			formulaCount--;
+			dropNode(node);
+		}
+	}
+
+	/**
+	 * Drop the node's precedents and marks. Node is already removed from
+	 * position map.
+	 *
+	 * @param node
+	 *            the node
+	 */
+	private void dropNode(final FormulaNode node) {
+		volatileNodes.remove(node);
+		changedNodes.remove(node);
+		for (Precedent precedent : node.precedents) {
+			removePrecedent(precedent);
+		}
+	}
+
+	/**
+	 * Parse the cell again after its formula changed or the cell object
+	 * replaced. Cell is removed from graph if it's no longer a formula. The
+	 * formula is evaluated on next pollChangedFormulas.
+	 *
+	 * @param cell
+	 *            the cell
+	 */
+	public final void refreshCell(final Cell cell) {
+		Sheet sheet = cell.getSheet();
+		removeFormulaNode(sheet.getSheetName(), cell.getRowIndex(),
+				cell.getColumnIndex());
+		if (cell.getCellTypeEnum() == CellType.FORMULA) {
+			changedNodes.add(addFormulaCell(cell,
+					sheet.getWorkbook().getSheetIndex(sheet)));
+		}
+	}
+
+	/**
+	 * Parse the cells again after their formulas changed.
+	 *
+	 * @param cells
+	 *            the cells
+	 */
+	public final void refreshCells(final Collection<Cell> cells) {
+		for (Cell cell : cells) {
+			refreshCell(cell);
+		}
+	}
+
+	/**
+	 * Add formula cells of rows just inserted or rebuilt. Formulas reading
+	 * the rows are evaluated on next pollChangedFormulas.
+	 *
+	 * @param sheet
+	 *            the sheet
+	 * @param firstRow
+	 *            the first row
+	 * @param lastRow
+	 *            the last row
+	 */
+	public final void addRows(final Sheet sheet, final int firstRow,
+			final int lastRow) {
+		String sheetName = sheet.getSheetName();
+		for (int irow = firstRow; irow <= lastRow; irow++) {
+			Row row = sheet.getRow(irow);
+			if (row == null) {
+				continue;
+			}
+			for (Cell cell : row) {
+				if ((cell.getCellTypeEnum() == CellType.FORMULA)
+						|| (getNode(sheetName, irow,
+								cell.getColumnIndex()) != null)) {
+					refreshCell(cell);
+				}
+				collectDependents(sheetName, irow, cell.getColumnIndex(),
+						changedNodes, null);
+			}
+		}
+	}
+
+	/**
+	 * Update graph after rows from startRow to the end of sheet moved by n
+	 * rows. When n is negative, the n rows above startRow are removed. Only
+	 * formula cells and references at or below the change are visited.
+	 * Formulas referencing across startRow or into removed rows are parsed
+	 * again, as poi has rewritten them.
+	 *
+	 * @param sheet
+	 *            the sheet
+	 * @param startRow
+	 *            first moved row before shift
+	 * @param n
+	 *            number of rows moved. negative for move up.
+	 */
+	public final void shiftRows(final Sheet sheet, final int startRow,
+			final int n) {
+		if (n == 0) {
+			return;
+		}
+		String sheetName = sheet.getSheetName();
+		int removedFirstRow = startRow + Math.min(n, 0);
+		shiftFormulaNodes(sheetName, startRow, removedFirstRow, n);
+		// precedents reaching the change. removed with old rows first.
+		Set<FormulaNode> reparse = new LinkedHashSet<>();
+		for (Precedent precedent : collectAffected(sheetName,
+				removedFirstRow)) {
+			removePrecedent(precedent);
+			if (precedent.firstRow >= startRow) {
+				precedent.firstRow += n;
+				precedent.lastRow += n;
+			} else {
+				reparse.add(precedent.formula);
+			}
+			addPrecedent(precedent);
+		}
+		reparseFormulas(reparse);
+	}
+
+	/**
+	 * Update graph after several row ranges deleted from the sheet. Nodes
+	 * and references are moved once for all the ranges. References keeping
+	 * their size move with their rows, others are parsed again.
+	 *
+	 * @param sheet
+	 *            the sheet
+	 * @param deletedRows
+	 *            the deleted rows
+	 */
+	public final void removeRows(final Sheet sheet,
+			final DeletedRows deletedRows) {
+		if (deletedRows.isEmpty()) {
+			return;
+		}
+		String sheetName = sheet.getSheetName();
+		int firstRow = deletedRows.getFirstRow();
+		TreeMap<Integer, Map<Integer, FormulaNode>> rows = nodes
+				.get(sheetName);
+		if (rows != null) {
+			SortedMap<Integer, Map<Integer, FormulaNode>> tail = rows
+					.tailMap(firstRow);
+			List<FormulaNode> removed = new ArrayList<>();
+			Map<Integer, Map<Integer, FormulaNode>> moved = new HashMap<>();
+			for (Map.Entry<Integer, Map<Integer, FormulaNode>> entry : tail
+					.entrySet()) {
+				int newRow = deletedRows.getNewRow(entry.getKey());
+				if (newRow < 0) {
+					removed.addAll(entry.getValue().values());
+				} else {
+					for (FormulaNode node : entry.getValue().values()) {
+						node.row = newRow;
+					}
+					moved.put(newRow, entry.getValue());
+				}
+			}
+			tail.clear();
+			rows.putAll(moved);
+			for (FormulaNode node : removed) {
+				formulaCount--;
+				dropNode(node);
+			}
+		}
+		Set<FormulaNode> reparse = new LinkedHashSet<>();
+		for (Precedent precedent : collectAffected(sheetName, firstRow)) {
+			removePrecedent(precedent);
+			int newFirst = deletedRows.getNewRow(precedent.firstRow);
+			int newLast = deletedRows.getNewRow(precedent.lastRow);
+			if ((newFirst >= 0) && (newLast >= 0) && (newLast
+					- newFirst == precedent.lastRow - precedent.firstRow)) {
+				precedent.firstRow = newFirst;
+				precedent.lastRow = newLast;
+			} else {
+				reparse.add(precedent.formula);
+			}
+			addPrecedent(precedent);
+		}
+		reparseFormulas(reparse);
+	}
+
+	/**
+	 * Collect precedents of the sheet reaching the row or below.
+	 *
+	 * @param sheetName
+	 *            the sheet name
+	 * @param firstRow
+	 *            the first row
+	 * @return the precedents
+	 */
+	private Set<Precedent> collectAffected(final String sheetName,
+			final int firstRow) {
+		Set<Precedent> affected = new LinkedHashSet<>();
+		TreeMap<Integer, List<Precedent>> blocks = blockMap.get(sheetName);
+		if (blocks != null) {
+			for (List<Precedent> list : blocks
+					.tailMap(firstRow >> ROW_BLOCK_SHIFT).values()) {
+				for (Precedent precedent : list) {
+					if (precedent.lastRow >= firstRow) {
+						affected.add(precedent);
+					}
+				}
+			}
+		}
+		List<Precedent> wideList = wideMap.get(sheetName);
+		if (wideList != null) {
+			for (Precedent precedent : wideList) {
+				if (precedent.lastRow >= firstRow) {
+					affected.add(precedent);
+				}
+			}
+		}
+		return affected;
+	}
+
+	/**
+	 * Parse formulas again from their cells, as poi has rewritten them.
+	 *
+	 * @param reparse
+	 *            the formula nodes
+	 */
+	private void reparseFormulas(final Set<FormulaNode> reparse) {
+		for (FormulaNode node : reparse) {
+			Row row = wb.getSheet(node.sheetName).getRow(node.row);
+			Cell cell = (row == null) ? null : row.getCell(node.col);
+			if (cell == null) {
+				removeFormulaNode(node.sheetName, node.row, node.col);
+			} else {
+				refreshCell(cell);
+			}
+		}
+	}
+
+	/**
+	 * Move formula nodes of the sheet at or below startRow by n rows, and
+	 * drop the nodes in removed rows.
+	 *
+	 * @param sheetName
+	 *            the sheet name
+	 * @param startRow
+	 *            first moved row before shift
+	 * @param removedFirstRow
+	 *            first removed row. same as startRow if nothing removed.
+	 * @param n
+	 *            number of rows moved
+	 */
+	private void shiftFormulaNodes(final String sheetName,
+			final int startRow, final int removedFirstRow, final int n) {
+		TreeMap<Integer, Map<Integer, FormulaNode>> rows = nodes
+				.get(sheetName);
+		if (rows == null) {
+			return;
+		}
+		SortedMap<Integer, Map<Integer, FormulaNode>> tail = rows
+				.tailMap(removedFirstRow);
+		List<FormulaNode> removed = new ArrayList<>();
+		Map<Integer, Map<Integer, FormulaNode>> moved = new HashMap<>();
+		for (Map.Entry<Integer, Map<Integer, FormulaNode>> entry : tail
+				.entrySet()) {
+			if (entry.getKey() < startRow) {
+				removed.addAll(entry.getValue().values());
+			} else {
+				for (FormulaNode node : entry.getValue().values()) {
+					node.row += n;
+				}
+				moved.put(entry.getKey() + n, entry.getValue());
+			}
+		}
+		tail.clear();
+		rows.putAll(moved);
+		for (FormulaNode node : removed) {
+			formulaCount--;
+			dropNode(node);
+		}
+	}
+
+	/**
+	 * Checks if ptg make the formula dependents unpredictable.
+	 *
+	 * @param ptg
+	 *            the ptg
+	 * @return true, if is volatile
+	 */
+	private static boolean isVolatilePtg(final Ptg ptg) {
+		if ((ptg instanceof NamePtg) || (ptg instanceof NameXPxg)) {
+			return true;
+		}
+		if (ptg instanceof Pxg) {
+			Pxg pxg = (Pxg) ptg;
+			if ((pxg.getExternalWorkbookNumber() > 0)
+					|| (pxg.getSheetName() == null)) {
+				return true;
+			}
+			if ((ptg instanceof Area3DPxg)
+					&& (((Area3DPxg) ptg).getLastSheetName() != null)) {
+				return true;
+			}
+		}
+		if (ptg instanceof AbstractFunctionPtg) {
+			String name = ((AbstractFunctionPtg) ptg).getName();
+			for (String func : VOLATILE_FUNCTIONS) {
+				if (func.equalsIgnoreCase(name)) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Adds the precedent to index.
+	 *
+	 * @param precedent
+	 *            the precedent
+	 */
+	private void addPrecedent(final Precedent precedent) {
+		String sheetName = precedent.sheetName;
+		int firstBlock = precedent.firstRow >> ROW_BLOCK_SHIFT;
+		int lastBlock = precedent.lastRow >> ROW_BLOCK_SHIFT;
+		if (lastBlock - firstBlock >= MAX_BLOCKS_PER_RANGE) {
+			List<Precedent> list = wideMap.get(sheetName);
+			if (list == null) {
+				list = new ArrayList<>();
+				wideMap.put(sheetName, list);
+			}
+			list.add(precedent);
+			return;
+		}
+		TreeMap<Integer, List<Precedent>> blocks = blockMap.get(sheetName);
+		if (blocks == null) {
+			blocks = new TreeMap<>();
+			blockMap.put(sheetName, blocks);
+		}
+		for (int block = firstBlock; block <= lastBlock; block++) {
+			List<Precedent> list = blocks.get(block);
+			if (list == null) {
+				list = new ArrayList<>();
+				blocks.put(block, list);
+			}
+			list.add(precedent);
+		}
+	}
+
+	/**
+	 * Removes the precedent from index.
+	 *
+	 * @param precedent
+	 *            the precedent
+	 */
+	private void removePrecedent(final Precedent precedent) {
+		int firstBlock = precedent.firstRow >> ROW_BLOCK_SHIFT;
+		int lastBlock = precedent.lastRow >> ROW_BLOCK_SHIFT;
+		if (lastBlock - firstBlock >= MAX_BLOCKS_PER_RANGE) {
+			List<Precedent> list = wideMap.get(precedent.sheetName);
+			if (list != null) {
+				list.remove(precedent);
+			}
+			return;
+		}
+		TreeMap<Integer, List<Precedent>> blocks = blockMap
+				.get(precedent.sheetName);
+		if (blocks == null) {
+			return;
+		}
+		for (int block = firstBlock; block <= lastBlock; block++) {
+			List<Precedent> list = blocks.get(block);
+			if (list != null) {
+				list.remove(precedent);
+				if (list.isEmpty()) {
+					blocks.remove(block);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Gets the formula cells need re-evaluate after the cell changed. Include
+	 * transitive dependents and volatile formulas.
+	 *
+	 * @param cell
+	 *            the changed cell
+	 * @return the dependents in discovery order
+	 */
+	public final Set<Cell> getDependents(final Cell cell) {
+		Set<FormulaNode> result = new LinkedHashSet<>();
+		Deque<FormulaNode> queue = new ArrayDeque<>();
+		collectDependents(cell.getSheet().getSheetName(),
+				cell.getRowIndex(), cell.getColumnIndex(), result, queue);
+		collectTransitive(result, queue);
+		result.addAll(volatileNodes);
+		return toCells(result);
+	}
+
+	/**
+	 * Gets the formula cells added or parsed again since last poll, with
+	 * their transitive dependents and volatile formulas. The marks are
+	 * cleared.
+	 *
+	 * @return the formula cells need re-evaluate after a structural change.
+	 */
+	public final Set<Cell> pollChangedFormulas() {
+		if (changedNodes.isEmpty()) {
+			return new LinkedHashSet<>();
+		}
+		Set<FormulaNode> result = new LinkedHashSet<>(changedNodes);
+		Deque<FormulaNode> queue = new ArrayDeque<>(changedNodes);
+		changedNodes.clear();
+		collectTransitive(result, queue);
+		result.addAll(volatileNodes);
+		return toCells(result);
+	}
+
+	/**
+	 * Collect dependents of the queued formula nodes until queue is empty.
+	 *
+	 * @param result
+	 *            the result
+	 * @param queue
+	 *            the queue
+	 */
+	private void collectTransitive(final Set<FormulaNode> result,
+			final Deque<FormulaNode> queue) {
+		while (!queue.isEmpty()) {
+			FormulaNode current = queue.poll();
+			collectDependents(current.sheetName, current.row, current.col,
+					result, queue);
+		}
+	}
+
+	/**
+	 * Collect formula nodes reading the position.
+	 *
+	 * @param sheetName
+	 *            the sheet name
+	 * @param row
+	 *            the row
+	 * @param col
+	 *            the col
+	 * @param result
+	 *            the result
+	 * @param queue
+	 *            the queue for next level. null if not needed.
+	 */
+	private void collectDependents(final String sheetName, final int row,
+			final int col, final Set<FormulaNode> result,
+			final Deque<FormulaNode> queue) {
+		TreeMap<Integer, List<Precedent>> blocks = blockMap.get(sheetName);
+		if (blocks != null) {
+			collectDependents(blocks.get(row >> ROW_BLOCK_SHIFT), row, col,
+					result, queue);
+		}
+		collectDependents(wideMap.get(sheetName), row, col, result, queue);
+	}
+
+	/**
+	 * Collect formula nodes whose range contains the position.
+	 *
+	 * @param list
+	 *            the precedent list
+	 * @param row
+	 *            the row
+	 * @param col
+	 *            the col
+	 * @param result
+	 *            the result
+	 * @param queue
+	 *            the queue for next level. null if not needed.
+	 */
+	private static void collectDependents(final List<Precedent> list,
+			final int row, final int col, final Set<FormulaNode> result,
+			final Deque<FormulaNode> queue) {
+		if (list == null) {
+			return;
+		}
+		for (Precedent precedent : list) {
+			if (precedent.contains(row, col)
+					&& result.add(precedent.formula) && (queue != null)) {
+				queue.add(precedent.formula);
+			}
+		}
+	}
+
+	/**
+	 * Get current poi cells of the formula nodes.
+	 *
+	 * @param formulaNodes
+	 *            the formula nodes
+	 * @return the cells in same order
+	 */
+	private Set<Cell> toCells(final Collection<FormulaNode> formulaNodes) {
+		Set<Cell> cells = new LinkedHashSet<>();
+		for (FormulaNode node : formulaNodes) {
+			Sheet sheet = wb.getSheet(node.sheetName);
+			Row row = (sheet == null) ? null : sheet.getRow(node.row);
+			Cell cell = (row == null) ? null : row.getCell(node.col);
+			if (cell != null) {
+				cells.add(cell);
+			}
+		}
+		return cells;
+	}
+
+	/**
+	 * Gets the formula count.
+	 *
+	 * @return the formula count
+	 */
+	public final int getFormulaCount() {
+		return formulaCount;
+	}
+
+	/**
+	 * Gets the volatile count.
+	 *
+	 * @return the volatile count
+	 */
+	public final int getVolatileCount() {
+		return volatileNodes.size();
+	}
+
+}
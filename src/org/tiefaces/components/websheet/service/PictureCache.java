@@ -0,0 +1,229 @@
+/*
+ * Copyright 2017 TieFaces.
+ * Licensed under MIT
+ */
+package org.tiefaces.components.websheet.service;
+
+import java.io.Serializable;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.tiefaces.common.TieConstants;
+
+/**
+ * Application scope cache for pictures. Keyed by digest of the picture
+ * content, so the same picture is held once for all sessions and its url is
+ * stable. Bounded by total bytes, least recently used pictures are evicted
+ * first. Pictures rendered are also kept in session picture cache, so an
+ * evicted one is still served.
+ *
+ * @author Jason Jiang
+ *
+ */
+public final class PictureCache {
+
+	/** logger. */
+	private static final Logger LOG = Logger
+			.getLogger(PictureCache.class.getName());
+
+	/** hex chars. */
+	private static final char[] HEX_CHARS = "0123456789abcdef"
+			.toCharArray();
+
+	/** pictures in access order. */
+	private static final Map<String, CachedPicture> CACHE = new LinkedHashMap<>(
+			16, 0.75f, true);
+
+	/** total bytes of cached pictures. */
+	private static long totalBytes = 0;
+
+	/** max total bytes. */
+	private static long maxBytes = TieConstants.PICTURE_CACHE_MAX_BYTES;
+
+	/**
+	 * Cached picture.
+	 */
+	public static final class CachedPicture implements Serializable {
+
+		/** serial version. */
+		private static final long serialVersionUID = 1L;
+
+		/** picture bytes. */
+		private final byte[] data;
+
+		/** mime type. */
+		private final String contentType;
+
+		/**
+		 * Instantiates a new cached picture.
+		 *
+		 * @param pdata
+		 *            picture bytes
+		 * @param pcontentType
+		 *            mime type
+		 */
+		public CachedPicture(final byte[] pdata,
+				final String pcontentType) {
+			this.data = pdata;
+			this.contentType = pcontentType;
+		}
+
+		/**
+		 * Gets the data.
+		 *
+		 * @return the data
+		 */
+		public byte[] getData() {
+			return data;
+		}
+
+		/**
+		 * Gets the content type.
+		 *
+		 * @return the content type
+		 */
+		public String getContentType() {
+			return contentType;
+		}
+	}
+
+	/**
+	 * hide constructor.
+	 */
+	private PictureCache() {
+		// not called
+	}
+
+	/**
+	 * Builds the key for picture content.
+	 *
+	 * @param data
+	 *            the picture bytes
+	 * @return the key. null if digest not available.
+	 */
+	public static String buildKey(final byte[] data) {
+		try {
+			MessageDigest md = MessageDigest.getInstance("SHA-256");
+			byte[] digest = md.digest(data);
+			StringBuilder sb = new StringBuilder(digest.length * 2);
+			for (byte b : digest) {
+				sb.append(HEX_CHARS[(b >> 4) & 0xF]);
+				sb.append(HEX_CHARS[b & 0xF]);
+			}
+			return sb.toString();
+		} catch (NoSuchAlgorithmException e) {
+			LOG.log(Level.SEVERE, "buildKey error = " + e.getMessage(), e);
+			return null;
+		}
+	}
+
+	/**
+	 * Put picture into cache if not cached. Picture larger than the cache
+	 * limit is not cached.
+	 *
+	 * @param key
+	 *            the key built from data
+	 * @param data
+	 *            the picture bytes
+	 * @param contentType
+	 *            the mime type
+	 * @return true if the picture is in cache
+	 */
+	public static boolean put(final String key, final byte[] data,
+			final String contentType) {
+		if ((key == null) || (data == null)) {
+			return false;
+		}
+		synchronized (CACHE) {
+			if (data.length > maxBytes) {
+				return false;
+			}
+			if (CACHE.containsKey(key)) {
+				return true;
+			}
+			CACHE.put(key, new CachedPicture(data, contentType));
+			totalBytes += data.length;
+			evict();
+			return true;
+		}
+	}
+
+	/**
+	 * Evict least recently used pictures until total bytes within limit.
+	 * Called with the cache locked.
+	 */
+	private static void evict() {
+		Iterator<CachedPicture> it = CACHE.values().iterator();
+		while (totalBytes > maxBytes) {
+			totalBytes -= it.next().getData().length;
+			it.remove();
+		}
+	}
+
+	/**
+	 * Sets the max total bytes. Pictures over the new limit are evicted.
+	 *
+	 * @param pmaxBytes
+	 *            the max bytes
+	 */
+	public static void setMaxBytes(final long pmaxBytes) {
+		synchronized (CACHE) {
+			maxBytes = pmaxBytes;
+			evict();
+		}
+	}
+
+	/**
+	 * Gets the max total bytes.
+	 *
+	 * @return the max bytes
+	 */
+	public static long getMaxBytes() {
+		synchronized (CACHE) {
+			return maxBytes;
+		}
+	}
+
+	/**
+	 * Gets the picture.
+	 *
+	 * @param key
+	 *            the key
+	 * @return the picture. null if not cached.
+	 */
+	public static CachedPicture get(final String key) {
+		if (key == null) {
+			return null;
+		}
+		synchronized (CACHE) {
+			return CACHE.get(key);
+		}
+	}
+
+	/**
+	 * Clear the cache.
+	 */
+	public static void clear() {
+		synchronized (CACHE) {
+			CACHE.clear();
+			totalBytes = 0;
+		}
+	}
+
+	/**
+	 * Total bytes of cached pictures.
+	 *
+	 * @return the total bytes
+	 */
+	public static long getTotalBytes() {
+		synchronized (CACHE) {
+			return totalBytes;
+		}
+	}
+
+}
@@ -5,12 +5,14 @@
 
 package org.tiefaces.components.websheet.service;
 
-import java.awt.image.BufferedImage;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import org.apache.poi.ss.usermodel.Cell;
 import org.apache.poi.ss.usermodel.Picture;
+import org.apache.poi.ss.usermodel.PictureData;
 import org.apache.poi.ss.usermodel.Sheet;
 import org.tiefaces.components.websheet.TieWebSheetBean;
 import org.tiefaces.components.websheet.dataobjects.FacesCell;
@@ -28,6 +30,9 @@ public class PicturesHelper {
 	private static final Logger LOG = Logger
 			.getLogger(PicturesHelper.class.getName());
 
+	/** content key of each picture. key is picture id. */
+	private final Map<String, String> pictureKeyMap = new HashMap<>();
+
 	/**
 	 * Instantiates a new pictures helper.
 	 *
@@ -42,10 +47,40 @@ public class PicturesHelper {
 	 * initial pictures map for current workbook.
 	 */
 	public final void loadPicturesMap() {
+		pictureKeyMap.clear();
 		PicturesUtility.getPictruesMap(parent.getWb(),
 				parent.getPicturesMap());
 	}
 
+	/**
+	 * Gets the content key of picture and make sure the picture is in
+	 * picture cache. The key is built once per picture.
+	 *
+	 * @param pictureId
+	 *            the picture id
+	 * @return the content key. null if picture not exist.
+	 */
+	public final String getPictureKey(final String pictureId) {
+		Picture pic = parent.getPicturesMap().get(pictureId);
+		if (pic == null) {
+			return null;
+		}
+		PictureData picData = pic.getPictureData();
+		String key = pictureKeyMap.get(pictureId);
+		if (key == null) {
+			key = PictureCache.buildKey(picData.getData());
+			if (key == null) {
+				return null;
+			}
+			pictureKeyMap.put(pictureId, key);
+		}
+		if (PictureCache.get(key) == null) {
+			// first time or evicted.
+			PictureCache.put(key, picData.getData(), picData.getMimeType());
+		}
+		return key;
+	}
+
 	/**
 	 * Setup faces cell picture charts.
 	 *
@@ -63,7 +98,7 @@ public class PicturesHelper {
 		if (parent.getPicturesMap() != null) {
 			setupFacesCellPicture(sheet1, fcell, cell, fId);
 		}
-		if (parent.getCharsData().getChartsMap() != null) {
+		if (parent.getCharsData().getChartDataMap() != null) {
 			setupFacesCellCharts(sheet1, fcell, cell, fId);
 		}
 	}
@@ -87,9 +122,9 @@ public class PicturesHelper {
 			String chartId = parent.getCharsData().getChartPositionMap()
 					.get(fId);
 			if (chartId != null) {
-				BufferedImage img = parent.getCharsData().getChartsMap()
-						.get(chartId);
-				if (img != null) {
+				// chart is rendered later when displayed.
+				if (parent.getCharsData().getChartDataMap()
+						.containsKey(chartId)) {
 					fcell.setContainChart(true);
 					fcell.setChartId(chartId);
 					fcell.setChartStyle(PicturesUtility.generateChartStyle(
@@ -0,0 +1,120 @@
+/*
+ * Copyright 2017 TieFaces.
+ * Licensed under MIT
+ */
+package org.tiefaces.components.websheet.service;
+
+import java.io.Serializable;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.tiefaces.common.TieConstants;
+import org.tiefaces.components.websheet.service.PictureCache.CachedPicture;
+
+/**
+ * Session scope fallback for pictures. Keeps the pictures rendered in the
+ * session, so one evicted from application picture cache before browser
+ * requests it, or too large to cache, is still served. Holds the same
+ * instances as application picture cache, so a picture costs no more memory
+ * while cached there. Bounded by total bytes, least recently used pictures
+ * are evicted first, but the latest one is always kept.
+ *
+ * @author Jason Jiang
+ *
+ */
+public final class SessionPictureCache implements Serializable {
+
+	/** serial version. */
+	private static final long serialVersionUID = 1L;
+
+	/** pictures in access order. */
+	private final Map<String, CachedPicture> pictures = new LinkedHashMap<>(
+			16, 0.75f, true);
+
+	/** max total bytes. */
+	private final long maxBytes;
+
+	/** total bytes of pictures. */
+	private long totalBytes = 0;
+
+	/**
+	 * Instantiates a new session picture cache.
+	 *
+	 * @param pmaxBytes
+	 *            max total bytes
+	 */
+	public SessionPictureCache(final long pmaxBytes) {
+		this.maxBytes = pmaxBytes;
+	}
+
+	/**
+	 * Gets the cache of session. Created if not exist.
+	 *
+	 * @param sessionMap
+	 *            the session map
+	 * @return the cache
+	 */
+	public static SessionPictureCache getInstance(
+			final Map<String, Object> sessionMap) {
+		synchronized (SessionPictureCache.class) {
+			SessionPictureCache cache = (SessionPictureCache) sessionMap
+					.get(TieConstants.SESSION_PICTURE_CACHE_KEY);
+			if (cache == null) {
+				cache = new SessionPictureCache(
+						TieConstants.SESSION_PICTURE_CACHE_MAX_BYTES);
+				sessionMap.put(TieConstants.SESSION_PICTURE_CACHE_KEY, cache);
+			}
+			return cache;
+		}
+	}
+
+	/**
+	 * Put picture.
+	 *
+	 * @param key
+	 *            the content key
+	 * @param picture
+	 *            the picture
+	 */
+	public synchronized void put(final String key,
+			final CachedPicture picture) {
+		if ((key == null) || (picture == null)) {
+			return;
+		}
+		CachedPicture old = pictures.put(key, picture);
+		if (old != null) {
+			totalBytes -= old.getData().length;
+		}
+		totalBytes += picture.getData().length;
+		Iterator<CachedPicture> it = pictures.values().iterator();
+		while ((totalBytes > maxBytes) && (pictures.size() > 1)) {
+			totalBytes -= it.next().getData().length;
+			it.remove();
+		}
+	}
+
+	/**
+	 * Gets the picture.
+	 *
+	 * @param key
+	 *            the content key
+	 * @return the picture. null if not kept.
+	 */
+	public synchronized CachedPicture get(final String key) {
+		if (key == null) {
+			return null;
+		}
+		return pictures.get(key);
+	}
+
+	/**
+	 * Total bytes of pictures.
+	 *
+	 * @return the total bytes
+	 */
+	public synchronized long getTotalBytes() {
+		return totalBytes;
+	}
+
+}
@@ -5,21 +5,20 @@
 
 package org.tiefaces.components.websheet.service;
 
-import java.awt.image.BufferedImage;
 import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.Serializable;
 import java.util.logging.Logger;
 
 import javax.enterprise.context.SessionScoped;
+import javax.faces.context.ExternalContext;
 import javax.faces.context.FacesContext;
 import javax.faces.event.PhaseId;
-import javax.imageio.ImageIO;
 import javax.inject.Named;
 
 import org.primefaces.model.DefaultStreamedContent;
 import org.primefaces.model.StreamedContent;
+import org.tiefaces.components.websheet.chart.ChartImage;
 
 /**
  * This serve as a managed bean for retrieve chart as picture from session.
@@ -40,6 +39,9 @@ public class TieWebSheetChartsService implements Serializable {
 	private static final Logger LOG = Logger
 			.getLogger(TieWebSheetChartsService.class.getName());
 
+	/** http status not modified. */
+	private static final int SC_NOT_MODIFIED = 304;
+
 	/**
 	 * Constructor.
 	 */
@@ -48,7 +50,9 @@ public class TieWebSheetChartsService implements Serializable {
 	}
 
 	/**
-	 * Return real chart picture when browser requesting the image.
+	 * Return real chart picture when browser requesting the image. The png
+	 * is served with its content key as etag, and not modified status is
+	 * returned when browser already has it.
 	 * 
 	 * @return empty chart ( phase == render) or real chart ( browser request).
 	 * @throws IOException
@@ -65,18 +69,28 @@ public class TieWebSheetChartsService implements Serializable {
 		} else {
 			// So, browser is requesting the image. Return a real
 			// StreamedContent with the image bytes.
-			String chartId = context.getExternalContext()
-					.getRequestParameterMap().get("chartViewId");
+			ExternalContext externalContext = context.getExternalContext();
+			String chartId = externalContext.getRequestParameterMap()
+					.get("chartViewId");
 
-			BufferedImage bufferedImg = (BufferedImage) FacesContext
-					.getCurrentInstance().getExternalContext()
-					.getSessionMap().get(chartId);
-			ByteArrayOutputStream os = new ByteArrayOutputStream();
-			ImageIO.write(bufferedImg, "png", os);
-			FacesContext.getCurrentInstance().getExternalContext()
-					.getSessionMap().remove(chartId);
-			return new DefaultStreamedContent(new ByteArrayInputStream(
-					os.toByteArray()), "image/png");
+			ChartImage image = (ChartImage) externalContext.getSessionMap()
+					.remove(chartId);
+			if (image == null) {
+				return new DefaultStreamedContent();
+			}
+			String etag = "\"" + image.getKey() + "\"";
+			externalContext.setResponseHeader("ETag", etag);
+			if (etag.equals(externalContext.getRequestHeaderMap()
+					.get("If-None-Match"))) {
+				LOG.fine(" chart not modified");
+				// commit the status, so streaming an empty body keeps it.
+				externalContext.setResponseStatus(SC_NOT_MODIFIED);
+				externalContext.responseFlushBuffer();
+				return new DefaultStreamedContent(
+						new ByteArrayInputStream(new byte[0]), "image/png");
+			}
+			return new DefaultStreamedContent(
+					new ByteArrayInputStream(image.getPng()), "image/png");
 		}
 	}
 
@@ -6,17 +6,19 @@
 package org.tiefaces.components.websheet.service;
 
 import java.io.ByteArrayInputStream;
+import java.io.IOException;
 import java.io.Serializable;
 import java.util.logging.Logger;
 
 import javax.enterprise.context.SessionScoped;
+import javax.faces.context.ExternalContext;
 import javax.faces.context.FacesContext;
 import javax.faces.event.PhaseId;
 import javax.inject.Named;
 
-import org.apache.poi.ss.usermodel.PictureData;
 import org.primefaces.model.DefaultStreamedContent;
 import org.primefaces.model.StreamedContent;
+import org.tiefaces.components.websheet.service.PictureCache.CachedPicture;
 
 /**
  * This serve as a managed bean for retrieve picture from session.
@@ -38,6 +40,12 @@ public class TieWebSheetPicturesService implements Serializable  {
 	private static final Logger LOG = Logger
 			.getLogger(TieWebSheetPicturesService.class.getName());
 
+	/** http status not modified. */
+	private static final int SC_NOT_MODIFIED = 304;
+
+	/** cache control for content addressed pictures. */
+	private static final String CACHE_CONTROL = "public, max-age=31536000";
+
 	/**
 	 * Constructor.
 	 */
@@ -46,12 +54,16 @@ public class TieWebSheetPicturesService implements Serializable  {
 	}
 
 	/**
-	 * Return picture to web front end.
+	 * Return picture to web front end. The picture id is its content key, so
+	 * it is served with the key as strong etag and long cache time, and not
+	 * modified status is returned when browser already has it.
 	 *
 	 * @return empty (phase is render_response) or real picture ( browser
 	 *         request).
+	 * @throws IOException
+	 *             exception.
 	 */
-	public StreamedContent getPicture() {
+	public StreamedContent getPicture() throws IOException {
 		FacesContext context = FacesContext.getCurrentInstance();
 
 		if (context.getCurrentPhaseId() == PhaseId.RENDER_RESPONSE) {
@@ -62,17 +74,38 @@ public class TieWebSheetPicturesService implements Serializable  {
 		} else {
 			// So, browser is requesting the image. Return a real
 			// StreamedContent with the image bytes.
-			String pictureId = context.getExternalContext()
-					.getRequestParameterMap().get("pictureViewId");
+			ExternalContext externalContext = context.getExternalContext();
+			String pictureId = externalContext.getRequestParameterMap()
+					.get("pictureViewId");
 
-			PictureData picData = (PictureData) FacesContext
-					.getCurrentInstance().getExternalContext()
-					.getSessionMap().get(pictureId);
-			FacesContext.getCurrentInstance().getExternalContext()
-					.getSessionMap().remove(pictureId);
-			LOG.fine(" return real picture and remove session");
-			return new DefaultStreamedContent(new ByteArrayInputStream(
-					picData.getData()));
+			CachedPicture picture = PictureCache.get(pictureId);
+			if (picture == null) {
+				// too large for picture cache, or evicted since rendered.
+				picture = SessionPictureCache
+						.getInstance(externalContext.getSessionMap())
+						.get(pictureId);
+			}
+			if (picture == null) {
+				return new DefaultStreamedContent();
+			}
+			String etag = "\"" + pictureId + "\"";
+			externalContext.setResponseHeader("ETag", etag);
+			externalContext.setResponseHeader("Cache-Control",
+					CACHE_CONTROL);
+			if (etag.equals(externalContext.getRequestHeaderMap()
+					.get("If-None-Match"))) {
+				LOG.fine(" picture not modified");
+				// commit the status, so streaming an empty body keeps it.
+				externalContext.setResponseStatus(SC_NOT_MODIFIED);
+				externalContext.responseFlushBuffer();
+				return new DefaultStreamedContent(
+						new ByteArrayInputStream(new byte[0]),
+						picture.getContentType());
+			}
+			LOG.fine(" return real picture");
+			return new DefaultStreamedContent(
+					new ByteArrayInputStream(picture.getData()),
+					picture.getContentType());
 		}
 	}
 	
@@ -16,16 +16,20 @@ import javax.faces.context.FacesContext;
 import javax.faces.event.AjaxBehaviorEvent;
 
 import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.Row;
 import org.apache.poi.ss.usermodel.Sheet;
 import org.primefaces.component.datatable.DataTable;
-import org.primefaces.context.RequestContext;
 import org.tiefaces.common.FacesUtility;
+import org.tiefaces.common.PartialUpdateCollector;
 import org.tiefaces.common.TieConstants;
 import org.tiefaces.components.websheet.TieWebSheetBean;
 import org.tiefaces.components.websheet.configuration.SheetConfiguration;
+import org.tiefaces.components.websheet.dataobjects.CellAttributesMap;
 import org.tiefaces.components.websheet.dataobjects.CellFormAttributes;
 import org.tiefaces.components.websheet.dataobjects.FacesCell;
 import org.tiefaces.components.websheet.dataobjects.FacesRow;
+import org.tiefaces.components.websheet.dataobjects.LazyBodyRows;
+import org.tiefaces.components.websheet.dataobjects.MergedRegionIndex;
 import org.tiefaces.components.websheet.dataobjects.TieCell;
 import org.tiefaces.components.websheet.utility.CellControlsUtility;
 import org.tiefaces.components.websheet.utility.CellUtility;
@@ -42,6 +46,9 @@ public class ValidationHandler {
 	/** logger. */
 	private static final Logger LOG = Logger.getLogger(ValidationHandler.class.getName());
 
+	/** compiled validation rules keyed by rule text. */
+	private final Map<String, ValidationRule> ruleMap = new HashMap<>();
+
 	/**
 	 * Instantiates a new validation handler.
 	 *
@@ -76,8 +83,11 @@ public class ValidationHandler {
 		}
 		cell.setInvalid(newStatus);
 		if ((oldStatus != newStatus) && (parent.getWebFormClientId() != null)) {
-			RequestContext.getCurrentInstance()
-					.update(parent.getWebFormClientId() + ":" + (formRow) + ":group" + (formCol));
+			PartialUpdateCollector collector = PartialUpdateCollector.getCurrentInstance();
+			if (collector != null) {
+				collector.add(parent.getWebFormClientId(),
+						parent.getWebFormClientId() + ":" + (formRow) + ":group" + (formCol));
+			}
 		}
 
 	}
@@ -112,131 +122,117 @@ public class ValidationHandler {
 		Cell poiCell = parent.getCellHelper().getPoiCellWithRowColFromCurrentPage(row, col);
 		boolean oldStatus = cell.isInvalid();
 
-		String value = CellUtility.getCellValueWithoutFormat(poiCell);
-		if (value == null) {
-			value = "";
-		} else {
-			value = value.trim();
-		}
-
+		String value = getCellValue(poiCell);
 		if (passEmptyCheck && value.isEmpty()) {
 			refreshAfterStatusChanged(oldStatus, false, row - topRow, col - leftCol, cell);
 			return pass;
 		}
 
-		if (!validateByTieWebSheetValidationBean(poiCell.getSheet().getSheetName(), row, col, topRow, leftCol, cell,
-				value)) {
+		String errmsg = findValidationError(poiCell.getSheet(), row, col, poiCell, value, fRow.getOriginRowIndex());
+		if (errmsg != null) {
+			cell.setErrormsg(errmsg);
+			refreshAfterStatusChanged(false, true, row - topRow, col - leftCol, cell);
 			return false;
 		}
+		refreshAfterStatusChanged(oldStatus, false, row - topRow, col - leftCol, cell);
+		return pass;
 
-		SheetConfiguration sheetConfig = parent.getSheetConfigMap().get(parent.getCurrent().getCurrentTabName());
-		List<CellFormAttributes> cellAttributes = CellControlsUtility.findCellValidateAttributes(
-				parent.getCellAttributesMap().getCellValidateAttributes(), fRow.getOriginRowIndex(), poiCell);
-
-		if ( parent.isAdvancedContext() && parent.getConfigAdvancedContext().getErrorSuffix() != null
-			&& !checkErrorMessageFromObjectInContext(row - topRow, col - leftCol, cell, poiCell, value, sheetConfig)) {
-				return false;
-		}
-
-		if (cellAttributes != null) {
-			pass = validateAllRulesForSingleCell(row - topRow, col - leftCol, cell, poiCell, value, sheetConfig,
-					cellAttributes);
-		}
+	}
 
-		if (pass) {
-			refreshAfterStatusChanged(oldStatus, false, row - topRow, col - leftCol, cell);
+	/**
+	 * Gets the trimmed value of cell for validation.
+	 *
+	 * @param poiCell
+	 *            the poi cell. may be null.
+	 * @return the value. empty if no value.
+	 */
+	private static String getCellValue(final Cell poiCell) {
+		String value = CellUtility.getCellValueWithoutFormat(poiCell);
+		if (value == null) {
+			return "";
 		}
-		return pass;
-
+		return value.trim();
 	}
 
-	private boolean validateByTieWebSheetValidationBean(final String sheetName, final int row, final int col,
-			final int topRow, final int leftCol, final FacesCell cell, final String value) {
+	/**
+	 * Find the validation error of the cell value. Check the validation bean,
+	 * the error message of object in context, then the validate rules of the
+	 * cell.
+	 *
+	 * @param sheet
+	 *            the sheet
+	 * @param row
+	 *            the row index
+	 * @param col
+	 *            the column index
+	 * @param poiCell
+	 *            the poi cell. may be null.
+	 * @param value
+	 *            the value
+	 * @param originRowIndex
+	 *            the origin row index of the row in template
+	 * @return the error message. null if passed.
+	 */
+	private String findValidationError(final Sheet sheet, final int row, final int col, final Cell poiCell,
+			final String value, final int originRowIndex) {
 		if (parent.getTieWebSheetValidationBean() != null) {
-			String errormsg = parent.getTieWebSheetValidationBean().validate(sheetName, row, col, value);
+			String errormsg = parent.getTieWebSheetValidationBean().validate(sheet.getSheetName(), row, col, value);
 			if ((errormsg != null) && (!errormsg.isEmpty())) {
-				cell.setErrormsg(errormsg);
-				refreshAfterStatusChanged(false, true, row - topRow, col - leftCol, cell);
-				return false;
+				return errormsg;
 			}
 		}
-		return true;
-	}
-
-	private boolean checkErrorMessageFromObjectInContext(final int formRow, final int formCol, final FacesCell cell,
-			final Cell poiCell, final String value, final SheetConfiguration sheetConfig) {
 
-		@SuppressWarnings("unchecked")
-		HashMap<String, TieCell> tieCells = (HashMap<String, TieCell>) parent.getSerialDataContext().getDataContext()
-				.get("tiecells");
-
-		if (tieCells != null) {
-
-			TieCell tieCell = tieCells.get(CellUtility.getSkeyFromPoiCell(poiCell));
-
-			if (tieCell != null && tieCell.getContextObject() != null) {
-
-				String errorMethod = tieCell.getMethodStr() + parent.getConfigAdvancedContext().getErrorSuffix();
-
-				String errorMessage = CellControlsUtility.getObjectPropertyValue(tieCell.getContextObject(),
-						errorMethod, true);
+		if ((poiCell != null) && parent.isAdvancedContext()
+				&& (parent.getConfigAdvancedContext().getErrorSuffix() != null)) {
+			String errorMessage = getErrorMessageFromObjectInContext(poiCell);
+			if ((errorMessage != null) && !errorMessage.isEmpty()) {
+				LOG.log(Level.INFO, "Validation failed for sheet {0} row {1} column {2} : {3}",
+						new Object[] { sheet.getSheetName(), row, col, errorMessage });
+				return errorMessage;
+			}
+		}
 
-				if (errorMessage != null && !errorMessage.isEmpty()) {
-					cell.setErrormsg(errorMessage);
-					LOG.log(Level.INFO, "Validation failed for sheet {0} row {1} column {2} : {3}",
-							new Object[]{poiCell.getSheet().getSheetName(), poiCell.getRowIndex(), poiCell.getColumnIndex(),
-							errorMessage});
-					refreshAfterStatusChanged(false, true, formRow, formCol, cell);
-					return false;
+		CellAttributesMap.CellEntry entry = parent.getCellAttributesMap().getCellEntry(sheet.getSheetName(),
+				originRowIndex, col);
+		if ((entry == null) || (entry.getValidateAttributes() == null)) {
+			return null;
+		}
+		for (CellFormAttributes attr : entry.getValidateAttributes()) {
+			if (!doValidation(value, attr, row, col, sheet)) {
+				String errmsg = attr.getMessage();
+				if (errmsg == null) {
+					errmsg = TieConstants.DEFALT_MSG_INVALID_INPUT;
 				}
-
+				LOG.log(Level.INFO, "Validation failed for sheet {0} row {1} column {2} : {3}",
+						new Object[] { sheet.getSheetName(), row, col, errmsg });
+				return errmsg;
 			}
 		}
-
-		return true;
-
+		return null;
 	}
 
 	/**
-	 * Validate all rules for single cell.
+	 * Gets the error message from object in context.
 	 *
-	 * @param formRow
-	 *            the form row
-	 * @param formCol
-	 *            the form col
-	 * @param cell
-	 *            the cell
 	 * @param poiCell
 	 *            the poi cell
-	 * @param value
-	 *            the value
-	 * @param sheetConfig
-	 *            the sheet config
-	 * @param cellAttributes
-	 *            the cell attributes
-	 * @return true, if successful
+	 * @return the error message. null if none.
 	 */
-	private boolean validateAllRulesForSingleCell(final int formRow, final int formCol, final FacesCell cell,
-			final Cell poiCell, final String value, final SheetConfiguration sheetConfig,
-			final List<CellFormAttributes> cellAttributes) {
-		Sheet sheet1 = parent.getWb().getSheet(sheetConfig.getSheetName());
-		for (CellFormAttributes attr : cellAttributes) {
-			boolean pass = doValidation(value, attr, poiCell.getRowIndex(), poiCell.getColumnIndex(), sheet1);
-			if (!pass) {
-				String errmsg = attr.getMessage();
-				if (errmsg == null) {
-					errmsg = TieConstants.DEFALT_MSG_INVALID_INPUT;
-				}
-				cell.setErrormsg(errmsg);
-				LOG.log(Level.INFO, "Validation failed for sheet {0} row {1} column {2} : {3}",
-						new Object[]{poiCell.getSheet().getSheetName(), poiCell.getRowIndex(), poiCell.getColumnIndex(),
-						errmsg});				
-				refreshAfterStatusChanged(false, true, formRow, formCol, cell);
-				return false;
-			}
+	private String getErrorMessageFromObjectInContext(final Cell poiCell) {
 
+		@SuppressWarnings("unchecked")
+		HashMap<String, TieCell> tieCells = (HashMap<String, TieCell>) parent.getSerialDataContext().getDataContext()
+				.get("tiecells");
+		if (tieCells == null) {
+			return null;
 		}
-		return true;
+		TieCell tieCell = tieCells.get(CellUtility.getSkeyFromPoiCell(poiCell));
+		if ((tieCell == null) || (tieCell.getContextObject() == null)) {
+			return null;
+		}
+		String errorMethod = tieCell.getMethodStr() + parent.getConfigAdvancedContext().getErrorSuffix();
+		return CellControlsUtility.getObjectPropertyValue(tieCell.getContextObject(), errorMethod, true);
+
 	}
 
 	/**
@@ -254,23 +250,35 @@ public class ValidationHandler {
 	 */
 	private boolean doValidation(final Object value, final CellFormAttributes attr, final int rowIndex,
 			final int colIndex, final Sheet sheet) {
-		boolean pass;
-
+		ValidationRule rule = getValidationRule(attr.getValue());
+		if (!rule.isElExpression()) {
+			return rule.test(value.toString(), rowIndex, colIndex, sheet, parent.getExpEngine());
+		}
 		String attrValue = attr.getValue();
 		attrValue = attrValue.replace("$value", value.toString() + "").replace("$rowIndex", rowIndex + "")
 				.replace("$colIndex", colIndex + "").replace("$sheetName", sheet.getSheetName());
 		attrValue = ConfigurationUtility.replaceExpressionWithCellValue(attrValue, rowIndex, sheet);
-		if (attrValue.contains(TieConstants.EL_START)) {
-			Object returnObj = FacesUtility.evaluateExpression(attrValue, Object.class);
-			attrValue = returnObj.toString();
-			pass = Boolean.parseBoolean(attrValue);
-		} else {
-			pass = parent.getCellHelper().evalBoolExpression(attrValue);
-		}
-		return pass;
+		Object returnObj = FacesUtility.evaluateExpression(attrValue, Object.class);
+		return Boolean.parseBoolean(returnObj.toString());
 
 	}
 
+	/**
+	 * Gets the compiled validation rule. Compile it when first used.
+	 *
+	 * @param ruleText
+	 *            the rule text
+	 * @return the validation rule
+	 */
+	private ValidationRule getValidationRule(final String ruleText) {
+		ValidationRule rule = ruleMap.get(ruleText);
+		if (rule == null) {
+			rule = new ValidationRule(ruleText);
+			ruleMap.put(ruleText, rule);
+		}
+		return rule;
+	}
+
 	/**
 	 * Validate cell.
 	 *
@@ -287,14 +295,35 @@ public class ValidationHandler {
 	}
 
 	/**
-	 * Validate current page.
+	 * Validate current page. Rows not materialized are validated from the
+	 * sheet, their status shows up when they are loaded.
 	 *
 	 * @return true, if successful
 	 */
 	public final boolean validateCurrentPage() {
-		boolean allpass = true;
-		boolean passEmptyCheck = true;
+		SheetConfiguration sheetConfig = parent.getSheetConfigMap().get(parent.getCurrent().getCurrentTabName());
+		return validateSheet(sheetConfig, isPassEmptyCheck(), false);
+	}
 
+	/**
+	 * Validate row just materialized in body rows.
+	 *
+	 * @param irow
+	 *            the irow
+	 * @return true, if successful
+	 */
+	public final boolean validateRowOnLoad(final int irow) {
+		return validateRowInCurrentPage(irow, isPassEmptyCheck());
+	}
+
+	/**
+	 * Checks if empty cell pass the validation. Full validation don't pass
+	 * empty cell.
+	 *
+	 * @return true, if empty cell pass
+	 */
+	private boolean isPassEmptyCheck() {
+		boolean passEmptyCheck = true;
 		try {
 			if (FacesContext.getCurrentInstance() != null) {
 				Map<String, Object> viewMap = FacesContext.getCurrentInstance().getViewRoot().getViewMap();
@@ -306,14 +335,7 @@ public class ValidationHandler {
 		} catch (Exception ex) {
 			LOG.log(Level.SEVERE, "cannot get fullValidation from view map. error = " + ex.getMessage(), ex);
 		}
-
-		int top = parent.getCurrent().getCurrentTopRow();
-		for (int irow = 0; irow < parent.getBodyRows().size(); irow++) {
-			if (!validateRowInCurrentPage(irow + top, passEmptyCheck)) {
-				allpass = false;
-			}
-		}
-		return allpass;
+		return passEmptyCheck;
 	}
 
 	/**
@@ -339,18 +361,103 @@ public class ValidationHandler {
 	 */
 	public final String findFirstInvalidSheet(final boolean passEmptyCheck) {
 		for (Map.Entry<String, SheetConfiguration> entry : parent.getSheetConfigMap().entrySet()) {
-			SheetConfiguration sheetConfig = entry.getValue();
-			String tabName = entry.getKey();
-			int topRow = sheetConfig.getBodyCellRange().getTopRow();
-			for (int irow = 0; irow < parent.getBodyRows().size(); irow++) {
-				if (!validateRow(irow + topRow, passEmptyCheck, sheetConfig)) {
-					return tabName;
-				}
+			if (!validateSheet(entry.getValue(), passEmptyCheck, true)) {
+				return entry.getKey();
 			}
 		}
 		return null;
 	}
 
+	/**
+	 * Validate body rows of sheet. Materialized rows of current sheet are
+	 * validated with their faces cells, so the status is shown. Other rows
+	 * are validated from the sheet without materializing them.
+	 *
+	 * @param sheetConfig
+	 *            the sheet config
+	 * @param passEmptyCheck
+	 *            the pass empty check
+	 * @param stopOnError
+	 *            stop at first invalid row
+	 * @return true, if successful
+	 */
+	private boolean validateSheet(final SheetConfiguration sheetConfig, final boolean passEmptyCheck,
+			final boolean stopOnError) {
+		if (sheetConfig == null) {
+			return true;
+		}
+		Sheet sheet = parent.getWb().getSheet(sheetConfig.getSheetName());
+		int top = sheetConfig.getBodyCellRange().getTopRow();
+		int bottom = sheetConfig.getBodyCellRange().getBottomRow();
+		LazyBodyRows bodyRows = null;
+		MergedRegionIndex regionIndex;
+		if (sheetConfig == parent.getSheetConfigMap().get(parent.getCurrent().getCurrentTabName())) {
+			bodyRows = parent.getBodyRows();
+			bottom = top + bodyRows.size() - 1;
+			regionIndex = bodyRows.getRegionIndex();
+		} else {
+			regionIndex = ConfigurationUtility.indexMergedRegion(sheet);
+		}
+		boolean allpass = true;
+		for (int irow = top; irow <= bottom; irow++) {
+			boolean pass;
+			if ((bodyRows != null) && bodyRows.isMaterialized(irow - top)) {
+				pass = validateRow(irow, passEmptyCheck, sheetConfig);
+			} else {
+				pass = validateRowInSheet(sheet, irow, passEmptyCheck, sheetConfig, regionIndex);
+			}
+			if (!pass) {
+				if (stopOnError) {
+					return false;
+				}
+				allpass = false;
+			}
+		}
+		return allpass;
+	}
+
+	/**
+	 * Validate data row from the sheet. The same cells as in faces row are
+	 * validated, i.e. skip the cells covered by merged region or in hidden
+	 * column.
+	 *
+	 * @param sheet
+	 *            the sheet
+	 * @param irow
+	 *            row number.
+	 * @param passEmptyCheck
+	 *            whether pass empty cell.
+	 * @param sheetConfig
+	 *            sheet config.
+	 * @param regionIndex
+	 *            merged region index of the sheet.
+	 * @return true if passed validation.
+	 */
+	private boolean validateRowInSheet(final Sheet sheet, final int irow, final boolean passEmptyCheck,
+			final SheetConfiguration sheetConfig, final MergedRegionIndex regionIndex) {
+		Row row = sheet.getRow(irow);
+		if (row == null) {
+			return true;
+		}
+		int originRowIndex = parent.getRowMetaStore().getOriginRowNum(row);
+		int left = sheetConfig.getBodyCellRange().getLeftCol();
+		int right = sheetConfig.getBodyCellRange().getRightCol();
+		for (int cindex = left; cindex <= right; cindex++) {
+			if (regionIndex.isCovered(irow, cindex) || sheet.isColumnHidden(cindex)) {
+				continue;
+			}
+			Cell poiCell = row.getCell(cindex);
+			String value = getCellValue(poiCell);
+			if ((passEmptyCheck && value.isEmpty())) {
+				continue;
+			}
+			if (findValidationError(sheet, irow, cindex, poiCell, value, originRowIndex) != null) {
+				return false;
+			}
+		}
+		return true;
+	}
+
 	/**
 	 * Validate data row.
 	 * 
@@ -0,0 +1,522 @@
+/*
+ * Copyright 2017 TieFaces.
+ * Licensed under MIT
+ */
+
+package org.tiefaces.components.websheet.service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+
+import org.apache.commons.jexl2.Expression;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.util.CellReference;
+import org.tiefaces.common.TieConstants;
+import org.tiefaces.components.websheet.configuration.ExpressionEngine;
+import org.tiefaces.components.websheet.utility.CellUtility;
+import org.tiefaces.components.websheet.utility.ParserUtility;
+
+/**
+ * Validation rule compiled from the rule text of tie:validate. The
+ * placeholders ($value, $rowIndex, $colIndex, $sheetName) and cell
+ * references ($E or $E$8) become parameter slots of a parsed jexl
+ * expression, so validating a cell only binds the slots and executes.
+ *
+ * Rules are case insensitive as the textual evaluation was: literal parts
+ * and bound string values are upper cased. A quoted string contains
+ * placeholders (e.g. '$value') becomes one slot bound to the substituted
+ * text.
+ *
+ * Unlike the textual evaluation, an unquoted placeholder of a string value
+ * is bound as a string. e.g. $value == 'yes' matches the value yes, while
+ * the substituted text YES == 'YES' compared an undefined variable and
+ * never matched.
+ *
+ * Rules contain EL (#{...}) are not compiled and must be evaluated from the
+ * text.
+ *
+ * @author Jason Jiang
+ *
+ */
+public class ValidationRule {
+
+	/** logger. */
+	private static final Logger LOG = Logger
+			.getLogger(ValidationRule.class.getName());
+
+	/** slot type: cell value. */
+	private static final int SLOT_VALUE = 0;
+
+	/** slot type: row index. */
+	private static final int SLOT_ROW_INDEX = 1;
+
+	/** slot type: column index. */
+	private static final int SLOT_COL_INDEX = 2;
+
+	/** slot type: sheet name. */
+	private static final int SLOT_SHEET_NAME = 3;
+
+	/** slot type: cell reference. */
+	private static final int SLOT_CELL = 4;
+
+	/** slot type: invalid cell reference. always null. */
+	private static final int SLOT_NULL = 5;
+
+	/** slot type: quoted string contains placeholders. */
+	private static final int SLOT_QUOTED = 6;
+
+	/** placeholder names in the order of slot type. */
+	private static final String[] PLACE_HOLDERS = { "$value", "$rowIndex",
+			"$colIndex", "$sheetName" };
+
+	/** prefix of slot variables in the script. */
+	private static final String SLOT_VARIABLE_PREFIX = "tieslot";
+
+	/** plain number text. */
+	private static final Pattern NUMBER_PATTERN = Pattern
+			.compile("-?\\d+(\\.\\d*)?([eE][-+]?\\d+)?");
+
+	/** rule text. */
+	private final String ruleText;
+
+	/** rule text contains EL. */
+	private final boolean elExpression;
+
+	/** script of the rule after slots replaced with variables. */
+	private final String script;
+
+	/** slots of the script. */
+	private final Slot[] slots;
+
+	/** parsed script. */
+	private Expression expression;
+
+	/**
+	 * Parameter slot of the script.
+	 */
+	private static final class Slot {
+
+		/** slot type. */
+		private final int type;
+
+		/** row of cell reference. -1 means the row of validated cell. */
+		private final int row;
+
+		/** column of cell reference. */
+		private final int col;
+
+		/**
+		 * literal text (String) and slots (Slot) of quoted string. null if
+		 * not quoted string.
+		 */
+		private final List<Object> parts;
+
+		/**
+		 * Instantiates a new slot.
+		 *
+		 * @param ptype
+		 *            the type
+		 * @param prow
+		 *            the row
+		 * @param pcol
+		 *            the col
+		 * @param pparts
+		 *            the parts of quoted string
+		 */
+		private Slot(final int ptype, final int prow, final int pcol,
+				final List<Object> pparts) {
+			this.type = ptype;
+			this.row = prow;
+			this.col = pcol;
+			this.parts = pparts;
+		}
+	}
+
+	/**
+	 * Compile the rule text.
+	 *
+	 * @param pruleText
+	 *            the rule text
+	 */
+	public ValidationRule(final String pruleText) {
+		super();
+		this.ruleText = pruleText;
+		this.elExpression = pruleText.contains(TieConstants.EL_START);
+		List<Slot> slotList = new ArrayList<>();
+		StringBuilder scriptBuilder = new StringBuilder();
+		if (!elExpression) {
+			buildScript(pruleText, scriptBuilder, slotList);
+		}
+		this.script = scriptBuilder.toString();
+		this.slots = slotList.toArray(new Slot[slotList.size()]);
+	}
+
+	/**
+	 * Split rule text into literal parts and slots. Literal parts are changed
+	 * the same way as CommandUtility.evalBoolExpression, i.e. upper cased and
+	 * AND/OR changed to &amp;&amp;/||. Quoted strings are only upper cased,
+	 * or become a slot if contain placeholders.
+	 *
+	 * @param text
+	 *            the rule text
+	 * @param scriptBuilder
+	 *            the script builder
+	 * @param slotList
+	 *            slots.
+	 */
+	private static void buildScript(final String text,
+			final StringBuilder scriptBuilder, final List<Slot> slotList) {
+		StringBuilder literal = new StringBuilder("( ");
+		int[] end = new int[1];
+		int i = 0;
+		while (i < text.length()) {
+			char ch = text.charAt(i);
+			int close = -1;
+			if ((ch == '\'') || (ch == '"')) {
+				close = text.indexOf(ch, i + 1);
+			}
+			if (close > 0) {
+				appendLiteral(scriptBuilder, literal);
+				String quoted = text.substring(i + 1, close);
+				List<Object> parts = new ArrayList<>();
+				if (splitQuoted(quoted, parts)) {
+					scriptBuilder.append(SLOT_VARIABLE_PREFIX)
+							.append(slotList.size());
+					slotList.add(new Slot(SLOT_QUOTED, -1, -1, parts));
+				} else {
+					scriptBuilder.append(ch).append(quoted.toUpperCase())
+							.append(ch);
+				}
+				i = close + 1;
+				continue;
+			}
+			Slot slot = findSlot(text, i, end);
+			if (slot == null) {
+				literal.append(ch);
+				i++;
+				continue;
+			}
+			appendLiteral(scriptBuilder, literal);
+			scriptBuilder.append(SLOT_VARIABLE_PREFIX).append(slotList.size());
+			slotList.add(slot);
+			i = end[0];
+		}
+		literal.append(" )");
+		appendLiteral(scriptBuilder, literal);
+	}
+
+	/**
+	 * Split quoted string into literal text and slots.
+	 *
+	 * @param quoted
+	 *            the quoted string without quotes
+	 * @param parts
+	 *            the parts
+	 * @return true, if contains slot
+	 */
+	private static boolean splitQuoted(final String quoted,
+			final List<Object> parts) {
+		boolean hasSlot = false;
+		StringBuilder literal = new StringBuilder();
+		int[] end = new int[1];
+		int i = 0;
+		while (i < quoted.length()) {
+			Slot slot = findSlot(quoted, i, end);
+			if (slot == null) {
+				literal.append(quoted.charAt(i));
+				i++;
+				continue;
+			}
+			parts.add(literal.toString());
+			literal.setLength(0);
+			parts.add(slot);
+			hasSlot = true;
+			i = end[0];
+		}
+		parts.add(literal.toString());
+		return hasSlot;
+	}
+
+	/**
+	 * Find placeholder or cell reference slot at the position.
+	 *
+	 * @param text
+	 *            the text
+	 * @param start
+	 *            the start position
+	 * @param end
+	 *            return the end position of slot
+	 * @return the slot. null if no slot at the position.
+	 */
+	private static Slot findSlot(final String text, final int start,
+			final int[] end) {
+		if (text.charAt(start) != TieConstants.CELL_ADDR_PRE_FIX.charAt(0)) {
+			return null;
+		}
+		for (int type = 0; type < PLACE_HOLDERS.length; type++) {
+			if (text.startsWith(PLACE_HOLDERS[type], start)) {
+				end[0] = start + PLACE_HOLDERS[type].length();
+				return new Slot(type, -1, -1, null);
+			}
+		}
+		end[0] = ParserUtility.findFirstNonCellNamePosition(text, start);
+		if (end[0] < 0) {
+			end[0] = text.length();
+		}
+		if (end[0] - start > 1) {
+			return getCellSlot(text.substring(start, end[0]));
+		}
+		return null;
+	}
+
+	/**
+	 * Append literal part to script.
+	 *
+	 * @param scriptBuilder
+	 *            the script builder
+	 * @param literal
+	 *            the literal. cleared after appended.
+	 */
+	private static void appendLiteral(final StringBuilder scriptBuilder,
+			final StringBuilder literal) {
+		scriptBuilder.append(literal.toString().toUpperCase()
+				.replace("AND", "&&").replace("OR", "||"));
+		literal.setLength(0);
+	}
+
+	/**
+	 * Gets the slot of cell reference. $E refers to column E of the validated
+	 * row, $E$8 refers to cell E8.
+	 *
+	 * @param ref
+	 *            the cell reference
+	 * @return the slot
+	 */
+	private static Slot getCellSlot(final String ref) {
+		boolean relative = ref.indexOf(TieConstants.CELL_ADDR_PRE_FIX,
+				1) < 0;
+		try {
+			CellReference cellRef = new CellReference(relative
+					? ref + TieConstants.CELL_ADDR_PRE_FIX + "1" : ref);
+			return new Slot(SLOT_CELL, relative ? -1 : cellRef.getRow(),
+					cellRef.getCol(), null);
+		} catch (Exception ex) {
+			LOG.log(Level.SEVERE, "Invalid cell reference in rule = " + ref
+					+ "; error = " + ex.getLocalizedMessage(), ex);
+			return new Slot(SLOT_NULL, -1, -1, null);
+		}
+	}
+
+	/**
+	 * Checks if the rule contains EL.
+	 *
+	 * @return true, if is EL expression
+	 */
+	public final boolean isElExpression() {
+		return elExpression;
+	}
+
+	/**
+	 * Gets the rule text.
+	 *
+	 * @return the rule text
+	 */
+	public final String getRuleText() {
+		return ruleText;
+	}
+
+	/**
+	 * Gets the compiled script.
+	 *
+	 * @return the script
+	 */
+	public final String getScript() {
+		return script;
+	}
+
+	/**
+	 * Test the rule with the cell value.
+	 *
+	 * @param value
+	 *            the value
+	 * @param rowIndex
+	 *            the row index
+	 * @param colIndex
+	 *            the col index
+	 * @param sheet
+	 *            the sheet
+	 * @param engine
+	 *            the engine
+	 * @return true (rule is true) false (rule is false or invalid).
+	 */
+	public final boolean test(final String value, final int rowIndex,
+			final int colIndex, final Sheet sheet,
+			final ExpressionEngine engine) {
+		Object result = null;
+		try {
+			if (expression == null) {
+				expression = engine.createExpression(script);
+			}
+			Map<String, Object> context = new HashMap<>();
+			for (int i = 0; i < slots.length; i++) {
+				context.put(SLOT_VARIABLE_PREFIX + i, getSlotValue(slots[i],
+						value, rowIndex, colIndex, sheet));
+			}
+			result = engine.evaluate(expression, context);
+		} catch (Exception e) {
+			LOG.log(Level.SEVERE, "Validation rule = " + ruleText
+					+ "; error = " + e.getLocalizedMessage(), e);
+		}
+		return Boolean.TRUE.equals(result);
+	}
+
+	/**
+	 * Gets the value of slot. String values are upper cased.
+	 *
+	 * @param slot
+	 *            the slot
+	 * @param value
+	 *            the value
+	 * @param rowIndex
+	 *            the row index
+	 * @param colIndex
+	 *            the col index
+	 * @param sheet
+	 *            the sheet
+	 * @return the slot value
+	 */
+	private static Object getSlotValue(final Slot slot, final String value,
+			final int rowIndex, final int colIndex, final Sheet sheet) {
+		switch (slot.type) {
+		case SLOT_VALUE:
+			return upperCase(toOperand(value));
+		case SLOT_ROW_INDEX:
+			return rowIndex;
+		case SLOT_COL_INDEX:
+			return colIndex;
+		case SLOT_SHEET_NAME:
+			return sheet.getSheetName().toUpperCase();
+		case SLOT_CELL:
+			return upperCase(toOperand(getCellText(slot, rowIndex, sheet)));
+		case SLOT_QUOTED:
+			StringBuilder quoted = new StringBuilder();
+			for (Object part : slot.parts) {
+				if (part instanceof Slot) {
+					quoted.append(getSlotText((Slot) part, value, rowIndex,
+							colIndex, sheet));
+				} else {
+					quoted.append(part);
+				}
+			}
+			return quoted.toString().toUpperCase();
+		default:
+			return null;
+		}
+	}
+
+	/**
+	 * Gets the text of slot substituted in quoted string. Same as the textual
+	 * substitution.
+	 *
+	 * @param slot
+	 *            the slot
+	 * @param value
+	 *            the value
+	 * @param rowIndex
+	 *            the row index
+	 * @param colIndex
+	 *            the col index
+	 * @param sheet
+	 *            the sheet
+	 * @return the slot text
+	 */
+	private static String getSlotText(final Slot slot, final String value,
+			final int rowIndex, final int colIndex, final Sheet sheet) {
+		String text;
+		switch (slot.type) {
+		case SLOT_VALUE:
+			text = value;
+			break;
+		case SLOT_ROW_INDEX:
+			text = Integer.toString(rowIndex);
+			break;
+		case SLOT_COL_INDEX:
+			text = Integer.toString(colIndex);
+			break;
+		case SLOT_SHEET_NAME:
+			text = sheet.getSheetName();
+			break;
+		case SLOT_CELL:
+			text = getCellText(slot, rowIndex, sheet);
+			break;
+		default:
+			text = null;
+			break;
+		}
+		return text == null ? "" : text;
+	}
+
+	/**
+	 * Gets the text of cell reference slot.
+	 *
+	 * @param slot
+	 *            the slot
+	 * @param rowIndex
+	 *            the row index of validated cell
+	 * @param sheet
+	 *            the sheet
+	 * @return the cell text. null if no cell.
+	 */
+	private static String getCellText(final Slot slot, final int rowIndex,
+			final Sheet sheet) {
+		int row = slot.row < 0 ? rowIndex : slot.row;
+		Row poiRow = sheet.getRow(row);
+		if (poiRow == null) {
+			return null;
+		}
+		return CellUtility.getCellValueWithoutFormat(poiRow.getCell(slot.col));
+	}
+
+	/**
+	 * Upper case the operand if it's string.
+	 *
+	 * @param operand
+	 *            the operand
+	 * @return the operand
+	 */
+	private static Object upperCase(final Object operand) {
+		if (operand instanceof String) {
+			return ((String) operand).toUpperCase();
+		}
+		return operand;
+	}
+
+	/**
+	 * Convert cell text to operand. Number text become number, empty text
+	 * become null, otherwise the text itself.
+	 *
+	 * @param text
+	 *            the text
+	 * @return the operand
+	 */
+	static Object toOperand(final String text) {
+		if ((text == null) || text.isEmpty()) {
+			return null;
+		}
+		if (NUMBER_PATTERN.matcher(text).matches()) {
+			try {
+				return Long.valueOf(text);
+			} catch (NumberFormatException e) {
+				return Double.valueOf(text);
+			}
+		}
+		return text;
+	}
+
+}
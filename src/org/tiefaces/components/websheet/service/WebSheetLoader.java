@@ -5,12 +5,20 @@
 
 package org.tiefaces.components.websheet.service;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -29,18 +37,23 @@ import org.apache.poi.xssf.usermodel.XSSFWorkbook;
 import org.primefaces.component.datatable.DataTable;
 import org.primefaces.context.RequestContext;
 import org.tiefaces.common.FacesUtility;
+import org.tiefaces.common.PartialUpdateCollector;
 import org.tiefaces.common.TieConstants;
 import org.tiefaces.components.websheet.TieWebSheetBean;
 import org.tiefaces.components.websheet.TieWebSheetView.TabModel;
+import org.tiefaces.components.websheet.configuration.CompiledTemplate;
 import org.tiefaces.components.websheet.configuration.ConfigBuildRef;
 import org.tiefaces.components.websheet.configuration.ConfigurationHandler;
 import org.tiefaces.components.websheet.configuration.ExpressionEngine;
 import org.tiefaces.components.websheet.configuration.RangeBuildRef;
 import org.tiefaces.components.websheet.configuration.RowsMapping;
 import org.tiefaces.components.websheet.configuration.SheetConfiguration;
+import org.tiefaces.components.websheet.configuration.ShiftMapIndex;
+import org.tiefaces.components.websheet.configuration.TemplateCache;
 import org.tiefaces.components.websheet.dataobjects.FacesCell;
 import org.tiefaces.components.websheet.dataobjects.FacesRow;
 import org.tiefaces.components.websheet.dataobjects.HeaderCell;
+import org.tiefaces.components.websheet.dataobjects.MergedRegionIndex;
 import org.tiefaces.components.websheet.dataobjects.TieCell;
 import org.tiefaces.components.websheet.utility.CellStyleUtility;
 import org.tiefaces.components.websheet.utility.CellUtility;
@@ -82,13 +95,10 @@ public class WebSheetLoader implements Serializable {
 	 *
 	 * @param sheetConfig
 	 *            the sheet config
-	 * @param cellRangeMap
-	 *            the cell range map
-	 * @param skippedRegionCells
-	 *            the skipped region cells
+	 * @param regionIndex
+	 *            the merged region index
 	 */
-	private void loadHeaderRows(final SheetConfiguration sheetConfig, final Map<String, CellRangeAddress> cellRangeMap,
-			final List<String> skippedRegionCells) {
+	private void loadHeaderRows(final SheetConfiguration sheetConfig, final MergedRegionIndex regionIndex) {
 
 		int top = sheetConfig.getHeaderCellRange().getTopRow();
 		int bottom = sheetConfig.getHeaderCellRange().getBottomRow();
@@ -122,8 +132,8 @@ public class WebSheetLoader implements Serializable {
 		} else {
 			parent.getHeaderRows().add(loadHeaderRowWithoutConfigurationTab(rangeBuildRef, false));
 			for (int i = top; i <= bottom; i++) {
-				parent.getHeaderRows().add(loadHeaderRowWithConfigurationTab(sheetConfig, rangeBuildRef, i,
-						cellRangeMap, skippedRegionCells));
+				parent.getHeaderRows()
+						.add(loadHeaderRowWithConfigurationTab(sheetConfig, rangeBuildRef, i, regionIndex));
 
 			}
 			// set showlinenumber to false as default
@@ -195,7 +205,7 @@ public class WebSheetLoader implements Serializable {
 
 		String columnstyle = "";
 		if (cell != null) {
-			columnstyle += CellStyleUtility.getCellStyle(wb, cell, "") + CellStyleUtility.getCellFontStyle(wb, cell); // +
+			columnstyle += parent.getCellStyleCache().getHeaderStyle(cell); // +
 		}
 
 		columnstyle = columnstyle + getWidthStyle(colWidth, totalWidth);
@@ -225,15 +235,12 @@ public class WebSheetLoader implements Serializable {
 	 *            the range build ref
 	 * @param currentRow
 	 *            the current row
-	 * @param cellRangeMap
-	 *            the cell range map
-	 * @param skippedRegionCells
-	 *            the skipped region cells
+	 * @param regionIndex
+	 *            the merged region index
 	 * @return the list
 	 */
 	private List<HeaderCell> loadHeaderRowWithConfigurationTab(final SheetConfiguration sheetConfig,
-			final RangeBuildRef rangeBuildRef, final int currentRow, final Map<String, CellRangeAddress> cellRangeMap,
-			final List<String> skippedRegionCells) {
+			final RangeBuildRef rangeBuildRef, final int currentRow, final MergedRegionIndex regionIndex) {
 
 		Sheet sheet1 = rangeBuildRef.getSheet();
 		int left = rangeBuildRef.getLeft();
@@ -242,24 +249,22 @@ public class WebSheetLoader implements Serializable {
 		Row row = sheet1.getRow(currentRow);
 		List<HeaderCell> headercells = new ArrayList<>();
 		for (int cindex = left; cindex <= right; cindex++) {
-			String cellindex = CellUtility.getCellIndexNumberKey(cindex, currentRow);
-
-			if (!skippedRegionCells.contains(cellindex) && !sheet1.isColumnHidden(cindex)) {
+			if (!regionIndex.isCovered(currentRow, cindex) && !sheet1.isColumnHidden(cindex)) {
 				Cell cell = null;
 				if (row != null) {
 					cell = row.getCell(cindex, MissingCellPolicy.CREATE_NULL_AS_BLANK);
 				}
-				int originRowIndex = ConfigurationUtility.getOriginalRowNumInHiddenColumn(row);
+				int originRowIndex = parent.getRowMetaStore().getOriginRowNum(row);
 				if (cell != null) {
 					FacesCell fcell = new FacesCell();
 
-					CellUtility.convertCell(sheetConfig, fcell, cell, cellRangeMap, originRowIndex,
+					CellUtility.convertCell(sheetConfig, fcell, cell, regionIndex, originRowIndex,
 							parent.getCellAttributesMap(), null);
 					parent.getPicHelper().setupFacesCellPictureCharts(sheet1, fcell, cell,
 							WebSheetUtility.getFullCellRefName(sheet1, cell));
-					CellStyleUtility.setupCellStyle(parent.getWb(), fcell, cell, row.getHeightInPoints());
+					parent.getCellStyleCache().setupCellStyle(fcell, cell, row.getHeightInPoints());
 					fcell.setColumnStyle(fcell.getColumnStyle()
-							+ getColumnWidthStyle(sheet1, cellRangeMap, cellindex, cindex, totalWidth));
+							+ getColumnWidthStyle(sheet1, regionIndex, currentRow, cindex, totalWidth));
 					fcell.setColumnIndex(cindex);
 
 					headercells.add(
@@ -280,20 +285,20 @@ public class WebSheetLoader implements Serializable {
 	 *
 	 * @param sheet1
 	 *            the sheet 1
-	 * @param cellRangeMap
-	 *            the cell range map
-	 * @param cellindex
-	 *            the cellindex
+	 * @param regionIndex
+	 *            the merged region index
+	 * @param rindex
+	 *            the rindex
 	 * @param cindex
 	 *            the cindex
 	 * @param totalWidth
 	 *            the total width
 	 * @return the column width style
 	 */
-	private String getColumnWidthStyle(final Sheet sheet1, final Map<String, CellRangeAddress> cellRangeMap,
-			final String cellindex, final int cindex, final double totalWidth) {
+	private String getColumnWidthStyle(final Sheet sheet1, final MergedRegionIndex regionIndex, final int rindex,
+			final int cindex, final double totalWidth) {
 
-		CellRangeAddress caddress = cellRangeMap.get(cellindex);
+		CellRangeAddress caddress = regionIndex.getRegion(rindex, cindex);
 		double colWidth;
 		// check whether the cell has rowspan or colspan
 		if (caddress != null) {
@@ -325,11 +330,13 @@ public class WebSheetLoader implements Serializable {
 		parent.setWb(null);
 		parent.getHeaderRows().clear();
 		parent.getBodyRows().clear();
-		parent.getCharsData().getChartsMap().clear();
+		parent.getCharsData().getChartImageMap().clear();
+		parent.getCharsData().clearChartRanges();
 		parent.getCharsData().getChartDataMap().clear();
 		parent.getCharsData().getChartAnchorsMap().clear();
 		parent.getCharsData().getChartPositionMap().clear();
 		parent.getCellAttributesMap().clear();
+		parent.getCellHelper().clearDependencyGraph();
 	}
 
 	/**
@@ -344,10 +351,17 @@ public class WebSheetLoader implements Serializable {
 	public final int loadWorkbook(final InputStream fis, final Map<String, Object> dataContext) {
 
 		try {
-			Workbook wb = WorkbookFactory.create(fis);
-			int ireturn = loadWorkbook(wb, dataContext);
+			byte[] content = readTemplate(fis);
 			fis.close();
-			return ireturn;
+			String templateKey = TemplateCache.buildKey(content, parent.isSkipConfiguration());
+			CompiledTemplate template = TemplateCache.get(templateKey);
+			Workbook wb;
+			if (template != null) {
+				wb = template.createWorkbook();
+			} else {
+				wb = WorkbookFactory.create(new ByteArrayInputStream(content));
+			}
+			return loadWorkbook(wb, dataContext, templateKey, template);
 		} catch (Exception e) {
 			LOG.log(Level.SEVERE, "Web Form loadWorkbook Error Exception = " + e.getLocalizedMessage(), e);
 			return -1;
@@ -355,6 +369,25 @@ public class WebSheetLoader implements Serializable {
 
 	}
 
+	/**
+	 * Read template content.
+	 *
+	 * @param fis
+	 *            the fis
+	 * @return the content bytes
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 */
+	private byte[] readTemplate(final InputStream fis) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		byte[] buffer = new byte[TieConstants.DEFAULT_BUFFER_SIZE];
+		int len;
+		while ((len = fis.read(buffer)) != -1) {
+			out.write(buffer, 0, len);
+		}
+		return out.toByteArray();
+	}
+
 	/**
 	 * Load workbook.
 	 *
@@ -365,6 +398,27 @@ public class WebSheetLoader implements Serializable {
 	 * @return the int
 	 */
 	public final int loadWorkbook(final Workbook wb, final Map<String, Object> dataContext) {
+		return loadWorkbook(wb, dataContext, null, null);
+	}
+
+	/**
+	 * Load workbook. When compiled template is supplied, the configuration is
+	 * restored from it instead of parsing the template again. Otherwise the
+	 * configuration is built and, if template key supplied, saved to the
+	 * template cache for other sessions.
+	 *
+	 * @param wb
+	 *            the wb
+	 * @param dataContext
+	 *            the data context
+	 * @param templateKey
+	 *            the template key. null if not cacheable.
+	 * @param template
+	 *            the compiled template. null if not cached.
+	 * @return the int
+	 */
+	private int loadWorkbook(final Workbook wb, final Map<String, Object> dataContext, final String templateKey,
+			final CompiledTemplate template) {
 
 		try {
 			clearWorkbook();
@@ -375,12 +429,23 @@ public class WebSheetLoader implements Serializable {
 			}
 			LOG.fine("Begin load work book...");
 			parent.setWb(wb);
+			parent.getSerialWb().setTemplateKey(templateKey);
 			parent.getSerialDataContext().setDataContext(dataContext);
-			parent.setSheetConfigMap(new ConfigurationHandler(parent).buildConfiguration());
+			if (template != null) {
+				parent.setSheetConfigMap(template.restoreConfiguration(wb, parent.getCellAttributesMap(),
+						parent.getRowMetaStore()));
+			} else {
+				parent.setSheetConfigMap(new ConfigurationHandler(parent).buildConfiguration());
+				if (templateKey != null) {
+					TemplateCache.put(CompiledTemplate.compile(templateKey, wb, parent.getSheetConfigMap(),
+							parent.getCellAttributesMap(), parent.getRowMetaStore()));
+				}
+			}
 			parent.reCalcMaxColCounts();
 			parent.getChartHelper().loadChartsMap();
 			parent.getPicHelper().loadPicturesMap();
 			initSheet();
+			parent.getCellHelper().buildDependencyGraph();
 			initTabs();
 			if (!parent.getTabs().isEmpty()) {
 				loadWorkSheet(parent.getTabs().get(0).getTitle());
@@ -431,7 +496,7 @@ public class WebSheetLoader implements Serializable {
 			List<RowsMapping> currentRowsMappingList = null;
 			ConfigBuildRef configBuildRef = new ConfigBuildRef(parent.getWbWrapper(),
 					parent.getWb().getSheet(sheetConfig.getSheetName()), parent.getExpEngine(), parent.getCellHelper(),
-					sheetConfig.getCachedCells(), parent.getCellAttributesMap(), sheetConfig.getFinalCommentMap());
+					sheetConfig.getCachedCells(), parent.getCellAttributesMap(), sheetConfig.getFinalCommentMap(), parent.getRowMetaStore());
 			int length = sheetConfig.getFormCommand().buildAt(null, configBuildRef,
 					sheetConfig.getFormCommand().getTopRow(), parent.getSerialDataContext().getDataContext(),
 					currentRowsMappingList);
@@ -478,7 +543,7 @@ public class WebSheetLoader implements Serializable {
 		if (row == null) {
 			return;
 		}
-		String saveAttrList = SaveAttrsUtility.getSaveAttrListFromRow(row);
+		String saveAttrList = parent.getRowMetaStore().getSaveAttrs(row);
 		if (saveAttrList!= null) {
 			String[] saveAttrs = saveAttrList.split(",");
 			for (String fullSaveAttr : saveAttrs) {
@@ -497,11 +562,11 @@ public class WebSheetLoader implements Serializable {
 	private void refreshDataForCell(Row row, String fullSaveAttr) {
 		if (fullSaveAttr != null) {
 			try {
-				String fullName = ConfigurationUtility.getFullNameFromRow(row);
+				String fullName = parent.getRowMetaStore().getFullName(row);
 				if (fullName != null) {
 					parent.getCellHelper().restoreDataContext(fullName);
 					SaveAttrsUtility.refreshSheetRowFromContext(parent.getSerialDataContext().getDataContext(),
-							fullSaveAttr, row, parent.getExpEngine());
+							fullSaveAttr, row, parent.getExpEngine(), parent.getRowMetaStore());
 				}
 			}catch (Exception ex) {
 				LOG.log(Level.SEVERE, "refreshDataForCell with fullAaveAttr ="+fullSaveAttr+" error = " + ex.getMessage(), ex);			
@@ -552,18 +617,18 @@ public class WebSheetLoader implements Serializable {
 
 		// populate repeat rows before setup cell range map
 
-		Map<String, CellRangeAddress> cellRangeMap = ConfigurationUtility.indexMergedRegion(sheet1);
-		List<String> skippedRegionCells = ConfigurationUtility.skippedRegionCells(sheet1);
-		loadHeaderRows(sheetConfig, cellRangeMap, skippedRegionCells);
-		loadBodyRows(sheetConfig, cellRangeMap, skippedRegionCells);
+		MergedRegionIndex regionIndex = ConfigurationUtility.indexMergedRegion(sheet1);
+		loadHeaderRows(sheetConfig, regionIndex);
+		loadBodyRows(sheetConfig, regionIndex);
 		parent.getValidationHandler().validateCurrentPage();
 		createDynamicColumns(tabName);
 		// reset datatable current page to 1
 		setDataTablePage(0);
 		parent.getCurrent().setCurrentDataContextName(null);
 		saveObjs();
-		if ((RequestContext.getCurrentInstance() != null) && (parent.getClientId() != null)) {
-			RequestContext.getCurrentInstance().update(parent.getClientId() + ":websheettab");
+		PartialUpdateCollector collector = PartialUpdateCollector.getCurrentInstance();
+		if ((collector != null) && (parent.getClientId() != null)) {
+			collector.add(null, parent.getClientId() + ":websheettab");
 		}
 	}
 
@@ -622,7 +687,7 @@ public class WebSheetLoader implements Serializable {
 		if (row != null) {
 			facesRow.setRendered(!row.getZeroHeight());
 			facesRow.setRowheight(row.getHeight());
-			int rowNum = ConfigurationUtility.getOriginalRowNumInHiddenColumn(row);
+			int rowNum = parent.getRowMetaStore().getOriginRowNum(row);
 			facesRow.setOriginRowIndex(rowNum);
 		} else {
 			facesRow.setRendered(true);
@@ -637,13 +702,10 @@ public class WebSheetLoader implements Serializable {
 	 *
 	 * @param sheetConfig
 	 *            the sheet config
-	 * @param cellRangeMap
-	 *            the cell range map
-	 * @param skippedRegionCells
-	 *            the skipped region cells
+	 * @param regionIndex
+	 *            the merged region index
 	 */
-	private void loadBodyRows(final SheetConfiguration sheetConfig, final Map<String, CellRangeAddress> cellRangeMap,
-			final List<String> skippedRegionCells) {
+	private void loadBodyRows(final SheetConfiguration sheetConfig, final MergedRegionIndex regionIndex) {
 
 		int top = sheetConfig.getBodyCellRange().getTopRow();
 		int bottom = CellUtility.getBodyBottomFromConfig(sheetConfig);
@@ -653,18 +715,29 @@ public class WebSheetLoader implements Serializable {
 		String sheetName = sheetConfig.getSheetName();
 		Sheet sheet1 = parent.getWb().getSheet(sheetName);
 
-		parent.getBodyRows().clear();
 		clearCache();
-
-		for (int i = top; i <= bottom; i++) {
-
-			parent.getBodyRows()
-					.add(assembleFacesBodyRow(i, sheet1, left, right, sheetConfig, cellRangeMap, skippedRegionCells));
-
-		}
-		sheetConfig.setBodyPopulated(true);
 		parent.getCurrent().setCurrentTopRow(top);
 		parent.getCurrent().setCurrentLeftColumn(left);
+		// rows are materialized when requested by data table.
+		parent.getBodyRows().reset(bottom - top + 1, regionIndex);
+		sheetConfig.setBodyPopulated(true);
+	}
+
+	/**
+	 * Assemble body row of current sheet.
+	 *
+	 * @param rowIndex
+	 *            the row index
+	 * @param regionIndex
+	 *            the merged region index
+	 * @return the faces row
+	 */
+	public final FacesRow assembleBodyRow(final int rowIndex, final MergedRegionIndex regionIndex) {
+		SheetConfiguration sheetConfig = parent.getCurrentSheetConfig();
+		Sheet sheet1 = parent.getWb().getSheet(sheetConfig.getSheetName());
+		int left = sheetConfig.getBodyCellRange().getLeftCol();
+		int right = sheetConfig.getBodyCellRange().getRightCol();
+		return assembleFacesBodyRow(rowIndex, sheet1, left, right, sheetConfig, regionIndex);
 	}
 
 	/**
@@ -680,24 +753,21 @@ public class WebSheetLoader implements Serializable {
 	 *            the right
 	 * @param sheetConfig
 	 *            the sheet config
-	 * @param cellRangeMap
-	 *            the cell range map
-	 * @param skippedRegionCells
-	 *            the skipped region cells
+	 * @param regionIndex
+	 *            the merged region index
 	 * @return the faces row
 	 */
 	private FacesRow assembleFacesBodyRow(final int rowIndex, final Sheet sheet1, final int left, final int right,
-			final SheetConfiguration sheetConfig, final Map<String, CellRangeAddress> cellRangeMap,
-			final List<String> skippedRegionCells) {
+			final SheetConfiguration sheetConfig, final MergedRegionIndex regionIndex) {
 
 		FacesRow facesRow = new FacesRow(rowIndex);
 		Row row = sheet1.getRow(rowIndex);
-		setupRowInfo(facesRow, sheet1, row, rowIndex, CommandUtility.isRowAllowAdd(row, sheetConfig));
-		String saveAttrList = SaveAttrsUtility.getSaveAttrListFromRow(row);
+		setupRowInfo(facesRow, sheet1, row, rowIndex,
+				CommandUtility.isRowAllowAdd(row, sheetConfig, parent.getRowMetaStore()));
+		String saveAttrList = parent.getRowMetaStore().getSaveAttrs(row);
 		List<FacesCell> bodycells = new ArrayList<>();
 		for (int cindex = left; cindex <= right; cindex++) {
-			String cellindex = CellUtility.getCellIndexNumberKey(cindex, rowIndex);
-			if (!skippedRegionCells.contains(cellindex) && !sheet1.isColumnHidden(cindex)) {
+			if (!regionIndex.isCovered(rowIndex, cindex) && !sheet1.isColumnHidden(cindex)) {
 				Cell cell = null;
 				if (row != null) {
 					cell = row.getCell(cindex, MissingCellPolicy.CREATE_NULL_AS_BLANK);
@@ -705,11 +775,11 @@ public class WebSheetLoader implements Serializable {
 				if (cell != null) {
 					FacesCell fcell = new FacesCell();
 
-					CellUtility.convertCell(sheetConfig, fcell, cell, cellRangeMap, facesRow.getOriginRowIndex(),
+					CellUtility.convertCell(sheetConfig, fcell, cell, regionIndex, facesRow.getOriginRowIndex(),
 							parent.getCellAttributesMap(), saveAttrList);
 					parent.getPicHelper().setupFacesCellPictureCharts(sheet1, fcell, cell,
 							WebSheetUtility.getFullCellRefName(sheet1, cell));
-					CellStyleUtility.setupCellStyle(parent.getWb(), fcell, cell, row.getHeightInPoints());
+					parent.getCellStyleCache().setupCellStyle(fcell, cell, row.getHeightInPoints());
 					fcell.setColumnIndex(cindex);
 					bodycells.add(fcell);
 					addCache(cell);
@@ -790,7 +860,10 @@ public class WebSheetLoader implements Serializable {
 			if (fcell.isHasSaveAttr()) {
 				parent.getCellHelper().saveDataInContext(cell, newValue);
 			}
-			RequestContext.getCurrentInstance().update(tblName + ":" + i + ":cocalc" + index);
+			PartialUpdateCollector collector = PartialUpdateCollector.getCurrentInstance();
+			if (collector != null) {
+				collector.add(tblName, tblName + ":" + i + ":cocalc" + index);
+			}
 			parent.getCachedCells().put(cell, CellType.FORMULA);
 		}
 	}
@@ -823,26 +896,55 @@ public class WebSheetLoader implements Serializable {
 	 *            the row index
 	 */
 	public final void addRepeatRow(final int rowIndex) {
+		addRepeatRows(Collections.singletonMap(rowIndex, 1));
+	}
+
+	/**
+	 * Adds repeat rows at several positions as one transaction. All positions
+	 * are validated before any add, so an invalid position adds nothing. Each
+	 * position shifts the sheet once, upper level formulas are rebuilt and
+	 * the changed formulas are recalculated once for all.
+	 *
+	 * @param rowCounts
+	 *            key is row index of the item, value is number of items to
+	 *            add after it.
+	 */
+	public final void addRepeatRows(final Map<Integer, Integer> rowCounts) {
 
 		try {
 			SheetConfiguration sheetConfig = parent.getSheetConfigMap().get(parent.getCurrent().getCurrentTabName());
 			Sheet sheet = parent.getWb().getSheet(sheetConfig.getSheetName());
 			ConfigBuildRef configBuildRef = new ConfigBuildRef(parent.getWbWrapper(), sheet, parent.getExpEngine(),
 					parent.getCellHelper(), sheetConfig.getCachedCells(), parent.getCellAttributesMap(),
-					sheetConfig.getFinalCommentMap());
+					sheetConfig.getFinalCommentMap(), parent.getRowMetaStore());
 			// set add mode
 			configBuildRef.setAddMode(true);
 			configBuildRef.setCollectionObjNameMap(sheetConfig.getCollectionObjNameMap());
 			configBuildRef.setCommandIndexMap(sheetConfig.getCommandIndexMap());
 			configBuildRef.setShiftMap(sheetConfig.getShiftMap());
 			configBuildRef.setWatchList(sheetConfig.getWatchList());
-			int length = CommandUtility.addRow(configBuildRef, rowIndex,
-					parent.getSerialDataContext().getDataContext());
-			refreshBodyRowsInRange(configBuildRef.getInsertPosition(), length, sheet, sheetConfig);
-			parent.getCellHelper().reCalc();
+			// from bottom to top, so the rows of positions above don't move.
+			TreeMap<Integer, Integer> positions = new TreeMap<>(Collections.<Integer>reverseOrder());
+			positions.putAll(rowCounts);
+			CommandUtility.validateAddRows(configBuildRef, positions.keySet());
+			Set<ShiftMapIndex.Node> upperLevels = new HashSet<>();
+			try {
+				for (Map.Entry<Integer, Integer> entry : positions.entrySet()) {
+					String fullName = parent.getRowMetaStore().getFullName(sheet.getRow(entry.getKey()));
+					int length = CommandUtility.addRows(configBuildRef, entry.getKey(), entry.getValue(),
+							parent.getSerialDataContext().getDataContext());
+					upperLevels.addAll(configBuildRef.getShiftMap().getAncestors(fullName));
+					refreshBodyRowsInRange(configBuildRef.getInsertPosition(), length, sheet, sheetConfig);
+				}
+			} finally {
+				ConfigurationUtility.reBuildUpperLevelFormula(configBuildRef, upperLevels);
+				parent.getCellHelper().reCalcChangedFormulas();
+			}
 		} catch (AddRowException e) {
-			FacesContext.getCurrentInstance().addMessage(null,
-					new FacesMessage(FacesMessage.SEVERITY_ERROR, "Add Row Error", e.getMessage()));
+			if (FacesContext.getCurrentInstance() != null) {
+				FacesContext.getCurrentInstance().addMessage(null,
+						new FacesMessage(FacesMessage.SEVERITY_ERROR, "Add Row Error", e.getMessage()));
+			}
 			LOG.log(Level.SEVERE, "Add row error = " + e.getLocalizedMessage(), e);
 
 		} catch (Exception ex) {
@@ -866,18 +968,18 @@ public class WebSheetLoader implements Serializable {
 	 */
 	private void refreshBodyRowsInRange(final int insertPosition, final int length, final Sheet sheet,
 			final SheetConfiguration sheetConfig) {
-		Map<String, CellRangeAddress> cellRangeMap = ConfigurationUtility.indexMergedRegion(sheet);
-		List<String> skippedRegionCells = ConfigurationUtility.skippedRegionCells(sheet);
 		int top = sheetConfig.getBodyCellRange().getTopRow();
 		int left = sheetConfig.getBodyCellRange().getLeftCol();
 		int right = sheetConfig.getBodyCellRange().getRightCol();
+		// shift existing regions and index only the inserted rows.
+		MergedRegionIndex regionIndex = parent.getBodyRows().getRegionIndex();
+		regionIndex.shiftRows(insertPosition, length);
+		regionIndex.addRegionsInRows(sheet, insertPosition, insertPosition + length - 1, parent.getRowMetaStore(),
+				parent.getBodyRows().getTemplateRegionIndex());
+		// body rows shift the row index of materialized rows after insert.
 		for (int irow = insertPosition; irow < (insertPosition + length); irow++) {
 			parent.getBodyRows().add(irow - top,
-					assembleFacesBodyRow(irow, sheet, left, right, sheetConfig, cellRangeMap, skippedRegionCells));
-		}
-		for (int irow = insertPosition + length - top; irow < parent.getBodyRows().size(); irow++) {
-			FacesRow facesrow = parent.getBodyRows().get(irow);
-			facesrow.setRowIndex(facesrow.getRowIndex() + length);
+					assembleFacesBodyRow(irow, sheet, left, right, sheetConfig, regionIndex));
 		}
 	}
 
@@ -888,23 +990,40 @@ public class WebSheetLoader implements Serializable {
 	 *            the row index
 	 */
 	public final void deleteRepeatRow(final int rowIndex) {
+		deleteRepeatRows(Collections.singletonList(rowIndex));
+	}
+
+	/**
+	 * Delete the items of several rows as one transaction. Upper level
+	 * formulas are rebuilt and the changed formulas are recalculated once for
+	 * all.
+	 *
+	 * @param rowIndexes
+	 *            the row indexes
+	 */
+	public final void deleteRepeatRows(final Collection<Integer> rowIndexes) {
 		try {
 			SheetConfiguration sheetConfig = parent.getSheetConfigMap().get(parent.getCurrent().getCurrentTabName());
 			Sheet sheet = parent.getWb().getSheet(sheetConfig.getSheetName());
 			ConfigBuildRef configBuildRef = new ConfigBuildRef(parent.getWbWrapper(), sheet, parent.getExpEngine(),
 					parent.getCellHelper(), sheetConfig.getCachedCells(), parent.getCellAttributesMap(),
-					sheetConfig.getFinalCommentMap());
+					sheetConfig.getFinalCommentMap(), parent.getRowMetaStore());
 			// set delete mode
 			configBuildRef.setCollectionObjNameMap(sheetConfig.getCollectionObjNameMap());
 			configBuildRef.setCommandIndexMap(sheetConfig.getCommandIndexMap());
 			configBuildRef.setShiftMap(sheetConfig.getShiftMap());
 			configBuildRef.setWatchList(sheetConfig.getWatchList());
-			CommandUtility.deleteRow(configBuildRef, rowIndex, parent.getSerialDataContext().getDataContext(),
-					sheetConfig, parent.getBodyRows());
-			parent.getCellHelper().reCalc();
+			try {
+				CommandUtility.deleteRows(configBuildRef, rowIndexes, parent.getSerialDataContext().getDataContext(),
+						sheetConfig, parent.getBodyRows());
+			} finally {
+				parent.getCellHelper().reCalcChangedFormulas();
+			}
 		} catch (DeleteRowException e) {
-			FacesContext.getCurrentInstance().addMessage(null,
-					new FacesMessage(FacesMessage.SEVERITY_ERROR, "Delete row error", e.getMessage()));
+			if (FacesContext.getCurrentInstance() != null) {
+				FacesContext.getCurrentInstance().addMessage(null,
+						new FacesMessage(FacesMessage.SEVERITY_ERROR, "Delete row error", e.getMessage()));
+			}
 			LOG.log(Level.SEVERE, "Delete row error = " + e.getLocalizedMessage(), e);
 
 		} catch (Exception ex) {
@@ -390,29 +390,26 @@ public final class CellControlsUtility {
 			rowIndex = poiCell.getRowIndex();
 		}
 
-		String skey = poiCell.getSheet().getSheetName() + "!" + CellUtility
-				.getCellIndexNumberKey(poiCell.getColumnIndex(), rowIndex);
-
-		Map<String, String> commentMap = cellAttributesMap
-				.getTemplateCommentMap().get("$$");
-		if (commentMap != null) {
-			String comment = commentMap.get(skey);
-			if (comment != null) {
-				CommandUtility.createCellComment(poiCell, comment,
-						sheetConfig.getFinalCommentMap());
-			}
+		CellAttributesMap.CellEntry entry = cellAttributesMap.getCellEntry(
+				poiCell.getSheet().getSheetName(), rowIndex,
+				poiCell.getColumnIndex());
+		if (entry == null) {
+			return;
+		}
+
+		String comment = entry.getNormalComment();
+		if (comment != null) {
+			CommandUtility.createCellComment(poiCell, comment,
+					sheetConfig.getFinalCommentMap());
 		}
 
-		String widgetType = cellAttributesMap.getCellInputType().get(skey);
+		String widgetType = entry.getInputType();
 		if (widgetType != null) {
 			fcell.setControl(widgetType.toLowerCase());
 
-			fcell.setInputAttrs(
-					cellAttributesMap.getCellInputAttributes().get(skey));
-			fcell.setSelectItemAttrs(cellAttributesMap
-					.getCellSelectItemsAttributes().get(skey));
-			fcell.setDatePattern(
-					cellAttributesMap.getCellDatePattern().get(skey));
+			fcell.setInputAttrs(entry.getInputAttributes());
+			fcell.setSelectItemAttrs(entry.getSelectItemsAttributes());
+			fcell.setDatePattern(entry.getDatePattern());
 		}
 
 	}
@@ -437,5 +434,28 @@ public final class CellControlsUtility {
 		
 		return validateMaps.get(key);
 	}
+
+	/**
+	 * Find cell validate attributes by packed cell key.
+	 *
+	 * @param cellAttributesMap
+	 *            the cell attributes map.
+	 * @param originRowIndex
+	 *            original Row Index from facesRow.
+	 * @param cell
+	 *            cell.
+	 * @return list.
+	 */
+	public static List<CellFormAttributes> findCellValidateAttributes(
+			final CellAttributesMap cellAttributesMap,
+			final int originRowIndex, final Cell cell) {
+		CellAttributesMap.CellEntry entry = cellAttributesMap.getCellEntry(
+				cell.getSheet().getSheetName(), originRowIndex,
+				cell.getColumnIndex());
+		if (entry == null) {
+			return null;
+		}
+		return entry.getValidateAttributes();
+	}
 	
 }
@@ -0,0 +1,343 @@
+/*
+ * Copyright 2017 TieFaces.
+ * Licensed under MIT
+ */
+
+package org.tiefaces.components.websheet.utility;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.CellType;
+import org.apache.poi.ss.usermodel.Font;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.tiefaces.common.TieConstants;
+import org.tiefaces.components.websheet.dataobjects.FacesCell;
+
+/**
+ * Workbook level cache of css and format metadata derived from cell styles.
+ * A workbook normally has only a few dozen styles, so font lookup, color
+ * conversion and format parsing are done once per style index. Composed
+ * style strings are cached per style with the row and cell factors they
+ * depend on, and shared by all faces cells with the same combination.
+ *
+ * @author Jason Jiang
+ *
+ */
+public class CellStyleCache {
+
+	/** factor flag: input type is empty. */
+	private static final int FLAG_NO_INPUT = 1;
+
+	/** factor flag: numeric or formula cell. */
+	private static final int FLAG_NUMERIC = 2;
+
+	/** factor flag: rowspan is 1. */
+	private static final int FLAG_SINGLE_ROW = 4;
+
+	/** factor flag: cell contains picture or chart. */
+	private static final int FLAG_PIC = 8;
+
+	/** bits used by factor flags. */
+	private static final int FLAG_BITS = 4;
+
+	/** the workbook. */
+	private final Workbook wb;
+
+	/** style entries keyed by style index. */
+	private final Map<Short, StyleEntry> entryMap = new HashMap<>();
+
+	/**
+	 * Metadata derived from one cell style.
+	 */
+	private static final class StyleEntry {
+
+		/** locked. */
+		private final boolean locked;
+
+		/** date format. */
+		private final boolean date;
+
+		/** percentage format. */
+		private final boolean percentage;
+
+		/** font height in points. */
+		private final short fontHeight;
+
+		/** font css. */
+		private final String fontStyle;
+
+		/** background color css. */
+		private final String bgColor;
+
+		/** horizontal alignment css for text cell. */
+		private final String textAlignment;
+
+		/** horizontal alignment css for numeric cell. */
+		private final String numericAlignment;
+
+		/** vertical alignment css. */
+		private final String verticalAlignment;
+
+		/** decimal places. */
+		private final short decimalPlaces;
+
+		/** currency symbol. */
+		private final String symbol;
+
+		/** currency symbol position. */
+		private final String symbolPosition;
+
+		/** composed style and column style keyed by factors. */
+		private final Map<Long, String[]> composedMap = new HashMap<>();
+
+		/**
+		 * Instantiates a new style entry.
+		 *
+		 * @param wb
+		 *            the wb
+		 * @param poiCell
+		 *            the first cell seen with the style
+		 * @param cellStyle
+		 *            the cell style
+		 */
+		StyleEntry(final Workbook wb, final Cell poiCell,
+				final CellStyle cellStyle) {
+			Font font = wb.getFontAt(cellStyle.getFontIndex());
+			this.locked = cellStyle.getLocked();
+			this.date = CellStyleUtility.isADateStyle(cellStyle);
+			this.percentage = CellStyleUtility
+					.isAPercentageCell(cellStyle.getDataFormatString());
+			this.fontHeight = font.getFontHeightInPoints();
+			this.fontStyle = CellStyleUtility.getFontStyle(font);
+			this.bgColor = ColorUtility.getBgColorFromCell(wb, poiCell,
+					cellStyle);
+			this.textAlignment = CellStyleUtility
+					.getAlignmentFromStyle(cellStyle, false);
+			this.numericAlignment = CellStyleUtility
+					.getAlignmentFromStyle(cellStyle, true);
+			this.verticalAlignment = CellStyleUtility
+					.getVerticalAlignmentFromCell(cellStyle);
+			this.decimalPlaces = CellStyleUtility
+					.getDecimalPlacesFromFormat(cellStyle);
+			this.symbol = CellStyleUtility.getSymbolFromFormat(cellStyle);
+			this.symbolPosition = CellStyleUtility
+					.getSymbolPositionFromFormat(cellStyle);
+		}
+	}
+
+	/**
+	 * Instantiates a new cell style cache.
+	 *
+	 * @param pwb
+	 *            the workbook
+	 */
+	public CellStyleCache(final Workbook pwb) {
+		super();
+		this.wb = pwb;
+	}
+
+	/**
+	 * Gets the workbook.
+	 *
+	 * @return the workbook
+	 */
+	public final Workbook getWb() {
+		return wb;
+	}
+
+	/**
+	 * Number of cached styles.
+	 *
+	 * @return the size
+	 */
+	public final int size() {
+		return entryMap.size();
+	}
+
+	/**
+	 * Gets the entry of cell style. Create it if not exist.
+	 *
+	 * @param poiCell
+	 *            the poi cell
+	 * @param cellStyle
+	 *            the cell style
+	 * @return the entry
+	 */
+	private StyleEntry getEntry(final Cell poiCell,
+			final CellStyle cellStyle) {
+		StyleEntry entry = entryMap.get(cellStyle.getIndex());
+		if (entry == null) {
+			entry = new StyleEntry(wb, poiCell, cellStyle);
+			entryMap.put(cellStyle.getIndex(), entry);
+		}
+		return entry;
+	}
+
+	/**
+	 * Setup cell style. Same result as CellStyleUtility.setupCellStyle, but
+	 * using the cached style metadata.
+	 *
+	 * @param fcell
+	 *            the fcell
+	 * @param poiCell
+	 *            the poi cell
+	 * @param rowHeight
+	 *            the row height
+	 */
+	public final void setupCellStyle(final FacesCell fcell,
+			final Cell poiCell, final float rowHeight) {
+		CellStyle cellStyle = poiCell.getCellStyle();
+		if (cellStyle == null) {
+			CellStyleUtility.setupCellStyle(wb, fcell, poiCell, rowHeight);
+			return;
+		}
+		StyleEntry entry = getEntry(poiCell, cellStyle);
+		if (!entry.locked) {
+			if (fcell.getInputType().isEmpty()) {
+				fcell.setInputType(getInputType(entry, poiCell));
+			}
+			if (fcell.getControl().isEmpty()
+					&& (!fcell.getInputType().isEmpty())) {
+				fcell.setControl("text");
+			}
+			setInputStyle(entry, fcell);
+		}
+		int flags = 0;
+		if (fcell.getInputType().isEmpty()) {
+			flags |= FLAG_NO_INPUT;
+		}
+		if (CellStyleUtility.isNumericAligned(poiCell)) {
+			flags |= FLAG_NUMERIC;
+		}
+		if (fcell.getRowspan() == 1) {
+			flags |= FLAG_SINGLE_ROW;
+		}
+		if (fcell.isContainPic() || fcell.isContainChart()) {
+			flags |= FLAG_PIC;
+		}
+		long key = ((Float.floatToIntBits(rowHeight) & 0xffffffffL) << FLAG_BITS)
+				| flags;
+		String[] styles = entry.composedMap.get(key);
+		if (styles == null) {
+			styles = composeStyles(entry, flags, rowHeight);
+			entry.composedMap.put(key, styles);
+		}
+		fcell.setStyle(styles[0]);
+		fcell.setColumnStyle(styles[1]);
+	}
+
+	/**
+	 * Gets the header style. i.e. background and font style of the cell.
+	 *
+	 * @param poiCell
+	 *            the poi cell
+	 * @return the header style
+	 */
+	public final String getHeaderStyle(final Cell poiCell) {
+		CellStyle cellStyle = poiCell.getCellStyle();
+		if (cellStyle == null) {
+			return "";
+		}
+		StyleEntry entry = getEntry(poiCell, cellStyle);
+		return entry.bgColor + entry.fontStyle;
+	}
+
+	/**
+	 * Compose style and column style for the factors.
+	 *
+	 * @param entry
+	 *            the entry
+	 * @param flags
+	 *            the factor flags
+	 * @param rowHeight
+	 *            the row height
+	 * @return style and column style
+	 */
+	private static String[] composeStyles(final StyleEntry entry,
+			final int flags, final float rowHeight) {
+		boolean noInput = (flags & FLAG_NO_INPUT) != 0;
+		String alignment = entry.textAlignment;
+		if ((flags & FLAG_NUMERIC) != 0) {
+			alignment = entry.numericAlignment;
+		}
+		String rowStyle = "";
+		if ((flags & FLAG_SINGLE_ROW) != 0) {
+			float maxHeight = rowHeight;
+			if (!noInput) {
+				maxHeight = Math.min(entry.fontHeight + 8f, rowHeight);
+			}
+			rowStyle = "height:" + WebSheetUtility.pointsToPixels(maxHeight)
+					+ "px;";
+		}
+		StringBuilder webStyle = new StringBuilder();
+		if (!noInput) {
+			webStyle.append(alignment).append(entry.verticalAlignment);
+		}
+		webStyle.append(entry.bgColor).append(entry.fontStyle)
+				.append(rowStyle);
+		StringBuilder columnStyle = new StringBuilder();
+		if ((flags & FLAG_PIC) != 0) {
+			columnStyle.append("vertical-align: top;");
+		} else {
+			columnStyle.append(alignment).append(entry.verticalAlignment);
+		}
+		columnStyle.append(entry.bgColor).append(rowStyle);
+		return new String[] { webStyle.toString(), columnStyle.toString() };
+	}
+
+	/**
+	 * Gets the input type from cell type and style format.
+	 *
+	 * @param entry
+	 *            the entry
+	 * @param poiCell
+	 *            the poi cell
+	 * @return the input type
+	 */
+	private static String getInputType(final StyleEntry entry,
+			final Cell poiCell) {
+		if (entry.date) {
+			return TieConstants.CELL_INPUT_TYPE_DATE;
+		}
+		if (entry.percentage) {
+			return TieConstants.CELL_INPUT_TYPE_PERCENTAGE;
+		}
+		if (poiCell.getCellTypeEnum() == CellType.NUMERIC) {
+			return TieConstants.CELL_INPUT_TYPE_DOUBLE;
+		}
+		return TieConstants.CELL_INPUT_TYPE_TEXT;
+	}
+
+	/**
+	 * Sets the input number parameters base on input type.
+	 *
+	 * @param entry
+	 *            the entry
+	 * @param fcell
+	 *            the fcell
+	 */
+	private static void setInputStyle(final StyleEntry entry,
+			final FacesCell fcell) {
+		switch (fcell.getInputType()) {
+		case TieConstants.CELL_INPUT_TYPE_PERCENTAGE:
+			fcell.setSymbol("%");
+			fcell.setSymbolPosition("p");
+			fcell.setDecimalPlaces(entry.decimalPlaces);
+			break;
+		case TieConstants.CELL_INPUT_TYPE_INTEGER:
+			fcell.setDecimalPlaces((short) 0);
+			break;
+		case TieConstants.CELL_INPUT_TYPE_DOUBLE:
+			fcell.setDecimalPlaces(entry.decimalPlaces);
+			fcell.setSymbol(entry.symbol);
+			fcell.setSymbolPosition(entry.symbolPosition);
+			break;
+		default:
+			break;
+		}
+	}
+
+}
@@ -82,27 +82,35 @@ public final class CellStyleUtility {
 			final Cell poiCell) {
 
 		CellStyle cellStyle = poiCell.getCellStyle();
-		StringBuilder webStyle = new StringBuilder();
 		if (cellStyle != null) {
-			short fontIdx = cellStyle.getFontIndex();
-			Font font = wb.getFontAt(fontIdx);
-			if (font.getItalic()) {
-				webStyle.append("font-style: italic;");
-			}
-			if (font.getBold()) {
-				webStyle.append("font-weight: bold;");
-			}
-			webStyle.append(
-					"font-size: " + font.getFontHeightInPoints() + "pt;");
-			String decoration = getCellFontDecoration(font);
-			if (decoration.length() > 0) {
-				webStyle.append("text-decoration:" + decoration + ";");
-			}
-			webStyle.append(getCellFontColor(font));
+			return getFontStyle(wb.getFontAt(cellStyle.getFontIndex()));
+		}
+		return "";
+
+	}
 
+	/**
+	 * Gets the font style.
+	 *
+	 * @param font
+	 *            the font
+	 * @return the font style
+	 */
+	static String getFontStyle(final Font font) {
+		StringBuilder webStyle = new StringBuilder();
+		if (font.getItalic()) {
+			webStyle.append("font-style: italic;");
+		}
+		if (font.getBold()) {
+			webStyle.append("font-weight: bold;");
 		}
+		webStyle.append("font-size: " + font.getFontHeightInPoints() + "pt;");
+		String decoration = getCellFontDecoration(font);
+		if (decoration.length() > 0) {
+			webStyle.append("text-decoration:" + decoration + ";");
+		}
+		webStyle.append(getCellFontColor(font));
 		return webStyle.toString();
-
 	}
 
 	/**
@@ -206,7 +214,7 @@ public final class CellStyleUtility {
 			webStyle.append(getRowStyle(wb, poiCell, inputType, rowHeight,
 					fcell.getRowspan()));
 		} else {
-			webStyle.append(getAlignmentFromCellType(poiCell));
+			webStyle.append(getAlignmentFromCellType(isNumericAligned(poiCell)));
 		}
 		return webStyle.toString();
 
@@ -223,6 +231,21 @@ public final class CellStyleUtility {
 	 */
 	private static String getAlignmentFromCell(final Cell poiCell,
 			final CellStyle cellStyle) {
+		return getAlignmentFromStyle(cellStyle, isNumericAligned(poiCell));
+	}
+
+	/**
+	 * Gets the alignment from cell style.
+	 *
+	 * @param cellStyle
+	 *            the cell style
+	 * @param numeric
+	 *            whether the cell is numeric or formula. used for general
+	 *            alignment.
+	 * @return the alignment
+	 */
+	static String getAlignmentFromStyle(final CellStyle cellStyle,
+			final boolean numeric) {
 
 		String style = "";
 		switch (cellStyle.getAlignmentEnum()) {
@@ -236,7 +259,7 @@ public final class CellStyleUtility {
 			style = TieConstants.TEXT_ALIGN_CENTER;
 			break;
 		case GENERAL:
-			style = getAlignmentFromCellType(poiCell);
+			style = getAlignmentFromCellType(numeric);
 			break;
 		default:
 			break;
@@ -252,7 +275,7 @@ public final class CellStyleUtility {
 	 *
 	 * @return the vertical alignment from cell
 	 */
-	private static String getVerticalAlignmentFromCell(
+	static String getVerticalAlignmentFromCell(
 			final CellStyle cellStyle) {
 
 		String style = "";
@@ -381,8 +404,8 @@ public final class CellStyleUtility {
 		case TieConstants.CELL_INPUT_TYPE_PERCENTAGE:
 			fcell.setSymbol("%");
 			fcell.setSymbolPosition("p");
-			fcell.setDecimalPlaces(
-					CellStyleUtility.getDecimalPlacesFromFormat(poiCell));
+			fcell.setDecimalPlaces(CellStyleUtility
+					.getDecimalPlacesFromFormat(poiCell.getCellStyle()));
 			break;
 
 		case TieConstants.CELL_INPUT_TYPE_INTEGER:
@@ -390,11 +413,12 @@ public final class CellStyleUtility {
 			break;
 
 		case TieConstants.CELL_INPUT_TYPE_DOUBLE:
-			fcell.setDecimalPlaces(
-					CellStyleUtility.getDecimalPlacesFromFormat(poiCell));
-			fcell.setSymbol(CellStyleUtility.getSymbolFromFormat(poiCell));
-			fcell.setSymbolPosition(
-					CellStyleUtility.getSymbolPositionFromFormat(poiCell));
+			fcell.setDecimalPlaces(CellStyleUtility
+					.getDecimalPlacesFromFormat(poiCell.getCellStyle()));
+			fcell.setSymbol(CellStyleUtility
+					.getSymbolFromFormat(poiCell.getCellStyle()));
+			fcell.setSymbolPosition(CellStyleUtility
+					.getSymbolPositionFromFormat(poiCell.getCellStyle()));
 			break;
 		default:
 			break;
@@ -405,21 +429,29 @@ public final class CellStyleUtility {
 	/**
 	 * Gets the alignment from cell type.
 	 *
-	 * @param poiCell
-	 *            the poi cell
+	 * @param numeric
+	 *            whether the cell is numeric or formula
 	 * @return the alignment from cell type
 	 */
-	@SuppressWarnings("deprecation")
-	private static String getAlignmentFromCellType(final Cell poiCell) {
-
-		switch (poiCell.getCellTypeEnum()) {
-		case FORMULA:
-		case NUMERIC:
+	private static String getAlignmentFromCellType(final boolean numeric) {
+		if (numeric) {
 			return "text-align: right;";
-		default:
-			return "";
 		}
+		return "";
+	}
 
+	/**
+	 * Checks if the cell is right aligned by general alignment. i.e. numeric
+	 * or formula cell.
+	 *
+	 * @param poiCell
+	 *            the poi cell
+	 * @return true, if numeric or formula
+	 */
+	static boolean isNumericAligned(final Cell poiCell) {
+		CellType cellType = poiCell.getCellTypeEnum();
+		return (cellType == CellType.FORMULA)
+				|| (cellType == CellType.NUMERIC);
 	}
 
 	/**
@@ -438,12 +470,10 @@ public final class CellStyleUtility {
 		}
 		CellStyle style = cell.getCellStyle();
 		if (style != null) {
-			int formatIndex = style.getDataFormat();
-			String formatString = style.getDataFormatString();
-			if (DateUtil.isADateFormat(formatIndex, formatString)) {
+			if (isADateStyle(style)) {
 				inputType = TieConstants.CELL_INPUT_TYPE_DATE;
 			} else {
-				if (isAPercentageCell(formatString)) {
+				if (isAPercentageCell(style.getDataFormatString())) {
 					inputType = TieConstants.CELL_INPUT_TYPE_PERCENTAGE;
 				}
 			}
@@ -451,15 +481,26 @@ public final class CellStyleUtility {
 		return inputType;
 	}
 
+	/**
+	 * Checks if the style is date formatted.
+	 *
+	 * @param style
+	 *            the style
+	 * @return true, if date formatted
+	 */
+	static boolean isADateStyle(final CellStyle style) {
+		return DateUtil.isADateFormat(style.getDataFormat(),
+				style.getDataFormatString());
+	}
+
 	/**
 	 * get decimal places from format string e.g. 0.00 will return 2
 	 *
-	 * @param cell
-	 *            the cell
+	 * @param style
+	 *            the cell style
 	 * @return decimal places of the formatted string
 	 */
-	private static short getDecimalPlacesFromFormat(final Cell cell) {
-		CellStyle style = cell.getCellStyle();
+	static short getDecimalPlacesFromFormat(final CellStyle style) {
 		if (style == null) {
 			return 0;
 		}
@@ -486,12 +527,11 @@ public final class CellStyleUtility {
 	 * get symbol from format string e.g. [$CAD] #,##0.00 will return CAD. While
 	 * $#,##0.00 will return $
 	 *
-	 * @param cell
-	 *            the cell
+	 * @param style
+	 *            the cell style
 	 * @return symbol of the formatted string
 	 */
-	private static String getSymbolFromFormat(final Cell cell) {
-		CellStyle style = cell.getCellStyle();
+	static String getSymbolFromFormat(final CellStyle style) {
 		if (style == null) {
 			return null;
 		}
@@ -507,21 +547,23 @@ public final class CellStyleUtility {
 			// only $ found, then return default dollar symbol
 			return "$";
 		}
+		int iend = formatString.indexOf(']', ipos);
+		if (iend < 0) {
+			return "$";
+		}
 		// return specified dollar symbol
-		return formatString.substring(ipos + 2,
-				formatString.indexOf(']', ipos));
+		return formatString.substring(ipos + 2, iend);
 	}
 
 	/**
 	 * get symbol position from format string e.g. [$CAD] #,##0.00 will return
 	 * p. While #,##0.00 $ will return s
 	 *
-	 * @param cell
-	 *            the cell
+	 * @param style
+	 *            the cell style
 	 * @return symbol position of the formatted string
 	 */
-	private static String getSymbolPositionFromFormat(final Cell cell) {
-		CellStyle style = cell.getCellStyle();
+	static String getSymbolPositionFromFormat(final CellStyle style) {
 		if (style == null) {
 			return "p";
 		}
@@ -548,7 +590,7 @@ public final class CellStyleUtility {
 	 *            the format string
 	 * @return true if it's percentage formatted
 	 */
-	private static boolean isAPercentageCell(final String formatString) {
+	static boolean isAPercentageCell(final String formatString) {
 
 		if (formatString == null) {
 			return false;
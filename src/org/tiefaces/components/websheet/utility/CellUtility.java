@@ -10,6 +10,7 @@ import java.math.BigDecimal;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.WeakHashMap;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -31,6 +32,7 @@ import org.apache.poi.ss.usermodel.Row;
 import org.apache.poi.ss.usermodel.Sheet;
 import org.apache.poi.ss.usermodel.Workbook;
 import org.apache.poi.ss.util.CellRangeAddress;
+import org.apache.poi.xssf.usermodel.XSSFCell;
 import org.apache.poi.xssf.usermodel.XSSFComment;
 import org.apache.poi.xssf.usermodel.XSSFSheet;
 import org.apache.poi.xssf.usermodel.XSSFVMLDrawing;
@@ -40,10 +42,14 @@ import org.tiefaces.components.websheet.configuration.SheetConfiguration;
 import org.tiefaces.components.websheet.dataobjects.CellAttributesMap;
 import org.tiefaces.components.websheet.dataobjects.FacesCell;
 import org.tiefaces.components.websheet.dataobjects.FacesRow;
+import org.tiefaces.components.websheet.dataobjects.MergedRegionIndex;
+import org.tiefaces.components.websheet.dataobjects.RowMetaStore;
 import org.tiefaces.components.websheet.dataobjects.TieCell;
 
 import com.microsoft.schemas.office.excel.CTClientData;
 import com.microsoft.schemas.vml.CTShape;
+import org.openxmlformats.schemas.spreadsheetml.x2006.main.CTCell;
+import org.openxmlformats.schemas.spreadsheetml.x2006.main.CTCellFormula;
 
 /**
  * Helper class for web sheet cells.
@@ -56,6 +62,12 @@ public final class CellUtility {
 	/** logger. */
 	static final Logger LOG = Logger.getLogger(CellUtility.class.getName());
 
+	/**
+	 * cloned style index keyed by target workbook, then source workbook and
+	 * source style index.
+	 */
+	private static final Map<Workbook, Map<Workbook, Map<Short, Short>>> STYLE_POOL = new WeakHashMap<>();
+
 	/**
 	 * Instantiates a new cell helper.
 	 */
@@ -288,20 +300,104 @@ public final class CellUtility {
 	 *            the dest row
 	 * @param checkLock
 	 *            the check lock
-	 * @param setHiddenColumn
-	 *            the set hidden column
+	 * @param rowMetaStore
+	 *            the row meta store. origin row number and metadata of
+	 *            source rows are set to the copies. null to skip.
 	 */
 	public static void copyRows(final Sheet srcSheet, final Sheet destSheet, final int srcRowStart, final int srcRowEnd,
-			final int destRow, final boolean checkLock, final boolean setHiddenColumn) {
+			final int destRow, final boolean checkLock, final RowMetaStore rowMetaStore) {
+		if (srcRowEnd < srcRowStart) {
+			return;
+		}
+		copyRowsRepeatedly(srcSheet, destSheet, srcRowStart, srcRowEnd, destRow, 1, checkLock, rowMetaStore);
+		copyMergedRegions(srcSheet, destSheet, srcRowStart, srcRowEnd, destRow);
+	}
+
+	/**
+	 * Copy rows several times one after another. Rows below dest row are
+	 * shifted only once for all copies. Merged regions are not copied, as
+	 * later row shifts drop regions in the shifted area. Caller should copy
+	 * them with copyMergedRegions when the copy is in its final position.
+	 *
+	 * @param srcSheet
+	 *            the src sheet
+	 * @param destSheet
+	 *            the dest sheet
+	 * @param srcRowStart
+	 *            the src row start
+	 * @param srcRowEnd
+	 *            the src row end
+	 * @param destRow
+	 *            the dest row
+	 * @param copies
+	 *            the number of copies
+	 * @param checkLock
+	 *            the check lock
+	 * @param rowMetaStore
+	 *            the row meta store. origin row number and metadata of
+	 *            source rows are set to the copies. null to skip.
+	 */
+	public static void copyRowsRepeatedly(final Sheet srcSheet, final Sheet destSheet, final int srcRowStart,
+			final int srcRowEnd, final int destRow, final int copies, final boolean checkLock,
+			final RowMetaStore rowMetaStore) {
 
 		int length = srcRowEnd - srcRowStart + 1;
-		if (length <= 0) {
+		if ((length <= 0) || (copies <= 0)) {
 			return;
 		}
-		destSheet.shiftRows(destRow, destSheet.getLastRowNum(), length, true, false);
-		for (int i = 0; i < length; i++) {
-			copySingleRow(srcSheet, destSheet, srcRowStart + i, destRow + i, checkLock, setHiddenColumn);
+		if (rowMetaStore != null) {
+			rowMetaStore.removeOverwrittenRows(destSheet, destRow, destSheet.getLastRowNum(), length * copies);
 		}
+		destSheet.shiftRows(destRow, destSheet.getLastRowNum(), length * copies, true, false);
+		for (int copy = 0; copy < copies; copy++) {
+			for (int i = 0; i < length; i++) {
+				copySingleRow(srcSheet, destSheet, srcRowStart + i, destRow + copy * length + i, checkLock,
+						rowMetaStore);
+			}
+		}
+	}
+
+	/**
+	 * Set formula which is known to be valid, e.g. copied from another
+	 * formula cell or rendered from parsed tokens. setCellFormula of xssf
+	 * cell parses the formula again only to validate it, which is skipped
+	 * here.
+	 *
+	 * @param cell
+	 *            the cell
+	 * @param formula
+	 *            the formula
+	 */
+	public static void setCellFormulaWithoutParse(final Cell cell, final String formula) {
+		if (!(cell instanceof XSSFCell) || cell.isPartOfArrayFormulaGroup()) {
+			cell.setCellFormula(formula);
+			return;
+		}
+		CTCell ctCell = ((XSSFCell) cell).getCTCell();
+		CTCellFormula ctFormula = CTCellFormula.Factory.newInstance();
+		ctFormula.setStringValue(formula);
+		ctCell.setF(ctFormula);
+		if (ctCell.isSetV()) {
+			ctCell.unsetV();
+		}
+	}
+
+	/**
+	 * Copy merged regions within source rows to dest row.
+	 *
+	 * @param srcSheet
+	 *            the src sheet
+	 * @param destSheet
+	 *            the dest sheet
+	 * @param srcRowStart
+	 *            the src row start
+	 * @param srcRowEnd
+	 *            the src row end
+	 * @param destRow
+	 *            the dest row
+	 */
+	public static void copyMergedRegions(final Sheet srcSheet, final Sheet destSheet, final int srcRowStart,
+			final int srcRowEnd, final int destRow) {
 		// If there are are any merged regions in the source row, copy to new
 		// row
 		for (int i = 0; i < srcSheet.getNumMergedRegions(); i++) {
@@ -330,11 +426,12 @@ public final class CellUtility {
 	 *            the destination row num
 	 * @param checkLock
 	 *            the check lock
-	 * @param setHiddenColumn
-	 *            the set hidden column
+	 * @param rowMetaStore
+	 *            the row meta store. origin row number and metadata of
+	 *            source rows are set to the copies. null to skip.
 	 */
 	private static void copySingleRow(final Sheet srcSheet, final Sheet destSheet, final int sourceRowNum,
-			final int destinationRowNum, final boolean checkLock, final boolean setHiddenColumn) {
+			final int destinationRowNum, final boolean checkLock, final RowMetaStore rowMetaStore) {
 		// Get the source / new row
 		Row newRow = destSheet.getRow(destinationRowNum);
 		Row sourceRow = srcSheet.getRow(sourceRowNum);
@@ -348,8 +445,9 @@ public final class CellUtility {
 			// Grab a copy of the old/new cell
 			copyCell(destSheet, sourceRow, newRow, i, checkLock);
 		}
-		if (setHiddenColumn) {
-			ConfigurationUtility.setOriginalRowNumInHiddenColumn(newRow, sourceRow.getRowNum());
+		if (rowMetaStore != null) {
+			rowMetaStore.copy(sourceRow, newRow);
+			rowMetaStore.setOriginRowNum(newRow, sourceRow.getRowNum());
 		}
 		return;
 
@@ -460,7 +558,7 @@ public final class CellUtility {
 			@Override
 			public void setCellValue(final Cell newCell, final Cell sourceCell, final boolean checkLock,
 					final CellStyle newCellStyle) {
-				newCell.setCellFormula(sourceCell.getCellFormula());
+				setCellFormulaWithoutParse(newCell, sourceCell.getCellFormula());
 			}
 		},
 
@@ -535,29 +633,85 @@ public final class CellUtility {
 
 	private static void cloneComment(final Cell sourceCell, final Cell newCell) {
 
-		XSSFSheet sheet = (XSSFSheet) newCell.getSheet();
+		XSSFComment sourceComment = (XSSFComment) sourceCell.getCellComment();
+		createCellComment(newCell, sourceComment.getString().toString(), sourceComment.getAuthor());
+		// As POI doesn't has well support for comments,
+		// So we have to use low level api to match the comments.
+		matchCommentSettings(newCell, sourceCell);
+	}
+
+	/**
+	 * create cell comment with text and author.
+	 * 
+	 * @param cell
+	 *            cell.
+	 * @param text
+	 *            comment text.
+	 * @param author
+	 *            comment author.
+	 * @return comment.
+	 */
+	public static Comment createCellComment(final Cell cell, final String text, final String author) {
+		XSSFSheet sheet = (XSSFSheet) cell.getSheet();
 		CreationHelper factory = sheet.getWorkbook().getCreationHelper();
 		Drawing drawing = sheet.createDrawingPatriarch();
-		XSSFComment sourceComment = (XSSFComment) sourceCell.getCellComment();
 		// Below code are from POI busy manual.
 		// When the comment box is visible, have it show in a 1x3 space
 		ClientAnchor anchor = factory.createClientAnchor();
-		anchor.setCol1(newCell.getColumnIndex());
-		anchor.setCol2(newCell.getColumnIndex() + 1);
-		anchor.setRow1(newCell.getRowIndex());
-		anchor.setRow2(newCell.getRowIndex() + 3);
+		anchor.setCol1(cell.getColumnIndex());
+		anchor.setCol2(cell.getColumnIndex() + 1);
+		anchor.setRow1(cell.getRowIndex());
+		anchor.setRow2(cell.getRowIndex() + 3);
 		// Create the comment and set the text+author
 		Comment comment = drawing.createCellComment(anchor);
-		RichTextString str = factory.createRichTextString(sourceComment.getString().toString());
+		RichTextString str = factory.createRichTextString(text);
 		comment.setString(str);
-		comment.setAuthor(sourceComment.getAuthor());
+		comment.setAuthor(author);
 		// Assign the comment to the cell
-		newCell.setCellComment(comment);
-		comment.setColumn(newCell.getColumnIndex());
-		comment.setRow(newCell.getRowIndex());
-		// As POI doesn't has well support for comments,
-		// So we have to use low level api to match the comments.
-		matchCommentSettings(newCell, sourceCell);
+		cell.setCellComment(comment);
+		comment.setColumn(cell.getColumnIndex());
+		comment.setRow(cell.getRowIndex());
+		return comment;
+	}
+
+	/**
+	 * Gets the vml shape type and anchor of cell comment.
+	 * 
+	 * @param cell
+	 *            cell.
+	 * @return array of shape type and anchor. null if not found.
+	 */
+	public static String[] getCommentShapeSettings(final Cell cell) {
+		try {
+			XSSFVMLDrawing vml = getVmlDrawingFromCell(cell);
+			CTShape ctShape = getCtShapeFromVml(cell, vml);
+			if (ctShape == null) {
+				return null;
+			}
+			return new String[] { ctShape.getType(), ctShape.getClientDataArray(0).getAnchorList().get(0) };
+		} catch (Exception e) {
+			LOG.log(Level.FINE, "getCommentShapeSettings error = " + e.getLocalizedMessage(), e);
+			return null;
+		}
+	}
+
+	/**
+	 * Sets the vml shape type and anchor of cell comment.
+	 * 
+	 * @param cell
+	 *            cell.
+	 * @param settings
+	 *            array of shape type and anchor.
+	 */
+	public static void setCommentShapeSettings(final Cell cell, final String[] settings) {
+		try {
+			XSSFVMLDrawing vml = getVmlDrawingFromCell(cell);
+			CTShape ctShape = getCtShapeFromVml(cell, vml);
+			ctShape.setType(settings[0]);
+			ctShape.getClientDataArray(0).getAnchorList().set(0, settings[1]);
+		} catch (Exception e) {
+			LOG.log(Level.SEVERE, "setCommentShapeSettings error = " + e.getLocalizedMessage(), e);
+		}
 	}
 
 	/**
@@ -634,7 +788,10 @@ public final class CellUtility {
 	}
 
 	/**
-	 * create cell style from source cell.
+	 * get cell style for new cell from source cell. Styles are shared instead
+	 * of created per cell, so the styles table does not grow with copied rows.
+	 * Within the same workbook the source style is reused. Across workbooks
+	 * each source style is cloned once and the clone reused.
 	 * 
 	 * @param destSheet
 	 *            dest sheet.
@@ -644,10 +801,32 @@ public final class CellUtility {
 	 */
 	private static CellStyle getCellStyleFromSourceCell(final Sheet destSheet, final Cell sourceCell) {
 		Workbook wb = destSheet.getWorkbook();
-		// Copy style from old cell and apply to new cell
-		CellStyle newCellStyle = wb.createCellStyle();
-		newCellStyle.cloneStyleFrom(sourceCell.getCellStyle());
-		return newCellStyle;
+		CellStyle sourceStyle = sourceCell.getCellStyle();
+		Workbook srcWb = sourceCell.getSheet().getWorkbook();
+		if ((sourceStyle == null) || (srcWb == wb)) {
+			return sourceStyle;
+		}
+		synchronized (STYLE_POOL) {
+			Map<Workbook, Map<Short, Short>> srcMap = STYLE_POOL.get(wb);
+			if (srcMap == null) {
+				srcMap = new WeakHashMap<>();
+				STYLE_POOL.put(wb, srcMap);
+			}
+			Map<Short, Short> indexMap = srcMap.get(srcWb);
+			if (indexMap == null) {
+				indexMap = new HashMap<>();
+				srcMap.put(srcWb, indexMap);
+			}
+			Short targetIndex = indexMap.get(sourceStyle.getIndex());
+			if (targetIndex != null) {
+				return wb.getCellStyleAt(targetIndex);
+			}
+			// Copy style from old cell and apply to new cell
+			CellStyle newCellStyle = wb.createCellStyle();
+			newCellStyle.cloneStyleFrom(sourceStyle);
+			indexMap.put(sourceStyle.getIndex(), newCellStyle.getIndex());
+			return newCellStyle;
+		}
 	}
 
 	/**
@@ -716,8 +895,8 @@ public final class CellUtility {
 	 *            the fcell
 	 * @param poiCell
 	 *            the poi cell
-	 * @param cellRangeMap
-	 *            the cell range map
+	 * @param regionIndex
+	 *            the merged region index
 	 * @param originRowIndex
 	 *            the origin row index
 	 * @param cellAttributesMap
@@ -727,11 +906,9 @@ public final class CellUtility {
 	 */
 	// set up facesCell's attribute from poiCell and others.
 	public static void convertCell(final SheetConfiguration sheetConfig, final FacesCell fcell, final Cell poiCell,
-			final Map<String, CellRangeAddress> cellRangeMap, final int originRowIndex,
+			final MergedRegionIndex regionIndex, final int originRowIndex,
 			final CellAttributesMap cellAttributesMap, final String saveAttrs) {
-		CellRangeAddress caddress;
-		String key = getCellIndexNumberKey(poiCell);
-		caddress = cellRangeMap.get(key);
+		CellRangeAddress caddress = regionIndex.getRegion(poiCell.getRowIndex(), poiCell.getColumnIndex());
 		if (caddress != null) {
 			// has col or row span
 			fcell.setColspan(caddress.getLastColumn() - caddress.getFirstColumn() + 1);
@@ -8,21 +8,22 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.NavigableMap;
+import java.util.Set;
 import java.util.TreeMap;
 import java.util.logging.Level;
 import java.util.logging.Logger;
-import java.util.regex.Matcher;
 
 import org.apache.poi.ss.usermodel.Cell;
 import org.apache.poi.ss.usermodel.CellType;
 import org.apache.poi.ss.usermodel.Row;
 import org.apache.poi.ss.usermodel.Sheet;
-import org.apache.poi.ss.usermodel.Workbook;
 import org.tiefaces.common.TieConstants;
 import org.tiefaces.components.websheet.configuration.Command;
+import org.tiefaces.components.websheet.configuration.CellExpressionTemplate;
 import org.tiefaces.components.websheet.configuration.ConfigBuildRef;
 import org.tiefaces.components.websheet.configuration.ConfigRange;
 import org.tiefaces.components.websheet.configuration.ConfigRangeAttrs;
@@ -30,8 +31,11 @@ import org.tiefaces.components.websheet.configuration.EachCommand;
 import org.tiefaces.components.websheet.configuration.ExpressionEngine;
 import org.tiefaces.components.websheet.configuration.RowsMapping;
 import org.tiefaces.components.websheet.configuration.SheetConfiguration;
+import org.tiefaces.components.websheet.configuration.ShiftMapIndex;
 import org.tiefaces.components.websheet.dataobjects.CollectionObject;
-import org.tiefaces.components.websheet.dataobjects.FacesRow;
+import org.tiefaces.components.websheet.dataobjects.DeletedRows;
+import org.tiefaces.components.websheet.dataobjects.LazyBodyRows;
+import org.tiefaces.components.websheet.dataobjects.RowMetaStore;
 import org.tiefaces.components.websheet.dataobjects.TieCell;
 import org.tiefaces.exception.AddRowException;
 import org.tiefaces.exception.DeleteRowException;
@@ -64,17 +68,75 @@ public final class CommandUtility {
 	 *            the data context
 	 * @return the int
 	 */
-	@SuppressWarnings({ "rawtypes" })
 	public static int addRow(final ConfigBuildRef configBuildRef,
 			final int rowIndex, final Map<String, Object> dataContext) {
+		String fullName = configBuildRef.getRowMetaStore().getFullName(
+				configBuildRef.getSheet().getRow(rowIndex));
+		int length = addRows(configBuildRef, rowIndex, 1, dataContext);
+		ConfigurationUtility.reBuildUpperLevelFormula(configBuildRef,
+				fullName);
+		return length;
+	}
+
+	/**
+	 * Validate rows before add. Each row must belong to an item of an each
+	 * command, so a batch of adds is rejected before any of them is done.
+	 *
+	 * @param configBuildRef
+	 *            the config build ref
+	 * @param rowIndexes
+	 *            the row indexes
+	 * @throws AddRowException
+	 *             if any row cannot be added after
+	 */
+	public static void validateAddRows(final ConfigBuildRef configBuildRef,
+			final Collection<Integer> rowIndexes) {
+		for (Integer rowIndex : rowIndexes) {
+			String fullName = configBuildRef.getRowMetaStore()
+					.getFullName(configBuildRef.getSheet().getRow(rowIndex));
+			ShiftMapIndex.Node node = configBuildRef.getShiftMap()
+					.getNode(fullName);
+			if ((node == null) || (node.getAttrs() == null)) {
+				throw new AddRowException("Cannot find add range.");
+			}
+			configBuildRef.getCellHelper().restoreDataContext(fullName);
+			if (configBuildRef.getCellHelper().getLastCollect(fullName)
+					.getLastCollectionIndex() < 0) {
+				// no each command in the loop.
+				throw new AddRowException("No each command found.");
+			}
+		}
+	}
+
+	/**
+	 * Adds several items after the item of the row. Template rows without
+	 * nested command are copied for all items at once, so the rows below only
+	 * shift one time. Upper
+	 * level formulas are not rebuilt, call reBuildUpperLevelFormula after all
+	 * the adds.
+	 *
+	 * @param configBuildRef
+	 *            the config build ref
+	 * @param rowIndex
+	 *            the row index
+	 * @param count
+	 *            the number of items to add
+	 * @param dataContext
+	 *            the data context
+	 * @return the length of added rows
+	 */
+	@SuppressWarnings({ "rawtypes" })
+	public static int addRows(final ConfigBuildRef configBuildRef,
+			final int rowIndex, final int count,
+			final Map<String, Object> dataContext) {
 
 		// replace the lastCollection.
-		// since here's add one row.
-		// Then we should insert one empty object in the list.
+		// since here's add rows.
+		// Then we should insert empty objects in the list.
 		// The collection must be a list to support add/delete function.
 		// and the object must support empty constructor.
 
-		String fullName = ConfigurationUtility.getFullNameFromRow(
+		String fullName = configBuildRef.getRowMetaStore().getFullName(
 				configBuildRef.getSheet().getRow(rowIndex));
 		String[] parts = fullName.split(":");
 		configBuildRef.getCellHelper().restoreDataContext(fullName);
@@ -88,49 +150,75 @@ public final class CommandUtility {
 			// no each command in the loop.
 			throw new AddRowException("No each command found.");
 		}
-		String unitFullName = CommandUtility.insertEmptyObjectInContext(
-				fullName, lastCollection, eachCommand, lastCollectionIndex,
-				dataContext);
-		RowsMapping unitRowsMapping = new RowsMapping();
+		if (count < 1) {
+			return 0;
+		}
+		List insertObjs = CommandUtility.insertEmptyObjectsInContext(
+				lastCollection, lastCollectionIndex, count);
 		ConfigRangeAttrs savedRangeAttrs = configBuildRef.getShiftMap()
 				.get(fullName);
 		int insertPosition = savedRangeAttrs.getFirstRowRef().getRowIndex()
 				+ savedRangeAttrs.getFinalLength();
 		configBuildRef.setInsertPosition(insertPosition);
-		CommandUtility.insertEachTemplate(eachCommand.getConfigRange(),
-				configBuildRef, lastCollectionIndex + 1, insertPosition,
-				unitRowsMapping);
-		ConfigRange currentRange = ConfigurationUtility.buildCurrentRange(
-				eachCommand.getConfigRange(), configBuildRef.getSheet(),
-				insertPosition);
+		ConfigRange sourceConfigRange = eachCommand.getConfigRange();
+		boolean preCopy = isEachTemplatePreCopyable(sourceConfigRange);
+		if (preCopy) {
+			CommandUtility.copyEachTemplate(sourceConfigRange, configBuildRef,
+					insertPosition, count);
+		}
 		List<RowsMapping> currentRowsMappingList = ConfigurationUtility
 				.findParentRowsMappingFromShiftMap(parts,
 						configBuildRef.getShiftMap());
-		currentRowsMappingList.add(unitRowsMapping);
-		currentRange.getAttrs().setAllowAdd(true);
-		configBuildRef.setBodyAllowAdd(true);
-		// reverse order of changeMap.
-		Map<String, String> changeMap = new TreeMap<>(
-				Collections.reverseOrder());
-		ConfigurationUtility.changeIndexNumberInHiddenColumn(configBuildRef,
-				currentRange.getAttrs().getLastRowPlusRef().getRowIndex(),
-				fullName, changeMap, 1);
-		ConfigurationUtility.changeIndexNumberInShiftMap(
-				configBuildRef.getShiftMap(), changeMap);
-		configBuildRef.putShiftAttrs(unitFullName, currentRange.getAttrs(),
-				unitRowsMapping);
-		int length = currentRange.buildAt(unitFullName, configBuildRef,
-				insertPosition, dataContext, currentRowsMappingList);
-		currentRange.getAttrs().setFinalLength(length);
+		String unitNamePrefix = fullName.substring(0,
+				fullName.lastIndexOf('.') + 1);
+		int atRow = insertPosition;
+		for (int i = 0; i < count; i++) {
+			dataContext.put(eachCommand.getVar(), insertObjs.get(i));
+			RowsMapping unitRowsMapping = new RowsMapping();
+			if (!preCopy) {
+				CommandUtility.copyEachTemplate(sourceConfigRange,
+						configBuildRef, atRow, 1);
+			}
+			CommandUtility.copyEachTemplateMergedRegions(sourceConfigRange,
+					configBuildRef, atRow);
+			CommandUtility.mapEachTemplateRows(sourceConfigRange,
+					configBuildRef, atRow, unitRowsMapping);
+			ConfigRange currentRange = ConfigurationUtility
+					.buildCurrentRange(sourceConfigRange,
+							configBuildRef.getSheet(), atRow);
+			currentRowsMappingList.add(unitRowsMapping);
+			currentRange.getAttrs().setAllowAdd(true);
+			configBuildRef.setBodyAllowAdd(true);
+			String unitFullName = unitNamePrefix
+					+ (lastCollectionIndex + 1 + i);
+			// insert shifts the index of following items and their rows.
+			configBuildRef.insertShiftAttrs(unitFullName,
+					currentRange.getAttrs(), unitRowsMapping);
+			int length = currentRange.buildAt(unitFullName, configBuildRef,
+					atRow, dataContext, currentRowsMappingList);
+			currentRange.getAttrs().setFinalLength(length);
+			if (preCopy && (i < count - 1)) {
+				moveLastRowPlusRef(currentRange, configBuildRef.getSheet(),
+						insertPosition + count * length);
+			}
+			atRow += length;
+			currentRowsMappingList.remove(unitRowsMapping);
+		}
 
-		ConfigurationUtility.reBuildUpperLevelFormula(configBuildRef,
-				fullName);
 		ConfigurationUtility.changeUpperLevelFinalLength(
-				configBuildRef.getShiftMap(), fullName, length);
-		currentRowsMappingList.remove(unitRowsMapping);
+				configBuildRef.getShiftMap(), fullName,
+				atRow - insertPosition);
+		configBuildRef.getCellHelper().shiftDependencyRows(
+				configBuildRef.getSheet(), insertPosition,
+				atRow - insertPosition);
+		configBuildRef.getCellHelper().shiftChartRows(
+				configBuildRef.getSheet(), insertPosition,
+				atRow - insertPosition);
+		configBuildRef.getCellHelper().addDependencyRows(
+				configBuildRef.getSheet(), insertPosition, atRow - 1);
 		dataContext.remove(eachCommand.getVar());
 
-		return length;
+		return atRow - insertPosition;
 
 	}
 
@@ -151,14 +239,168 @@ public final class CommandUtility {
 	 * @throws DeleteRowException
 	 *             the delete row exception
 	 */
-	@SuppressWarnings({ "rawtypes" })
 	public static int deleteRow(final ConfigBuildRef configBuildRef,
 			final int rowIndex, final Map<String, Object> dataContext,
 			final SheetConfiguration sheetConfig,
-			final List<FacesRow> bodyRows) {
+			final LazyBodyRows bodyRows) {
+		return deleteRows(configBuildRef,
+				Collections.singletonList(rowIndex), dataContext,
+				sheetConfig, bodyRows);
+	}
 
-		String fullName = ConfigurationUtility.getFullNameFromRow(
-				configBuildRef.getSheet().getRow(rowIndex));
+	/**
+	 * Delete the items of several rows. All the items are checked before any
+	 * remove, so either all of them are deleted or none. Items are removed
+	 * from bottom to top, so the items above keep their rows and names.
+	 * Upper level formulas are rebuilt once after all the removes.
+	 *
+	 * @param configBuildRef
+	 *            the config build ref
+	 * @param rowIndexes
+	 *            the row indexes. rows of same item are deleted once.
+	 * @param dataContext
+	 *            the data context
+	 * @param sheetConfig
+	 *            the sheet config
+	 * @param bodyRows
+	 *            the body rows
+	 * @return the length of deleted rows
+	 * @throws DeleteRowException
+	 *             the delete row exception
+	 */
+	public static int deleteRows(final ConfigBuildRef configBuildRef,
+			final Collection<Integer> rowIndexes,
+			final Map<String, Object> dataContext,
+			final SheetConfiguration sheetConfig,
+			final LazyBodyRows bodyRows) {
+
+		ShiftMapIndex shiftMap = configBuildRef.getShiftMap();
+		// find items from shiftmap. rows of same item give the same node.
+		Set<ShiftMapIndex.Node> selected = new HashSet<>();
+		for (Integer rowIndex : rowIndexes) {
+			ShiftMapIndex.Node node = shiftMap
+					.getNode(configBuildRef.getRowMetaStore().getFullName(
+							configBuildRef.getSheet().getRow(rowIndex)));
+			if ((node == null) || (node.getAttrs() == null)) {
+				throw new DeleteRowException("Cannot find delete range.");
+			}
+			selected.add(node);
+		}
+		// descendants go with selected ancestor. ordered by first row from
+		// bottom.
+		TreeMap<Integer, ShiftMapIndex.Node> items = new TreeMap<>(
+				Collections.reverseOrder());
+		for (ShiftMapIndex.Node node : selected) {
+			if (!hasSelectedAncestor(node, selected)) {
+				items.put(node.getAttrs().getFirstRowIndex(), node);
+			}
+		}
+		validateDeleteItems(configBuildRef, items.values());
+
+		Set<ShiftMapIndex.Node> upperLevels = new HashSet<>();
+		DeletedRows deletedRows = new DeletedRows();
+		int totalLength = 0;
+		try {
+			for (ShiftMapIndex.Node node : items.values()) {
+				totalLength += deleteItem(configBuildRef, node, dataContext,
+						upperLevels, deletedRows);
+			}
+		} finally {
+			removeDeletedRows(configBuildRef, deletedRows, sheetConfig,
+					bodyRows);
+			ConfigurationUtility.reBuildUpperLevelFormula(configBuildRef,
+					upperLevels);
+		}
+		return totalLength;
+
+	}
+
+	/**
+	 * Checks whether any ancestor of the node is selected.
+	 *
+	 * @param node
+	 *            the node
+	 * @param selected
+	 *            the selected nodes
+	 * @return true, if an ancestor is selected
+	 */
+	private static boolean hasSelectedAncestor(final ShiftMapIndex.Node node,
+			final Set<ShiftMapIndex.Node> selected) {
+		ShiftMapIndex.Node current = node.getParent();
+		while (current != null) {
+			if (selected.contains(current)) {
+				return true;
+			}
+			current = current.getParent();
+		}
+		return false;
+	}
+
+	/**
+	 * Validate items before delete. Each item must be in an each command,
+	 * and every collection must keep at least one record after all the
+	 * removes from it.
+	 *
+	 * @param configBuildRef
+	 *            the config build ref
+	 * @param nodes
+	 *            the shift map nodes of items
+	 * @throws DeleteRowException
+	 *             if any item cannot be deleted
+	 */
+	@SuppressWarnings({ "rawtypes" })
+	private static void validateDeleteItems(
+			final ConfigBuildRef configBuildRef,
+			final Collection<ShiftMapIndex.Node> nodes) {
+		// collections are compared by identity, count removes of each.
+		Map<Collection, Integer> removes = new IdentityHashMap<>();
+		for (ShiftMapIndex.Node node : nodes) {
+			String fullName = node.getFullName();
+			configBuildRef.getCellHelper().restoreDataContext(fullName);
+			CollectionObject collect = configBuildRef.getCellHelper()
+					.getLastCollect(fullName);
+			if (collect.getLastCollectionIndex() < 0) {
+				// no each command in the loop.
+				throw new DeleteRowException("No each command found.");
+			}
+			Collection lastCollection = collect.getLastCollection();
+			Integer count = removes.get(lastCollection);
+			count = (count == null) ? 1 : (count + 1);
+			if (lastCollection.size() - count < 1) {
+				// this is the last record and no parent left.
+				throw new DeleteRowException(
+						"Cannot delete the last record in the group.");
+			}
+			removes.put(lastCollection, count);
+		}
+	}
+
+	/**
+	 * Delete one item from data context and shift map. Its rows are only
+	 * added to deleted rows, the sheet is changed once for all items by
+	 * removeDeletedRows. Items must be deleted from the bottom, so the rows
+	 * of items above don't move.
+	 *
+	 * @param configBuildRef
+	 *            the config build ref
+	 * @param node
+	 *            the shift map node of item
+	 * @param dataContext
+	 *            the data context
+	 * @param upperLevels
+	 *            upper level nodes of the item are added in.
+	 * @param deletedRows
+	 *            rows of the item are added in.
+	 * @return the length of deleted rows
+	 */
+	@SuppressWarnings({ "rawtypes" })
+	private static int deleteItem(final ConfigBuildRef configBuildRef,
+			final ShiftMapIndex.Node node,
+			final Map<String, Object> dataContext,
+			final Set<ShiftMapIndex.Node> upperLevels,
+			final DeletedRows deletedRows) {
+
+		String fullName = node.getFullName();
 
 		configBuildRef.getCellHelper().restoreDataContext(fullName);
 		CollectionObject collect = configBuildRef.getCellHelper()
@@ -180,93 +422,66 @@ public final class CommandUtility {
 		CommandUtility.deleteObjectInContext(lastCollection, eachCommand,
 				lastCollectionIndex, dataContext);
 
-		// find range from shiftmap.
-		ConfigRangeAttrs currentRangeAttrs = configBuildRef.getShiftMap()
-				.get(fullName);
-		if (currentRangeAttrs == null) {
-			throw new DeleteRowException("Cannot find delete range.");
-
-		}
-
+		ConfigRangeAttrs currentRangeAttrs = node.getAttrs();
 		// The lastRowRef is wrong in rangeAttrs. So use length to recalc it.
 		int startRow = currentRangeAttrs.getFirstRowIndex();
 		int length = currentRangeAttrs.getFinalLength();
 		int endRow = startRow + length - 1;
 
-		List<String> removeFullNameList = findRemoveFullNameList(
-				configBuildRef.getSheet(), startRow, endRow);
-		// remove range from shiftmap.
-		removeRangesFromShiftMap(configBuildRef.getShiftMap(),
-				removeFullNameList);
-		// 1. remove ranged rows from sheet
-		String var = eachCommand.getVar();
-		CommandUtility.removeRowsInSheet(configBuildRef.getSheet(),
-				startRow, endRow, configBuildRef.getCachedCells());
-		// 2. reset FacesRow row index.
-		CommandUtility.removeRowsInBody(sheetConfig, bodyRows, startRow,
-				endRow);
-		// 3. decrease index number in hidden column
-		Map<String, String> changeMap = new TreeMap<>();
-		ConfigurationUtility.changeIndexNumberInHiddenColumn(configBuildRef,
-				startRow, fullName, changeMap, -1);
-		// 4. decrease index number in shift map
-		ConfigurationUtility.changeIndexNumberInShiftMap(
-				configBuildRef.getShiftMap(), changeMap);
-		// 5. rebuild upper level formula
-		ConfigurationUtility.reBuildUpperLevelFormula(configBuildRef,
-				fullName);
-		// 6. decrease upper level final length
-		ConfigurationUtility.changeUpperLevelFinalLength(
-				configBuildRef.getShiftMap(), fullName, -length);
+		List<ShiftMapIndex.Node> ancestors = configBuildRef.getShiftMap()
+				.getAncestors(fullName);
+		upperLevels.addAll(ancestors);
+		// remove range with its children from shiftmap.
+		// following items are renumbered.
+		configBuildRef.getShiftMap().remove(fullName);
+		// rows are removed from sheet after all items.
+		deletedRows.add(startRow, endRow);
+		// decrease upper level final length
+		for (ShiftMapIndex.Node upper : ancestors) {
+			upper.getAttrs().setFinalLength(
+					upper.getAttrs().getFinalLength() - length);
+		}
 
-		dataContext.remove(var);
+		dataContext.remove(eachCommand.getVar());
 
 		return length;
 
 	}
 
 	/**
-	 * Removes the ranges from shift map.
+	 * Remove the deleted rows from sheet, dependency graph, charts and body
+	 * rows. Poi rewrites the formulas reading the moved rows on each shift,
+	 * so the sheet is shifted once per range from the bottom, with adjacent
+	 * ranges joined. All the other structures are moved once.
 	 *
-	 * @param shiftMap
-	 *            the shift map
-	 * @param removeFullNameList
-	 *            the remove full name list
+	 * @param configBuildRef
+	 *            the config build ref
+	 * @param deletedRows
+	 *            the deleted rows
+	 * @param sheetConfig
+	 *            the sheet config
+	 * @param bodyRows
+	 *            the body rows
 	 */
-	private static void removeRangesFromShiftMap(
-			final NavigableMap<String, ConfigRangeAttrs> shiftMap,
-			final List<String> removeFullNameList) {
-		for (String fname : removeFullNameList) {
-			shiftMap.remove(fname);
+	private static void removeDeletedRows(
+			final ConfigBuildRef configBuildRef,
+			final DeletedRows deletedRows,
+			final SheetConfiguration sheetConfig,
+			final LazyBodyRows bodyRows) {
+		if (deletedRows.isEmpty()) {
+			return;
 		}
-
-	}
-
-	/**
-	 * Find remove full name list.
-	 *
-	 * @param sheet
-	 *            the sheet
-	 * @param startRow
-	 *            the start row
-	 * @param endRow
-	 *            the end row
-	 * @return the list
-	 */
-	private static List<String> findRemoveFullNameList(final Sheet sheet,
-			final int startRow, final int endRow) {
-
-		List<String> list = new ArrayList<>();
-
-		for (int rowIndex = startRow; rowIndex <= endRow; rowIndex++) {
-			String fullName = ConfigurationUtility
-					.getFullNameFromRow(sheet.getRow(rowIndex));
-			if (!list.contains(fullName)) {
-				list.add(fullName);
-			}
+		Sheet sheet = configBuildRef.getSheet();
+		for (Map.Entry<Integer, Integer> range : deletedRows
+				.getRangesFromBottom().entrySet()) {
+			removeRowsInSheet(sheet, range.getKey(), range.getValue(),
+					configBuildRef.getCachedCells(),
+					configBuildRef.getRowMetaStore());
 		}
-
-		return list;
+		configBuildRef.getCellHelper().removeDependencyRows(sheet,
+				deletedRows);
+		configBuildRef.getCellHelper().removeChartRows(sheet, deletedRows);
+		removeRowsInBody(sheetConfig, bodyRows, deletedRows);
 	}
 
 	/**
@@ -291,27 +506,22 @@ public final class CommandUtility {
 	}
 
 	/**
-	 * Insert empty object in context.
+	 * Insert empty objects in context after the current object.
 	 *
-	 * @param fullName
-	 *            the full name
 	 * @param lastCollection
 	 *            the last collection
-	 * @param eachCommand
-	 *            the each command
 	 * @param lastCollectionIndex
 	 *            the last collection index
-	 * @param dataContext
-	 *            the data context
-	 * @return the string
+	 * @param count
+	 *            the number of objects
+	 * @return the inserted objects
 	 * @throws EvaluationException
 	 *             the evaluation exception
 	 */
 	@SuppressWarnings({ "rawtypes", "unchecked" })
-	private static String insertEmptyObjectInContext(final String fullName,
-			final Collection lastCollection, final EachCommand eachCommand,
-			final int lastCollectionIndex,
-			final Map<String, Object> dataContext) {
+	private static List insertEmptyObjectsInContext(
+			final Collection lastCollection, final int lastCollectionIndex,
+			final int count) {
 		if (!(lastCollection instanceof List)) {
 			throw new EvaluationException(
 					"Collection must be list in order to insert/delete.");
@@ -319,17 +529,16 @@ public final class CommandUtility {
 		List collectionList = (List) lastCollection;
 		// the object must support empty constructor.
 		Object currentObj = collectionList.get(lastCollectionIndex);
-		Object insertObj;
+		List insertObjs = new ArrayList(count);
 		try {
-			insertObj = currentObj.getClass().newInstance();
-			collectionList.add(lastCollectionIndex + 1, insertObj);
-			dataContext.put(eachCommand.getVar(), insertObj);
-			return fullName.substring(0, fullName.lastIndexOf('.') + 1)
-					+ (lastCollectionIndex + 1);
+			for (int i = 0; i < count; i++) {
+				insertObjs.add(currentObj.getClass().newInstance());
+			}
 		} catch (InstantiationException | IllegalAccessException e) {
 			throw new EvaluationException(e);
-
 		}
+		collectionList.addAll(lastCollectionIndex + 1, insertObjs);
+		return insertObjs;
 
 	}
 
@@ -418,11 +627,14 @@ public final class CommandUtility {
 	 *            the row
 	 * @param sheetConfig
 	 *            the sheet config
+	 * @param rowMetaStore
+	 *            the row meta store
 	 * @return true, if is row allow add
 	 */
 	public static boolean isRowAllowAdd(final Row row,
-			final SheetConfiguration sheetConfig) {
-		String fullName = ConfigurationUtility.getFullNameFromRow(row);
+			final SheetConfiguration sheetConfig,
+			final RowMetaStore rowMetaStore) {
+		String fullName = rowMetaStore.getFullName(row);
 		if (fullName != null) {
 			ConfigRangeAttrs attrs = sheetConfig.getShiftMap()
 					.get(fullName);
@@ -435,28 +647,96 @@ public final class CommandUtility {
 	}
 
 	/**
-	 * Insert each template.
+	 * Checks whether each template rows can be copied for all items before
+	 * they are built. Only if the template has no nested command, otherwise
+	 * every nested expansion would shift all the copies below it.
+	 *
+	 * @param sourceConfigRange
+	 *            the source config range
+	 * @return true, if pre-copyable
+	 */
+	public static boolean isEachTemplatePreCopyable(
+			final ConfigRange sourceConfigRange) {
+		return sourceConfigRange.getCommandList().isEmpty();
+	}
+
+	/**
+	 * Move last row plus ref of an item built on pre-copied rows to the row
+	 * below all copies, where it would be if the items were inserted one by
+	 * one. The ref was set to the first row of next copy, blank cell created
+	 * there for it is removed before next item is built.
+	 *
+	 * @param currentRange
+	 *            the range of built item
+	 * @param sheet
+	 *            the sheet
+	 * @param rowBelowCopies
+	 *            the row below all copies
+	 */
+	public static void moveLastRowPlusRef(final ConfigRange currentRange,
+			final Sheet sheet, final int rowBelowCopies) {
+		Cell cell = currentRange.getLastRowPlusRef();
+		if ((cell != null) && currentRange.isLastCellCreated()) {
+			cell.getRow().removeCell(cell);
+		}
+		currentRange.setLastRowPlusRef(sheet,
+				currentRange.getLastRowPlusAddr().getColumn(),
+				rowBelowCopies - 1, false);
+	}
+
+	/**
+	 * Copy each template rows for several items at insert position. The rows
+	 * below are shifted once for all copies. Merged regions of each copy are
+	 * added by copyEachTemplateMergedRegions when the item is built.
 	 *
 	 * @param sourceConfigRange
 	 *            the source config range
 	 * @param configBuildRef
 	 *            the config build ref
-	 * @param index
-	 *            the index
 	 * @param insertPosition
 	 *            the insert position
-	 * @param unitRowsMapping
-	 *            the unit rows mapping
+	 * @param copies
+	 *            the number of copies
 	 */
-	public static void insertEachTemplate(
-			final ConfigRange sourceConfigRange,
-			final ConfigBuildRef configBuildRef, final int index,
-			final int insertPosition, final RowsMapping unitRowsMapping) {
+	public static void copyEachTemplate(final ConfigRange sourceConfigRange,
+			final ConfigBuildRef configBuildRef, final int insertPosition,
+			final int copies) {
 		int srcStartRow = sourceConfigRange.getFirstRowAddr().getRow();
 		int srcEndRow = sourceConfigRange.getLastRowPlusAddr().getRow() - 1;
+		Sheet sheet = configBuildRef.getSheet();
+		CellUtility.copyRowsRepeatedly(getTemplateCopySheet(sheet), sheet,
+				srcStartRow, srcEndRow, insertPosition, copies, false,
+				configBuildRef.getRowMetaStore());
+	}
 
+	/**
+	 * Copy merged regions of each template at insert position.
+	 *
+	 * @param sourceConfigRange
+	 *            the source config range
+	 * @param configBuildRef
+	 *            the config build ref
+	 * @param insertPosition
+	 *            the insert position
+	 */
+	public static void copyEachTemplateMergedRegions(
+			final ConfigRange sourceConfigRange,
+			final ConfigBuildRef configBuildRef, final int insertPosition) {
+		int srcStartRow = sourceConfigRange.getFirstRowAddr().getRow();
+		int srcEndRow = sourceConfigRange.getLastRowPlusAddr().getRow() - 1;
 		Sheet sheet = configBuildRef.getSheet();
-		Workbook wb = sheet.getWorkbook();
+		CellUtility.copyMergedRegions(getTemplateCopySheet(sheet), sheet,
+				srcStartRow, srcEndRow, insertPosition);
+	}
+
+	/**
+	 * Gets the template copy sheet of the sheet.
+	 *
+	 * @param sheet
+	 *            the sheet
+	 * @return the template copy sheet
+	 */
+	public static Sheet getTemplateCopySheet(final Sheet sheet) {
 		// excel sheet name has limit 31 chars
 		String copyName = TieConstants.COPY_SHEET_PREFIX
 				+ sheet.getSheetName();
@@ -464,12 +744,29 @@ public final class CommandUtility {
 			copyName = copyName.substring(0,
 					TieConstants.EXCEL_SHEET_NAME_LIMIT);
 		}
-		Sheet srcSheet = wb.getSheet(copyName);
-		if (index > 0) {
-			CellUtility.copyRows(srcSheet, sheet, srcStartRow, srcEndRow,
-					insertPosition, false, true);
-		}
+		return sheet.getWorkbook().getSheet(copyName);
+	}
 
+	/**
+	 * Add static rows of each template at insert position into unit rows
+	 * mapping.
+	 *
+	 * @param sourceConfigRange
+	 *            the source config range
+	 * @param configBuildRef
+	 *            the config build ref
+	 * @param insertPosition
+	 *            the insert position
+	 * @param unitRowsMapping
+	 *            the unit rows mapping
+	 */
+	public static void mapEachTemplateRows(
+			final ConfigRange sourceConfigRange,
+			final ConfigBuildRef configBuildRef, final int insertPosition,
+			final RowsMapping unitRowsMapping) {
+		int srcStartRow = sourceConfigRange.getFirstRowAddr().getRow();
+		int srcEndRow = sourceConfigRange.getLastRowPlusAddr().getRow() - 1;
+		Sheet sheet = configBuildRef.getSheet();
 		for (int rowIndex = srcStartRow; rowIndex <= srcEndRow; rowIndex++) {
 			if (configBuildRef.getWatchList().contains(rowIndex)
 					&& (ConfigurationUtility.isStaticRow(sourceConfigRange,
@@ -481,7 +778,7 @@ public final class CommandUtility {
 	}
 
 	/**
-	 * Evaluate.
+	 * Evaluate. No row metadata, so tie cells are not created.
 	 *
 	 * @param context
 	 *            the context
@@ -498,7 +795,33 @@ public final class CommandUtility {
 			if (isUserFormula(strValue)) {
 				evaluateUserFormula(cell, strValue);
 			} else {
-				evaluateNormalCells(cell, strValue, context, engine);
+				evaluateNormalCells(cell, strValue, context, engine, null);
+			}
+		}
+	}
+
+	/**
+	 * Evaluate cell using compiled templates of the config build ref.
+	 *
+	 * @param context
+	 *            the context
+	 * @param cell
+	 *            the cell
+	 * @param configBuildRef
+	 *            the config build ref
+	 */
+	@SuppressWarnings("deprecation")
+	public static void evaluate(final Map<String, Object> context,
+			final Cell cell, final ConfigBuildRef configBuildRef) {
+		if ((cell != null) && (cell.getCellTypeEnum() == CellType.STRING)) {
+			String strValue = cell.getStringCellValue();
+			if (isUserFormula(strValue)) {
+				evaluateUserFormula(cell, strValue);
+			} else if (strValue.contains(TieConstants.METHOD_PREFIX)) {
+				evaluateNormalCells(cell,
+						configBuildRef.getExpressionTemplate(strValue),
+						context, configBuildRef.getEngine(),
+						configBuildRef.getRowMetaStore());
 			}
 		}
 	}
@@ -514,36 +837,59 @@ public final class CommandUtility {
 	 *            context.
 	 * @param engine
 	 *            engine.
+	 * @param rowMetaStore
+	 *            row meta store.
 	 */
 	public static void evaluateNormalCells(final Cell cell,
 			final String strValue, final Map<String, Object> context,
-			final ExpressionEngine engine) {
+			final ExpressionEngine engine, final RowMetaStore rowMetaStore) {
 		if (strValue.contains(TieConstants.METHOD_PREFIX)) {
+			evaluateNormalCells(cell,
+					CellExpressionTemplate.compile(strValue, engine),
+					context, engine, rowMetaStore);
+		}
+	}
 
-			Object evaluationResult = evaluate(strValue, context, engine);
-			if (evaluationResult == null) {
-				evaluationResult = "";
-			}
-			CellUtility.setCellValue(cell, evaluationResult.toString());
-
-			createTieCell(cell, context, engine);
-
+	/**
+	 * Evaluate normal cells with compiled template.
+	 *
+	 * @param cell
+	 *            cell.
+	 * @param template
+	 *            compiled cell text.
+	 * @param context
+	 *            context.
+	 * @param engine
+	 *            engine.
+	 * @param rowMetaStore
+	 *            row meta store. null if no tie cells needed.
+	 */
+	private static void evaluateNormalCells(final Cell cell,
+			final CellExpressionTemplate template,
+			final Map<String, Object> context,
+			final ExpressionEngine engine, final RowMetaStore rowMetaStore) {
+		Object evaluationResult = template.evaluate(context, engine);
+		if (evaluationResult == null) {
+			evaluationResult = "";
 		}
+		CellUtility.setCellValue(cell, evaluationResult.toString());
+
+		createTieCell(cell, context, engine, rowMetaStore);
 	}
 
 	private static void createTieCell(final Cell cell, final Map<String, Object> context,
-	    final ExpressionEngine engine) {
+	    final ExpressionEngine engine, final RowMetaStore rowMetaStore) {
 
         	@SuppressWarnings("unchecked")
         	HashMap<String, TieCell> tieCells = (HashMap<String, TieCell>) context.get("tiecells");
         
         	// if tiecells exists is because tieWebSheetBean.isAdvancedContext() is
         	// true
-        	if (tieCells != null) {
+        	if ((tieCells != null) && (rowMetaStore != null)) {
         
-        	    if (SaveAttrsUtility.isHasSaveAttr(cell)) {
+        	    String saveAttrList = rowMetaStore.getSaveAttrs(cell.getRow());
+        	    if (SaveAttrsUtility.isHasSaveAttr(cell, saveAttrList)) {
         
-        		String saveAttrList = SaveAttrsUtility.getSaveAttrListFromRow(cell.getRow());
         
         		if (saveAttrList != null) {
         		    String saveAttr = SaveAttrsUtility.getSaveAttrFromList(cell.getColumnIndex(), saveAttrList);
@@ -617,45 +963,8 @@ public final class CommandUtility {
 	public static Object evaluate(final String strValue,
 			final Map<String, Object> context,
 			final ExpressionEngine engine) {
-		StringBuffer sb = new StringBuffer();
-		int beginExpressionLength = TieConstants.METHOD_PREFIX.length();
-		int endExpressionLength = TieConstants.METHOD_END.length();
-		Matcher exprMatcher = TieConstants.EXPRESSION_NOTATION_PATTERN
-				.matcher(strValue);
-		String matchedString;
-		String expression;
-		Object lastMatchEvalResult = null;
-		int matchCount = 0;
-		int endOffset = 0;
-		while (exprMatcher.find()) {
-			endOffset = exprMatcher.end();
-			matchCount++;
-			matchedString = exprMatcher.group();
-			expression = matchedString.substring(beginExpressionLength,
-					matchedString.length() - endExpressionLength);
-			lastMatchEvalResult = engine.evaluate(expression, context);
-			exprMatcher.appendReplacement(sb,
-					Matcher.quoteReplacement(lastMatchEvalResult != null
-							? lastMatchEvalResult.toString() : ""));
-		}
-		String lastStringResult = lastMatchEvalResult != null
-				? lastMatchEvalResult.toString() : "";
-		boolean isAppendTail = matchCount == 1
-				&& endOffset < strValue.length();
-		Object evaluationResult = null;
-		if (matchCount > 1 || isAppendTail) {
-			exprMatcher.appendTail(sb);
-			evaluationResult = sb.toString();
-		} else if (matchCount == 1) {
-			if (sb.length() > lastStringResult.length()) {
-				evaluationResult = sb.toString();
-			} else {
-				evaluationResult = lastMatchEvalResult;
-			}
-		} else if (matchCount == 0) {
-			evaluationResult = strValue;
-		}
-		return evaluationResult;
+		return CellExpressionTemplate.compile(strValue, engine)
+				.evaluate(context, engine);
 	}
 
 	/**
@@ -725,13 +1034,17 @@ public final class CommandUtility {
 	 *            end row index.
 	 * @param cachedMap
 	 *            the cached map
+	 * @param rowMetaStore
+	 *            the row meta store
 	 */
 	public static void removeRowsInSheet(final Sheet sheet,
 			final int rowIndexStart, final int rowIndexEnd,
-			final Map<Cell, String> cachedMap) {
+			final Map<Cell, String> cachedMap,
+			final RowMetaStore rowMetaStore) {
 
 		for (int irow = rowIndexStart; irow <= rowIndexEnd; irow++) {
 			removeCachedCellForRow(sheet, irow, cachedMap);
+			rowMetaStore.remove(sheet.getRow(irow));
 		}
 		int irows = rowIndexEnd - rowIndexStart + 1;
 		if ((irows < 1) || (rowIndexStart < 0)) {
@@ -739,12 +1052,14 @@ public final class CommandUtility {
 		}
 		int lastRowNum = sheet.getLastRowNum();
 		if (rowIndexEnd < lastRowNum) {
+			rowMetaStore.removeOverwrittenRows(sheet, rowIndexEnd + 1,
+					lastRowNum, -irows);
 			sheet.shiftRows(rowIndexEnd + 1, lastRowNum, -irows);
 		}
 		if (rowIndexEnd == lastRowNum) {
 			// reverse order to delete rows.
 			for (int i = rowIndexEnd; i >= rowIndexStart; i--) {
-				removeSingleRowInSheet(sheet, rowIndexStart);
+				removeSingleRowInSheet(sheet, rowIndexStart, rowMetaStore);
 			}
 		}
 	}
@@ -756,11 +1071,14 @@ public final class CommandUtility {
 	 *            the sheet
 	 * @param rowIndexStart
 	 *            the row index start
+	 * @param rowMetaStore
+	 *            the row meta store
 	 */
 	private static void removeSingleRowInSheet(final Sheet sheet,
-			final int rowIndexStart) {
+			final int rowIndexStart, final RowMetaStore rowMetaStore) {
 		Row removingRow = sheet.getRow(rowIndexStart);
 		if (removingRow != null) {
+			rowMetaStore.remove(removingRow);
 			sheet.removeRow(removingRow);
 		}
 	}
@@ -787,34 +1105,22 @@ public final class CommandUtility {
 	}
 
 	/**
-	 * Removes the rows in body.
+	 * Removes the deleted rows in body and moves the region index as the
+	 * sheet rows are shifted.
 	 *
 	 * @param sheetConfig
 	 *            the sheet config
 	 * @param bodyRows
 	 *            the body rows
-	 * @param rowIndexStart
-	 *            the row index start
-	 * @param rowIndexEnd
-	 *            the row index end
+	 * @param deletedRows
+	 *            the deleted rows
 	 */
 	public static void removeRowsInBody(
 			final SheetConfiguration sheetConfig,
-			final List<FacesRow> bodyRows, final int rowIndexStart,
-			final int rowIndexEnd) {
-		int top = sheetConfig.getBodyCellRange().getTopRow();
-		if ((rowIndexEnd < rowIndexStart) || (rowIndexStart < top)) {
-			return;
-		}
-
-		int irows = rowIndexEnd - rowIndexStart + 1;
-		for (int rowIndex = rowIndexEnd; rowIndex >= rowIndexStart; rowIndex--) {
-			bodyRows.remove(rowIndex - top);
-		}
-		for (int irow = rowIndexStart - top; irow < bodyRows
-				.size(); irow++) {
-			FacesRow facesrow = bodyRows.get(irow);
-			facesrow.setRowIndex(facesrow.getRowIndex() - irows);
-		}
+			final LazyBodyRows bodyRows, final DeletedRows deletedRows) {
+		// body rows shift the row index of materialized rows after remove.
+		bodyRows.removeRows(deletedRows,
+				sheetConfig.getBodyCellRange().getTopRow());
+		bodyRows.getRegionIndex().removeRows(deletedRows);
 	}
 }
@@ -7,23 +7,17 @@ package org.tiefaces.components.websheet.utility;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.NavigableMap;
-import java.util.logging.Level;
+import java.util.Set;
 import java.util.logging.Logger;
 
-import org.apache.poi.ss.formula.FormulaParser;
 import org.apache.poi.ss.formula.FormulaRenderer;
-import org.apache.poi.ss.formula.FormulaType;
 import org.apache.poi.ss.formula.ptg.Ptg;
 import org.apache.poi.ss.usermodel.Cell;
-import org.apache.poi.ss.usermodel.CellType;
 import org.apache.poi.ss.usermodel.Row;
 import org.apache.poi.ss.usermodel.Sheet;
-import org.apache.poi.ss.util.CellRangeAddress;
-import org.apache.poi.ss.usermodel.Row.MissingCellPolicy;
-import org.apache.poi.xssf.usermodel.XSSFEvaluationWorkbook;
 import org.tiefaces.common.TieConstants;
 import org.tiefaces.components.websheet.configuration.Command;
 import org.tiefaces.components.websheet.configuration.ConfigBuildRef;
@@ -32,6 +26,8 @@ import org.tiefaces.components.websheet.configuration.ConfigRangeAttrs;
 import org.tiefaces.components.websheet.configuration.ExpressionEngine;
 import org.tiefaces.components.websheet.configuration.RowsMapping;
 import org.tiefaces.components.websheet.configuration.ShiftFormulaRef;
+import org.tiefaces.components.websheet.configuration.ShiftMapIndex;
+import org.tiefaces.components.websheet.dataobjects.MergedRegionIndex;
 import org.tiefaces.exception.EvaluationException;
 
 /**
@@ -74,40 +70,41 @@ public final class ConfigurationUtility {
 	}
 
 	/**
-	 * Gets the full name from row.
+	 * Re build upper level formula.
 	 *
-	 * @param row
-	 *            the row
-	 * @return the full name from row
+	 * @param configBuildRef
+	 *            the config build ref
+	 * @param actionFullName
+	 *            the action full name
 	 */
-	public static String getFullNameFromRow(final Row row) {
-		if (row != null) {
-			Cell cell = row.getCell(TieConstants.HIDDEN_FULL_NAME_COLUMN);
-			if (cell != null) {
-				return cell.getStringCellValue();
-			}
-		}
-		return null;
+	public static void reBuildUpperLevelFormula(
+			final ConfigBuildRef configBuildRef,
+			final String actionFullName) {
+		reBuildUpperLevelFormula(configBuildRef, new HashSet<>(configBuildRef
+				.getShiftMap().getAncestors(actionFullName)));
 	}
 
 	/**
-	 * Re build upper level formula.
+	 * Re build formula of upper levels in one pass of cached cells.
 	 *
 	 * @param configBuildRef
 	 *            the config build ref
-	 * @param actionFullName
-	 *            the action full name
+	 * @param upperLevels
+	 *            upper level nodes of the add/delete full names
 	 */
 	public static void reBuildUpperLevelFormula(
 			final ConfigBuildRef configBuildRef,
-			final String actionFullName) {
+			final Set<ShiftMapIndex.Node> upperLevels) {
+		if (upperLevels.isEmpty()) {
+			return;
+		}
 		Map<Cell, String> cachedMap = configBuildRef.getCachedCells();
-		Map<String, List<RowsMapping>> rowsMap = new HashMap<>();
+		Map<ShiftMapIndex.Node, List<RowsMapping>> rowsMap = new HashMap<>();
 		for (Map.Entry<Cell, String> entry : cachedMap.entrySet()) {
 			Cell cell = entry.getKey();
 			String originFormula = entry.getValue();
 			if (originFormula != null) {
-				setupUpperLevelFormula(cell, originFormula, actionFullName,
+				setupUpperLevelFormula(cell, originFormula, upperLevels,
 						rowsMap, configBuildRef);
 			}
 		}
@@ -121,48 +118,47 @@ public final class ConfigurationUtility {
 	 *            cell.
 	 * @param originFormula
 	 *            originFormula.
-	 * @param actionFullName
-	 *            add full name.
+	 * @param upperLevels
+	 *            upper level nodes of the add/delete full name.
 	 * @param rowsMap
 	 *            rowsmap.
 	 * @param configBuildRef
 	 *            config build ref.
 	 */
 	private static void setupUpperLevelFormula(final Cell cell,
-			final String originFormula, final String actionFullName,
-			final Map<String, List<RowsMapping>> rowsMap,
+			final String originFormula,
+			final Set<ShiftMapIndex.Node> upperLevels,
+			final Map<ShiftMapIndex.Node, List<RowsMapping>> rowsMap,
 			final ConfigBuildRef configBuildRef) {
-		String fullName = getFullNameFromRow(cell.getRow());
+		ShiftMapIndex.Node node = configBuildRef.getRowMetaStore()
+				.getShiftNode(cell.getRow());
 		// check wither it's upper level
-		if (actionFullName.startsWith(fullName + ":")) {
+		if ((node != null) && upperLevels.contains(node)) {
 			// get rows mapping for upper level row
-			List<RowsMapping> currentRowsMappingList = rowsMap
-					.get(fullName);
+			List<RowsMapping> currentRowsMappingList = rowsMap.get(node);
 			if (currentRowsMappingList == null) {
-				currentRowsMappingList = gatherRowsMappingByFullName(
-						configBuildRef, fullName);
-				rowsMap.put(fullName, currentRowsMappingList);
+				currentRowsMappingList = gatherRowsMapping(node);
+				rowsMap.put(node, currentRowsMappingList);
 			}
 			ShiftFormulaRef shiftFormulaRef = new ShiftFormulaRef(
 					configBuildRef.getWatchList(), currentRowsMappingList);
 			shiftFormulaRef.setFormulaChanged(0);
-			buildCellFormulaForShiftedRows(configBuildRef.getSheet(),
-					configBuildRef.getWbWrapper(), shiftFormulaRef, cell,
-					originFormula);
+			buildCellFormulaForShiftedRows(configBuildRef, shiftFormulaRef,
+					cell, originFormula);
 			if (shiftFormulaRef.getFormulaChanged() > 0) {
 				configBuildRef.getCachedCells().put(cell, originFormula);
+				configBuildRef.getCellHelper().refreshDependencyCell(cell);
 			}
 
 		}
 	}
 
 	/**
-	 * Builds the cell formula for shifted rows.
+	 * Builds the cell formula for shifted rows. The origin formula is parsed
+	 * once per build and the shift is applied to a copy of the tokens.
 	 *
-	 * @param sheet
-	 *            the sheet
-	 * @param wbWrapper
-	 *            the wb wrapper
+	 * @param configBuildRef
+	 *            the config build ref
 	 * @param shiftFormulaRef
 	 *            the shift formula ref
 	 * @param cell
@@ -170,22 +166,23 @@ public final class ConfigurationUtility {
 	 * @param originFormula
 	 *            the origin formula
 	 */
-	public static void buildCellFormulaForShiftedRows(final Sheet sheet,
-			final XSSFEvaluationWorkbook wbWrapper,
+	public static void buildCellFormulaForShiftedRows(
+			final ConfigBuildRef configBuildRef,
 			final ShiftFormulaRef shiftFormulaRef, final Cell cell,
 			final String originFormula) {
 		// only shift when there's watchlist exist.
 		if ((shiftFormulaRef.getWatchList() != null)
 				&& (!shiftFormulaRef.getWatchList().isEmpty())) {
-			Ptg[] ptgs = FormulaParser.parse(originFormula, wbWrapper,
-					FormulaType.CELL,
-					sheet.getWorkbook().getSheetIndex(sheet));
+			Ptg[] ptgs = configBuildRef.getFormulaPtgs(originFormula)
+					.clone();
 			Ptg[] convertedFormulaPtg = ShiftFormulaUtility
 					.convertSharedFormulas(ptgs, shiftFormulaRef);
 			if (shiftFormulaRef.getFormulaChanged() > 0) {
 				// only change formula when indicator is true
-				cell.setCellFormula(FormulaRenderer
-						.toFormulaString(wbWrapper, convertedFormulaPtg));
+				CellUtility.setCellFormulaWithoutParse(cell,
+						FormulaRenderer.toFormulaString(
+								configBuildRef.getWbWrapper(),
+								convertedFormulaPtg));
 
 			}
 		}
@@ -202,41 +199,31 @@ public final class ConfigurationUtility {
 	 */
 	public static List<RowsMapping> gatherRowsMappingByFullName(
 			final ConfigBuildRef configBuildRef, final String fullName) {
-		List<RowsMapping> list = new ArrayList<>();
-		Map<String, ConfigRangeAttrs> shiftMap = configBuildRef
-				.getShiftMap();
-		for (Map.Entry<String, ConfigRangeAttrs> entry : shiftMap
-				.entrySet()) {
-			String fname = entry.getKey();
-			if (fname.startsWith(fullName + ":")
-					|| fname.equals(fullName)) {
-				ConfigRangeAttrs attrs = entry.getValue();
-				list.add(attrs.getUnitRowsMapping());
-			}
+		ShiftMapIndex.Node node = configBuildRef.getShiftMap()
+				.getNode(fullName);
+		if (node == null) {
+			return new ArrayList<>();
 		}
-		return list;
+		return gatherRowsMapping(node);
 	}
 
 	/**
-	 * Increase index number in shift map.
+	 * Gather rows mapping of node and its children.
 	 *
-	 * @param shiftMap
-	 *            the shift map
-	 * @param changeMap
-	 *            the change map
+	 * @param node
+	 *            the node
+	 * @return the list
 	 */
-	public static void changeIndexNumberInShiftMap(
-			final Map<String, ConfigRangeAttrs> shiftMap,
-			final Map<String, String> changeMap) {
-		for (Map.Entry<String, String> entry : changeMap.entrySet()) {
-			String key = entry.getKey();
-			String newKey = entry.getValue();
-			ConfigRangeAttrs attrs = shiftMap.get(key);
-			if (attrs != null) {
-				shiftMap.remove(key);
-				shiftMap.put(newKey, attrs);
-			}
+	private static List<RowsMapping> gatherRowsMapping(
+			final ShiftMapIndex.Node node) {
+		List<RowsMapping> list = new ArrayList<>();
+		if (node.getAttrs() != null) {
+			list.add(node.getAttrs().getUnitRowsMapping());
+		}
+		for (ConfigRangeAttrs attrs : node.getDescendantAttrs()) {
+			list.add(attrs.getUnitRowsMapping());
 		}
+		return list;
 	}
 
 	/**
@@ -250,176 +237,13 @@ public final class ConfigurationUtility {
 	 *            the increased length
 	 */
 	public static void changeUpperLevelFinalLength(
-			final Map<String, ConfigRangeAttrs> shiftMap,
-			final String addedFullName, final int increasedLength) {
-		String[] parts = addedFullName.split(":");
-		StringBuilder fname = new StringBuilder();
-		for (int i = 0; i < (parts.length - 1); i++) {
-			if (i == 0) {
-				fname.append(parts[i]);
-			} else {
-				fname.append(":").append(parts[i]);
-			}
-			String sname = fname.toString();
-			shiftMap.get(sname).setFinalLength(
-					shiftMap.get(sname).getFinalLength() + increasedLength);
-		}
-	}
-
-	/**
-	 * Change index number in hidden column.
-	 *
-	 * @param configBuildRef
-	 *            the config build ref
-	 * @param startRowIndex
-	 *            the start row index
-	 * @param fullName
-	 *            the full name
-	 * @param changeMap
-	 *            the change map
-	 * @param steps
-	 *            the steps ( 1 add -1 delete ).
-	 */
-	public static void changeIndexNumberInHiddenColumn(
-			final ConfigBuildRef configBuildRef, final int startRowIndex,
-			final String fullName, final Map<String, String> changeMap,
-			final int steps) {
-		String searchName = fullName.substring(0,
-				fullName.lastIndexOf('.') + 1);
-		Sheet sheet = configBuildRef.getSheet();
-		for (int i = startRowIndex; i <= sheet.getLastRowNum(); i++) {
-			Row row = sheet.getRow(i);
-			String fname = getFullNameFromRow(row);
-			if ((fname != null) && (fname.indexOf(searchName) >= 0)) {
-				int sindex = fname.indexOf(searchName);
-				String snum = fname.substring(sindex + searchName.length());
-				int sufindex = snum.indexOf(':');
-				String suffix = "";
-				if (sufindex > 0) {
-					snum = snum.substring(0, sufindex);
-					suffix = ":";
-				}
-				int increaseNum = Integer.parseInt(snum) + steps;
-				String realFullName = fname.substring(sindex);
-				String changeName = fname.replace(
-						searchName + snum + suffix,
-						searchName + increaseNum + suffix);
-				if (changeMap.get(realFullName) == null) {
-					changeMap.put(realFullName,
-							changeName.substring(sindex));
-				}
-				setFullNameInHiddenColumn(row, changeName);
-			} else {
-				return;
-			}
-		}
-	}
-
-	/**
-	 * Decrease index number in hidden column.
-	 *
-	 * @param configBuildRef
-	 *            the config build ref
-	 * @param startRowIndex
-	 *            the start row index
-	 * @param fullName
-	 *            the full name
-	 * @param changeMap
-	 *            the change map
-	 */
-	public static void decreaseIndexNumberInHiddenColumn(
-			final ConfigBuildRef configBuildRef, final int startRowIndex,
-			final String fullName, final Map<String, String> changeMap) {
-		String searchName = fullName.substring(0,
-				fullName.lastIndexOf('.') + 1);
-		Sheet sheet = configBuildRef.getSheet();
-		for (int i = startRowIndex; i <= sheet.getLastRowNum(); i++) {
-			Row row = sheet.getRow(i);
-			String fname = getFullNameFromRow(row);
-			if ((fname != null) && (fname.indexOf(searchName) >= 0)) {
-				int sindex = fname.indexOf(searchName);
-				String snum = fname.substring(sindex + searchName.length());
-				int sufindex = snum.indexOf(':');
-				String suffix = "";
-				if (sufindex > 0) {
-					snum = snum.substring(0, sufindex);
-					suffix = ":";
-				}
-				int increaseNum = Integer.parseInt(snum) - 1;
-				String realFullName = fname.substring(sindex);
-				String changeName = fname.replace(
-						searchName + snum + suffix,
-						searchName + increaseNum + suffix);
-				if (changeMap.get(realFullName) == null) {
-					changeMap.put(realFullName,
-							changeName.substring(sindex));
-				}
-				setFullNameInHiddenColumn(row, changeName);
-			}
-		}
-	}
-
-	/**
-	 * Sets the full name in hidden column.
-	 *
-	 * @param row
-	 *            the row
-	 * @param fullName
-	 *            the full name
-	 */
-	public static void setFullNameInHiddenColumn(final Row row,
-			final String fullName) {
-		Cell cell = row.getCell(TieConstants.HIDDEN_FULL_NAME_COLUMN,
-				MissingCellPolicy.CREATE_NULL_AS_BLANK);
-
-		cell.setCellValue(fullName);
-	}
-
-	/**
-	 * Gets the original row num in hidden column.
-	 *
-	 * @param row
-	 *            the row
-	 * @return the original row num in hidden column
-	 */
-	public static int getOriginalRowNumInHiddenColumn(final Row row) {
-		if (row != null) {
-			Cell cell = row.getCell(
-					TieConstants.HIDDEN_ORIGIN_ROW_NUMBER_COLUMN,
-					MissingCellPolicy.CREATE_NULL_AS_BLANK);
-			String rowNum = cell.getStringCellValue();
-			try {
-				if ((rowNum != null) && (!rowNum.isEmpty())
-						&& (WebSheetUtility.isNumeric(rowNum))) {
-					return Integer.parseInt(rowNum);
-				}
-
-			} catch (Exception ex) {
-				LOG.log(Level.SEVERE,
-						"getOriginalRowNumInHiddenColumn rowNum = " + rowNum
-								+ " error = " + ex.getLocalizedMessage(),
-						ex);
-
-			}
+			final ShiftMapIndex shiftMap, final String addedFullName,
+			final int increasedLength) {
+		for (ShiftMapIndex.Node node : shiftMap
+				.getAncestors(addedFullName)) {
+			ConfigRangeAttrs attrs = node.getAttrs();
+			attrs.setFinalLength(attrs.getFinalLength() + increasedLength);
 		}
-		return -1;
-	}
-
-	/**
-	 * Sets the original row num in hidden column.
-	 *
-	 * @param row
-	 *            the row.
-	 * @param rowNum
-	 *            row number.
-	 */
-	public static void setOriginalRowNumInHiddenColumn(final Row row,
-			final int rowNum) {
-		Cell cell = row.getCell(
-				TieConstants.HIDDEN_ORIGIN_ROW_NUMBER_COLUMN,
-				MissingCellPolicy.CREATE_NULL_AS_BLANK);
-		cell.setCellValue(Integer.toString(rowNum));
-		cell.setCellType(CellType.STRING);
 	}
 
 	/**
@@ -432,8 +256,7 @@ public final class ConfigurationUtility {
 	 * @return the list
 	 */
 	public static List<RowsMapping> findParentRowsMappingFromShiftMap(
-			final String[] parts,
-			final Map<String, ConfigRangeAttrs> shiftMap) {
+			final String[] parts, final ShiftMapIndex shiftMap) {
 
 		StringBuilder fullName = new StringBuilder();
 		List<RowsMapping> rowsMappingList = new ArrayList<>();
@@ -469,20 +292,13 @@ public final class ConfigurationUtility {
 	 * @return the list
 	 */
 	public static List<RowsMapping> findChildRowsMappingFromShiftMap(
-			final String fullName,
-			final NavigableMap<String, ConfigRangeAttrs> shiftMap) {
+			final String fullName, final ShiftMapIndex shiftMap) {
 
 		List<RowsMapping> rowsMappingList = new ArrayList<>();
-		NavigableMap<String, ConfigRangeAttrs> tailmap = shiftMap
-				.tailMap(fullName, false);
-		for (Map.Entry<String, ConfigRangeAttrs> entry : tailmap
-				.entrySet()) {
-			String key = entry.getKey();
-			// check it's children
-			if (key.startsWith(fullName)) {
-				rowsMappingList.add(entry.getValue().getUnitRowsMapping());
-			} else {
-				break;
+		ShiftMapIndex.Node node = shiftMap.getNode(fullName);
+		if (node != null) {
+			for (ConfigRangeAttrs attrs : node.getDescendantAttrs()) {
+				rowsMappingList.add(attrs.getUnitRowsMapping());
 			}
 		}
 		return rowsMappingList;
@@ -685,68 +501,10 @@ public final class ConfigurationUtility {
 	 *
 	 * @param sheet1
 	 *            the sheet 1
-	 * @return the map
+	 * @return the merged region index
 	 */
-	public static Map<String, CellRangeAddress> indexMergedRegion(
-			final Sheet sheet1) {
-
-		int numRegions = sheet1.getNumMergedRegions();
-		Map<String, CellRangeAddress> cellRangeMap = new HashMap<>();
-		for (int i = 0; i < numRegions; i++) {
-
-			CellRangeAddress caddress = sheet1.getMergedRegion(i);
-			if (caddress != null) {
-				cellRangeMap.put(CellUtility.getCellIndexNumberKey(
-						caddress.getFirstColumn(), caddress.getFirstRow()),
-						caddress);
-			}
-		}
-		return cellRangeMap;
-	}
-
-	/**
-	 * Skipped region cells.
-	 *
-	 * @param sheet1
-	 *            the sheet 1
-	 * @return the list
-	 */
-	public static List<String> skippedRegionCells(final Sheet sheet1) {
-		int numRegions = sheet1.getNumMergedRegions();
-		List<String> skipCellList = new ArrayList<>();
-		for (int i = 0; i < numRegions; i++) {
-
-			CellRangeAddress caddress = sheet1.getMergedRegion(i);
-			if (caddress != null) {
-				addSkipCellToListInTheRegion(skipCellList, caddress);
-			}
-		}
-		return skipCellList;
-	}
-
-	/**
-	 * Add skipped cell into the list of a region.
-	 * 
-	 * @param skipCellList
-	 *            list.
-	 * @param caddress
-	 *            region.
-	 */
-	private static void addSkipCellToListInTheRegion(
-			final List<String> skipCellList,
-			final CellRangeAddress caddress) {
-		for (int col = caddress.getFirstColumn(); col <= caddress
-				.getLastColumn(); col++) {
-			for (int row = caddress.getFirstRow(); row <= caddress
-					.getLastRow(); row++) {
-				if ((col == caddress.getFirstColumn())
-						&& (row == caddress.getFirstRow())) {
-					continue;
-				}
-				skipCellList
-						.add(CellUtility.getCellIndexNumberKey(col, row));
-			}
-		}
+	public static MergedRegionIndex indexMergedRegion(final Sheet sheet1) {
+		return new MergedRegionIndex(sheet1);
 	}
 
 }
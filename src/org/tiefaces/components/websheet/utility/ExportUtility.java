@@ -0,0 +1,216 @@
+/*
+ * Copyright 2017 TieFaces.
+ * Licensed under MIT
+ */
+
+package org.tiefaces.components.websheet.utility;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Enumeration;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+import org.apache.poi.ss.usermodel.Workbook;
+
+/**
+ * Write workbook for download without holding the file on heap. The
+ * workbook is written straight to the target stream, or spilled to a temp
+ * file which is deleted when its stream closed. Temp files are also marked
+ * delete on exit, for streams never closed, e.g. of abandoned sessions.
+ *
+ * @author Jason Jiang
+ *
+ */
+public final class ExportUtility {
+
+	/** logger. */
+	private static final Logger LOG = Logger
+			.getLogger(ExportUtility.class.getName());
+
+	/** prefix of temp files. */
+	private static final String TEMP_FILE_PREFIX = "tiefaces-export-";
+
+	/** buffer size for copy. */
+	private static final int BUFFER_SIZE = 8192;
+
+	/**
+	 * hide constructor.
+	 */
+	private ExportUtility() {
+		// not called
+	}
+
+	/**
+	 * Write workbook to output stream. The stream is not closed.
+	 *
+	 * Poi always deflates with default level. For other level the workbook
+	 * is written to a temp file first, then its entries are compressed again
+	 * with the level.
+	 *
+	 * @param wb
+	 *            the workbook
+	 * @param out
+	 *            the output stream
+	 * @param deflateLevel
+	 *            deflate level 0-9, or Deflater.DEFAULT_COMPRESSION.
+	 * @throws IOException
+	 *             io exception.
+	 */
+	public static void writeWorkbook(final Workbook wb,
+			final OutputStream out, final int deflateLevel)
+			throws IOException {
+		if (deflateLevel == Deflater.DEFAULT_COMPRESSION) {
+			wb.write(out);
+			return;
+		}
+		File file = createTempFile(".tmp");
+		try {
+			try (OutputStream fileOut = new BufferedOutputStream(
+					new FileOutputStream(file))) {
+				wb.write(fileOut);
+			}
+			recompress(file, out, deflateLevel);
+		} finally {
+			deleteFile(file);
+		}
+	}
+
+	/**
+	 * Copy zip entries of file to output stream with deflate level.
+	 *
+	 * @param file
+	 *            the zip file
+	 * @param out
+	 *            the output stream
+	 * @param deflateLevel
+	 *            the deflate level
+	 * @throws IOException
+	 *             io exception.
+	 */
+	private static void recompress(final File file, final OutputStream out,
+			final int deflateLevel) throws IOException {
+		byte[] buffer = new byte[BUFFER_SIZE];
+		try (ZipFile zipFile = new ZipFile(file)) {
+			ZipOutputStream zipOut = new ZipOutputStream(out);
+			zipOut.setLevel(deflateLevel);
+			Enumeration<? extends ZipEntry> entries = zipFile.entries();
+			while (entries.hasMoreElements()) {
+				ZipEntry entry = entries.nextElement();
+				zipOut.putNextEntry(new ZipEntry(entry.getName()));
+				try (InputStream in = zipFile.getInputStream(entry)) {
+					int len;
+					while ((len = in.read(buffer)) > 0) {
+						zipOut.write(buffer, 0, len);
+					}
+				}
+				zipOut.closeEntry();
+			}
+			// finish instead of close, the target stream belongs to caller.
+			zipOut.finish();
+		}
+	}
+
+	/**
+	 * Write workbook to temp file.
+	 *
+	 * @param wb
+	 *            the workbook
+	 * @param deflateLevel
+	 *            deflate level 0-9, or Deflater.DEFAULT_COMPRESSION.
+	 * @return stream of the temp file. the file is deleted when closed.
+	 * @throws IOException
+	 *             io exception.
+	 */
+	public static InputStream spillToTempFile(final Workbook wb,
+			final int deflateLevel) throws IOException {
+		File file = createTempFile(".xlsx");
+		try {
+			try (OutputStream fileOut = new BufferedOutputStream(
+					new FileOutputStream(file))) {
+				writeWorkbook(wb, fileOut, deflateLevel);
+			}
+			return new BufferedInputStream(new TempFileInputStream(file));
+		} catch (IOException | RuntimeException e) {
+			deleteFile(file);
+			throw e;
+		}
+	}
+
+	/**
+	 * Create temp file which is deleted on exit if not deleted before.
+	 *
+	 * @param suffix
+	 *            the suffix
+	 * @return the file
+	 * @throws IOException
+	 *             io exception.
+	 */
+	private static File createTempFile(final String suffix)
+			throws IOException {
+		File file = File.createTempFile(TEMP_FILE_PREFIX, suffix);
+		file.deleteOnExit();
+		return file;
+	}
+
+	/**
+	 * Delete file.
+	 *
+	 * @param file
+	 *            the file
+	 */
+	private static void deleteFile(final File file) {
+		if (!file.delete() && file.exists()) {
+			LOG.log(Level.WARNING,
+					"cannot delete export temp file " + file.getPath());
+		}
+	}
+
+	/**
+	 * Stream of temp file, deletes the file when closed.
+	 */
+	private static final class TempFileInputStream extends FileInputStream {
+
+		/** the file. */
+		private final File file;
+
+		/** closed flag. */
+		private boolean closed;
+
+		/**
+		 * Instantiates a new temp file input stream.
+		 *
+		 * @param pfile
+		 *            the file
+		 * @throws IOException
+		 *             io exception.
+		 */
+		TempFileInputStream(final File pfile) throws IOException {
+			super(pfile);
+			this.file = pfile;
+		}
+
+		@Override
+		public void close() throws IOException {
+			try {
+				super.close();
+			} finally {
+				if (!closed) {
+					closed = true;
+					deleteFile(file);
+				}
+			}
+		}
+	}
+
+}
@@ -16,6 +16,7 @@ import org.apache.poi.ss.usermodel.Cell;
 import org.tiefaces.common.TieConstants;
 import org.tiefaces.components.websheet.dataobjects.CellAttributesMap;
 import org.tiefaces.components.websheet.dataobjects.CellFormAttributes;
+import org.tiefaces.components.websheet.dataobjects.CellKey;
 
 /**
  * Helper class for web sheet cells.
@@ -136,19 +137,19 @@ public final class ParserUtility {
 		if (values == null) {
 			return;
 		}
-		// map's key is sheetName!$columnIndex$rowIndex
-		String key = getAttributeKeyInMapByCell(cell);
+		CellAttributesMap.CellEntry entry = cellAttributesMap
+				.getOrAddCellEntry(cell.getSheet().getSheetName(),
+						cell.getRowIndex(), cell.getColumnIndex());
 		// one cell only has one control widget
-		cellAttributesMap.getCellInputType().put(key, type);
-		List<CellFormAttributes> inputs = cellAttributesMap
-				.getCellInputAttributes().get(key);
+		entry.setInputType(type);
+		List<CellFormAttributes> inputs = entry.getInputAttributes();
 		if (inputs == null) {
 			inputs = new ArrayList<>();
-			cellAttributesMap.getCellInputAttributes().put(key, inputs);
+			entry.setInputAttributes(inputs);
 		}
 		parseInputAttributes(inputs, values);
 
-		parseSpecialAttributes(key, type, inputs, cellAttributesMap);
+		parseSpecialAttributes(entry, type, inputs);
 
 	}
 
@@ -195,13 +196,13 @@ public final class ParserUtility {
 		if (values == null) {
 			return;
 		}
-		// map's key is sheetName!$columnIndex$rowIndex
-		String key = getAttributeKeyInMapByCell(cell);
-		List<CellFormAttributes> attrs = cellAttributesMap
-				.getCellValidateAttributes().get(key);
+		CellAttributesMap.CellEntry entry = cellAttributesMap
+				.getOrAddCellEntry(cell.getSheet().getSheetName(),
+						cell.getRowIndex(), cell.getColumnIndex());
+		List<CellFormAttributes> attrs = entry.getValidateAttributes();
 		if (attrs == null) {
 			attrs = new ArrayList<>();
-			cellAttributesMap.getCellValidateAttributes().put(key, attrs);
+			entry.setValidateAttributes(attrs);
 		}
 		parseValidateAttributes(attrs, values);
 
@@ -410,6 +411,30 @@ public final class ParserUtility {
 	public static void parseSpecialAttributes(final String key,
 			final String type, final List<CellFormAttributes> inputs,
 			final CellAttributesMap cellAttributesMap) {
+		int[] position = CellKey.parsePosition(key);
+		if (position == null) {
+			return;
+		}
+		parseSpecialAttributes(
+				cellAttributesMap.getOrAddCellEntry(
+						CellKey.parseSheetName(key), position[0],
+						position[1]),
+				type, inputs);
+	}
+
+	/**
+	 * Parses the special attributes into the cell entry.
+	 *
+	 * @param entry
+	 *            the cell entry
+	 * @param type
+	 *            the type
+	 * @param inputs
+	 *            the inputs
+	 */
+	private static void parseSpecialAttributes(
+			final CellAttributesMap.CellEntry entry, final String type,
+			final List<CellFormAttributes> inputs) {
 		
 		SpecialAttributes sAttr = new SpecialAttributes();
 		
@@ -418,49 +443,43 @@ public final class ParserUtility {
 		}
 
 		if (sAttr.selectLabels != null) {
-			processSelectItemAttributes(key, cellAttributesMap, sAttr);
+			processSelectItemAttributes(entry, sAttr);
 		}
 		if (type.equalsIgnoreCase(TieConstants.WIDGET_CALENDAR)) {
-			processCalendarAttributes(key, cellAttributesMap, sAttr);
+			processCalendarAttributes(entry, sAttr);
 		}
 	}
 
 	/**
 	 * Process calendar attributes.
 	 *
-	 * @param key
-	 *            the key
-	 * @param cellAttributesMap
-	 *            the cell attributes map
+	 * @param entry
+	 *            the cell entry
 	 * @param sAttr
 	 *            the s attr
 	 */
-	private static void processCalendarAttributes(final String key,
-			final CellAttributesMap cellAttributesMap,
+	private static void processCalendarAttributes(
+			final CellAttributesMap.CellEntry entry,
 			final SpecialAttributes sAttr) {
-		cellAttributesMap.getCellDatePattern().put(key,
-				sAttr.defaultDatePattern);
+		entry.setDatePattern(sAttr.defaultDatePattern);
 	}
 
 	/**
 	 * Process select item attributes.
 	 *
-	 * @param key
-	 *            the key
-	 * @param cellAttributesMap
-	 *            the cell attributes map
+	 * @param entry
+	 *            the cell entry
 	 * @param sAttr
 	 *            the s attr
 	 */
-	private static void processSelectItemAttributes(final String key,
-			final CellAttributesMap cellAttributesMap,
+	private static void processSelectItemAttributes(
+			final CellAttributesMap.CellEntry entry,
 			final SpecialAttributes sAttr) {
 		if ((sAttr.selectValues == null)
 				|| (sAttr.selectValues.length != sAttr.selectLabels.length)) {
 			sAttr.selectValues = sAttr.selectLabels;
 		}
-		Map<String, String> smap = cellAttributesMap
-				.getCellSelectItemsAttributes().get(key);
+		Map<String, String> smap = entry.getSelectItemsAttributes();
 		if (smap == null) {
 			smap = new LinkedHashMap<>();
 		}
@@ -471,7 +490,7 @@ public final class ParserUtility {
 		for (int i = 0; i < sAttr.selectLabels.length; i++) {
 			smap.put(sAttr.selectLabels[i], sAttr.selectValues[i]);
 		}
-		cellAttributesMap.getCellSelectItemsAttributes().put(key, smap);
+		entry.setSelectItemsAttributes(smap);
 	}
 
 	/**
@@ -508,6 +527,27 @@ public final class ParserUtility {
 		}
 	}
 
+	/**
+	 * Gets the key of comment in the template comment map.
+	 *
+	 * @param newComment
+	 *            the comment
+	 * @param normalComment
+	 *            is normal comment
+	 * @return the comment key
+	 */
+	public static String getCommentKey(final String newComment,
+			final boolean normalComment) {
+		if (normalComment) {
+			// normal comment key is $$
+			return TieConstants.NORMAL_COMMENT_KEY_IN_MAP;
+		}
+		// not normal comment. e.g. ${... or $init{... or
+		// key = $ or key = $init
+		return newComment.substring(0,
+				newComment.indexOf(TieConstants.EL_START_BRACKET));
+	}
+
 	/**
 	 * Parse Comment To Map
 	 * 
@@ -527,14 +567,7 @@ public final class ParserUtility {
 			final Map<String, Map<String, String>> sheetCommentMap,
 			final boolean normalComment) {
 		if ((newComment != null) && (!newComment.trim().isEmpty())) {
-			// normal comment key is $$
-			String commentKey = TieConstants.NORMAL_COMMENT_KEY_IN_MAP;
-			if (!normalComment) {
-				// not normal comment. e.g. ${... or $init{... or
-				// key = $ or key = $init
-				commentKey = newComment.substring(0,
-						newComment.indexOf(TieConstants.EL_START_BRACKET));
-			}
+			String commentKey = getCommentKey(newComment, normalComment);
 			Map<String, String> map = sheetCommentMap.get(commentKey);
 			if (map == null) {
 				map = new HashMap<>();
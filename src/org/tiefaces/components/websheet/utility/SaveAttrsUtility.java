@@ -9,9 +9,9 @@ import org.apache.poi.ss.usermodel.Cell;
 import org.apache.poi.ss.usermodel.CellType;
 import org.apache.poi.ss.usermodel.Row;
 import org.apache.poi.ss.usermodel.Sheet;
-import org.apache.poi.ss.usermodel.Row.MissingCellPolicy;
 import org.tiefaces.common.TieConstants;
 import org.tiefaces.components.websheet.configuration.ExpressionEngine;
+import org.tiefaces.components.websheet.dataobjects.RowMetaStore;
 
 /**
  * Helper class for save attributes.
@@ -77,11 +77,13 @@ public final class SaveAttrsUtility {
 	 * @param fullSaveAttr full saveattr.
 	 * @param row row.
 	 * @param engine engine.
+	 * @param rowMetaStore row meta store.
 	 */
 
 	public static void refreshSheetRowFromContext(
 			final Map<String, Object> context, final String fullSaveAttr,
-			final Row row, final ExpressionEngine engine) {
+			final Row row, final ExpressionEngine engine,
+			final RowMetaStore rowMetaStore) {
 		if (!fullSaveAttr.startsWith(TieConstants.CELL_ADDR_PRE_FIX)) {
 			return;
 		}
@@ -90,7 +92,7 @@ public final class SaveAttrsUtility {
 			String columnIndex = fullSaveAttr.substring(1, ipos);
 			String saveAttr = fullSaveAttr.substring(ipos+1);
 			Cell cell = row.getCell(Integer.parseInt(columnIndex));
-			CommandUtility.evaluateNormalCells(cell,TieConstants.METHOD_PREFIX+saveAttr+TieConstants.METHOD_END, context, engine);
+			CommandUtility.evaluateNormalCells(cell,TieConstants.METHOD_PREFIX+saveAttr+TieConstants.METHOD_END, context, engine, rowMetaStore);
 		}
 	}
 	
@@ -115,27 +117,6 @@ public final class SaveAttrsUtility {
 		return "";
 	}
 
-	/**
-	 * Gets the save attr list from row.
-	 *
-	 * @param row
-	 *            the row
-	 * @return the save attr list from row
-	 */
-	public static String getSaveAttrListFromRow(final Row row) {
-		if (row != null) {
-			Cell cell = row
-					.getCell(TieConstants.HIDDEN_SAVE_OBJECTS_COLUMN);
-			if (cell != null) {
-				String str = cell.getStringCellValue();
-				if ((str != null) && (!str.isEmpty())) {
-					return str;
-				}
-			}
-		}
-		return null;
-	}
-
 	/**
 	 * Gets the save attr from list.
 	 *
@@ -184,23 +165,6 @@ public final class SaveAttrsUtility {
 	}
 	
 
-	/**
-	 * Checks if is checks for save attr.
-	 *
-	 * @param cell
-	 *            the cell
-	 * @return true, if is checks for save attr
-	 */
-	public static boolean isHasSaveAttr(final Cell cell) {
-		Cell saveAttrCell = cell.getRow()
-				.getCell(TieConstants.HIDDEN_SAVE_OBJECTS_COLUMN);
-		if (saveAttrCell != null) {
-			return isHasSaveAttr(cell,
-					saveAttrCell.getStringCellValue());
-		}
-		return false;
-	}
-
 	/**
 	 * Checks if is checks for save attr.
 	 *
@@ -223,22 +187,6 @@ public final class SaveAttrsUtility {
 		return false;
 	}
 
-	/**
-	 * Sets the save objects in hidden column.
-	 *
-	 * @param row
-	 *            the row
-	 * @param saveAttr
-	 *            the save attr
-	 */
-	public static void setSaveObjectsInHiddenColumn(final Row row,
-			final String saveAttr) {
-		Cell cell = row.getCell(TieConstants.HIDDEN_SAVE_OBJECTS_COLUMN,
-				MissingCellPolicy.CREATE_NULL_AS_BLANK);
-	
-		cell.setCellValue(saveAttr);
-	}
-
 	/**
 	 * Sets the save attrs for sheet.
 	 *
@@ -248,14 +196,17 @@ public final class SaveAttrsUtility {
 	 *            the min row num
 	 * @param maxRowNum
 	 *            the max row num
+	 * @param rowMetaStore
+	 *            the row meta store
 	 */
 	public static void setSaveAttrsForSheet(final Sheet sheet,
-			final int minRowNum, final int maxRowNum) {
+			final int minRowNum, final int maxRowNum,
+			final RowMetaStore rowMetaStore) {
 	
 		for (Row row : sheet) {
 			int rowIndex = row.getRowNum();
 			if ((rowIndex >= minRowNum) && (rowIndex <= maxRowNum)) {
-				setSaveAttrsForRow(row);
+				setSaveAttrsForRow(row, rowMetaStore);
 			}
 		}
 	}
@@ -265,8 +216,11 @@ public final class SaveAttrsUtility {
 	 * 
 	 * @param row
 	 *            row.
+	 * @param rowMetaStore
+	 *            row meta store.
 	 */
-	private static void setSaveAttrsForRow(final Row row) {
+	private static void setSaveAttrsForRow(final Row row,
+			final RowMetaStore rowMetaStore) {
 		StringBuilder saveAttr = new StringBuilder();
 		for (Cell cell : row) {
 			String sAttr = parseSaveAttr(cell);
@@ -275,8 +229,7 @@ public final class SaveAttrsUtility {
 			}
 		}
 		if (saveAttr.length() > 0) {
-			SaveAttrsUtility.setSaveObjectsInHiddenColumn(row,
-					saveAttr.toString());
+			rowMetaStore.setSaveAttrs(row, saveAttr.toString());
 		}
 	}
 
@@ -27,6 +27,7 @@ import org.apache.poi.ss.formula.ptg.RefPtgBase;
 import org.apache.poi.ss.formula.ptg.AddPtg;
 import org.apache.poi.ss.formula.ptg.ValueOperatorPtg;
 import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.util.AreaReference;
 import org.apache.poi.ss.util.CellReference;
 import org.tiefaces.components.websheet.configuration.RowsMapping;
 import org.tiefaces.components.websheet.configuration.ShiftFormulaRef;
@@ -180,9 +181,27 @@ public final class ShiftFormulaUtility {
 							rowlist.get(0).getRow()),
 					originalOperandClass, -1);
 		}
-		shiftFormulaRef.setFormulaChanged(rowlist.size());
-		return fixupRefRelativeRowOneToMany(ptg, originalOperandClass,
-				rowlist, ptgs, position);
+		Ptg[] newPtgs = fixupRefRelativeRowOneToMany(ptg,
+				originalOperandClass, rowlist, ptgs, position);
+		shiftFormulaRef.setFormulaChanged(countOperands(newPtgs));
+		return newPtgs;
+	}
+
+	/**
+	 * Count the reference operands in ptgs.
+	 *
+	 * @param ptgs
+	 *            the ptgs
+	 * @return the count
+	 */
+	private static int countOperands(final Ptg[] ptgs) {
+		int count = 0;
+		for (Ptg ptg : ptgs) {
+			if ((ptg instanceof RefPtgBase) || (ptg instanceof AreaPtgBase)) {
+				count++;
+			}
+		}
+		return count;
 	}
 
 	/**
@@ -344,6 +363,9 @@ public final class ShiftFormulaUtility {
 	 * around it.
 	 * 
 	 * Case 1: = (A1) + A2 + A3 Case 2: = SUM((A1)) Case 3: = SUM((A1:A2))
+	 * 
+	 * For case 2 and 3, contiguous rows are coalesced into one area. So the
+	 * formula size depends on the number of row gaps instead of rows.
 	 *
 	 * @param ptg
 	 *            the ptg
@@ -368,77 +390,172 @@ public final class ShiftFormulaUtility {
 			if (ptg instanceof RefPtgBase) {
 				newPtg = new Ptg[size + 1];
 				buildDynamicRowForRefPtgBase(ptg, originalOperandClass,
-						rowList, newPtg, false);
+						rowList, newPtg);
 				newPtg[rowList.size()] = AddPtg.instance;
 			}
 		} else {
 			// otherwise change to mutiple ptg plus parenth
-			// e.g. SUM((A1)) --> SUM((A1),(A2))
-			// SUM((A1:B1)) --> SUM((A1:B1),(A2:B2))
-			newPtg = new Ptg[(size * 2) - 1];
-			if (ptg instanceof RefPtgBase) {
-				buildDynamicRowForRefPtgBase(ptg, originalOperandClass,
-						rowList, newPtg, true);
-			} else {
-				buildDynamicRowForAreaPtgBase(ptg, originalOperandClass,
-						rowList, newPtg);
+			// e.g. SUM((A1)) --> SUM((A1:A3),(A5))
+			// SUM((A1:B1)) --> SUM((A1:B3),(A5:B5))
+			List<int[]> runs = getRowRuns(ptg, rowList);
+			newPtg = new Ptg[(runs.size() * 2) - 1];
+			for (int i = 0; i < runs.size(); i++) {
+				newPtg[i * 2] = buildPtgForRowRun(ptg, originalOperandClass,
+						runs.get(i)[0], runs.get(i)[1]);
+				if (i < (runs.size() - 1)) {
+					newPtg[i * 2 + 1] = ParenthesisPtg.instance;
+				}
 			}
 		}
 		return newPtg;
 	}
 
 	/**
-	 * Builds the dynamic row for ref ptg base.
+	 * Group the rows into runs of contiguous units. Unit of row is the rows
+	 * covered by ptg when moved to the row, i.e. one row for reference, area
+	 * height for area. Units are contiguous when next one starts right after
+	 * the previous one, overlapped units are kept apart.
 	 *
 	 * @param ptg
 	 *            the ptg
-	 * @param originalOperandClass
-	 *            the original operand class
 	 * @param rowList
 	 *            the row list
-	 * @param newPtg
-	 *            the new ptg
-	 * @param includeParenthesis
-	 *            the include parenthesis
+	 * @return list of first and last row of each run, in row order.
 	 */
-	private static void buildDynamicRowForRefPtgBase(final Object ptg,
-			final byte originalOperandClass, final List<SerialRow> rowList,
-			final Ptg[] newPtg, final boolean includeParenthesis) {
-		RefPtgBase refPtg = (RefPtgBase) ptg;
-		int unitSize = 1;
-		if (includeParenthesis) {
-			unitSize = 2;
+	private static List<int[]> getRowRuns(final Object ptg,
+			final List<SerialRow> rowList) {
+		int height = 1;
+		if (ptg instanceof AreaPtgBase) {
+			AreaPtgBase areaPtg = (AreaPtgBase) ptg;
+			height = areaPtg.getLastRow() - areaPtg.getFirstRow() + 1;
 		}
-		for (int i = 0; i < rowList.size(); i++) {
-			Row row = rowList.get(i).getRow();
+		int[] rowNums = new int[rowList.size()];
+		for (int i = 0; i < rowNums.length; i++) {
+			rowNums[i] = rowList.get(i).getRow().getRowNum();
+		}
+		Arrays.sort(rowNums);
+		List<int[]> runs = new ArrayList<>();
+		int[] run = null;
+		for (int i = 0; i < rowNums.length; i++) {
+			if ((i > 0) && (rowNums[i] == rowNums[i - 1])) {
+				continue;
+			}
+			if ((run != null) && (rowNums[i] == run[1] + 1)) {
+				run[1] = rowNums[i] + height - 1;
+			} else {
+				run = new int[] { rowNums[i], rowNums[i] + height - 1 };
+				runs.add(run);
+			}
+		}
+		return runs;
+	}
+
+	/**
+	 * Build ptg covering the rows of run. Single row of reference stays a
+	 * reference, otherwise an area.
+	 *
+	 * @param ptg
+	 *            the origin ptg
+	 * @param originalOperandClass
+	 *            the original operand class
+	 * @param firstRow
+	 *            first row of run
+	 * @param lastRow
+	 *            last row of run
+	 * @return the ptg
+	 */
+	private static Ptg buildPtgForRowRun(final Object ptg,
+			final byte originalOperandClass, final int firstRow,
+			final int lastRow) {
+		if (ptg instanceof RefPtgBase) {
+			RefPtgBase refPtg = (RefPtgBase) ptg;
+			if (firstRow == lastRow) {
+				return buildRefPtg(refPtg, originalOperandClass, firstRow);
+			}
+			AreaPtgBase newPtg;
 			if (refPtg instanceof Ref3DPxg) {
 				Ref3DPxg ref3dPxg = (Ref3DPxg) refPtg;
-				Ref3DPxg new3dpxg = new Ref3DPxg(
+				Area3DPxg new3dpxg = new Area3DPxg(
 						ref3dPxg.getExternalWorkbookNumber(),
 						new SheetIdentifier(null,
 								new NameIdentifier(ref3dPxg.getSheetName(),
 										false)),
-						new CellReference(row.getRowNum(),
-								ref3dPxg.getColumn()));
+						new AreaReference(
+								new CellReference(firstRow,
+										refPtg.getColumn()),
+								new CellReference(lastRow,
+										refPtg.getColumn())));
 				new3dpxg.setClass(originalOperandClass);
-				new3dpxg.setColRelative(ref3dPxg.isColRelative());
-				new3dpxg.setRowRelative(ref3dPxg.isRowRelative());
 				new3dpxg.setLastSheetName(ref3dPxg.getLastSheetName());
-				newPtg[i * unitSize] = new3dpxg;
+				newPtg = new3dpxg;
 			} else {
-				RefPtgBase refPtgBase = refPtg;
-				newPtg[i * unitSize] = new RefPtg(row.getRowNum(),
-						refPtgBase.getColumn(), refPtgBase.isRowRelative(),
-						refPtgBase.isColRelative());
-			}
-			if ((unitSize == 2) && (i < (rowList.size() - 1))) {
-				newPtg[i * unitSize + 1] = ParenthesisPtg.instance;
+				newPtg = new AreaPtg(firstRow, lastRow, refPtg.getColumn(),
+						refPtg.getColumn(), true, true, true, true);
 			}
+			newPtg.setFirstRowRelative(refPtg.isRowRelative());
+			newPtg.setLastRowRelative(refPtg.isRowRelative());
+			newPtg.setFirstColRelative(refPtg.isColRelative());
+			newPtg.setLastColRelative(refPtg.isColRelative());
+			return newPtg;
 		}
+		AreaPtgBase areaPtg = (AreaPtgBase) ptg;
+		if (ptg instanceof Area3DPxg) {
+			Area3DPxg area3dPxg = (Area3DPxg) ptg;
+			Area3DPxg new3dpxg = new Area3DPxg(
+					area3dPxg.getExternalWorkbookNumber(),
+					new SheetIdentifier(null,
+							new NameIdentifier(area3dPxg.getSheetName(),
+									false)),
+					area3dPxg.format2DRefAsString());
+			new3dpxg.setClass(originalOperandClass);
+			new3dpxg.setFirstColRelative(area3dPxg.isFirstColRelative());
+			new3dpxg.setLastColRelative(area3dPxg.isLastColRelative());
+			new3dpxg.setFirstRow(firstRow);
+			new3dpxg.setLastRow(lastRow);
+			new3dpxg.setFirstRowRelative(area3dPxg.isFirstRowRelative());
+			new3dpxg.setLastRowRelative(area3dPxg.isLastRowRelative());
+			new3dpxg.setLastSheetName(area3dPxg.getLastSheetName());
+			return new3dpxg;
+		}
+		return new AreaPtg(firstRow, lastRow, areaPtg.getFirstColumn(),
+				areaPtg.getLastColumn(), areaPtg.isFirstRowRelative(),
+				areaPtg.isLastRowRelative(), areaPtg.isFirstColRelative(),
+				areaPtg.isLastColRelative());
 	}
 
 	/**
-	 * Builds the dynamic row for area ptg base.
+	 * Build reference ptg moved to the row.
+	 *
+	 * @param refPtg
+	 *            the origin ptg
+	 * @param originalOperandClass
+	 *            the original operand class
+	 * @param rowNum
+	 *            the row
+	 * @return the ptg
+	 */
+	private static Ptg buildRefPtg(final RefPtgBase refPtg,
+			final byte originalOperandClass, final int rowNum) {
+		if (refPtg instanceof Ref3DPxg) {
+			Ref3DPxg ref3dPxg = (Ref3DPxg) refPtg;
+			Ref3DPxg new3dpxg = new Ref3DPxg(
+					ref3dPxg.getExternalWorkbookNumber(),
+					new SheetIdentifier(null,
+							new NameIdentifier(ref3dPxg.getSheetName(),
+									false)),
+					new CellReference(rowNum, ref3dPxg.getColumn()));
+			new3dpxg.setClass(originalOperandClass);
+			new3dpxg.setColRelative(ref3dPxg.isColRelative());
+			new3dpxg.setRowRelative(ref3dPxg.isRowRelative());
+			new3dpxg.setLastSheetName(ref3dPxg.getLastSheetName());
+			return new3dpxg;
+		}
+		return new RefPtg(rowNum, refPtg.getColumn(), refPtg.isRowRelative(),
+				refPtg.isColRelative());
+	}
+
+	/**
+	 * Builds the dynamic row for ref ptg base.
 	 *
 	 * @param ptg
 	 *            the ptg
@@ -449,50 +566,13 @@ public final class ShiftFormulaUtility {
 	 * @param newPtg
 	 *            the new ptg
 	 */
-	private static void buildDynamicRowForAreaPtgBase(final Object ptg,
+	private static void buildDynamicRowForRefPtgBase(final Object ptg,
 			final byte originalOperandClass, final List<SerialRow> rowList,
 			final Ptg[] newPtg) {
-		AreaPtgBase areaPtg = (AreaPtgBase) ptg;
-		int originFirstRow = areaPtg.getFirstRow();
-		int originLastRow = areaPtg.getLastRow();
-		int unitSize = 2;
+		RefPtgBase refPtg = (RefPtgBase) ptg;
 		for (int i = 0; i < rowList.size(); i++) {
-			Row row = rowList.get(i).getRow();
-			int shiftRow = row.getRowNum() - originFirstRow;
-			if (ptg instanceof Area3DPxg) {
-				Area3DPxg area3dPxg = (Area3DPxg) ptg;
-				Area3DPxg new3dpxg = new Area3DPxg(
-						area3dPxg.getExternalWorkbookNumber(),
-						new SheetIdentifier(null,
-								new NameIdentifier(area3dPxg.getSheetName(),
-										false)),
-						area3dPxg.format2DRefAsString());
-				new3dpxg.setClass(originalOperandClass);
-				new3dpxg.setFirstColRelative(
-						area3dPxg.isFirstColRelative());
-				new3dpxg.setLastColRelative(area3dPxg.isLastColRelative());
-				new3dpxg.setFirstRow(originFirstRow + shiftRow);
-				new3dpxg.setLastRow(originLastRow + shiftRow);
-				new3dpxg.setFirstRowRelative(
-						area3dPxg.isFirstRowRelative());
-				new3dpxg.setLastRowRelative(area3dPxg.isLastRowRelative());
-				new3dpxg.setLastSheetName(area3dPxg.getLastSheetName());
-				newPtg[i * unitSize] = new3dpxg;
-			} else {
-				AreaPtgBase areaPtgBase = (AreaPtgBase) ptg;
-				newPtg[i * unitSize] = new AreaPtg(
-						originFirstRow + shiftRow, originLastRow + shiftRow,
-						areaPtgBase.getFirstColumn(),
-						areaPtgBase.getLastColumn(),
-						areaPtgBase.isFirstRowRelative(),
-						areaPtgBase.isLastRowRelative(),
-						areaPtgBase.isFirstColRelative(),
-						areaPtgBase.isLastColRelative());
-
-			}
-			if (i < (rowList.size() - 1)) {
-				newPtg[i * unitSize + 1] = ParenthesisPtg.instance;
-			}
+			newPtg[i] = buildRefPtg(refPtg, originalOperandClass,
+					rowList.get(i).getRow().getRowNum());
 		}
 	}
 
@@ -0,0 +1,58 @@
+/**
+ * 
+ */
+package org.tiefaces.common;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+/**
+ * @author Jason Jiang
+ *
+ */
+public class PartialUpdateCollectorTest {
+
+	/**
+	 * Duplicated ids are updated once.
+	 */
+	@Test
+	public final void testDuplicatedIds() {
+		PartialUpdateCollector collector = new PartialUpdateCollector(2);
+		collector.add(null, "form:websheettab");
+		collector.add(null, "form:websheettab");
+		collector.add("tbl", "tbl:0:cocalc1");
+		collector.add("tbl", "tbl:0:cocalc1");
+		assertEquals(Arrays.asList("form:websheettab", "tbl:0:cocalc1"),
+				collector.getUpdateIds());
+	}
+
+	/**
+	 * Cells over threshold collapse into table.
+	 */
+	@Test
+	public final void testCollapseToTable() {
+		PartialUpdateCollector collector = new PartialUpdateCollector(2);
+		collector.add("tbl", "tbl:0:cocalc1");
+		collector.add("tbl", "tbl:1:cocalc1");
+		collector.add("tbl", "tbl:2:cocalc1");
+		collector.add("tbl2", "tbl2:0:cocalc1");
+		assertEquals(Arrays.asList("tbl", "tbl2:0:cocalc1"),
+				collector.getUpdateIds());
+	}
+
+	/**
+	 * Cells inside updated component are skipped.
+	 */
+	@Test
+	public final void testCoveredIds() {
+		PartialUpdateCollector collector = new PartialUpdateCollector(2);
+		collector.add("form:websheettab:tbl", "form:websheettab:tbl:0:cocalc1");
+		collector.add(null, "form:websheettab");
+		assertEquals(Arrays.asList("form:websheettab"),
+				collector.getUpdateIds());
+	}
+
+}
@@ -3,31 +3,40 @@
  */
 package org.tiefaces.components.websheet;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.InputStream;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.zip.Deflater;
 
 import org.apache.poi.ss.usermodel.Comment;
 import org.apache.poi.ss.usermodel.Sheet;
 import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.ss.usermodel.WorkbookFactory;
 import org.junit.Before;
 import org.junit.BeforeClass;
 import org.junit.Test;
 import org.tiefaces.common.TieConstants;
 import org.tiefaces.components.websheet.chart.ChartData;
+import org.tiefaces.components.websheet.chart.ChartImage;
 import org.tiefaces.components.websheet.chart.ChartType;
+import org.tiefaces.components.websheet.dataobjects.FacesRow;
 import org.tiefaces.components.websheet.utility.CellUtility;
-import org.tiefaces.components.websheet.utility.ConfigurationUtility;
-import org.tiefaces.components.websheet.utility.SaveAttrsUtility;
 import org.tiefaces.datademo.Department;
 import org.tiefaces.datademo.WebSheetDataDemo;
 import org.tiefaces.common.Item;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 /**
  * @author Jason Jiang
@@ -35,6 +44,10 @@ import static org.junit.Assert.assertTrue;
  */
 public class TieWebSheetBeanTest {
 
+	/** first bytes of every png file. */
+	private static final byte[] PNG_SIGNATURE = { (byte) 0x89, 'P', 'N',
+			'G', '\r', '\n', 0x1a, '\n' };
+
 	/**
 	 * @throws Exception
 	 *             java.lang.Exception.
@@ -130,8 +143,8 @@ public class TieWebSheetBeanTest {
                 assertEquals("2687.5", CellUtility.getCellValueWithoutFormat(sheet.getRow(33).getCell(6)));
                 assertEquals("10957.5", CellUtility.getCellValueWithoutFormat(sheet.getRow(34).getCell(6)));
                 assertEquals("31617.5", CellUtility.getCellValueWithoutFormat(sheet.getRow(35).getCell(6)));
-                assertEquals("F.departments:E.department.0:E.employee.0", ConfigurationUtility.getFullNameFromRow(sheet.getRow(7)));
-                assertEquals("$0=employee.name,$1=employee.birthDate,$2=employee.sex,$3=employee.worktime,$4=employee.payment,$5=employee.bonus,",SaveAttrsUtility.getSaveAttrListFromRow(sheet.getRow(7)));                
+                assertEquals("F.departments:E.department.0:E.employee.0", bean.getRowMetaStore().getFullName(sheet.getRow(7)));
+                assertEquals("$0=employee.name,$1=employee.birthDate,$2=employee.sex,$3=employee.worktime,$4=employee.payment,$5=employee.bonus,",bean.getRowMetaStore().getSaveAttrs(sheet.getRow(7)));                
                 assertEquals("10800.75", CellUtility.getCellValueWithoutFormat(sheet.getRow(12).getCell(7)));
                 assertEquals("1900.15", CellUtility.getCellValueWithoutFormat(sheet.getRow(22).getCell(7)));
 
@@ -162,6 +175,24 @@ public class TieWebSheetBeanTest {
 
     }
 	
+	/**
+	 * Assert every chart of the bean is rendered as png.
+	 *
+	 * @param bean
+	 *            the bean
+	 */
+	private void assertChartImages(final TieWebSheetBean bean) {
+		for (String chartId : bean.getCharsData().getChartDataMap()
+				.keySet()) {
+			ChartImage image = bean.getChartHelper().getChartImage(chartId);
+			assertNotNull(chartId, image);
+			byte[] png = image.getPng();
+			assertTrue(chartId, png.length > PNG_SIGNATURE.length);
+			assertArrayEquals(chartId, PNG_SIGNATURE,
+					Arrays.copyOf(png, PNG_SIGNATURE.length));
+		}
+	}
+
 	/**
 	 * Test charts line. .
 	 */
@@ -173,7 +204,8 @@ public class TieWebSheetBeanTest {
 				this.getClass().getClassLoader().getResourceAsStream(
 						"resources/sheet/linecharts1.xlsx");
 		assertEquals(1, bean.loadWebSheet(stream));
-		assertTrue(bean.getCharsData().getChartsMap().size() > 0);
+		assertTrue(bean.getCharsData().getChartDataMap().size() > 0);
+		assertChartImages(bean);
 
 		Map<String, ChartData> map = bean.getCharsData().getChartDataMap();
 		for (Map.Entry<String, ChartData> entry : map.entrySet()) {
@@ -194,7 +226,8 @@ public class TieWebSheetBeanTest {
 				this.getClass().getClassLoader().getResourceAsStream(
 						"resources/sheet/chartareas.xlsx");
 		assertEquals(1, bean.loadWebSheet(stream));
-		assertTrue(bean.getCharsData().getChartsMap().size() > 0);
+		assertTrue(bean.getCharsData().getChartDataMap().size() > 0);
+		assertChartImages(bean);
 		Map<String, ChartData> map = bean.getCharsData().getChartDataMap();
 		for (Map.Entry<String, ChartData> entry : map.entrySet()) {
 			String type = entry.getValue().getType().toString();
@@ -213,7 +246,8 @@ public class TieWebSheetBeanTest {
 				this.getClass().getClassLoader().getResourceAsStream(
 						"resources/sheet/chartbars2d.xlsx");
 		assertEquals(1, bean.loadWebSheet(stream));
-		assertTrue(bean.getCharsData().getChartsMap().size() > 0);
+		assertTrue(bean.getCharsData().getChartDataMap().size() > 0);
+		assertChartImages(bean);
 		Map<String, ChartData> map = bean.getCharsData().getChartDataMap();
 		for (Map.Entry<String, ChartData> entry : map.entrySet()) {
 			String type = entry.getValue().getType().toString();
@@ -232,7 +266,8 @@ public class TieWebSheetBeanTest {
 				this.getClass().getClassLoader().getResourceAsStream(
 						"resources/sheet/chartbars3d.xlsx");
 		assertEquals(1, bean.loadWebSheet(stream));
-		assertTrue(bean.getCharsData().getChartsMap().size() > 0);
+		assertTrue(bean.getCharsData().getChartDataMap().size() > 0);
+		assertChartImages(bean);
 		Map<String, ChartData> map = bean.getCharsData().getChartDataMap();
 		for (Map.Entry<String, ChartData> entry : map.entrySet()) {
 			String type = entry.getValue().getType().toString();
@@ -251,7 +286,8 @@ public class TieWebSheetBeanTest {
 				this.getClass().getClassLoader().getResourceAsStream(
 						"resources/sheet/chartcolumns2d.xlsx");
 		assertEquals(1, bean.loadWebSheet(stream));
-		assertTrue(bean.getCharsData().getChartsMap().size() > 0);
+		assertTrue(bean.getCharsData().getChartDataMap().size() > 0);
+		assertChartImages(bean);
 		Map<String, ChartData> map = bean.getCharsData().getChartDataMap();
 		for (Map.Entry<String, ChartData> entry : map.entrySet()) {
 			String type = entry.getValue().getType().toString();
@@ -270,7 +306,8 @@ public class TieWebSheetBeanTest {
 				this.getClass().getClassLoader().getResourceAsStream(
 						"resources/sheet/chartcolumns3d.xlsx");
 		assertEquals(1, bean.loadWebSheet(stream));
-		assertTrue(bean.getCharsData().getChartsMap().size() > 0);
+		assertTrue(bean.getCharsData().getChartDataMap().size() > 0);
+		assertChartImages(bean);
 		Map<String, ChartData> map = bean.getCharsData().getChartDataMap();
 		for (Map.Entry<String, ChartData> entry : map.entrySet()) {
 			String type = entry.getValue().getType().toString();
@@ -289,7 +326,8 @@ public class TieWebSheetBeanTest {
 				this.getClass().getClassLoader().getResourceAsStream(
 						"resources/sheet/chartpie2d.xlsx");
 		assertEquals(1, bean.loadWebSheet(stream));
-		assertTrue(bean.getCharsData().getChartsMap().size() > 0);
+		assertTrue(bean.getCharsData().getChartDataMap().size() > 0);
+		assertChartImages(bean);
 		Map<String, ChartData> map = bean.getCharsData().getChartDataMap();
 		for (Map.Entry<String, ChartData> entry : map.entrySet()) {
 
@@ -308,7 +346,8 @@ public class TieWebSheetBeanTest {
 				this.getClass().getClassLoader().getResourceAsStream(
 						"resources/sheet/chartpie3d.xlsx");
 		assertEquals(1, bean.loadWebSheet(stream));
-		assertTrue(bean.getCharsData().getChartsMap().size() > 0);
+		assertTrue(bean.getCharsData().getChartDataMap().size() > 0);
+		assertChartImages(bean);
 
 		Map<String, ChartData> map = bean.getCharsData().getChartDataMap();
 		for (Map.Entry<String, ChartData> entry : map.entrySet()) {
@@ -340,6 +379,33 @@ public class TieWebSheetBeanTest {
 	 */
 	@Test
 	public final void testDoExport() throws Exception {
+		TieWebSheetBean bean = new TieWebSheetBean();
+		bean.init();
+		InputStream stream =
+				this.getClass().getClassLoader().getResourceAsStream(
+						"resources/sheet/datacommentdemo.xlsx");
+		bean.loadWebSheet(stream);
+		bean.doExport();
+		try (InputStream in = bean.getExportFile().getStream();
+				Workbook wb = WorkbookFactory.create(in)) {
+			assertEquals(bean.getWb().getSheetName(0), wb.getSheetName(0));
+		}
+
+		bean.setExportDeflateLevel(Deflater.BEST_SPEED);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		bean.exportTo(out);
+		try (Workbook wb = WorkbookFactory
+				.create(new ByteArrayInputStream(out.toByteArray()))) {
+			assertEquals(bean.getWb().getNumberOfSheets(),
+					wb.getNumberOfSheets());
+		}
+
+		try {
+			bean.setExportDeflateLevel(Deflater.BEST_COMPRESSION + 1);
+			fail("deflate level out of range should be rejected.");
+		} catch (IllegalArgumentException e) {
+			assertEquals(Deflater.BEST_SPEED, bean.getExportDeflateLevel());
+		}
 	}
 
 	/**
@@ -400,6 +466,95 @@ public class TieWebSheetBeanTest {
 		assertEquals(3, itemList.size());
 		bean.deleteRepeatRow(5);
         assertEquals(2, itemList.size());
+		Sheet sheet = bean.getWb().getSheetAt(0);
+		assertEquals("F.Sale Price Report:E.item.0",
+				bean.getRowMetaStore().getFullName(sheet.getRow(4)));
+		assertEquals("F.Sale Price Report:E.item.1",
+				bean.getRowMetaStore().getFullName(sheet.getRow(5)));
+		assertEquals("F.Sale Price Report",
+				bean.getRowMetaStore().getFullName(sheet.getRow(6)));
+
+	}
+
+	/**
+	 * Test method for
+	 * {@link org.tiefaces.components.websheet.TieWebSheetBean#addRepeatRows(java.util.Map)}
+	 * .
+	 */
+	@Test
+	public final void testAddAndDeleteRepeatRows() throws Exception {
+
+		TieWebSheetBean bean = new TieWebSheetBean();
+		bean.init();
+		InputStream stream =
+				this.getClass().getClassLoader().getResourceAsStream(
+						"resources/sheet/PRICELISTINPUTVALIDATION.xlsx");
+		List<Item> itemList = new ArrayList<Item>();
+		itemList.add(new Item());
+		itemList.add(new Item());
+		HashMap<String, Object> context = new HashMap<String, Object>();
+		context.put("items", itemList);
+		assertEquals(1, bean.loadWebSheet(stream, context));
+		Sheet sheet = bean.getWb().getSheetAt(0);
+		int lastRowNum = sheet.getLastRowNum();
+		int bodySize = bean.getBodyRows().size();
+		int top = bean.getCurrent().getCurrentTopRow();
+
+		// a position outside any each command rejects the whole batch.
+		Map<Integer, Integer> rowCounts = new HashMap<Integer, Integer>();
+		rowCounts.put(4, 2);
+		rowCounts.put(0, 1);
+		bean.addRepeatRows(rowCounts);
+		assertEquals(2, itemList.size());
+		assertEquals(lastRowNum, sheet.getLastRowNum());
+		assertEquals(bodySize, bean.getBodyRows().size());
+
+		rowCounts.clear();
+		rowCounts.put(4, 2);
+		rowCounts.put(5, 3);
+		bean.addRepeatRows(rowCounts);
+		assertEquals(7, itemList.size());
+		assertEquals(lastRowNum + 5, sheet.getLastRowNum());
+		assertEquals(bodySize + 5, bean.getBodyRows().size());
+		for (int i = 0; i < 7; i++) {
+			assertEquals("F.Sale Price Report:E.item." + i, bean
+					.getRowMetaStore().getFullName(sheet.getRow(4 + i)));
+		}
+		assertEquals("F.Sale Price Report",
+				bean.getRowMetaStore().getFullName(sheet.getRow(11)));
+
+		// rows kept by the delete keep their materialized body rows.
+		FacesRow[] kept = new FacesRow[] {
+				bean.getBodyRows().get(4 - top),
+				bean.getBodyRows().get(6 - top),
+				bean.getBodyRows().get(7 - top),
+				bean.getBodyRows().get(8 - top) };
+		bean.deleteRepeatRows(Arrays.asList(5, 9, 10));
+		assertEquals(4, itemList.size());
+		assertEquals(lastRowNum + 2, sheet.getLastRowNum());
+		assertEquals(bodySize + 2, bean.getBodyRows().size());
+		for (int i = 0; i < 4; i++) {
+			assertEquals("F.Sale Price Report:E.item." + i, bean
+					.getRowMetaStore().getFullName(sheet.getRow(4 + i)));
+		}
+		assertEquals("F.Sale Price Report",
+				bean.getRowMetaStore().getFullName(sheet.getRow(8)));
+		for (int i = 0; i < kept.length; i++) {
+			assertSame(kept[i], bean.getBodyRows().get(4 + i - top));
+			assertEquals(4 + i, kept[i].getRowIndex());
+		}
+
+		// deleting all the items is rejected before any of them is removed.
+		bean.deleteRepeatRows(Arrays.asList(4, 5, 6, 7));
+		assertEquals(4, itemList.size());
+		assertEquals(lastRowNum + 2, sheet.getLastRowNum());
+		assertEquals(bodySize + 2, bean.getBodyRows().size());
+		for (int i = 0; i < 4; i++) {
+			assertEquals("F.Sale Price Report:E.item." + i, bean
+					.getRowMetaStore().getFullName(sheet.getRow(4 + i)));
+		}
+		assertEquals("F.Sale Price Report",
+				bean.getRowMetaStore().getFullName(sheet.getRow(8)));
 
 	}
 
@@ -0,0 +1,70 @@
+/**
+ *
+ */
+package org.tiefaces.components.websheet.configuration;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+import org.tiefaces.components.websheet.utility.CommandUtility;
+
+/**
+ * @author Jason Jiang
+ *
+ */
+public class CellExpressionTemplateTest {
+
+	@Test
+	public final void testEvaluate() throws Exception {
+		ExpressionEngine engine = new ExpressionEngine();
+		Map<String, Object> context = new HashMap<>();
+		Integer amount = 12;
+		context.put("amount", amount);
+		context.put("name", "Tom");
+
+		CellExpressionTemplate template = CellExpressionTemplate
+				.compile("plain text", engine);
+		assertTrue(template.isConstant());
+		assertEquals("plain text", template.evaluate(context, engine));
+
+		template = CellExpressionTemplate.compile("${amount}", engine);
+		assertTrue(template.isSingleExpression());
+		assertSame(amount, template.evaluate(context, engine));
+
+		template = CellExpressionTemplate.compile("${missing}", engine);
+		assertNull(template.evaluate(context, engine));
+
+		template = CellExpressionTemplate.compile("Total: ${amount} $",
+				engine);
+		assertFalse(template.isSingleExpression());
+		assertEquals("Total: 12 $", template.evaluate(context, engine));
+
+		template = CellExpressionTemplate
+				.compile("${name}-${amount}${missing}", engine);
+		assertEquals("Tom-12", template.evaluate(context, engine));
+		context.put("name", "Ann");
+		assertEquals("Ann-12", template.evaluate(context, engine));
+		assertEquals(
+				CommandUtility.evaluate("${name}-${amount}", context, engine),
+				"Ann-12");
+	}
+
+	@Test
+	public final void testCompileReusesParsedExpressions() throws Exception {
+		ExpressionEngine engine = new ExpressionEngine();
+		ExpressionCache.clear();
+		CellExpressionTemplate.compile("${item.name} and ${item.id}", engine);
+		assertEquals(2, ExpressionCache.getMisses());
+		CellExpressionTemplate.compile("${item.name} and ${item.id}", engine);
+		assertEquals(2, ExpressionCache.getMisses());
+		assertEquals(2, ExpressionCache.getHits());
+	}
+
+}
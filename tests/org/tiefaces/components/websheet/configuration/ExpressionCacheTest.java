@@ -0,0 +1,85 @@
+/**
+ *
+ */
+package org.tiefaces.components.websheet.configuration;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.commons.jexl2.Expression;
+import org.junit.Test;
+import org.tiefaces.common.TieConstants;
+
+/**
+ * @author Jason Jiang
+ *
+ */
+public class ExpressionCacheTest {
+
+	@Test
+	public final void testSharedAndBounded() throws Exception {
+		ExpressionCache.clear();
+		final ExpressionEngine engine = new ExpressionEngine();
+		Expression expression = engine.createExpression("a + 1");
+		assertEquals(1, ExpressionCache.getMisses());
+
+		final Expression[] otherThread = new Expression[1];
+		Thread thread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				otherThread[0] = engine.createExpression("a + 1");
+			}
+		});
+		thread.start();
+		thread.join();
+		assertSame(expression, otherThread[0]);
+		assertEquals(1, ExpressionCache.getHits());
+
+		Map<String, Object> context = new HashMap<>();
+		context.put("a", 2);
+		assertEquals(3, engine.evaluate("a + 1", context));
+		assertEquals(2, ExpressionCache.getHits());
+
+		for (int i = 0; i <= TieConstants.EXPRESSION_CACHE_MAX_ENTRIES; i++) {
+			engine.createExpression("a + " + i);
+		}
+		assertEquals(TieConstants.EXPRESSION_CACHE_MAX_ENTRIES,
+				ExpressionCache.size());
+		assertTrue(ExpressionCache.getEvictions() > 0);
+		ExpressionCache.clear();
+	}
+
+	/**
+	 * Evaluate an inner expression while outer expression is evaluating.
+	 */
+	public static class Helper {
+		private final ExpressionEngine engine;
+		private final Map<String, Object> context;
+
+		public Helper(final ExpressionEngine pengine,
+				final Map<String, Object> pcontext) {
+			this.engine = pengine;
+			this.context = pcontext;
+		}
+
+		public Object inner() {
+			return engine.evaluate("x", context);
+		}
+	}
+
+	@Test
+	public final void testNestedContext() throws Exception {
+		final ExpressionEngine engine = new ExpressionEngine();
+		final Map<String, Object> inner = new HashMap<>();
+		inner.put("x", 5);
+		Map<String, Object> outer = new HashMap<>();
+		outer.put("x", 1);
+		outer.put("helper", new Helper(engine, inner));
+		assertEquals(6, engine.evaluate("helper.inner() + x", outer));
+	}
+
+}
@@ -0,0 +1,160 @@
+/**
+ *
+ */
+package org.tiefaces.components.websheet.configuration;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * @author Jason Jiang
+ *
+ */
+public class ShiftMapIndexTest {
+
+	/** form name. */
+	private static final String FORM = "F.departments";
+
+	/**
+	 * Build form with 3 departments, each has 2 employees.
+	 *
+	 * @return index
+	 */
+	private ShiftMapIndex buildIndex() {
+		ShiftMapIndex index = new ShiftMapIndex();
+		index.put(FORM, new ConfigRangeAttrs(false));
+		for (int i = 0; i < 3; i++) {
+			String dept = FORM + ":E.department." + i;
+			index.put(dept, new ConfigRangeAttrs(false));
+			for (int j = 0; j < 2; j++) {
+				index.put(dept + ":E.employee." + j,
+						new ConfigRangeAttrs(false));
+			}
+		}
+		return index;
+	}
+
+	@Test
+	public final void testInsertRenumbers() {
+		ShiftMapIndex index = buildIndex();
+		assertEquals(10, index.size());
+		ShiftMapIndex.Node last = index
+				.getNode(FORM + ":E.department.2:E.employee.1");
+		ConfigRangeAttrs lastAttrs = last.getAttrs();
+
+		ConfigRangeAttrs inserted = new ConfigRangeAttrs(false);
+		index.insert(FORM + ":E.department.1", inserted);
+		assertEquals(11, index.size());
+		assertSame(inserted, index.get(FORM + ":E.department.1"));
+		assertEquals(FORM + ":E.department.3:E.employee.1",
+				last.getFullName());
+		assertSame(lastAttrs,
+				index.get(FORM + ":E.department.3:E.employee.1"));
+		assertNull(index.get(FORM + ":E.department.1:E.employee.0"));
+	}
+
+	@Test
+	public final void testPutReplaces() {
+		ShiftMapIndex index = buildIndex();
+		ShiftMapIndex.Node dept = index.getNode(FORM + ":E.department.1");
+		ConfigRangeAttrs replaced = new ConfigRangeAttrs(false);
+		assertSame(dept, index.put(FORM + ":E.department.1", replaced));
+		assertSame(replaced, dept.getAttrs());
+		assertEquals(10, index.size());
+		assertEquals(FORM + ":E.department.2",
+				index.getNode(FORM + ":E.department.2").getFullName());
+		assertEquals(2, dept.getDescendantAttrs().size());
+	}
+
+	@Test
+	public final void testManySiblings() {
+		ShiftMapIndex index = new ShiftMapIndex();
+		index.put(FORM, new ConfigRangeAttrs(false));
+		for (int i = 0; i < 1000; i++) {
+			index.put(FORM + ":E.department." + i,
+					new ConfigRangeAttrs(false));
+		}
+		ShiftMapIndex.Node last = index
+				.getNode(FORM + ":E.department.999");
+		// insert at front and remove from the middle, in any order.
+		for (int i = 0; i < 100; i++) {
+			index.insert(FORM + ":E.department.0",
+					new ConfigRangeAttrs(false));
+			index.remove(FORM + ":E.department." + (500 - i));
+		}
+		assertEquals(1001, index.size());
+		assertEquals(999, last.getIndex());
+		for (int i = 0; i < 1000; i += 37) {
+			assertEquals(i, index.getNode(FORM + ":E.department." + i)
+					.getIndex());
+		}
+		assertEquals(1000, index.fullNames().size() - 1);
+	}
+
+	@Test
+	public final void testRemoveRenumbers() {
+		ShiftMapIndex index = buildIndex();
+		ShiftMapIndex.Node emp = index
+				.getNode(FORM + ":E.department.2:E.employee.0");
+		index.remove(FORM + ":E.department.1");
+		assertEquals(7, index.size());
+		assertEquals(FORM + ":E.department.1:E.employee.0",
+				emp.getFullName());
+		assertNull(index.getNode(FORM + ":E.department.2"));
+
+		List<ShiftMapIndex.Node> ancestors = index.getAncestors(
+				emp.getFullName());
+		assertEquals(2, ancestors.size());
+		assertEquals(FORM, ancestors.get(0).getFullName());
+		assertTrue(ancestors.get(1).isAncestorOf(emp));
+		assertEquals(2,
+				index.getNode(FORM + ":E.department.1")
+						.getDescendantAttrs().size());
+	}
+
+	@Test
+	public final void testChildrenNotMatchedByPrefix() {
+		ShiftMapIndex index = new ShiftMapIndex();
+		index.put(FORM, new ConfigRangeAttrs(false));
+		for (int i = 0; i < 11; i++) {
+			index.put(FORM + ":E.department." + i,
+					new ConfigRangeAttrs(false));
+		}
+		index.put(FORM + ":E.department.10:E.employee.0",
+				new ConfigRangeAttrs(false));
+		assertEquals(0, index.getNode(FORM + ":E.department.1")
+				.getDescendantAttrs().size());
+		assertEquals(13, index.values().size());
+	}
+
+	@Test
+	public final void testSerialize() throws Exception {
+		ShiftMapIndex index = buildIndex();
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+			out.writeObject(index);
+		}
+		ShiftMapIndex restored;
+		try (ObjectInputStream in = new ObjectInputStream(
+				new ByteArrayInputStream(bytes.toByteArray()))) {
+			restored = (ShiftMapIndex) in.readObject();
+		}
+		ShiftMapIndex.Node emp = restored
+				.getNode(FORM + ":E.department.2:E.employee.1");
+		restored.remove(FORM + ":E.department.0");
+		assertEquals(FORM + ":E.department.1:E.employee.1",
+				emp.getFullName());
+		assertEquals(7, restored.size());
+	}
+
+}
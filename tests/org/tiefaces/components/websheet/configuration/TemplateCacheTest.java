@@ -0,0 +1,117 @@
+/**
+ *
+ */
+package org.tiefaces.components.websheet.configuration;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+import org.tiefaces.common.TieConstants;
+import org.tiefaces.components.websheet.TieWebSheetBean;
+import org.tiefaces.datademo.WebSheetDataDemo;
+
+/**
+ * @author Jason Jiang
+ *
+ */
+public class TemplateCacheTest {
+
+	/**
+	 * load template with data context.
+	 *
+	 * @return bean.
+	 */
+	private TieWebSheetBean loadBean() {
+		TieWebSheetBean bean = new TieWebSheetBean();
+		bean.init();
+		InputStream stream = this.getClass().getClassLoader()
+				.getResourceAsStream("resources/sheet/datacommentdemo.xlsx");
+		Map<String, Object> context = new HashMap<String, Object>();
+		context.put("departments", WebSheetDataDemo.createDepartments());
+		assertEquals(1, bean.loadWebSheet(stream, context));
+		return bean;
+	}
+
+	@Test
+	public final void testBuildKey() throws Exception {
+		byte[] content = { 1, 2, 3 };
+		String key = TemplateCache.buildKey(content, false);
+		assertEquals(key, TemplateCache.buildKey(new byte[] { 1, 2, 3 },
+				false));
+		assertTrue(!key.equals(TemplateCache.buildKey(content, true)));
+		assertNull(TemplateCache.get(null));
+	}
+
+	@Test
+	public final void testFileTemplateStore() throws Exception {
+		File dir = new File(System.getProperty("java.io.tmpdir"),
+				"tiefaces-store-test-" + System.nanoTime());
+		FileTemplateStore store = new FileTemplateStore(dir);
+		String key = TemplateCache.buildKey(new byte[] { 1, 2, 3 }, false);
+		assertNull(store.load(key));
+		store.save(key, new byte[] { 4, 5 });
+		// saving same key again keeps the content.
+		store.save(key, new byte[] { 6 });
+		assertArrayEquals(new byte[] { 4, 5 }, store.load(key));
+		for (File file : dir.listFiles()) {
+			assertTrue(file.delete());
+		}
+		assertTrue(dir.delete());
+	}
+
+	@Test
+	public final void testLoadFromCache() throws Exception {
+		TemplateCache.clear();
+		TieWebSheetBean first = loadBean();
+		assertEquals(1, TemplateCache.size());
+		TieWebSheetBean second = loadBean();
+		assertEquals(1, TemplateCache.size());
+
+		assertEquals(first.getSheetConfigMap().keySet(),
+				second.getSheetConfigMap().keySet());
+		for (String key : first.getSheetConfigMap().keySet()) {
+			SheetConfiguration config1 = first.getSheetConfigMap().get(key);
+			SheetConfiguration config2 = second.getSheetConfigMap()
+					.get(key);
+			assertNotNull(config2.getFormCommand());
+			assertEquals(config1.getBodyCellRange().getBottomRow(),
+					config2.getBodyCellRange().getBottomRow());
+			assertEquals(config1.getShiftMap().fullNames(),
+					config2.getShiftMap().fullNames());
+		}
+		assertEquals(first.getCellAttributesMap().getCellInputType(),
+				second.getCellAttributesMap().getCellInputType());
+		assertEquals(
+				first.getCellAttributesMap().getTemplateCommentMap(),
+				second.getCellAttributesMap().getTemplateCommentMap());
+		assertEquals(first.getWb().getNumberOfSheets(),
+				second.getWb().getNumberOfSheets());
+		assertEquals(first.getBodyRows().size(),
+				second.getBodyRows().size());
+	}
+
+	@Test
+	public final void testTotalBytes() throws Exception {
+		TemplateCache.clear();
+		assertEquals(0, TemplateCache.getTotalBytes());
+		loadBean();
+		assertEquals(1, TemplateCache.size());
+		long size = TemplateCache.getTotalBytes();
+		assertTrue(size > 0);
+		assertTrue(size <= TieConstants.TEMPLATE_CACHE_MAX_BYTES);
+		loadBean();
+		assertEquals(size, TemplateCache.getTotalBytes());
+		TemplateCache.clear();
+		assertEquals(0, TemplateCache.getTotalBytes());
+	}
+
+}
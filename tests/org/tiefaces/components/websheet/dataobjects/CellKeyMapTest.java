@@ -0,0 +1,161 @@
+/**
+ *
+ */
+package org.tiefaces.components.websheet.dataobjects;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+import org.tiefaces.common.TieConstants;
+
+/**
+ * @author Jason Jiang
+ *
+ */
+public class CellKeyMapTest {
+
+	@Test
+	public final void testCellKey() {
+		long key = CellKey.of(3, 1048575, 16383);
+		assertEquals(3, CellKey.getSheetId(key));
+		assertEquals(1048575, CellKey.getRow(key));
+		assertEquals(16383, CellKey.getCol(key));
+		assertArrayEquals(new int[] { 12, 5 },
+				CellKey.parsePosition("Sheet!1!$5$12"));
+		assertEquals("Sheet!1", CellKey.parseSheetName("Sheet!1!$5$12"));
+		assertNull(CellKey.parsePosition("Sheet1!A1"));
+	}
+
+	@Test
+	public final void testPutAndGet() {
+		CellKeyMap<String> map = new CellKeyMap<>();
+		for (int row = 0; row < 200; row++) {
+			for (int col = 0; col < 20; col++) {
+				map.put(CellKey.of(1, row, col), row + ":" + col);
+			}
+		}
+		assertEquals(4000, map.size());
+		assertEquals("150:7", map.get(CellKey.of(1, 150, 7)));
+		assertNull(map.get(CellKey.of(2, 150, 7)));
+		assertEquals("150:7", map.put(CellKey.of(1, 150, 7), "x"));
+		assertEquals(4000, map.size());
+		assertEquals("x", map.get(CellKey.of(1, 150, 7)));
+		// removed keys don't break the probe sequence of others.
+		for (int row = 1; row < 200; row += 2) {
+			for (int col = 0; col < 20; col++) {
+				assertEquals(row + ":" + col,
+						map.remove(CellKey.of(1, row, col)));
+			}
+		}
+		assertEquals(2000, map.size());
+		assertEquals(2000, map.keys().length);
+		assertNull(map.get(CellKey.of(1, 151, 7)));
+		assertEquals("100:7", map.get(CellKey.of(1, 100, 7)));
+		assertNull(map.remove(CellKey.of(1, 151, 7)));
+		map.clear();
+		assertEquals(0, map.size());
+		assertNull(map.get(CellKey.of(1, 150, 7)));
+	}
+
+	@Test
+	public final void testCellAttributesMapEntry() {
+		Map<String, Map<String, String>> commentMap = new HashMap<>();
+		Map<String, String> inputType = new HashMap<>();
+		Map<String, List<CellFormAttributes>> validate = new HashMap<>();
+		CellAttributesMap attributesMap = new CellAttributesMap(commentMap,
+				inputType, new HashMap<String, List<CellFormAttributes>>(),
+				new HashMap<String, Map<String, String>>(),
+				new HashMap<String, String>(), validate);
+		assertNull(attributesMap.getCellEntry("Sheet1", 2, 3));
+
+		attributesMap.getCellInputType().put("Sheet1!$3$2", "dropdown");
+		List<CellFormAttributes> rules = new ArrayList<>();
+		attributesMap.getCellValidateAttributes().put("Sheet1!$3$2", rules);
+		assertEquals("dropdown",
+				attributesMap.getCellEntry("Sheet1", 2, 3).getInputType());
+		assertSame(rules, attributesMap.getCellEntry("Sheet1", 2, 3)
+				.getValidateAttributes());
+		assertNull(attributesMap.getCellEntry("Sheet2", 2, 3));
+
+		// index follows the maps.
+		attributesMap.getCellInputType().put("Sheet2!$3$2", "calendar");
+		assertEquals("calendar",
+				attributesMap.getCellEntry("Sheet2", 2, 3).getInputType());
+		// overwrite and remove plus add keep the size.
+		attributesMap.getCellInputType().put("Sheet2!$3$2", "textarea");
+		assertEquals("textarea",
+				attributesMap.getCellEntry("Sheet2", 2, 3).getInputType());
+		attributesMap.getCellInputType().remove("Sheet2!$3$2");
+		attributesMap.getCellInputType().put("Sheet2!$4$2", "calendar");
+		assertNull(attributesMap.getCellEntry("Sheet2", 2, 3));
+		assertEquals("calendar",
+				attributesMap.getCellEntry("Sheet2", 2, 4).getInputType());
+		attributesMap.getCellInputType().keySet().remove("Sheet2!$4$2");
+		assertNull(attributesMap.getCellEntry("Sheet2", 2, 4));
+		// normal comment added to existing comment map.
+		attributesMap.getTemplateCommentMap().put(
+				TieConstants.NORMAL_COMMENT_KEY_IN_MAP,
+				new HashMap<String, String>());
+		attributesMap.getTemplateCommentMap()
+				.get(TieConstants.NORMAL_COMMENT_KEY_IN_MAP)
+				.put("Sheet1!$3$2", "comment");
+		assertEquals("comment", attributesMap.getCellEntry("Sheet1", 2, 3)
+				.getNormalComment());
+		attributesMap.clear();
+		assertNull(attributesMap.getCellEntry("Sheet2", 2, 3));
+	}
+
+	@Test
+	public final void testCellAttributesMapStorage() throws Exception {
+		CellAttributesMap attributesMap = new CellAttributesMap();
+		attributesMap.getOrAddCellEntry("Sheet1", 2, 3)
+				.setInputType("calendar");
+		attributesMap.getOrAddCellEntry("Sheet1", 2, 3)
+				.setDatePattern("yyyy/MM/dd");
+		attributesMap.putComment("Sheet1", 4, 0,
+				TieConstants.NORMAL_COMMENT_KEY_IN_MAP, "comment");
+		attributesMap.putComment("Sheet1", 4, 0, "$init", "$init{a.b}");
+		assertEquals("calendar",
+				attributesMap.getCellInputType().get("Sheet1!$3$2"));
+		assertEquals(1, attributesMap.getCellInputType().size());
+		assertEquals("$init{a.b}", attributesMap.getTemplateCommentMap()
+				.get("$init").get("Sheet1!$0$4"));
+		assertEquals(2, attributesMap.getTemplateCommentMap().size());
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+			out.writeObject(attributesMap);
+		}
+		CellAttributesMap restored;
+		try (ObjectInputStream in = new ObjectInputStream(
+				new ByteArrayInputStream(bytes.toByteArray()))) {
+			restored = (CellAttributesMap) in.readObject();
+		}
+		assertEquals(attributesMap.getCellDatePattern(),
+				restored.getCellDatePattern());
+		assertEquals(attributesMap.getTemplateCommentMap(),
+				restored.getTemplateCommentMap());
+
+		CellAttributesMap target = new CellAttributesMap();
+		target.getOrAddCellEntry("Sheet0", 1, 1).setInputType("textarea");
+		target.putAll(restored);
+		assertEquals("comment",
+				target.getCellEntry("Sheet1", 4, 0).getNormalComment());
+		assertEquals("textarea",
+				target.getCellEntry("Sheet0", 1, 1).getInputType());
+		assertEquals(2, target.getCellInputType().size());
+	}
+
+}
@@ -6,15 +6,22 @@ package org.tiefaces.components.websheet.dataobjects;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.Sheet;
 import org.junit.Test;
+import com.google.gson.Gson;
 import org.tiefaces.common.Item;
 import org.tiefaces.components.websheet.TieWebSheetBean;
+import org.tiefaces.components.websheet.chart.ChartData;
+import org.tiefaces.components.websheet.chart.ChartImage;
 
 /**
  * @author Jason Jiang
@@ -113,11 +120,136 @@ public class CellMapTest {
 				this.getClass().getClassLoader().getResourceAsStream(
 						"resources/sheet/linecharts1.xlsx");
 		assertEquals(1, bean.loadWebSheet(stream));
+		assertTrue(bean.getCharsData().getChartImageMap().isEmpty());
 		String chartViewId = (String) bean.getCellsMap().get("7:0:chart");
 		assertFalse(chartViewId.isEmpty());
+		// rendered when displayed, and reused while data not changed.
+		assertEquals(1, bean.getCharsData().getChartImageMap().size());
+		ChartImage image = bean.getCharsData().getChartImageMap().values()
+				.iterator().next();
+		assertTrue(chartViewId.endsWith(image.getKey()));
+		assertEquals((byte) 0x89, image.getPng()[0]);
+		assertEquals('P', image.getPng()[1]);
+		assertEquals(chartViewId, bean.getCellsMap().get("7:0:chart"));
+		assertSame(image, bean.getCharsData().getChartImageMap().values()
+				.iterator().next());
 
 	}
 
+	@Test
+	public final void testGetChartAfterCellChanged() throws Exception {
+
+		TieWebSheetBean bean = new TieWebSheetBean();
+		bean.init();
+		InputStream stream =
+				this.getClass().getClassLoader().getResourceAsStream(
+						"resources/sheet/linecharts1.xlsx");
+		assertEquals(1, bean.loadWebSheet(stream));
+		String chartViewId = (String) bean.getCellsMap().get("7:0:chart");
+		String chartId = bean.getCharsData().getChartImageMap().keySet()
+				.iterator().next();
+		ChartImage image = bean.getCharsData().getChartImageMap()
+				.get(chartId);
+
+		// cell not read by chart
+		Cell other = bean.getWb().getSheetAt(0).createRow(200).createCell(50);
+		other.setCellValue(1);
+		bean.getCellHelper().reCalcDependents(other);
+		assertTrue(bean.getCharsData().getDirtyChartSet().isEmpty());
+
+		// value of first series
+		ChartData chartData = bean.getCharsData().getChartDataMap()
+				.get(chartId);
+		ParsedCell valueCell = chartData.getSeriesList().get(0)
+				.getValueList().get(0);
+		Cell cell = bean.getWb().getSheet(valueCell.getSheetName())
+				.getRow(valueCell.getRow()).getCell(valueCell.getCol());
+		cell.setCellValue(cell.getNumericCellValue() + 1000);
+		bean.getCellHelper().reCalcDependents(cell);
+		assertTrue(bean.getCharsData().getDirtyChartSet().contains(chartId));
+
+		String newViewId = (String) bean.getCellsMap().get("7:0:chart");
+		assertFalse(chartViewId.equals(newViewId));
+		assertFalse(image == bean.getCharsData().getChartImageMap()
+				.get(chartId));
+		assertFalse(bean.getCharsData().getDirtyChartSet().contains(chartId));
+	}
+
+	@Test
+	public final void testGetChartJson() throws Exception {
+
+		TieWebSheetBean bean = new TieWebSheetBean();
+		bean.init();
+		bean.setClientSideCharts(true);
+		InputStream stream =
+				this.getClass().getClassLoader().getResourceAsStream(
+						"resources/sheet/linecharts1.xlsx");
+		assertEquals(1, bean.loadWebSheet(stream));
+		String json = (String) bean.getCellsMap().get("7:0:chartjson");
+		@SuppressWarnings("unchecked")
+		Map<String, Object> chart = new Gson().fromJson(json, Map.class);
+		assertTrue(((String) chart.get("type")).startsWith("line"));
+		List<?> categories = (List<?>) chart.get("categories");
+		List<?> seriesList = (List<?>) chart.get("series");
+		assertFalse(seriesList.isEmpty());
+		Map<?, ?> series = (Map<?, ?>) seriesList.get(0);
+		assertEquals(categories.size(), ((List<?>) series.get("values"))
+				.size());
+		assertTrue(((String) series.get("color")).startsWith("#"));
+		// nothing rendered on server
+		assertTrue(bean.getCharsData().getChartImageMap().isEmpty());
+		assertNull(bean.getCellsMap().get("0:0:chartjson"));
+	}
+
+	@Test
+	public final void testShiftChartRows() throws Exception {
+
+		TieWebSheetBean bean = new TieWebSheetBean();
+		bean.init();
+		InputStream stream =
+				this.getClass().getClassLoader().getResourceAsStream(
+						"resources/sheet/linecharts1.xlsx");
+		assertEquals(1, bean.loadWebSheet(stream));
+		Sheet sheet = bean.getWb().getSheetAt(0);
+		String chartId = bean.getCharsData().getChartDataMap().keySet()
+				.iterator().next();
+		ChartData chartData = bean.getCharsData().getChartDataMap()
+				.get(chartId);
+		// series values and categories are in rows 2-6.
+		List<ParsedCell> values = chartData.getSeriesList().get(0)
+				.getValueList();
+		List<ParsedCell> categories = chartData.getCategoryList();
+		assertEquals(5, values.size());
+		assertEquals(5, values.get(4).getRow());
+
+		// add a row inside the series range, as CommandUtility.addRows.
+		sheet.shiftRows(3, sheet.getLastRowNum(), 1);
+		bean.getCellHelper().shiftChartRows(sheet, 3, 1);
+		assertEquals(2, values.get(1).getRow());
+		assertEquals(4, values.get(2).getRow());
+		assertEquals(6, values.get(4).getRow());
+		assertEquals(6, categories.get(4).getRow());
+		assertTrue(bean.getCharsData().getDirtyChartSet().contains(chartId));
+
+		// moved value is still watched by the chart.
+		bean.getCharsData().getDirtyChartSet().clear();
+		Cell moved = sheet.getRow(6).getCell(values.get(4).getCol());
+		moved.setCellValue(moved.getNumericCellValue() + 1000);
+		bean.getCharsData().markCellChanged(moved);
+		assertTrue(bean.getCharsData().getDirtyChartSet().contains(chartId));
+
+		// delete the row of second data point, as CommandUtility.deleteRow.
+		sheet.removeRow(sheet.getRow(2));
+		sheet.shiftRows(3, sheet.getLastRowNum(), -1);
+		bean.getCellHelper().shiftChartRows(sheet, 3, -1);
+		assertEquals(4, values.size());
+		assertEquals(4, categories.size());
+		assertEquals(3, values.get(1).getRow());
+		assertEquals(5, values.get(3).getRow());
+		assertEquals(4, chartData.getSeriesList().get(1).getValueList()
+				.size());
+	}
+
 	@Test
 	public final void testGet() throws Exception {
 
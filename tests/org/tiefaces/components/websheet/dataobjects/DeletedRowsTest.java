@@ -0,0 +1,49 @@
+/**
+ *
+ */
+package org.tiefaces.components.websheet.dataobjects;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * @author Jason Jiang
+ *
+ */
+public class DeletedRowsTest {
+
+	/**
+	 * Test row index mapping of several ranges.
+	 */
+	@Test
+	public final void testNewRow() {
+		DeletedRows deletedRows = new DeletedRows();
+		assertTrue(deletedRows.isEmpty());
+		deletedRows.add(20, 24);
+		deletedRows.add(5, 6);
+		deletedRows.add(7, 9);
+		assertEquals(5, deletedRows.getFirstRow());
+		// 5 - 9 joined.
+		assertEquals(2, deletedRows.getRangesFromBottom().size());
+		assertEquals(Integer.valueOf(9),
+				deletedRows.getRangesFromBottom().get(5));
+
+		assertEquals(4, deletedRows.getNewRow(4));
+		assertEquals(-1, deletedRows.getNewRow(5));
+		assertEquals(-1, deletedRows.getNewRow(9));
+		assertEquals(5, deletedRows.getNewRow(10));
+		assertEquals(14, deletedRows.getNewRow(19));
+		assertEquals(-1, deletedRows.getNewRow(22));
+		assertEquals(15, deletedRows.getNewRow(25));
+
+		// rows in a range only count the ranges above.
+		assertEquals(5, deletedRows.countDeletedAbove(22));
+		assertEquals(10, deletedRows.countDeletedAbove(100));
+		assertTrue(deletedRows.isDeleted(6, 9));
+		assertFalse(deletedRows.isDeleted(6, 10));
+	}
+
+}
@@ -0,0 +1,56 @@
+/**
+ *
+ */
+package org.tiefaces.components.websheet.dataobjects;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+import org.tiefaces.components.websheet.TieWebSheetBean;
+import org.tiefaces.datademo.WebSheetDataDemo;
+
+/**
+ * @author Jason Jiang
+ *
+ */
+public class LazyBodyRowsTest {
+
+	@Test
+	public final void testMaterializeOnRequest() throws Exception {
+		TieWebSheetBean bean = new TieWebSheetBean();
+		bean.init();
+		InputStream stream = this.getClass().getClassLoader()
+				.getResourceAsStream("resources/sheet/datacommentdemo.xlsx");
+		Map<String, Object> context = new HashMap<String, Object>();
+		context.put("departments", WebSheetDataDemo.createDepartments());
+		assertEquals(1, bean.loadWebSheet(stream, context));
+
+		LazyBodyRows rows = bean.getBodyRows();
+		assertTrue(rows.size() > 3);
+		assertEquals(0, rows.getMaterializedCount());
+		assertFalse(rows.isMaterialized(2));
+
+		int top = bean.getCurrent().getCurrentTopRow();
+		FacesRow row = rows.get(2);
+		assertTrue(rows.isMaterialized(2));
+		assertEquals(1, rows.getMaterializedCount());
+		assertEquals(top + 2, row.getRowIndex());
+		assertTrue(row == rows.get(2));
+
+		rows.add(1, new FacesRow(top + 1));
+		assertTrue(row == rows.get(3));
+		assertEquals(top + 3, row.getRowIndex());
+		assertEquals(2, rows.getMaterializedCount());
+		rows.remove(1);
+		assertTrue(row == rows.get(2));
+		assertEquals(top + 2, row.getRowIndex());
+		assertEquals(1, rows.getMaterializedCount());
+	}
+
+}
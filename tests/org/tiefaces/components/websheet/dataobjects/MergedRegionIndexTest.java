@@ -0,0 +1,168 @@
+/**
+ *
+ */
+package org.tiefaces.components.websheet.dataobjects;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.util.CellRangeAddress;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.Test;
+
+/**
+ * @author Jason Jiang
+ *
+ */
+public class MergedRegionIndexTest {
+
+	@Test
+	public final void testRegionAndCovered() throws Exception {
+		XSSFWorkbook wb = new XSSFWorkbook();
+		Sheet sheet = wb.createSheet("sheet1");
+		sheet.addMergedRegion(new CellRangeAddress(1, 2, 1, 3));
+		sheet.addMergedRegion(new CellRangeAddress(5, 5, 0, 1));
+		MergedRegionIndex index = new MergedRegionIndex(sheet);
+		assertEquals(2, index.size());
+
+		CellRangeAddress caddress = index.getRegion(1, 1);
+		assertEquals(3, caddress.getLastColumn());
+		assertNull(index.getRegion(1, 2));
+		assertFalse(index.isCovered(1, 1));
+		assertTrue(index.isCovered(1, 2));
+		assertTrue(index.isCovered(2, 1));
+		assertTrue(index.isCovered(2, 3));
+		assertFalse(index.isCovered(2, 4));
+		assertFalse(index.isCovered(3, 1));
+		assertTrue(index.isCovered(5, 1));
+		wb.close();
+	}
+
+	@Test
+	public final void testShiftRows() throws Exception {
+		MergedRegionIndex index = new MergedRegionIndex();
+		index.addRegion(new CellRangeAddress(1, 2, 1, 3));
+		index.addRegion(new CellRangeAddress(5, 5, 0, 1));
+		index.addRegion(new CellRangeAddress(8, 9, 0, 1));
+
+		index.shiftRows(4, 2);
+		assertNull(index.getRegion(5, 0));
+		assertEquals(7, index.getRegion(7, 0).getLastRow());
+		assertTrue(index.isCovered(7, 1));
+		assertTrue(index.isCovered(11, 0));
+		assertTrue(index.isCovered(2, 1));
+
+		index.shiftRows(7, -1);
+		assertEquals(2, index.size());
+		assertFalse(index.isCovered(7, 1));
+		assertEquals(10, index.getRegion(9, 0).getLastRow());
+		assertTrue(index.isCovered(10, 0));
+		assertNotNull(index.getRegion(1, 1));
+	}
+
+	@Test
+	public final void testShiftRowsWithStraddlingRegion() throws Exception {
+		MergedRegionIndex index = new MergedRegionIndex();
+		index.addRegion(new CellRangeAddress(1, 3, 0, 0));
+		index.addRegion(new CellRangeAddress(2, 2, 1, 2));
+		index.addRegion(new CellRangeAddress(6, 9, 1, 2));
+
+		// region across the inserted rows stays, as poi leaves it.
+		index.shiftRows(2, 2);
+		assertEquals(3, index.getRegion(1, 0).getLastRow());
+		assertTrue(index.isCovered(2, 0));
+		assertFalse(index.isCovered(4, 0));
+		assertEquals(4, index.getRegion(4, 1).getLastRow());
+		assertEquals(11, index.getRegion(8, 1).getLastRow());
+		assertEquals(3, index.size());
+
+		// region inside deleted rows is dropped, region across them stays.
+		index.shiftRows(4, -6);
+		assertNull(index.getRegion(4, 1));
+		assertEquals(11, index.getRegion(8, 1).getLastRow());
+		assertTrue(index.isCovered(9, 1));
+		assertEquals(3, index.getRegion(1, 0).getLastRow());
+		assertEquals(2, index.size());
+	}
+
+	@Test
+	public final void testShiftRowsMirrorsSheet() throws Exception {
+		XSSFWorkbook wb = new XSSFWorkbook();
+		Sheet sheet = wb.createSheet("sheet1");
+		for (int i = 0; i < 8; i++) {
+			sheet.createRow(i);
+		}
+		sheet.addMergedRegion(new CellRangeAddress(0, 0, 1, 2));
+		sheet.addMergedRegion(new CellRangeAddress(4, 5, 0, 1));
+		MergedRegionIndex index = new MergedRegionIndex(sheet);
+
+		// insert 2 rows above the second region.
+		sheet.shiftRows(2, sheet.getLastRowNum(), 2);
+		index.shiftRows(2, 2);
+		assertEquals(2, sheet.getNumMergedRegions());
+		assertMirrors(sheet, index);
+		assertEquals(7, index.getRegion(6, 0).getLastRow());
+
+		// delete the inserted rows again.
+		sheet.shiftRows(4, sheet.getLastRowNum(), -2);
+		index.shiftRows(2, -2);
+		assertEquals(2, sheet.getNumMergedRegions());
+		assertMirrors(sheet, index);
+		assertEquals(5, index.getRegion(4, 0).getLastRow());
+		wb.close();
+	}
+
+	/**
+	 * assert the index has the same regions as the sheet.
+	 *
+	 * @param sheet
+	 *            sheet.
+	 * @param index
+	 *            index.
+	 */
+	private static void assertMirrors(final Sheet sheet,
+			final MergedRegionIndex index) {
+		MergedRegionIndex reloaded = new MergedRegionIndex(sheet);
+		assertEquals(reloaded.size(), index.size());
+		for (int row = 0; row <= sheet.getLastRowNum() + 2; row++) {
+			for (int col = 0; col < 5; col++) {
+				CellRangeAddress expected = reloaded.getRegion(row, col);
+				CellRangeAddress actual = index.getRegion(row, col);
+				assertEquals((expected == null) ? null
+						: expected.formatAsString(),
+						(actual == null) ? null : actual.formatAsString());
+				assertEquals(reloaded.isCovered(row, col),
+						index.isCovered(row, col));
+			}
+		}
+	}
+
+	@Test
+	public final void testAddRegionsInRows() throws Exception {
+		XSSFWorkbook wb = new XSSFWorkbook();
+		Sheet template = wb.createSheet("template");
+		template.addMergedRegion(new CellRangeAddress(2, 3, 0, 1));
+		template.addMergedRegion(new CellRangeAddress(3, 4, 2, 2));
+		Sheet sheet = wb.createSheet("sheet1");
+		RowMetaStore rowMetaStore = new RowMetaStore();
+		// two copies of template rows 2 to 3.
+		int[] origins = { 2, 3, 2, 3 };
+		for (int i = 0; i < origins.length; i++) {
+			rowMetaStore.setOriginRowNum(sheet.createRow(10 + i), origins[i]);
+		}
+		MergedRegionIndex index = new MergedRegionIndex();
+		index.addRegionsInRows(sheet, 10, 13, rowMetaStore,
+				new MergedRegionIndex(template));
+		assertEquals(2, index.size());
+		assertEquals(11, index.getRegion(10, 0).getLastRow());
+		assertEquals(13, index.getRegion(12, 0).getLastRow());
+		// region not copied with the rows.
+		assertNull(index.getRegion(11, 2));
+		wb.close();
+	}
+
+}
@@ -0,0 +1,159 @@
+/**
+ *
+ */
+package org.tiefaces.components.websheet.dataobjects;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.HashMap;
+
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.ss.usermodel.WorkbookFactory;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.Test;
+import org.tiefaces.components.websheet.utility.CommandUtility;
+
+/**
+ * @author Jason Jiang
+ *
+ */
+public class RowMetaStoreTest {
+
+	/**
+	 * Create sheet with rows 0 - 9, each has one cell.
+	 *
+	 * @param wb
+	 *            workbook
+	 * @return sheet
+	 */
+	private Sheet createSheet(final Workbook wb) {
+		Sheet sheet = wb.createSheet("Sheet1");
+		for (int i = 0; i < 10; i++) {
+			sheet.createRow(i).createCell(0).setCellValue("row" + i);
+		}
+		return sheet;
+	}
+
+	@Test
+	public final void testFollowShiftedRows() throws Exception {
+		try (Workbook wb = new XSSFWorkbook()) {
+			Sheet sheet = createSheet(wb);
+			RowMetaStore store = new RowMetaStore();
+			store.setFullName(sheet.getRow(5), "F.main:E.item.0");
+			store.setSaveAttrs(sheet.getRow(5), "$0=item.name,");
+			store.setOriginRowNum(sheet.getRow(5), 3);
+			assertEquals(-1, store.getOriginRowNum(sheet.getRow(4)));
+			assertNull(store.getFullName(null));
+
+			sheet.shiftRows(2, sheet.getLastRowNum(), 2);
+			assertEquals("F.main:E.item.0",
+					store.getFullName(sheet.getRow(7)));
+			assertEquals(3, store.getOriginRowNum(sheet.getRow(7)));
+			assertNull(store.getFullName(sheet.getRow(5)));
+
+			sheet.shiftRows(4, sheet.getLastRowNum(), -2);
+			assertEquals("$0=item.name,",
+					store.getSaveAttrs(sheet.getRow(5)));
+			// no hidden column written.
+			assertEquals(1, sheet.getRow(5).getLastCellNum());
+		}
+	}
+
+	@Test
+	public final void testPruneDroppedRows() throws Exception {
+		try (Workbook wb = new XSSFWorkbook()) {
+			Sheet sheet = createSheet(wb);
+			RowMetaStore store = new RowMetaStore();
+			store.setOriginRowNum(sheet.getRow(2), 2);
+			store.setOriginRowNum(sheet.getRow(3), 3);
+			store.setOriginRowNum(sheet.getRow(6), 6);
+			store.setOriginRowNum(sheet.getRow(8), 8);
+
+			CommandUtility.removeRowsInSheet(sheet, 2, 3,
+					new HashMap<Cell, String>(), store);
+			assertEquals(2, store.size());
+			assertEquals(6, store.getOriginRowNum(sheet.getRow(4)));
+
+			// row 6 (was 8) is overwritten by the shift.
+			store.removeOverwrittenRows(sheet, 0, 1, 6);
+			sheet.shiftRows(0, 1, 6);
+			assertEquals(1, store.size());
+			assertEquals(-1, store.getOriginRowNum(sheet.getRow(6)));
+
+			CommandUtility.removeRowsInSheet(sheet, 4,
+					sheet.getLastRowNum(), new HashMap<Cell, String>(),
+					store);
+			assertEquals(0, store.size());
+		}
+	}
+
+	@Test
+	public final void testCopy() throws Exception {
+		try (Workbook wb = new XSSFWorkbook()) {
+			Sheet sheet = createSheet(wb);
+			RowMetaStore store = new RowMetaStore();
+			store.setFullName(sheet.getRow(1), "F.main:E.item.0");
+			store.copy(sheet.getRow(1), sheet.getRow(2));
+			store.setFullName(sheet.getRow(2), "F.main:E.item.1");
+			assertEquals("F.main:E.item.0",
+					store.getFullName(sheet.getRow(1)));
+			assertEquals("F.main:E.item.1",
+					store.getFullName(sheet.getRow(2)));
+			store.copy(sheet.getRow(3), sheet.getRow(2));
+			assertNull(store.getFullName(sheet.getRow(2)));
+
+			Sheet copySheet = wb.cloneSheet(0);
+			store.copySheet(sheet, copySheet);
+			assertEquals("F.main:E.item.0",
+					store.getFullName(copySheet.getRow(1)));
+			Row row = sheet.getRow(1);
+			sheet.removeRow(row);
+			store.remove(row);
+			assertEquals(1, store.size());
+		}
+	}
+
+	@Test
+	public final void testSerializeAndRecover() throws Exception {
+		try (Workbook wb = new XSSFWorkbook()) {
+			Sheet sheet = createSheet(wb);
+			RowMetaStore store = new RowMetaStore();
+			store.setFullName(sheet.getRow(2), "F.main:E.item.0");
+			store.setOriginRowNum(sheet.getRow(8), 2);
+			Row removed = sheet.getRow(4);
+			store.setFullName(removed, "F.main:E.item.1");
+			sheet.removeRow(removed);
+
+			ByteArrayOutputStream storeOut = new ByteArrayOutputStream();
+			try (ObjectOutputStream out = new ObjectOutputStream(storeOut)) {
+				out.writeObject(store);
+			}
+			ByteArrayOutputStream wbOut = new ByteArrayOutputStream();
+			wb.write(wbOut);
+
+			RowMetaStore restored;
+			try (ObjectInputStream in = new ObjectInputStream(
+					new ByteArrayInputStream(storeOut.toByteArray()))) {
+				restored = (RowMetaStore) in.readObject();
+			}
+			try (Workbook wb2 = WorkbookFactory
+					.create(new ByteArrayInputStream(wbOut.toByteArray()))) {
+				restored.recover(wb2);
+				Sheet sheet2 = wb2.getSheet("Sheet1");
+				assertEquals(2, restored.size());
+				assertEquals("F.main:E.item.0",
+						restored.getFullName(sheet2.getRow(2)));
+				assertEquals(2, restored.getOriginRowNum(sheet2.getRow(8)));
+			}
+		}
+	}
+
+}
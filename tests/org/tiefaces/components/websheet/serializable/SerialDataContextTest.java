@@ -0,0 +1,111 @@
+/**
+ * 
+ */
+package org.tiefaces.components.websheet.serializable;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.lang.SerializationUtils;
+import org.junit.Test;
+import org.tiefaces.datademo.Department;
+import org.tiefaces.datademo.Employee;
+
+/**
+ * @author Jason Jiang
+ *
+ */
+public class SerialDataContextTest {
+
+	/**
+	 * Singleton kept by readResolve.
+	 */
+	public static final class Singleton implements Serializable {
+
+		/** serial version. */
+		private static final long serialVersionUID = 1L;
+
+		/** the instance. */
+		public static final Singleton INSTANCE = new Singleton();
+
+		/**
+		 * Resolve to the instance.
+		 *
+		 * @return the instance
+		 */
+		private Object readResolve() {
+			return INSTANCE;
+		}
+	}
+
+	@Test
+	public final void testSerialDataContext() throws Exception {
+
+		Employee chief = Employee.generateOne("chief");
+		Employee staff = Employee.generateOne("staff");
+		staff.setSuperior(chief);
+		chief.setSuperior(chief);
+		List<Employee> staffList = new ArrayList<>();
+		staffList.add(staff);
+		staffList.add(chief);
+		Department department = new Department("dept", chief, staffList);
+		department.setHeadAccount(2);
+
+		List<Department> departments = new ArrayList<>();
+		departments.add(department);
+		Map<String, Object> context = new HashMap<>();
+		context.put("departments", departments);
+		context.put("count", 3);
+		context.put("amount", new BigDecimal("12.50"));
+		context.put("date", new Date(1000L));
+		context.put("nothing", null);
+
+		SerialDataContext sdc = new SerialDataContext();
+		sdc.setDataContext(context);
+		SerialDataContext copy = (SerialDataContext) SerializationUtils
+				.clone(sdc);
+		Map<String, Object> map = copy.getDataContext();
+
+		assertEquals(5, map.size());
+		assertTrue(map.containsKey("nothing"));
+		assertEquals(Integer.valueOf(3), map.get("count"));
+		assertEquals(new BigDecimal("12.50"), map.get("amount"));
+		assertEquals(new Date(1000L), map.get("date"));
+
+		@SuppressWarnings("unchecked")
+		List<Department> list = (List<Department>) map.get("departments");
+		Department dept = list.get(0);
+		assertEquals("dept", dept.getName());
+		assertEquals(2, dept.getHeadAccount());
+		assertEquals(2, dept.getStaff().size());
+		Employee copyChief = dept.getChief();
+		assertEquals(chief.getName(), copyChief.getName());
+		assertEquals(chief.getPayment(), copyChief.getPayment());
+		// shared references and cycles are kept.
+		assertSame(copyChief, dept.getStaff().get(1));
+		assertSame(copyChief, dept.getStaff().get(0).getSuperior());
+		assertSame(copyChief, copyChief.getSuperior());
+	}
+
+	@Test
+	public final void testCustomSerialization() throws Exception {
+		Map<String, Object> context = new HashMap<>();
+		context.put("singleton", Singleton.INSTANCE);
+		SerialDataContext sdc = new SerialDataContext();
+		sdc.setDataContext(context);
+		SerialDataContext copy = (SerialDataContext) SerializationUtils
+				.clone(sdc);
+		// written by java serialization, not field by field.
+		assertSame(Singleton.INSTANCE, copy.getDataContext().get("singleton"));
+	}
+
+}
@@ -4,15 +4,27 @@
 package org.tiefaces.components.websheet.serializable;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
 
+import java.io.ByteArrayOutputStream;
 import java.io.InputStream;
+import java.util.HashMap;
 import java.util.Map;
 import java.util.Map.Entry;
 
 import org.apache.commons.lang.SerializationUtils;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
 import org.junit.Test;
 import org.tiefaces.components.websheet.TieWebSheetBean;
 import org.tiefaces.components.websheet.configuration.SheetConfiguration;
+import org.tiefaces.components.websheet.configuration.TemplateCache;
+import org.tiefaces.components.websheet.configuration.TemplateStore;
+import org.tiefaces.components.websheet.utility.CellUtility;
+import org.tiefaces.datademo.WebSheetDataDemo;
 import org.tiefaces.components.websheet.serializable.SerialWorkbook;
 
 /**
@@ -55,4 +67,146 @@ public class SerialWorkbookTest {
 
 	}
 
+	@Test
+	public final void testSerialWorkbookDeltaFromStore() throws Exception {
+		final Map<String, byte[]> stored = new HashMap<String, byte[]>();
+		final int[] loads = new int[1];
+		TemplateStore defaultStore = TemplateCache.getStore();
+		TemplateCache.clear();
+		TemplateCache.setStore(new TemplateStore() {
+			@Override
+			public void save(final String key, final byte[] workbookBytes) {
+				stored.put(key, workbookBytes);
+			}
+
+			@Override
+			public byte[] load(final String key) {
+				loads[0]++;
+				return stored.get(key);
+			}
+		});
+		try {
+			TieWebSheetBean bean = new TieWebSheetBean();
+			bean.init();
+			InputStream stream =
+					this.getClass().getClassLoader().getResourceAsStream(
+							"resources/sheet/datacommentdemo.xlsx");
+			Map<String, Object> context = new HashMap<String, Object>();
+			context.put("departments", WebSheetDataDemo.createDepartments());
+			assertEquals(1, bean.loadWebSheet(stream, context));
+			bean.addRepeatRow(7);
+			SerialWorkbook swb = bean.getSerialWb();
+			assertTrue(stored.containsKey(swb.getTemplateKey()));
+
+			byte[] withCache = SerializationUtils.serialize(swb);
+			// failover to a node which never loaded the template.
+			TemplateCache.clear();
+			byte[] withoutCache = SerializationUtils.serialize(swb);
+			// stored base is parsed once for all serializations.
+			SerializationUtils.serialize(swb);
+			assertEquals(1, loads[0]);
+			ByteArrayOutputStream xlsx = new ByteArrayOutputStream();
+			swb.getWb().write(xlsx);
+			assertTrue(withCache.length < xlsx.size());
+			assertTrue(withoutCache.length < xlsx.size());
+			SerialWorkbook copy = (SerialWorkbook) SerializationUtils
+					.deserialize(withCache);
+			assertEquals(swb.getWb().getSheetAt(0).getLastRowNum(),
+					copy.getWb().getSheetAt(0).getLastRowNum());
+			assertEquals(
+					swb.getRowMetaStore().getFullName(
+							swb.getWb().getSheetAt(0).getRow(8)),
+					copy.getRowMetaStore().getFullName(
+							copy.getWb().getSheetAt(0).getRow(8)));
+		} finally {
+			TemplateCache.setStore(defaultStore);
+		}
+	}
+
+	@Test
+	public final void testSerialWorkbookWithoutStore() throws Exception {
+		TemplateStore defaultStore = TemplateCache.getStore();
+		TemplateCache.setStore(null);
+		try {
+			TieWebSheetBean bean = new TieWebSheetBean();
+			bean.init();
+			InputStream stream =
+					this.getClass().getClassLoader().getResourceAsStream(
+							"resources/sheet/datacommentdemo.xlsx");
+			Map<String, Object> context = new HashMap<String, Object>();
+			context.put("departments", WebSheetDataDemo.createDepartments());
+			assertEquals(1, bean.loadWebSheet(stream, context));
+			SerialWorkbook swb = bean.getSerialWb();
+			byte[] bytes = SerializationUtils.serialize(swb);
+			// template evicted before the session is activated again.
+			TemplateCache.clear();
+			SerialWorkbook copy = (SerialWorkbook) SerializationUtils
+					.deserialize(bytes);
+			assertEquals(swb.getWb().getSheetAt(0).getLastRowNum(),
+					copy.getWb().getSheetAt(0).getLastRowNum());
+		} finally {
+			TemplateCache.setStore(defaultStore);
+		}
+	}
+
+	@Test
+	public final void testSerialWorkbookDelta() throws Exception {
+		// compiled again, so it's saved to the default store.
+		TemplateCache.clear();
+		TieWebSheetBean bean = new TieWebSheetBean();
+		bean.init();
+		InputStream stream =
+				this.getClass().getClassLoader().getResourceAsStream(
+						"resources/sheet/datacommentdemo.xlsx");
+		Map<String, Object> context = new HashMap<String, Object>();
+		context.put("departments", WebSheetDataDemo.createDepartments());
+		assertEquals(1, bean.loadWebSheet(stream, context));
+		bean.addRepeatRow(7);
+
+		SerialWorkbook swb = bean.getSerialWb();
+		Workbook base = TemplateCache.get(swb.getTemplateKey())
+				.getBaseWorkbook();
+		byte[] delta = WorkbookDelta.create(base, swb.getWb());
+		ByteArrayOutputStream xlsx = new ByteArrayOutputStream();
+		swb.getWb().write(xlsx);
+		assertTrue(delta.length < xlsx.size());
+		// rows moved by the insert are compared with their origin rows.
+		byte[] originDelta = WorkbookDelta.create(base, swb.getWb(),
+				swb.getRowMetaStore());
+		assertTrue(originDelta.length <= delta.length);
+		// deltas are written with the default store.
+		assertNotNull(TemplateCache.getStore());
+		assertTrue(TemplateCache.get(swb.getTemplateKey()).isStored());
+		assertTrue(SerializationUtils.serialize(swb).length < xlsx.size());
+
+		SerialWorkbook copy =
+				(SerialWorkbook) SerializationUtils.clone(swb);
+		Workbook wb = swb.getWb();
+		Workbook copyWb = copy.getWb();
+		assertEquals(wb.getNumberOfSheets(), copyWb.getNumberOfSheets());
+		for (int i = 0; i < wb.getNumberOfSheets(); i++) {
+			Sheet sheet = wb.getSheetAt(i);
+			Sheet copySheet = copyWb.getSheetAt(i);
+			assertEquals(sheet.getLastRowNum(), copySheet.getLastRowNum());
+			assertEquals(sheet.getNumMergedRegions(),
+					copySheet.getNumMergedRegions());
+			assertEquals(sheet.getCellComments().size(),
+					copySheet.getCellComments().size());
+			for (Row row : sheet) {
+				Row copyRow = copySheet.getRow(row.getRowNum());
+				assertEquals(swb.getRowMetaStore().getFullName(row),
+						copy.getRowMetaStore().getFullName(copyRow));
+				for (Cell cell : row) {
+					Cell copyCell = copyRow.getCell(cell.getColumnIndex());
+					assertEquals(cell.getCellTypeEnum(),
+							copyCell.getCellTypeEnum());
+					assertEquals(cell.getCellStyle().getIndex(),
+							copyCell.getCellStyle().getIndex());
+					assertEquals(CellUtility.getCellValueWithoutFormat(cell),
+							CellUtility.getCellValueWithoutFormat(copyCell));
+				}
+			}
+		}
+	}
+
 }
@@ -0,0 +1,302 @@
+/**
+ *
+ */
+package org.tiefaces.components.websheet.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellType;
+import org.apache.poi.ss.usermodel.FormulaEvaluator;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.ss.usermodel.WorkbookFactory;
+import org.apache.poi.ss.util.CellReference;
+import org.apache.poi.xssf.usermodel.XSSFEvaluationWorkbook;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.Test;
+import org.tiefaces.common.Item;
+import org.tiefaces.components.websheet.TieWebSheetBean;
+import org.tiefaces.components.websheet.utility.CellUtility;
+
+/**
+ * @author Jason Jiang
+ *
+ */
+public class FormulaDependencyGraphTest {
+
+	@Test
+	public final void testGetDependents() throws Exception {
+		XSSFWorkbook wb = new XSSFWorkbook();
+		Sheet sheet = wb.createSheet("sheet1");
+		Sheet sheet2 = wb.createSheet("sheet2");
+		Row row0 = sheet.createRow(0);
+		Row row1 = sheet.createRow(1);
+		Row row2 = sheet.createRow(2);
+		Cell a1 = row0.createCell(0);
+		a1.setCellValue(1);
+		row1.createCell(0).setCellValue(2);
+		Cell a3 = row2.createCell(0);
+		a3.setCellFormula("SUM(A1:A2)");
+		Cell b1 = row0.createCell(1);
+		b1.setCellFormula("A3*2");
+		Cell c1 = row0.createCell(2);
+		c1.setCellValue(5);
+		Cell c2 = row1.createCell(2);
+		c2.setCellFormula("C1+1");
+		Cell other = sheet2.createRow(0).createCell(0);
+		other.setCellFormula("sheet1!B1+1");
+
+		FormulaDependencyGraph graph = new FormulaDependencyGraph(wb,
+				XSSFEvaluationWorkbook.create(wb));
+		assertEquals(4, graph.getFormulaCount());
+		assertEquals(0, graph.getVolatileCount());
+
+		Set<Cell> dependents = graph.getDependents(a1);
+		assertEquals(3, dependents.size());
+		assertTrue(dependents.contains(a3));
+		assertTrue(dependents.contains(b1));
+		assertTrue(dependents.contains(other));
+
+		FormulaEvaluator evaluator = wb.getCreationHelper()
+				.createFormulaEvaluator();
+		evaluator.evaluateAll();
+		assertEquals(7, other.getNumericCellValue(), 0);
+		a1.setCellValue(10);
+		evaluator.notifyUpdateCell(a1);
+		for (Cell cell : dependents) {
+			evaluator.evaluateFormulaCellEnum(cell);
+		}
+		assertEquals(24, b1.getNumericCellValue(), 0);
+		assertEquals(25, other.getNumericCellValue(), 0);
+		assertEquals(6, c2.getNumericCellValue(), 0);
+		wb.close();
+	}
+
+	@Test
+	public final void testShiftRows() throws Exception {
+		XSSFWorkbook wb = new XSSFWorkbook();
+		Sheet sheet = wb.createSheet("sheet1");
+		for (int i = 0; i < 3; i++) {
+			sheet.createRow(i).createCell(0).setCellValue(i + 1);
+		}
+		Cell sum = sheet.createRow(3).createCell(0);
+		sum.setCellFormula("SUM(A1:A3)");
+		Cell b3 = sheet.getRow(2).createCell(1);
+		b3.setCellFormula("A3*2");
+		FormulaDependencyGraph graph = new FormulaDependencyGraph(wb,
+				XSSFEvaluationWorkbook.create(wb));
+
+		// insert one row before A2.
+		sheet.shiftRows(1, sheet.getLastRowNum(), 1);
+		graph.shiftRows(sheet, 1, 1);
+		Cell inserted = sheet.createRow(1).createCell(0);
+		inserted.setCellFormula("A1+1");
+		graph.addRows(sheet, 1, 1);
+		assertEquals("SUM(A1:A4)", sum.getCellFormula());
+		assertEquals(3, graph.getFormulaCount());
+		// only added and reparsed formulas need evaluation.
+		Set<Cell> changed = graph.pollChangedFormulas();
+		assertEquals(2, changed.size());
+		assertTrue(changed.contains(sum));
+		assertTrue(changed.contains(inserted));
+		assertTrue(graph.pollChangedFormulas().isEmpty());
+		assertEquals(graphOf(wb), dependentsOf(graph, wb));
+		assertTrue(graph.getDependents(inserted).contains(sum));
+		assertTrue(graph.getDependents(sheet.getRow(3).getCell(0))
+				.contains(b3));
+
+		// delete the inserted row again.
+		sheet.shiftRows(2, sheet.getLastRowNum(), -1);
+		graph.shiftRows(sheet, 2, -1);
+		assertEquals(2, graph.getFormulaCount());
+		assertEquals(graphOf(wb), dependentsOf(graph, wb));
+		wb.close();
+	}
+
+	@Test
+	public final void testReplacedCell() throws Exception {
+		XSSFWorkbook wb = new XSSFWorkbook();
+		Sheet sheet = wb.createSheet("sheet1");
+		Row row0 = sheet.createRow(0);
+		Cell a1 = row0.createCell(0);
+		a1.setCellValue(1);
+		row0.createCell(1).setCellFormula("A1*2");
+		FormulaDependencyGraph graph = new FormulaDependencyGraph(wb,
+				XSSFEvaluationWorkbook.create(wb));
+
+		// cell object replaced and formula changed.
+		row0.removeCell(row0.getCell(1));
+		Cell b1 = row0.createCell(1);
+		b1.setCellFormula("A1*3");
+		graph.refreshCell(b1);
+		assertEquals(1, graph.getFormulaCount());
+		assertSame(b1, graph.getDependents(a1).iterator().next());
+
+		// formula replaced by value.
+		row0.removeCell(b1);
+		Cell value = row0.createCell(1);
+		value.setCellValue(5);
+		graph.refreshCell(value);
+		assertEquals(0, graph.getFormulaCount());
+		assertTrue(graph.getDependents(a1).isEmpty());
+		wb.close();
+	}
+
+	@Test
+	public final void testKeptAfterAddAndDeleteRows() throws Exception {
+		TieWebSheetBean bean = new TieWebSheetBean();
+		bean.init();
+		InputStream stream = this.getClass().getClassLoader()
+				.getResourceAsStream(
+						"resources/sheet/PRICELISTINPUTVALIDATION.xlsx");
+		List<Item> itemList = new ArrayList<Item>();
+		itemList.add(new Item());
+		itemList.add(new Item());
+		Map<String, Object> context = new HashMap<String, Object>();
+		context.put("items", itemList);
+		assertEquals(1, bean.loadWebSheet(stream, context));
+		FormulaDependencyGraph graph = bean.getCellHelper()
+				.getDependencyGraph();
+		assertNotNull(graph);
+		assertTrue(graph.getFormulaCount() > 0);
+
+		Map<Integer, Integer> rowCounts = new HashMap<Integer, Integer>();
+		rowCounts.put(4, 2);
+		rowCounts.put(5, 1);
+		bean.addRepeatRows(rowCounts);
+		assertEquals(5, itemList.size());
+		assertSame(graph, bean.getCellHelper().getDependencyGraph());
+		assertEquals(graphOf(bean.getWb()),
+				dependentsOf(graph, bean.getWb()));
+		assertEquals(fullRecalcOf(bean.getWb()), formulaValuesOf(bean.getWb()));
+
+		bean.deleteRepeatRows(Arrays.asList(5, 7));
+		assertEquals(3, itemList.size());
+		assertSame(graph, bean.getCellHelper().getDependencyGraph());
+		assertEquals(graphOf(bean.getWb()),
+				dependentsOf(graph, bean.getWb()));
+		assertEquals(fullRecalcOf(bean.getWb()), formulaValuesOf(bean.getWb()));
+	}
+
+	/**
+	 * cached results of all formula cells.
+	 *
+	 * @param wb
+	 *            workbook.
+	 * @return formula results by cell reference.
+	 */
+	private static Map<String, String> formulaValuesOf(final Workbook wb) {
+		Map<String, String> result = new HashMap<>();
+		for (Sheet sheet : wb) {
+			for (Row row : sheet) {
+				for (Cell cell : row) {
+					if (cell.getCellTypeEnum() == CellType.FORMULA) {
+						result.put(refOf(cell), CellUtility
+								.getCellValueWithoutFormat(cell));
+					}
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * results of all formula cells after a full recalc of a copy.
+	 *
+	 * @param wb
+	 *            workbook.
+	 * @return formula results by cell reference.
+	 */
+	private static Map<String, String> fullRecalcOf(final Workbook wb)
+			throws Exception {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		wb.write(out);
+		Workbook copy = WorkbookFactory
+				.create(new ByteArrayInputStream(out.toByteArray()));
+		copy.getCreationHelper().createFormulaEvaluator().evaluateAll();
+		return formulaValuesOf(copy);
+	}
+
+	/**
+	 * dependents of every cell in a graph built from scratch.
+	 *
+	 * @param wb
+	 *            workbook.
+	 * @return dependents by cell reference.
+	 */
+	private static Map<String, Set<String>> graphOf(final Workbook wb) {
+		return dependentsOf(new FormulaDependencyGraph(wb,
+				XSSFEvaluationWorkbook.create((XSSFWorkbook) wb)), wb);
+	}
+
+	/**
+	 * dependents of every cell in graph.
+	 *
+	 * @param graph
+	 *            graph.
+	 * @param wb
+	 *            workbook.
+	 * @return dependents by cell reference.
+	 */
+	private static Map<String, Set<String>> dependentsOf(
+			final FormulaDependencyGraph graph, final Workbook wb) {
+		Map<String, Set<String>> result = new HashMap<>();
+		for (Sheet sheet : wb) {
+			for (Row row : sheet) {
+				for (Cell cell : row) {
+					Set<String> refs = new TreeSet<>();
+					for (Cell dependent : graph.getDependents(cell)) {
+						refs.add(refOf(dependent));
+					}
+					result.put(refOf(cell), refs);
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * reference of cell.
+	 *
+	 * @param cell
+	 *            cell.
+	 * @return sheet name and cell address.
+	 */
+	private static String refOf(final Cell cell) {
+		return cell.getSheet().getSheetName() + "!"
+				+ new CellReference(cell).formatAsString();
+	}
+
+	@Test
+	public final void testVolatileFormula() throws Exception {
+		XSSFWorkbook wb = new XSSFWorkbook();
+		Sheet sheet = wb.createSheet("sheet1");
+		Row row0 = sheet.createRow(0);
+		Cell a1 = row0.createCell(0);
+		a1.setCellValue(1);
+		Cell b1 = row0.createCell(1);
+		b1.setCellFormula("INDIRECT(\"C1\")");
+		FormulaDependencyGraph graph = new FormulaDependencyGraph(wb,
+				XSSFEvaluationWorkbook.create(wb));
+		assertEquals(1, graph.getVolatileCount());
+		assertTrue(graph.getDependents(a1).contains(b1));
+		wb.close();
+	}
+
+}
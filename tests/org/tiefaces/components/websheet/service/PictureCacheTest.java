@@ -0,0 +1,104 @@
+/**
+ *
+ */
+package org.tiefaces.components.websheet.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+import org.tiefaces.common.TieConstants;
+import org.tiefaces.components.websheet.service.PictureCache.CachedPicture;
+
+/**
+ * @author Jason Jiang
+ *
+ */
+public class PictureCacheTest {
+
+	@Test
+	public final void testPutAndGet() throws Exception {
+		PictureCache.clear();
+		byte[] data = { 1, 2, 3 };
+		String key = PictureCache.buildKey(data);
+		assertEquals(key, PictureCache.buildKey(new byte[] { 1, 2, 3 }));
+		assertNull(PictureCache.get(key));
+		assertTrue(PictureCache.put(key, data, "image/png"));
+		assertTrue(PictureCache.put(key, new byte[] { 1, 2, 3 },
+				"image/png"));
+		// stored once
+		assertEquals(3, PictureCache.getTotalBytes());
+		assertSame(data, PictureCache.get(key).getData());
+		assertEquals("image/png", PictureCache.get(key).getContentType());
+	}
+
+	@Test
+	public final void testEviction() throws Exception {
+		PictureCache.clear();
+		int maxBytes = 1024;
+		PictureCache.setMaxBytes(maxBytes);
+		try {
+			int size = maxBytes / 2;
+			byte[] first = new byte[size];
+			byte[] second = new byte[size];
+			second[0] = 1;
+			byte[] third = new byte[size];
+			third[0] = 2;
+			String firstKey = PictureCache.buildKey(first);
+			String secondKey = PictureCache.buildKey(second);
+			String thirdKey = PictureCache.buildKey(third);
+			PictureCache.put(firstKey, first, "image/png");
+			PictureCache.put(secondKey, second, "image/png");
+			// first is recently used, so second is evicted.
+			assertNotNull(PictureCache.get(firstKey));
+			PictureCache.put(thirdKey, third, "image/png");
+			assertNotNull(PictureCache.get(firstKey));
+			assertNull(PictureCache.get(secondKey));
+			assertNotNull(PictureCache.get(thirdKey));
+			assertTrue(PictureCache.getTotalBytes() <= maxBytes);
+			assertFalse(PictureCache.put("large", new byte[maxBytes + 1],
+					"image/png"));
+			// lower limit evicts.
+			PictureCache.setMaxBytes(size);
+			assertNull(PictureCache.get(firstKey));
+			assertNotNull(PictureCache.get(thirdKey));
+		} finally {
+			PictureCache.setMaxBytes(TieConstants.PICTURE_CACHE_MAX_BYTES);
+			PictureCache.clear();
+		}
+	}
+
+	@Test
+	public final void testSessionPictureCache() throws Exception {
+		Map<String, Object> sessionMap = new HashMap<>();
+		SessionPictureCache cache = SessionPictureCache
+				.getInstance(sessionMap);
+		assertSame(cache, SessionPictureCache.getInstance(sessionMap));
+
+		cache = new SessionPictureCache(10);
+		CachedPicture first = new CachedPicture(new byte[4], "image/png");
+		CachedPicture second = new CachedPicture(new byte[4], "image/png");
+		CachedPicture large = new CachedPicture(new byte[20], "image/png");
+		cache.put("first", first);
+		cache.put("second", second);
+		assertSame(first, cache.get("first"));
+		assertEquals(8, cache.getTotalBytes());
+		// over limit, the latest is kept.
+		cache.put("large", large);
+		assertNull(cache.get("first"));
+		assertNull(cache.get("second"));
+		assertSame(large, cache.get("large"));
+		assertEquals(20, cache.getTotalBytes());
+		cache.put("first", first);
+		assertNull(cache.get("large"));
+		assertSame(first, cache.get("first"));
+	}
+
+}
@@ -5,12 +5,15 @@ package org.tiefaces.components.websheet.service;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
 import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
+
+import org.apache.poi.ss.usermodel.Sheet;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
@@ -135,4 +138,44 @@ public class ValidationHandlerTest {
 
 	}
 
+	/**
+	 * Test method for
+	 * {@link org.tiefaces.components.websheet.service.ValidationHandler#findFirstInvalidSheet(boolean)}
+	 * with large sheet. Rows not materialized are validated from the sheet
+	 * without materializing them.
+	 */
+	@SuppressWarnings("unchecked")
+	@Test
+	public final void testFindFirstInvalidSheetWithLargeSheet()
+			throws Exception {
+		TieWebSheetBean bean = new TieWebSheetBean();
+		bean.init();
+		InputStream stream =
+				this.getClass().getClassLoader().getResourceAsStream(
+						"resources/sheet/PRICELISTINPUTVALIDATION.xlsx");
+		List<Item> itemList = new ArrayList<Item>();
+		for (int i = 0; i < 2000; i++) {
+			itemList.add(new Item());
+		}
+		HashMap<String, Object> context = new HashMap<String, Object>();
+		context.put("items", itemList);
+		assertEquals(1, bean.loadWebSheet(stream, context));
+		assertNull(bean.getValidationHandler().findFirstInvalidSheet(true));
+
+		int lastRow = 4 + itemList.size() - 1;
+		Sheet sheet = bean.getWb()
+				.getSheet(bean.getCurrentSheetConfig().getSheetName());
+		sheet.getRow(lastRow).getCell(3).setCellValue(-1);
+		int materialized = bean.getBodyRows().getMaterializedCount();
+
+		assertEquals("Sale Price Report", bean.getValidationHandler()
+				.findFirstInvalidSheet(true));
+		assertFalse(bean.getValidationHandler().validateCurrentPage());
+		assertEquals(materialized,
+				bean.getBodyRows().getMaterializedCount());
+		assertFalse(bean.getBodyRows()
+				.isMaterialized(lastRow - bean.getCurrent().getCurrentTopRow()));
+
+	}
+
 }
@@ -0,0 +1,120 @@
+/**
+ *
+ */
+package org.tiefaces.components.websheet.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.Test;
+import org.tiefaces.components.websheet.configuration.ExpressionEngine;
+import org.tiefaces.components.websheet.utility.CommandUtility;
+
+/**
+ * @author Jason Jiang
+ *
+ */
+public class ValidationRuleTest {
+
+	@Test
+	public final void testCompileAndTest() throws Exception {
+		XSSFWorkbook wb = new XSSFWorkbook();
+		Sheet sheet = wb.createSheet("sheet1");
+		Row row = sheet.createRow(4);
+		row.createCell(4).setCellValue(80);
+		sheet.createRow(7).createCell(1).setCellValue(5);
+		ExpressionEngine engine = new ExpressionEngine();
+
+		ValidationRule rule = new ValidationRule(
+				"$value>0 and $value<=500000");
+		assertFalse(rule.isElExpression());
+		assertEquals("( tieslot0>0 && tieslot1<=500000 )", rule.getScript());
+		assertTrue(rule.test("100", 4, 3, sheet, engine));
+		assertFalse(rule.test("-1", 4, 3, sheet, engine));
+		assertFalse(rule.test("", 4, 3, sheet, engine));
+
+		rule = new ValidationRule("$value >= $E or $value == $B$8");
+		assertTrue(rule.test("100", 4, 3, sheet, engine));
+		assertFalse(rule.test("50", 4, 3, sheet, engine));
+		assertTrue(rule.test("5", 4, 3, sheet, engine));
+		// empty cell of row 6 column E.
+		assertFalse(rule.test("50", 5, 3, sheet, engine));
+
+		rule = new ValidationRule("$rowIndex == 4 && $colIndex == 3");
+		assertTrue(rule.test("1", 4, 3, sheet, engine));
+		assertFalse(rule.test("1", 5, 3, sheet, engine));
+
+		assertTrue(new ValidationRule("#{true}").isElExpression());
+		wb.close();
+	}
+
+	@Test
+	public final void testStringRules() throws Exception {
+		XSSFWorkbook wb = new XSSFWorkbook();
+		Sheet sheet = wb.createSheet("Sheet1");
+		sheet.createRow(4).createCell(4).setCellValue("Open");
+		ExpressionEngine engine = new ExpressionEngine();
+
+		ValidationRule rule = new ValidationRule("$value == 'yes'");
+		assertTrue(rule.test("yes", 4, 3, sheet, engine));
+		assertTrue(rule.test("Yes", 4, 3, sheet, engine));
+		assertFalse(rule.test("no", 4, 3, sheet, engine));
+
+		rule = new ValidationRule("'$value' == 'yes'");
+		assertEquals("( tieslot0 == 'YES' )", rule.getScript());
+		assertTrue(rule.test("yes", 4, 3, sheet, engine));
+		assertFalse(rule.test("no", 4, 3, sheet, engine));
+
+		rule = new ValidationRule("\"$value-$rowIndex\" == \"a-4\"");
+		assertTrue(rule.test("A", 4, 3, sheet, engine));
+		assertFalse(rule.test("A", 5, 3, sheet, engine));
+
+		rule = new ValidationRule("$sheetName == 'sheet1'");
+		assertTrue(rule.test("1", 4, 3, sheet, engine));
+		rule = new ValidationRule("'$sheetName' == 'SHEET1'");
+		assertTrue(rule.test("1", 4, 3, sheet, engine));
+
+		rule = new ValidationRule("$E == 'open' or '$E' == 'closed'");
+		assertTrue(rule.test("1", 4, 3, sheet, engine));
+		assertFalse(rule.test("1", 5, 3, sheet, engine));
+
+		// quoted literal is not changed by AND/OR replacement.
+		rule = new ValidationRule("$value == 'orange'");
+		assertTrue(rule.test("Orange", 4, 3, sheet, engine));
+		wb.close();
+	}
+
+	@Test
+	public final void testUnquotedStringValue() throws Exception {
+		XSSFWorkbook wb = new XSSFWorkbook();
+		Sheet sheet = wb.createSheet("Sheet1");
+		ExpressionEngine engine = new ExpressionEngine();
+
+		// textual substitution makes yes an undefined variable.
+		assertFalse(CommandUtility.evalBoolExpression(engine,
+				"yes == 'yes'"));
+		ValidationRule rule = new ValidationRule("$value == 'yes'");
+		assertTrue(rule.test("yes", 4, 3, sheet, engine));
+		assertTrue(rule.test("YES", 4, 3, sheet, engine));
+		assertFalse(rule.test("no", 4, 3, sheet, engine));
+
+		rule = new ValidationRule("$value != 'yes'");
+		assertFalse(rule.test("yes", 4, 3, sheet, engine));
+		assertTrue(rule.test("no", 4, 3, sheet, engine));
+		wb.close();
+	}
+
+	@Test
+	public final void testToOperand() {
+		assertNull(ValidationRule.toOperand(""));
+		assertEquals(12L, ValidationRule.toOperand("12"));
+		assertEquals(-1.5, ValidationRule.toOperand("-1.5"));
+		assertEquals("abc", ValidationRule.toOperand("abc"));
+	}
+
+}
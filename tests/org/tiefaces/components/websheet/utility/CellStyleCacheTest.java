@@ -0,0 +1,64 @@
+/**
+ *
+ */
+package org.tiefaces.components.websheet.utility;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.InputStream;
+
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.Test;
+import org.tiefaces.components.websheet.dataobjects.FacesCell;
+
+/**
+ * @author Jason Jiang
+ *
+ */
+public class CellStyleCacheTest {
+
+	/**
+	 * Cached result should be same as CellStyleUtility for every cell.
+	 */
+	@Test
+	public final void testSetupCellStyle() throws Exception {
+		InputStream stream = this.getClass().getClassLoader()
+				.getResourceAsStream(
+						"resources/sheet/PRICELISTINPUTVALIDATION.xlsx");
+		Workbook wb = new XSSFWorkbook(stream);
+		CellStyleCache cache = new CellStyleCache(wb);
+		int cells = 0;
+		for (int i = 0; i < wb.getNumberOfSheets(); i++) {
+			Sheet sheet = wb.getSheetAt(i);
+			for (Row row : sheet) {
+				for (Cell cell : row) {
+					FacesCell expected = new FacesCell();
+					CellStyleUtility.setupCellStyle(wb, expected, cell,
+							row.getHeightInPoints());
+					FacesCell actual = new FacesCell();
+					cache.setupCellStyle(actual, cell,
+							row.getHeightInPoints());
+					assertEquals(expected.getStyle(), actual.getStyle());
+					assertEquals(expected.getColumnStyle(),
+							actual.getColumnStyle());
+					assertEquals(expected.getInputType(),
+							actual.getInputType());
+					assertEquals(expected.getControl(), actual.getControl());
+					assertEquals(expected.getDecimalPlaces(),
+							actual.getDecimalPlaces());
+					assertEquals(expected.getSymbol(), actual.getSymbol());
+					cells++;
+				}
+			}
+		}
+		assertTrue(cells > 0);
+		assertTrue(cache.size() <= wb.getNumCellStyles());
+		wb.close();
+	}
+
+}
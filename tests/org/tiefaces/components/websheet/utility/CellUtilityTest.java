@@ -6,6 +6,7 @@ package org.tiefaces.components.websheet.utility;
 import static org.junit.Assert.assertEquals;
 
 import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellStyle;
 import org.apache.poi.ss.usermodel.CellType;
 import org.apache.poi.ss.usermodel.Row;
 import org.apache.poi.ss.usermodel.Sheet;
@@ -50,11 +51,58 @@ public class CellUtilityTest {
 
 	/**
 	 * Test method for
-	 * {@link org.tiefaces.components.websheet.utility.CellUtility#copyRows(org.apache.poi.ss.usermodel.Sheet, org.apache.poi.ss.usermodel.Sheet, int, int, int, boolean, boolean)}.
+	 * {@link org.tiefaces.components.websheet.utility.CellUtility#copyRows(org.apache.poi.ss.usermodel.Sheet, org.apache.poi.ss.usermodel.Sheet, int, int, int, boolean, org.tiefaces.components.websheet.dataobjects.RowMetaStore)}.
 	 */
 	@Test
 	public void testCopyRows() throws Exception {
+		Workbook wb = new XSSFWorkbook();
+		Sheet sheet = wb.createSheet();
+		Row row = sheet.createRow(0);
+		Cell cell = row.createCell(0);
+		CellStyle style = wb.createCellStyle();
+		style.setWrapText(true);
+		cell.setCellStyle(style);
+		cell.setCellValue("text");
+		sheet.createRow(1).createCell(0).setCellValue("last");
+		int styles = wb.getNumCellStyles();
+		for (int i = 0; i < 10; i++) {
+			CellUtility.copyRows(sheet, sheet, 0, 0, 1, false, null);
+		}
+		assertEquals(11, sheet.getLastRowNum());
+		assertEquals(styles, wb.getNumCellStyles());
+		assertEquals(style.getIndex(), sheet.getRow(5).getCell(0).getCellStyle().getIndex());
+
+		Workbook wb2 = new XSSFWorkbook();
+		Sheet sheet2 = wb2.createSheet();
+		sheet2.createRow(0).createCell(0).setCellValue("last");
+		CellUtility.copyRows(sheet, sheet2, 0, 1, 0, false, null);
+		int styles2 = wb2.getNumCellStyles();
+		CellUtility.copyRows(sheet, sheet2, 0, 1, 0, false, null);
+		assertEquals(styles2, wb2.getNumCellStyles());
+		assertEquals(true, sheet2.getRow(0).getCell(0).getCellStyle().getWrapText());
+		wb.close();
+		wb2.close();
+	}
 
+	/**
+	 * Test method for
+	 * {@link org.tiefaces.components.websheet.utility.CellUtility#copyRowsRepeatedly(org.apache.poi.ss.usermodel.Sheet, org.apache.poi.ss.usermodel.Sheet, int, int, int, int, boolean, org.tiefaces.components.websheet.dataobjects.RowMetaStore)}.
+	 */
+	@Test
+	public void testCopyRowsRepeatedly() throws Exception {
+		Workbook wb = new XSSFWorkbook();
+		Sheet sheet = wb.createSheet();
+		sheet.createRow(0).createCell(0).setCellValue("item1");
+		sheet.createRow(1).createCell(0).setCellValue("item2");
+		sheet.createRow(2).createCell(0).setCellValue("footer");
+		CellUtility.copyRowsRepeatedly(sheet, sheet, 0, 1, 2, 3, false, null);
+		assertEquals(8, sheet.getLastRowNum());
+		for (int i = 0; i < 4; i++) {
+			assertEquals("item1", sheet.getRow(i * 2).getCell(0).getStringCellValue());
+			assertEquals("item2", sheet.getRow(i * 2 + 1).getCell(0).getStringCellValue());
+		}
+		assertEquals("footer", sheet.getRow(8).getCell(0).getStringCellValue());
+		wb.close();
 	}
 
 	/**
@@ -173,16 +221,7 @@ public class CellUtilityTest {
 
 	/**
 	 * Test method for
-	 * {@link org.tiefaces.components.websheet.utility.ConfigurationUtility#skippedRegionCells(org.apache.poi.ss.usermodel.Sheet)}.
-	 */
-	@Test
-	public void testSkippedRegionCells() throws Exception {
-
-	}
-
-	/**
-	 * Test method for
-	 * {@link org.tiefaces.components.websheet.utility.CellUtility#convertCell(org.tiefaces.components.websheet.configuration.SheetConfiguration, org.tiefaces.components.websheet.dataobjects.FacesCell, org.apache.poi.ss.usermodel.Cell, java.util.Map, int, org.tiefaces.components.websheet.dataobjects.CellAttributesMap, java.lang.String)}.
+	 * {@link org.tiefaces.components.websheet.utility.CellUtility#convertCell(org.tiefaces.components.websheet.configuration.SheetConfiguration, org.tiefaces.components.websheet.dataobjects.FacesCell, org.apache.poi.ss.usermodel.Cell, org.tiefaces.components.websheet.dataobjects.MergedRegionIndex, int, org.tiefaces.components.websheet.dataobjects.CellAttributesMap, java.lang.String)}.
 	 */
 	@Test
 	public void testConvertCell() throws Exception {
@@ -3,7 +3,20 @@
  */
 package org.tiefaces.components.websheet.utility;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.Arrays;
+
+import org.apache.poi.ss.formula.ptg.Ptg;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.usermodel.XSSFEvaluationWorkbook;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
 import org.junit.Test;
+import org.tiefaces.components.websheet.configuration.ConfigBuildRef;
+import org.tiefaces.components.websheet.configuration.RowsMapping;
+import org.tiefaces.components.websheet.configuration.ShiftFormulaRef;
 
 /**
  * @author jason jiang
@@ -28,11 +41,76 @@ public class ConfigurationUtilityTest {
     }
 
     /**
-     * Test method for {@link org.tiefaces.components.websheet.utility.ConfigurationUtility#buildCellFormulaForShiftedRows(org.apache.poi.ss.usermodel.Sheet, org.apache.poi.xssf.usermodel.XSSFEvaluationWorkbook, org.tiefaces.components.websheet.configuration.ShiftFormulaRef, org.apache.poi.ss.usermodel.Cell, java.lang.String)}.
+     * Test method for {@link org.tiefaces.components.websheet.utility.ConfigurationUtility#buildCellFormulaForShiftedRows(org.tiefaces.components.websheet.configuration.ConfigBuildRef, org.tiefaces.components.websheet.configuration.ShiftFormulaRef, org.apache.poi.ss.usermodel.Cell, java.lang.String)}.
      */
     @Test
     public void testBuildCellFormulaForShiftedRows() throws Exception {
-        
+        try (XSSFWorkbook wb = new XSSFWorkbook()) {
+            Sheet sheet = wb.createSheet("Sheet1");
+            for (int i = 0; i < 3; i++) {
+                sheet.createRow(i).createCell(0).setCellValue(i + 1);
+            }
+            Cell sumCell = sheet.createRow(3).createCell(0);
+            sumCell.setCellFormula("SUM((A1))");
+            Cell secondCell = sheet.getRow(3).createCell(1);
+            secondCell.setCellFormula("SUM((A1))");
+            ConfigBuildRef configBuildRef = new ConfigBuildRef(
+                    XSSFEvaluationWorkbook.create(wb), sheet, null, null,
+                    null, null, null, null);
+            RowsMapping rowsMapping = new RowsMapping();
+            for (int i = 0; i < 3; i++) {
+                rowsMapping.addRow(0, sheet.getRow(i));
+            }
+            ShiftFormulaRef shiftFormulaRef = new ShiftFormulaRef(
+                    Arrays.asList(0), Arrays.asList(rowsMapping));
+
+            Ptg[] ptgs = configBuildRef.getFormulaPtgs("SUM((A1))");
+            String origin = Arrays.toString(ptgs);
+            ConfigurationUtility.buildCellFormulaForShiftedRows(
+                    configBuildRef, shiftFormulaRef, sumCell, "SUM((A1))");
+            assertEquals("SUM((A1:A3))", sumCell.getCellFormula());
+            shiftFormulaRef.setFormulaChanged(0);
+            ConfigurationUtility.buildCellFormulaForShiftedRows(
+                    configBuildRef, shiftFormulaRef, secondCell, "SUM((A1))");
+            assertEquals("SUM((A1:A3))", secondCell.getCellFormula());
+            // parsed once, cached tokens are not changed by the shift.
+            assertSame(ptgs, configBuildRef.getFormulaPtgs("SUM((A1))"));
+            assertEquals(origin, Arrays.toString(ptgs));
+        }
+    }
+
+    /**
+     * Contiguous rows are coalesced into area, gaps split the area.
+     */
+    @Test
+    public void testBuildCellFormulaForShiftedRowsWithGap() throws Exception {
+        try (XSSFWorkbook wb = new XSSFWorkbook()) {
+            Sheet sheet = wb.createSheet("Sheet1");
+            for (int i = 0; i < 4; i++) {
+                sheet.createRow(i).createCell(0).setCellValue(i + 1);
+            }
+            Cell sumCell = sheet.createRow(5).createCell(0);
+            Cell areaCell = sheet.getRow(5).createCell(1);
+            ConfigBuildRef configBuildRef = new ConfigBuildRef(
+                    XSSFEvaluationWorkbook.create(wb), sheet, null, null,
+                    null, null, null, null);
+            RowsMapping rowsMapping = new RowsMapping();
+            rowsMapping.addRow(0, sheet.getRow(3));
+            rowsMapping.addRow(0, sheet.getRow(0));
+            rowsMapping.addRow(0, sheet.getRow(1));
+            ShiftFormulaRef shiftFormulaRef = new ShiftFormulaRef(
+                    Arrays.asList(0), Arrays.asList(rowsMapping));
+
+            ConfigurationUtility.buildCellFormulaForShiftedRows(
+                    configBuildRef, shiftFormulaRef, sumCell, "SUM((A1))");
+            assertEquals("SUM((A1:A2),(A4))", sumCell.getCellFormula());
+            assertEquals(2, shiftFormulaRef.getFormulaChanged());
+            shiftFormulaRef.setFormulaChanged(0);
+            ConfigurationUtility.buildCellFormulaForShiftedRows(
+                    configBuildRef, shiftFormulaRef, areaCell,
+                    "SUM(($A1:B1))");
+            assertEquals("SUM(($A1:B2),($A4:B4))", areaCell.getCellFormula());
+        }
     }
 
     /**
@@ -163,12 +241,4 @@ public class ConfigurationUtilityTest {
         
     }
 
-    /**
-     * Test method for {@link org.tiefaces.components.websheet.utility.ConfigurationUtility#skippedRegionCells(org.apache.poi.ss.usermodel.Sheet)}.
-     */
-    @Test
-    public void testSkippedRegionCells() throws Exception {
-        
-    }
-
 }